@@ -0,0 +1,45 @@
+package dutyroster.importer.domain;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the creation of the {@link DutyRosterShift}s of a whole month.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class DutyRosterMonthBenchmark {
+
+    private DutyRosterMonth dutyRosterMonth;
+
+    @Setup
+    public void setUp() {
+        dutyRosterMonth = new DutyRosterMonth(2015, 2);
+    }
+
+    @Benchmark
+    public void createShift(Blackhole blackhole) {
+        for (int day = 1; day <= 31; day++) {
+            for (Shift shift : Shift.values()) {
+                blackhole.consume(dutyRosterMonth.createShift(shift, day, "Judy"));
+            }
+        }
+    }
+
+    @Benchmark
+    public DutyRosterMonth addDutyRosterShift() {
+        DutyRosterMonth month = new DutyRosterMonth(2015, 2);
+        for (int day = 1; day <= 31; day++) {
+            for (Shift shift : Shift.values()) {
+                month.addDutyRosterShift(shift, day, "Judy");
+            }
+        }
+        return month;
+    }
+}
@@ -0,0 +1,32 @@
+package dutyroster.importer.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the innermost loop of the extraction: recognizing and decoding the date cells of a roster table.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class DateCellBenchmark {
+
+    /**
+     * A typical mix of cell texts: dates, names, labels and blanks.
+     */
+    private String[] texts = {"", "02.03.", "03.03.", "04.03.", "05.03.", "06.03.", "07.03.", "08.03.", "TD",
+            "Judy", "Judy", "Judy/Tom", "Tom", "SD", "Peter", "Jane", "", "", "ND", "Paul", "Mary", "-", "1.4.",
+            "31.12."};
+
+    @Benchmark
+    public void parseDayAndMonth(Blackhole blackhole) {
+        for (String text : texts) {
+            blackhole.consume(DutyRosterConverterService.parseDayAndMonth(text));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package dutyroster.importer.service;
+
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.util.DutyRosterDocxGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversion docx -&gt; {@link DutyRosterMonth} -&gt; CSV for roster tables covering 1, 12 and 120
+ * months. Only the first month of a table is extracted, the rest of the table is walked nevertheless. The CSV is
+ * written into a {@link Blackhole}, so disk I/O does not blur the cost of the conversion.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class DutyRosterConverterBenchmark {
+
+    @Param({"1", "12", "120"})
+    private int months;
+
+    @Param({"XWPF", "STAX"})
+    private DutyRosterConverterService.ParserMode parserMode;
+
+    private DutyRosterConverterService converterService;
+
+    private byte[] docx;
+
+    private DutyRosterMonth dutyRosterMonth;
+
+    @Setup
+    public void setUp() throws Exception {
+        converterService = new DutyRosterConverterService(new DutyRosterShiftService());
+        DutyRosterDocxGenerator generator = new DutyRosterDocxGenerator();
+        generator.setMonths(months);
+        docx = generator.generate();
+        dutyRosterMonth = converterService.extractDutyRoster(new ByteArrayInputStream(docx), 2015, parserMode);
+    }
+
+    @Benchmark
+    public DutyRosterMonth extractDutyRoster() throws Exception {
+        return converterService.extractDutyRoster(new ByteArrayInputStream(docx), 2015, parserMode);
+    }
+
+    @Benchmark
+    public void writeCsv(Blackhole blackhole) throws Exception {
+        converterService.writeCsv(dutyRosterMonth, new BlackholeOutputStream(blackhole));
+    }
+
+    /**
+     * Discards everything written, but hands it to a {@link Blackhole}, so the writing is not optimized away.
+     */
+    private static class BlackholeOutputStream extends OutputStream {
+
+        private final Blackhole blackhole;
+
+        BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+            blackhole.consume(len);
+        }
+    }
+}
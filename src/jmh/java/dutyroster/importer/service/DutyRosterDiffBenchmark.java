@@ -0,0 +1,144 @@
+package dutyroster.importer.service;
+
+import dutyroster.importer.domain.DutyRosterDiff;
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.domain.Shift;
+import dutyroster.importer.util.DateUtil;
+import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.joda.time.DateTimeComparator;
+import org.joda.time.DateTimeFieldType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link DutyRosterDiffService#diff(DutyRosterMonth, DutyRosterMonth)} with the former diff based on
+ * {@link CollectionUtils#subtract(Collection, Collection)} and {@link CollectionUtils#intersection(Collection,
+ * Collection)}, which looked up every shift of the intersection with a linear scan on both sides.
+ * <p>
+ * There is a before and an after roster for each of {@link #months} months, diffed month by month like the importer
+ * does. Compared to the before roster, about 10% of the shifts of the after roster have another name, 5% are
+ * missing and 5% are new.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmark.xml")
+public class DutyRosterDiffBenchmark {
+
+    @Param({"1", "12", "120"})
+    private int months;
+
+    private DutyRosterDiffService diffService;
+
+    private DutyRosterShiftService dutyRosterShiftService;
+
+    /**
+     * The before rosters by month.
+     */
+    private DutyRosterMonth[] before;
+
+    /**
+     * The after rosters by month.
+     */
+    private DutyRosterMonth[] after;
+
+    @Setup
+    public void setUp() {
+        dutyRosterShiftService = new DutyRosterShiftService();
+        diffService = new DutyRosterDiffService(dutyRosterShiftService);
+
+        Random random = new Random(42);
+        before = new DutyRosterMonth[months];
+        after = new DutyRosterMonth[months];
+        for (int month = 0; month < months; month++) {
+            before[month] = new DutyRosterMonth(2015, month);
+            after[month] = new DutyRosterMonth(2015, month);
+            int days = DateUtil.getCalendar(before[month].getDate()).getActualMaximum(Calendar.DAY_OF_MONTH);
+            for (int day = 1; day <= days; day++) {
+                for (Shift shift : Shift.values()) {
+                    int dice = random.nextInt(100);
+                    if (dice >= 5) {
+                        before[month].addDutyRosterShift(shift, day, "Judy");
+                    }
+                    if (dice < 5 || dice >= 10) {
+                        after[month].addDutyRosterShift(shift, day, dice >= 90 ? "Tom" : "Judy");
+                    }
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void hashJoinDiff(Blackhole blackhole) {
+        for (int month = 0; month < months; month++) {
+            blackhole.consume(diffService.diff(before[month], after[month]));
+        }
+    }
+
+    @Benchmark
+    public void legacyDiff(Blackhole blackhole) {
+        for (int month = 0; month < months; month++) {
+            blackhole.consume(legacyDiff(before[month], after[month]));
+        }
+    }
+
+    /**
+     * The former implementation of {@link DutyRosterDiffService#diff(DutyRosterMonth, DutyRosterMonth)}.
+     */
+    private DutyRosterDiff legacyDiff(DutyRosterMonth dutyRoster1, DutyRosterMonth dutyRoster2) {
+        DutyRosterDiff diff = new DutyRosterDiff(DateUtil.getYear(dutyRoster1.getDate()),
+                DateUtil.getMonth(dutyRoster1.getDate()));
+
+        Collection onlyIn1 = CollectionUtils.subtract(dutyRoster1.getAllDutyRosterDays(),
+                dutyRoster2.getAllDutyRosterDays());
+        diff.setOnlyBefore(createDutyRosterMonth(dutyRoster1.getDate(), onlyIn1));
+
+        Collection onlyIn2 = CollectionUtils.subtract(dutyRoster2.getAllDutyRosterDays(),
+                dutyRoster1.getAllDutyRosterDays());
+        diff.setOnlyAfter(createDutyRosterMonth(dutyRoster2.getDate(), onlyIn2));
+
+        diff.setChanges(findChangesOfPersonnel(dutyRoster1.getAllDutyRosterDays(),
+                dutyRoster2.getAllDutyRosterDays()));
+
+        return diff;
+    }
+
+    private DutyRosterMonth createDutyRosterMonth(Date date, Collection<DutyRosterShift> dutyRosterShifts) {
+        DutyRosterMonth dutyRosterMonth = new DutyRosterMonth(DateUtil.getYear(date), DateUtil.getMonth(date));
+        for (DutyRosterShift dutyRosterShift : dutyRosterShifts) {
+            dutyRosterMonth.addDutyRosterShift(dutyRosterShift);
+        }
+        return dutyRosterMonth;
+    }
+
+    private List<DutyRosterDiff.Change> findChangesOfPersonnel(Set<DutyRosterShift> set1,
+                                                               Set<DutyRosterShift> set2) {
+        List<DutyRosterDiff.Change> changes = new ArrayList<>();
+
+        DateTimeComparator comparator = DateTimeComparator.getInstance(DateTimeFieldType.minuteOfHour());
+
+        Collection intersection = CollectionUtils.intersection(set1, set2);
+        for (Object o : intersection) {
+            DutyRosterShift shift = (DutyRosterShift) o;
+            DutyRosterShift shiftIn1 = dutyRosterShiftService.findDutyRosterShift(set1, shift);
+            DutyRosterShift shiftIn2 = dutyRosterShiftService.findDutyRosterShift(set2, shift);
+
+            if (!StringUtils.equals(shiftIn1.getName(), shiftIn2.getName()) ||
+                    comparator.compare(shiftIn1.getFrom().getTime(), shiftIn2.getFrom().getTime()) != 0 ||
+                    comparator.compare(shiftIn1.getTo().getTime(), shiftIn2.getTo().getTime()) != 0) {
+                shiftIn2.setEventId(shiftIn1.getEventId());
+                shiftIn2.setSequence(shiftIn1.getSequence());
+                changes.add(new DutyRosterDiff.Change(shiftIn1, shiftIn2));
+            }
+        }
+        return changes;
+    }
+}
@@ -1,6 +1,7 @@
 package dutyroster.importer;
 
 import dutyroster.importer.service.EmailProperties;
+import dutyroster.importer.service.ShiftScheduleProperties;
 import dutyroster.importer.storage.StorageProperties;
 import dutyroster.importer.storage.StorageService;
 import lombok.extern.slf4j.Slf4j;
@@ -26,7 +27,7 @@ import java.util.Arrays;
         @PropertySource(value = "classpath:/calendar.properties", encoding = "UTF-8"),
         @PropertySource(value = "classpath:/email.properties", encoding = "UTF-8")})
 @Slf4j
-@EnableConfigurationProperties({StorageProperties.class, EmailProperties.class})
+@EnableConfigurationProperties({StorageProperties.class, EmailProperties.class, ShiftScheduleProperties.class})
 @RestController
 @CrossOrigin
 public class DutyRosterImporterApplication {
@@ -3,10 +3,15 @@ package dutyroster.importer;
 import dutyroster.importer.domain.DutyRosterDiff;
 import dutyroster.importer.domain.DutyRosterMonth;
 import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.service.CalendarContext;
+import dutyroster.importer.service.DutyRosterBatchImportService;
 import dutyroster.importer.service.DutyRosterConverterService;
 import dutyroster.importer.service.DutyRosterDiffService;
+import dutyroster.importer.service.DutyRosterImporterService;
+import dutyroster.importer.service.DutyRosterRegistry;
 import dutyroster.importer.service.DutyRosterShiftService;
 import dutyroster.importer.service.GoogleCalendarService;
+import dutyroster.importer.service.ParsedDutyRosterCache;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.mail.Email;
@@ -15,11 +20,11 @@ import org.apache.commons.mail.SimpleEmail;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.io.InputStream;
-import java.security.GeneralSecurityException;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.List;
 
 /**
  * @author apohl
@@ -31,6 +36,8 @@ public class DutyRosterStandaloneApplication {
 
     public static final String ARG_DRY_RUN = "-d";
 
+    public static final String ARG_BATCH = "-b";
+
     /**
      * This would be the main method. Rename it, to start the application from here. Spring boot get's confused if
      * there is another main method.
@@ -39,6 +46,12 @@ public class DutyRosterStandaloneApplication {
      */
     public static void convertAndImportDutyRoster(String... args) {
 
+        String batch = parseBatchFromArgs(args);
+        if (batch != null) {
+            convertAndImportDutyRosters(batch, isDryRun(args));
+            return;
+        }
+
         String filename;
         int year;
         int month;
@@ -86,14 +99,12 @@ public class DutyRosterStandaloneApplication {
 
             // automatic import
             GoogleCalendarService calendarService = new GoogleCalendarService(dutyRosterShiftService);
-            calendarService.setYear(year);
-            calendarService.setMonth(month);
-            calendarService.setDryRun(dryRun);
-            DutyRosterMonth oldRoster = calendarService.readDutyRosterMonth();
+            CalendarContext context = calendarService.createContext(year, month, dryRun);
+            DutyRosterMonth oldRoster = calendarService.readDutyRosterMonth(context);
 
             DutyRosterDiff dutyRosterDiff = buildDiff(oldRoster, newRoster);
             if (dutyRosterDiff.hasChanges()) {
-                importDutyRosterIntoGoogleCalendar(calendarService, dutyRosterDiff);
+                calendarService.importDiff(context, dutyRosterDiff);
             }
             sendUpdateEmail(dutyRosterDiff, dryRun);
 
@@ -102,6 +113,60 @@ public class DutyRosterStandaloneApplication {
         }
     }
 
+    /**
+     * Imports all duty rosters of a directory, see
+     * {@link dutyroster.importer.service.DutyRosterBatchImportService}. The Google client is initialized once for
+     * all files.
+     *
+     * @param directoryOrGlob the directory or glob of the docx files, e.g. "rosters" or "rosters/2015_*.docx"
+     * @param dryRun          if <code>true</code>, the calendar is not modified and no emails are sent
+     */
+    private static void convertAndImportDutyRosters(String directoryOrGlob, boolean dryRun) {
+        DutyRosterShiftService dutyRosterShiftService = new DutyRosterShiftService();
+        DutyRosterConverterService converterService = new DutyRosterConverterService(dutyRosterShiftService);
+        DutyRosterBatchImportService batchImportService = new DutyRosterBatchImportService(converterService,
+                new DutyRosterImporterService(converterService, new GoogleCalendarService(dutyRosterShiftService),
+                        new DutyRosterDiffService(dutyRosterShiftService), new ParsedDutyRosterCache(),
+                        new DutyRosterRegistry()));
+        try {
+            List<Path> files = DutyRosterBatchImportService.findFiles(directoryOrGlob);
+            if (files.isEmpty()) {
+                log.error("no files named like 'yyyy_MM*.docx' found in [{}]", directoryOrGlob);
+                return;
+            }
+
+            List<DutyRosterBatchImportService.FileResult> results = batchImportService
+                    .convertAndImportDutyRosters(files, dryRun, true);
+            for (DutyRosterBatchImportService.FileResult result : results) {
+                if (result.isSuccess()) {
+                    sendUpdateEmail(result.getDiff(), dryRun);
+                }
+            }
+        } catch (Exception e) {
+            log.error("exception in main: ", e);
+        }
+    }
+
+    public static String parseBatchFromArgs(String... args) {
+        if (args == null || args.length == 0) {
+            return null;
+        }
+
+        for (String arg : args) {
+            if (StringUtils.startsWith(arg, ARG_BATCH)) {
+                String directoryOrGlob = StringUtils.substring(arg, ARG_BATCH.length());
+                if (StringUtils.isEmpty(directoryOrGlob)) {
+                    log.error("error parsing batch [{}] - no value", arg);
+                    log.error("correct batch argument: '" + ARG_BATCH + "thedirectory' or '" + ARG_BATCH
+                            + "thedirectory/2015_*.docx'");
+                    return null;
+                }
+                return directoryOrGlob;
+            }
+        }
+        return null;
+    }
+
     public static String parseFilenameFromArgs(String... args) {
         if (args == null || args.length == 0) {
             return null;
@@ -240,32 +305,16 @@ public class DutyRosterStandaloneApplication {
         DutyRosterDiff diff = diffService.diff(oldRoster, newRoster);
         if (diff.hasDifferences()) {
             log.info("We got changes: [{}] new events, [{}] events to be deleted, [{}] changed events",
-                    diff.getOnlyBefore().getAllDutyRosterDays().size(),
-                    diff.getOnlyAfter().getAllDutyRosterDays().size(),
+                    diff.getOnlyBefore().size(),
+                    diff.getOnlyAfter().size(),
                     diff.getChanges().size());
-            log.debug(DutyRosterDiffService.toJson(diff));
+            if (log.isDebugEnabled()) {
+                log.debug(diffService.toJson(diff));
+            }
         } else {
             log.info("no changes");
         }
         return diff;
     }
 
-    private static void importDutyRosterIntoGoogleCalendar(GoogleCalendarService service, DutyRosterDiff
-            diff) throws IOException, GeneralSecurityException {
-
-        DutyRosterMonth onlyBefore = diff.getOnlyBefore();
-        for (DutyRosterShift dutyRosterShift : onlyBefore.getAllDutyRosterDays()) {
-            service.deleteEvent(dutyRosterShift);
-        }
-
-        DutyRosterMonth onlyAfter = diff.getOnlyAfter();
-        for (DutyRosterShift dutyRosterShift : onlyAfter.getAllDutyRosterDays()) {
-            service.addEvent(dutyRosterShift);
-        }
-
-        for (DutyRosterDiff.Change change : diff.getChanges()) {
-            service.updateEvent(change.getAfter());
-        }
-    }
-
 }
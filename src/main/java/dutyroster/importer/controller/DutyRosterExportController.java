@@ -0,0 +1,180 @@
+package dutyroster.importer.controller;
+
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.service.DutyRosterConverterService;
+import dutyroster.importer.service.DutyRosterIcsService;
+import dutyroster.importer.service.DutyRosterImporterService;
+import dutyroster.importer.storage.StorageFileNotFoundException;
+import dutyroster.importer.storage.StorageService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.xmlbeans.XmlException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+
+/**
+ * Exports uploaded duty rosters.
+ */
+@RestController
+@Slf4j
+@CrossOrigin
+public class DutyRosterExportController {
+
+    private static final MediaType TEXT_CSV = new MediaType("text", "csv", StandardCharsets.UTF_8);
+
+    private static final MediaType TEXT_CALENDAR = new MediaType("text", "calendar", StandardCharsets.UTF_8);
+
+    private DutyRosterImporterService dutyRosterImporterService;
+
+    private DutyRosterConverterService converterService;
+
+    private DutyRosterIcsService icsService;
+
+    private StorageService storageService;
+
+    @Autowired
+    public DutyRosterExportController(DutyRosterImporterService dutyRosterImporterService,
+                                      DutyRosterConverterService converterService, DutyRosterIcsService icsService,
+                                      StorageService storageService) {
+        this.dutyRosterImporterService = dutyRosterImporterService;
+        this.converterService = converterService;
+        this.icsService = icsService;
+        this.storageService = storageService;
+    }
+
+    /**
+     * Streams the CSV of an uploaded docx, see {@link DutyRosterConverterService#writeCsv(Iterable,
+     * java.io.OutputStream, boolean)}. The CSV is written to the response while it is created.
+     *
+     * @param year     the year of the roster
+     * @param filename the name of the uploaded docx
+     * @param gzip     if <code>true</code>, the CSV is sent gzip compressed ("Content-Encoding: gzip")
+     * @param ward     the ward of the docx, the default ward if not given
+     * @return the CSV as attachment or 404, if the docx does not contain a roster
+     * @throws IOException
+     * @throws XmlException
+     * @throws OpenXML4JException
+     */
+    @GetMapping("/api/csv/{year}/{filename:.+}")
+    public ResponseEntity<StreamingResponseBody> handleExportCsv(@PathVariable("year") int year,
+                                                                 @PathVariable("filename") String filename,
+                                                                 @RequestParam(value = "gzip", defaultValue = "false")
+                                                                         boolean gzip,
+                                                                 @RequestParam(value = "ward", required = false)
+                                                                         String ward)
+            throws IOException, XmlException, OpenXML4JException {
+
+        DutyRosterMonth dutyRosterMonth;
+        try (InputStream is = storageService.loadAsResource(filename).getInputStream()) {
+            dutyRosterMonth = dutyRosterImporterService.extractDutyRoster(is, year, ward);
+        }
+        if (dutyRosterMonth == null) {
+            log.info("[handleExportCsv] no duty roster found in [{}]", filename);
+            return ResponseEntity.notFound().build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(TEXT_CSV)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + StringUtils.removeEnd(filename, ".docx") + ".csv\"");
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(os -> converterService.writeCsv(Collections.singletonList(dutyRosterMonth),
+                os, gzip));
+    }
+
+    /**
+     * Streams the iCalendar of an uploaded docx, see {@link DutyRosterIcsService#writeIcs(Iterable, Date,
+     * java.io.OutputStream)}.
+     *
+     * @param year     the year of the roster
+     * @param filename the name of the uploaded docx
+     * @param ward     the ward of the docx, the default ward if not given
+     * @return the iCalendar as attachment or 404, if the docx does not contain a roster
+     * @throws IOException
+     * @throws XmlException
+     * @throws OpenXML4JException
+     */
+    @GetMapping("/api/ics/{year}/{filename:.+}")
+    public ResponseEntity<StreamingResponseBody> handleExportIcs(@PathVariable("year") int year,
+                                                                 @PathVariable("filename") String filename,
+                                                                 @RequestParam(value = "ward", required = false)
+                                                                         String ward)
+            throws IOException, XmlException, OpenXML4JException {
+
+        DutyRosterMonth dutyRosterMonth;
+        try (InputStream is = storageService.loadAsResource(filename).getInputStream()) {
+            dutyRosterMonth = dutyRosterImporterService.extractDutyRoster(is, year, ward);
+        }
+        if (dutyRosterMonth == null) {
+            log.info("[handleExportIcs] no duty roster found in [{}]", filename);
+            return ResponseEntity.notFound().build();
+        }
+
+        Date dtStamp = new Date();
+        return ResponseEntity.ok()
+                .contentType(TEXT_CALENDAR)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + StringUtils.removeEnd(filename, ".docx") + ".ics\"")
+                .body(os -> icsService.writeIcs(Collections.singletonList(dutyRosterMonth), dtStamp, os));
+    }
+
+    /**
+     * Serves the shifts of an assignee in the latest imported roster of a month as iCalendar feed. Clients polling
+     * the feed should send the ETag of their copy in "If-None-Match", they get a 304 without content as long as the
+     * roster has not changed.
+     *
+     * @param assignee   the name of the personnel, e.g. "Tom"
+     * @param year       the year
+     * @param month      the zero based month (0=January)
+     * @param ward       the ward of the roster, the default ward if not given
+     * @param webRequest the request
+     * @return the feed, 304 if the client's copy is up to date or 404, if no roster of the ward and month has been
+     * imported
+     * @throws IOException
+     */
+    @GetMapping("/api/ics/feed/{assignee}/{year}/{month}")
+    public ResponseEntity<byte[]> handleAssigneeFeed(@PathVariable("assignee") String assignee,
+                                                     @PathVariable("year") int year,
+                                                     @PathVariable("month") int month,
+                                                     @RequestParam(value = "ward", required = false) String ward,
+                                                     WebRequest webRequest) throws IOException {
+
+        DutyRosterIcsService.IcsFeed feed = icsService.getAssigneeFeed(assignee, ward, year, month);
+        if (feed == null) {
+            log.info("[handleAssigneeFeed] no duty roster of ward [{}] imported for year/month [{}/{}]", ward, year,
+                    month);
+            return ResponseEntity.notFound().build();
+        }
+        if (webRequest.checkNotModified(feed.getEtag())) {
+            // 304, the ETag header has been set by checkNotModified
+            return null;
+        }
+
+        return ResponseEntity.ok()
+                .contentType(TEXT_CALENDAR)
+                .eTag(feed.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .body(feed.getContent());
+    }
+
+    @ExceptionHandler(StorageFileNotFoundException.class)
+    public ResponseEntity<?> handleStorageFileNotFound(StorageFileNotFoundException exc) {
+        log.debug("[handleStorageFileNotFound] ", exc);
+        return ResponseEntity.notFound().build();
+    }
+}
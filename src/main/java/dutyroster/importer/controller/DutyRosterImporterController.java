@@ -3,6 +3,7 @@ package dutyroster.importer.controller;
 import dutyroster.importer.domain.DutyRosterDiff;
 import dutyroster.importer.domain.DutyRosterStatistics;
 import dutyroster.importer.service.DutyRosterImporterService;
+import dutyroster.importer.service.DutyRosterJsonService;
 import dutyroster.importer.service.DutyRosterStatisticsService;
 import dutyroster.importer.service.EmailService;
 import lombok.extern.slf4j.Slf4j;
@@ -10,13 +11,19 @@ import org.apache.commons.mail.Email;
 import org.apache.commons.mail.EmailException;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.mail.MessagingException;
 import javax.mail.Multipart;
 import javax.mail.internet.MimeMessage;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Created by apo on 05.03.2015.
@@ -32,11 +39,15 @@ public class DutyRosterImporterController {
 
     private DutyRosterStatisticsService dutyRosterStatisticsService;
 
+    private DutyRosterJsonService dutyRosterJsonService;
+
     @Autowired
-    public DutyRosterImporterController(DutyRosterImporterService dutyRosterImporterService, EmailService emailService, DutyRosterStatisticsService dutyRosterStatisticsService) {
+    public DutyRosterImporterController(DutyRosterImporterService dutyRosterImporterService, EmailService emailService, DutyRosterStatisticsService dutyRosterStatisticsService,
+                                        DutyRosterJsonService dutyRosterJsonService) {
         this.dutyRosterImporterService = dutyRosterImporterService;
         this.emailService = emailService;
         this.dutyRosterStatisticsService = dutyRosterStatisticsService;
+        this.dutyRosterJsonService = dutyRosterJsonService;
     }
 
     @PostMapping("/api/convertAndImport/{originalFilename}/{year}/{month}/{dryRun}/{createCsv}")
@@ -45,11 +56,13 @@ public class DutyRosterImporterController {
                                   @PathVariable("dryRun") boolean dryRun,
                                   @PathVariable("createCsv") boolean createCsv,
                                   @PathVariable("year") int year,
-                                  @PathVariable("month") int month) throws EmailException, IOException, MessagingException {
+                                  @PathVariable("month") int month,
+                                  @RequestParam(value = "ward", required = false) String ward) throws EmailException, IOException, MessagingException {
 
         DutyRosterDiff dutyRosterDiff = dutyRosterImporterService.convertAndImportDutyRoster(new FileInputStream(filename),
-                originalFilename, dryRun, createCsv, year, month);
-        if (!dutyRosterDiff.hasDifferences()) {
+                originalFilename, dryRun, createCsv, year, month, ward);
+        // conflicts are not imported, but reported by the email
+        if (!dutyRosterDiff.hasDifferences() && !dutyRosterDiff.hasConflicts()) {
             return "no changes in duty roster";
         }
 
@@ -69,4 +82,34 @@ public class DutyRosterImporterController {
         return emailContent;
     }
 
-}
\ No newline at end of file
+    /**
+     * Builds the diff of the given docx and the calendar without importing it (a dry run) and streams it as JSON,
+     * see {@link DutyRosterJsonService}.
+     *
+     * @param filename         the path of the uploaded docx
+     * @param originalFilename the original name of the docx
+     * @param year             the year
+     * @param month            the zero based month (0=January)
+     * @param ward             the ward of the docx, the default ward if not given
+     * @return the diff as JSON
+     * @throws IOException
+     */
+    @PostMapping("/api/diff/{originalFilename}/{year}/{month}")
+    public ResponseEntity<StreamingResponseBody> handleDiff(@RequestBody String filename,
+                                                            @PathVariable("originalFilename") String originalFilename,
+                                                            @PathVariable("year") int year,
+                                                            @PathVariable("month") int month,
+                                                            @RequestParam(value = "ward", required = false)
+                                                                    String ward) throws IOException {
+
+        DutyRosterDiff dutyRosterDiff;
+        try (InputStream is = new FileInputStream(filename)) {
+            dutyRosterDiff = dutyRosterImporterService.convertAndImportDutyRoster(is, originalFilename, true, false,
+                    year, month, ward);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(os -> dutyRosterJsonService.writeDiff(dutyRosterDiff,
+                        new OutputStreamWriter(os, StandardCharsets.UTF_8), false));
+    }
+}
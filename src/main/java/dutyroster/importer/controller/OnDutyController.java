@@ -0,0 +1,95 @@
+package dutyroster.importer.controller;
+
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.service.DutyRosterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.*;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Answers who is on duty in a ward, based on the imported rosters of the ward, see
+ * {@link DutyRosterRegistry#getShiftIndex(String)}. Times are ISO date-times, e.g. "2018-03-02T21:00" in the default
+ * time zone or "2018-03-02T21:00+01:00". The ward is given as request parameter "ward", the default ward if not given.
+ */
+@RestController
+@Slf4j
+@CrossOrigin
+public class OnDutyController {
+
+    private DutyRosterRegistry dutyRosterRegistry;
+
+    private Clock clock;
+
+    @Autowired
+    public OnDutyController(DutyRosterRegistry dutyRosterRegistry) {
+        this(dutyRosterRegistry, Clock.systemDefaultZone());
+    }
+
+    OnDutyController(DutyRosterRegistry dutyRosterRegistry, Clock clock) {
+        this.dutyRosterRegistry = dutyRosterRegistry;
+        this.clock = clock;
+    }
+
+    /**
+     * @param ward the ward
+     * @return the shifts running now, e.g. the night shift at 03:00h of the first day of a month started in the
+     * previous month
+     */
+    @GetMapping("/api/onduty/now")
+    public List<DutyRosterShift> handleOnDutyNow(@RequestParam(value = "ward", required = false) String ward) {
+        return dutyRosterRegistry.getShiftIndex(ward).getShiftsAt(clock.millis());
+    }
+
+    /**
+     * @param from the start, inclusive
+     * @param to   the end, exclusive
+     * @param ward the ward
+     * @return the shifts overlapping the given interval, sorted by start
+     */
+    @GetMapping("/api/onduty")
+    public List<DutyRosterShift> handleOnDutyBetween(@RequestParam("from") String from,
+                                                     @RequestParam("to") String to,
+                                                     @RequestParam(value = "ward", required = false) String ward) {
+        return dutyRosterRegistry.getShiftIndex(ward).getShiftsBetween(parseInstant(from), parseInstant(to));
+    }
+
+    /**
+     * @param assignee the name of the personnel, e.g. "Tom"
+     * @param after    the time to search from, now if not given
+     * @param ward     the ward
+     * @return the next shift of the assignee starting at or after the given time or 404, if there is none
+     */
+    @GetMapping("/api/onduty/next/{assignee}")
+    public ResponseEntity<DutyRosterShift> handleNextShift(@PathVariable("assignee") String assignee,
+                                                           @RequestParam(value = "after", required = false)
+                                                                   String after,
+                                                           @RequestParam(value = "ward", required = false)
+                                                                   String ward) {
+        long instant = after != null ? parseInstant(after) : clock.millis();
+        DutyRosterShift shift = dutyRosterRegistry.getShiftIndex(ward).getNextShift(assignee, instant);
+        if (shift == null) {
+            log.info("[handleNextShift] no shift of [{}] after [{}]", assignee, Instant.ofEpochMilli(instant));
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(shift);
+    }
+
+    @ExceptionHandler(DateTimeParseException.class)
+    public ResponseEntity<String> handleDateTimeParseException(DateTimeParseException exc) {
+        log.debug("[handleDateTimeParseException] ", exc);
+        return ResponseEntity.badRequest().body("invalid date-time [" + exc.getParsedString() + "]");
+    }
+
+    private long parseInstant(String dateTime) {
+        try {
+            return OffsetDateTime.parse(dateTime).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return LocalDateTime.parse(dateTime).atZone(clock.getZone()).toInstant().toEpochMilli();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package dutyroster.importer.domain;
+
+import java.util.Arrays;
+
+/**
+ * Interns the names of the personnel of a {@link DutyRosterMonth}, so it stores an <code>int</code> per shift instead
+ * of a reference to its own copy of the name. Each duty roster has its own index, which holds the distinct names of
+ * its shifts only and is dropped with it. A month has just a few distinct names, so they are looked up by a linear
+ * scan instead of a hash map.
+ * <p>
+ * Like {@link DutyRosterMonth}, an index is not thread-safe for writes.
+ * </p>
+ */
+final class AssigneeIndex {
+
+    /**
+     * The names by index.
+     */
+    private String[] names;
+
+    private int size;
+
+    AssigneeIndex() {
+        this.names = new String[8];
+    }
+
+    private AssigneeIndex(AssigneeIndex other) {
+        this.names = other.names.clone();
+        this.size = other.size;
+    }
+
+    /**
+     * @return a copy of this index, indices of the copy equal those of this index
+     */
+    AssigneeIndex copy() {
+        return new AssigneeIndex(this);
+    }
+
+    /**
+     * @param name the name of the personnel, not null
+     * @return the index of the name, the same for equal names
+     */
+    int indexOf(String name) {
+        for (int index = 0; index < size; index++) {
+            if (names[index].equals(name)) {
+                return index;
+            }
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, names.length * 2);
+        }
+        names[size] = name;
+        return size++;
+    }
+
+    /**
+     * @param index an index returned by {@link #indexOf(String)}
+     * @return the name
+     */
+    String nameOf(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return the number of distinct names
+     */
+    int size() {
+        return size;
+    }
+}
@@ -43,25 +43,42 @@ public class DutyRosterDiff {
      */
     List<Change> changes = new ArrayList<>();
 
+    /**
+     * The number of calendar api calls saved by importing moved shifts as changes instead of a deletion and an
+     * addition each.
+     */
+    int savedApiCalls;
+
+    /**
+     * The shifts changed differently in the calendar and in the roster since the last import, not imported. Each
+     * change is from the calendar (before) to the roster (after), a side is null if it lacks the shift.
+     */
+    List<Change> conflicts = new ArrayList<>();
+
+    /**
+     * The number of shifts changed manually in the calendar since the last import, these are not overwritten.
+     */
+    int calendarEdits;
+
     public DutyRosterDiff(int year, int month) {
         this.onlyBefore = new DutyRosterMonth(year, month);
         this.onlyAfter = new DutyRosterMonth(year, month);
     }
 
     public boolean hasDeletions() {
-        return !onlyBefore.getAllDutyRosterDays().isEmpty();
+        return !onlyBefore.isEmpty();
     }
 
     public int getNumberOfDeletions() {
-        return onlyBefore.getAllDutyRosterDays().size();
+        return onlyBefore.size();
     }
 
     public boolean hasAdditions() {
-        return !onlyAfter.getAllDutyRosterDays().isEmpty();
+        return !onlyAfter.isEmpty();
     }
 
     public int getNumberOfAddititions() {
-        return onlyAfter.getAllDutyRosterDays().size();
+        return onlyAfter.size();
     }
 
     public boolean hasChanges() {
@@ -80,15 +97,18 @@ public class DutyRosterDiff {
         return onlyAfter.getAllDutyRosterDays();
     }
 
+    public boolean hasConflicts() {
+        return !conflicts.isEmpty();
+    }
+
     public boolean hasDifferences() {
-        return !(onlyBefore.getAllDutyRosterDays().isEmpty()
-                && onlyAfter.getAllDutyRosterDays().isEmpty()
-                && changes.isEmpty());
+        return !(onlyBefore.isEmpty() && onlyAfter.isEmpty() && changes.isEmpty());
     }
 
     @Override
     public String toString() {
         return "DutyRosterDiff{" + "onlyBefore=" + onlyBefore + ", onlyAfter=" + onlyAfter + ", changes="
-                + changes + '}';
+                + changes + ", savedApiCalls=" + savedApiCalls + ", conflicts=" + conflicts + ", calendarEdits="
+                + calendarEdits + '}';
     }
 }
@@ -1,31 +1,156 @@
 package dutyroster.importer.domain;
 
 import dutyroster.importer.util.DateUtil;
-import org.apache.commons.lang3.time.DateUtils;
-import org.apache.commons.lang3.time.FastDateFormat;
 
+import java.time.ZoneId;
 import java.util.*;
 
 /**
  * A duty roster covering a whole month. Contains n shifts per dutyRosterShift of the month.
+ * <p>
+ * To keep many months in memory (statistics, history), the shifts are not stored as
+ * {@link dutyroster.importer.domain.DutyRosterShift} objects: every day has a slot per
+ * {@link dutyroster.importer.domain.Shift}, holding the start and end as minutes since the epoch and the index of the
+ * name of the personnel (interned per duty roster) in primitive arrays. A shift takes about a tenth of the memory of
+ * a shift object with its two dates and id. Shift objects are created on access (see
+ * {@link #getAllDutyRosterDays()}); setting the event id or sequence of such a shift writes through to this duty
+ * roster. Shifts that do not fit into a slot, i.e. whose {@link dutyroster.importer.domain.ShiftKey} does not
+ * denote a shift of this month, are kept as objects.
+ * </p>
  *
  * @author apohl
  */
 public class DutyRosterMonth {
 
+    private static final Shift[] SHIFTS = Shift.values();
+
+    private static final int MAX_DAYS = 31;
+
+    /**
+     * The {@link #assignees} value of a free slot.
+     */
+    private static final int EMPTY = -1;
+
+    /**
+     * The {@link #assignees} value of a shift without name.
+     */
+    private static final int NO_NAME = -2;
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+
     /**
      * Determines the year and month of the duty roster.
      */
     private Date date;
 
+    private final int year;
+
+    private final int month;
+
+    /**
+     * The start and end of the shifts, see {@link dutyroster.importer.domain.ShiftTimetable}.
+     */
+    private final transient ShiftTimetable timetable;
+
+    /**
+     * The distinct names of the personnel of this duty roster.
+     */
+    private final AssigneeIndex assigneeIndex;
+
+    /**
+     * The index of the name (see {@link #assigneeIndex}) per slot, {@link #EMPTY} or {@link #NO_NAME}. The slot of
+     * a shift is <code>(day - 1) * 3 + shift.ordinal()</code>.
+     */
+    private final int[] assignees;
+
+    /**
+     * The start of the shift per slot in minutes since the epoch.
+     */
+    private final int[] fromMinutes;
+
+    /**
+     * The end of the shift per slot in minutes since the epoch.
+     */
+    private final int[] toMinutes;
+
+    /**
+     * The event ids per slot, created with the first event id.
+     */
+    private String[] eventIds;
+
+    /**
+     * The sequences per slot, created with the first sequence other than 0.
+     */
+    private int[] sequences;
+
+    /**
+     * The shifts which do not fit into a slot sorted by key, created with the first of them.
+     */
+    private Map<Long, DutyRosterShift> otherShifts;
+
+    /**
+     * The number of shifts.
+     */
+    private int size;
+
     /**
-     * The duty roster - the list of {@link dutyroster.importer.domain.DutyRosterShift}s as values grouped by the
-     * day as key.
+     * The sorted view of all shifts, see {@link #getAllDutyRosterDays()}.
      */
-    private Map<Integer, Set<DutyRosterShift>> dutyRosterDays = new HashMap<>();
+    private final transient Set<DutyRosterShift> allDutyRosterShifts = new AllDutyRosterShifts();
 
+    /**
+     * A roster of the {@link ShiftSchedule#DEFAULT} schedule.
+     *
+     * @param year  the year
+     * @param month the zero based month (0=January)
+     */
     public DutyRosterMonth(int year, int month) {
+        this(year, month, ShiftSchedule.DEFAULT);
+    }
+
+    /**
+     * @param year     the year
+     * @param month    the zero based month (0=January)
+     * @param schedule the {@link dutyroster.importer.domain.ShiftSchedule} determining the hours of the shifts
+     */
+    public DutyRosterMonth(int year, int month, ShiftSchedule schedule) {
         this.date = DateUtil.createDate(year, month);
+        this.year = DateUtil.getYear(date);
+        this.month = DateUtil.getMonth(date);
+        this.timetable = ShiftTimetable.of(schedule, this.year, this.month, ZoneId.systemDefault());
+        this.assigneeIndex = new AssigneeIndex();
+        this.assignees = new int[MAX_DAYS * SHIFTS.length];
+        Arrays.fill(assignees, EMPTY);
+        this.fromMinutes = new int[assignees.length];
+        this.toMinutes = new int[assignees.length];
+    }
+
+    private DutyRosterMonth(DutyRosterMonth other) {
+        this.date = new Date(other.date.getTime());
+        this.year = other.year;
+        this.month = other.month;
+        this.timetable = other.timetable;
+        this.assigneeIndex = other.assigneeIndex.copy();
+        this.assignees = other.assignees.clone();
+        this.fromMinutes = other.fromMinutes.clone();
+        this.toMinutes = other.toMinutes.clone();
+        this.eventIds = other.eventIds != null ? other.eventIds.clone() : null;
+        this.sequences = other.sequences != null ? other.sequences.clone() : null;
+        this.size = other.size;
+        if (other.otherShifts != null) {
+            // size already counts these shifts
+            this.otherShifts = new TreeMap<>();
+            for (DutyRosterShift dutyRosterShift : other.otherShifts.values()) {
+                this.otherShifts.put(dutyRosterShift.getKey(), dutyRosterShift.copy());
+            }
+        }
+    }
+
+    /**
+     * @return a deep copy of this duty roster, modifying the copy or its shifts leaves this duty roster untouched
+     */
+    public DutyRosterMonth copy() {
+        return new DutyRosterMonth(this);
     }
 
     /**
@@ -48,91 +173,111 @@ public class DutyRosterMonth {
      * @return the {@link dutyroster.importer.domain.DutyRosterShift}
      */
     public DutyRosterShift createShift(Shift shift, int day, String person) {
-        Date from = createFrom(shift, day);
-        Date to = createTo(shift, day);
-        String id = createId(shift, from);
-        return new DutyRosterShift(id, from, to, person, shift);
+        Date from = new Date(timetable.getFrom(day, shift));
+        Date to = new Date(timetable.getTo(day, shift));
+        // days beyond the end of the month roll over into the next month
+        long key = day >= 1 && day <= timetable.getDays() ? ShiftKey.of(year, month, day, shift)
+                : ShiftKey.of(shift, from);
+        return new DutyRosterShift(key, from, to, person, shift);
     }
 
     /**
-     * Adds the given shift to the duty roster of this month.
+     * Adds the given shift to the duty roster of this month. As with a set, a shift is not replaced by another shift
+     * with the same id.
      *
      * @param dutyRosterShift The shift
      */
     public void addDutyRosterShift(DutyRosterShift dutyRosterShift) {
-        Set<DutyRosterShift> days = dutyRosterDays.get(dutyRosterShift.getDay());
-        if (days == null) {
-            days = new HashSet<>();
+        int slot = slotOf(dutyRosterShift);
+        if (slot < 0) {
+            if (otherShifts == null) {
+                otherShifts = new TreeMap<>();
+            }
+            if (otherShifts.putIfAbsent(dutyRosterShift.getKey(), dutyRosterShift) == null) {
+                size++;
+            }
+            return;
+        }
+        if (assignees[slot] != EMPTY) {
+            return;
         }
-        days.add(dutyRosterShift);
-        dutyRosterDays.put(dutyRosterShift.getDay(), days);
+        size++;
+
+        String name = dutyRosterShift.getName();
+        assignees[slot] = name != null ? assigneeIndex.indexOf(name) : NO_NAME;
+        fromMinutes[slot] = toMinutes(dutyRosterShift.getFrom());
+        toMinutes[slot] = toMinutes(dutyRosterShift.getTo());
+        updateEventId(slot, dutyRosterShift.getEventId());
+        updateSequence(slot, dutyRosterShift.getSequence());
     }
 
     /**
-     * Creates the "FROM" timestamp for the Google calendar event. Rules are:
-     * <ul>
-     * <li>{@link dutyroster.importer.domain.Shift#EARLY_SHIFT} is from 07:00h</li>
-     * <li>{@link dutyroster.importer.domain.Shift#LATE_SHIFT} is from 14:00h</li>
-     * <li>{@link dutyroster.importer.domain.Shift#NIGHT_SHIFT} is from 21:00h on Fridays or Saturdays,
-     * else from 22:00h</li>
-     * </ul>
-     *
-     * @param shift the {@link dutyroster.importer.domain.Shift}
-     * @param day   the day of the shift
-     * @return the FROM timestamp based on the {@link #date}
-     */
-    private Date createFrom(Shift shift, int day) {
-        Calendar cal = DateUtil.getCalendar(this.date);
-        cal.set(Calendar.DAY_OF_MONTH, day);
-
-        switch (shift) {
-            case EARLY_SHIFT:
-                cal.set(Calendar.HOUR_OF_DAY, 7);
-                break;
-            case LATE_SHIFT:
-                cal.set(Calendar.HOUR_OF_DAY, 14);
-                break;
-            case NIGHT_SHIFT:
-                int weekday = cal.get(Calendar.DAY_OF_WEEK);
-                if (weekday == Calendar.FRIDAY || weekday == Calendar.SATURDAY) {
-                    cal.set(Calendar.HOUR_OF_DAY, 21);
-                } else {
-                    cal.set(Calendar.HOUR_OF_DAY, 22);
-                }
-                break;
+     * @param dutyRosterShift the shift
+     * @return the slot of the given shift or -1, if its key does not denote a shift of this month
+     */
+    private int slotOf(DutyRosterShift dutyRosterShift) {
+        long key = dutyRosterShift.getKey();
+        int day = ShiftKey.getDay(key);
+        int ordinal = ShiftKey.getOrdinal(key);
+        if (ShiftKey.ofMonth(key) != ShiftKey.ofMonth(year, month) || day < 1 || day > MAX_DAYS
+                || dutyRosterShift.getShift() == null || dutyRosterShift.getShift().ordinal() != ordinal
+                || dutyRosterShift.getFrom() == null || dutyRosterShift.getTo() == null) {
+            return -1;
         }
-        return cal.getTime();
+        return (day - 1) * SHIFTS.length + ordinal;
     }
 
     /**
-     * Creates the "TO" timestamp for the Google calendar event. Rules are:
-     * <ul>
-     * <li>{@link dutyroster.importer.domain.Shift#EARLY_SHIFT} is until 14:00h</li>
-     * <li>{@link dutyroster.importer.domain.Shift#LATE_SHIFT} is until 20:00h</li>
-     * <li>{@link dutyroster.importer.domain.Shift#NIGHT_SHIFT} is until 07:00h of the next day</li>
-     * </ul>
-     *
-     * @param shift the {@link dutyroster.importer.domain.Shift}
-     * @param day   the day of the shift
-     * @return the "TO" timestamp based on the {@link #date}
+     * Creates the shift object of the given slot, bound to this duty roster.
      */
-    private Date createTo(Shift shift, int day) {
-        Calendar cal = DateUtil.getCalendar(this.date);
-        cal.set(Calendar.DAY_OF_MONTH, day);
+    private DutyRosterShift shiftOf(int slot) {
+        Shift shift = SHIFTS[slot % SHIFTS.length];
+        long key = ShiftKey.of(year, month, slot / SHIFTS.length + 1, shift);
+        String name = assignees[slot] != NO_NAME ? assigneeIndex.nameOf(assignees[slot]) : null;
+        DutyRosterShift dutyRosterShift = new DutyRosterShift(key, toDate(fromMinutes[slot]), toDate(toMinutes[slot]),
+                name, shift);
+        if (eventIds != null) {
+            dutyRosterShift.setEventId(eventIds[slot]);
+        }
+        if (sequences != null) {
+            dutyRosterShift.setSequence(sequences[slot]);
+        }
+        dutyRosterShift.bind(this, slot);
+        return dutyRosterShift;
+    }
 
-        switch (shift) {
-            case EARLY_SHIFT:
-                cal.set(Calendar.HOUR_OF_DAY, 14);
-                break;
-            case LATE_SHIFT:
-                cal.set(Calendar.HOUR_OF_DAY, 20);
-                break;
-            case NIGHT_SHIFT:
-                cal.set(Calendar.HOUR_OF_DAY, 7);
-                cal.setTime(DateUtils.addDays(cal.getTime(), 1));
-                break;
+    /**
+     * Called by a shift created by {@link #shiftOf(int)}, when its event id is set.
+     */
+    void updateEventId(int slot, String eventId) {
+        if (eventIds == null) {
+            if (eventId == null) {
+                return;
+            }
+            eventIds = new String[assignees.length];
         }
-        return cal.getTime();
+        eventIds[slot] = eventId;
+    }
+
+    /**
+     * Called by a shift created by {@link #shiftOf(int)}, when its sequence is set.
+     */
+    void updateSequence(int slot, int sequence) {
+        if (sequences == null) {
+            if (sequence == 0) {
+                return;
+            }
+            sequences = new int[assignees.length];
+        }
+        sequences[slot] = sequence;
+    }
+
+    private static int toMinutes(Date date) {
+        return (int) Math.floorDiv(date.getTime(), MILLIS_PER_MINUTE);
+    }
+
+    private static Date toDate(int minutes) {
+        return new Date(minutes * MILLIS_PER_MINUTE);
     }
 
     /**
@@ -142,22 +287,78 @@ public class DutyRosterMonth {
         return date;
     }
 
+    public ShiftSchedule getSchedule() {
+        return timetable.getSchedule();
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    /**
+     * @return the zero based month (0=January)
+     */
+    public int getMonth() {
+        return month;
+    }
+
     /**
-     * @return the {@link #dutyRosterDays}
+     * @return the shifts of {@link #getAllDutyRosterDays()} grouped by day in the order of the days. The map is
+     * created on each call, modifying it does not modify this duty roster.
      */
     public Map<Integer, Set<DutyRosterShift>> getDutyRosterDays() {
+        Map<Integer, Set<DutyRosterShift>> dutyRosterDays = new TreeMap<>();
+        for (DutyRosterShift dutyRosterShift : getAllDutyRosterDays()) {
+            dutyRosterDays.computeIfAbsent(dutyRosterShift.getDay(), day -> new LinkedHashSet<>())
+                    .add(dutyRosterShift);
+        }
         return dutyRosterDays;
     }
 
     /**
-     * @return all {@link dutyroster.importer.domain.DutyRosterShift}s of this month in a single set
-     * (contrary to {@link #dutyRosterDays}, which is grouped by day)
+     * @param day the day of the month
+     * @return the shifts of the given day, an empty set if there are none
      */
-    public Set<DutyRosterShift> getAllDutyRosterDays() {
-        Set<DutyRosterShift> allDutyRosterShifts = new TreeSet<>();
-        for (Set<DutyRosterShift> rosterDays : dutyRosterDays.values()) {
-            allDutyRosterShifts.addAll(rosterDays);
+    public Set<DutyRosterShift> getDutyRosterShifts(int day) {
+        Set<DutyRosterShift> dutyRosterShifts = new LinkedHashSet<>();
+        if (day >= 1 && day <= MAX_DAYS) {
+            for (int slot = (day - 1) * SHIFTS.length; slot < day * SHIFTS.length; slot++) {
+                if (assignees[slot] != EMPTY) {
+                    dutyRosterShifts.add(shiftOf(slot));
+                }
+            }
+        }
+        if (otherShifts != null) {
+            for (DutyRosterShift dutyRosterShift : otherShifts.values()) {
+                if (dutyRosterShift.getDay() == day) {
+                    dutyRosterShifts.add(dutyRosterShift);
+                }
+            }
         }
+        return dutyRosterShifts;
+    }
+
+    /**
+     * @return the number of shifts
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return <code>true</code>, if this duty roster does not contain any shift
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return all {@link dutyroster.importer.domain.DutyRosterShift}s of this month in a single, unmodifiable set
+     * sorted by key (contrary to {@link #getDutyRosterDays()}, which is grouped by day). The set is a view of the
+     * slots: it holds no shift objects, but creates them on iteration, so it reflects shifts added later and the
+     * event ids and sequences set through any shift of this duty roster.
+     */
+    public Set<DutyRosterShift> getAllDutyRosterDays() {
         return allDutyRosterShifts;
     }
 
@@ -169,11 +370,80 @@ public class DutyRosterMonth {
      * @return the id, e.g. "2015_02_22_2"
      */
     public static String createId(Shift shift, Date from) {
-        FastDateFormat fdf = FastDateFormat.getInstance("yyyy_MM_dd_");
-        String id = fdf.format(from);
-        id += shift.ordinal();
-        return id;
+        return ShiftKey.toId(ShiftKey.of(shift, from));
     }
 
+    /**
+     * The view of {@link #getAllDutyRosterDays()}, merging the occupied slots with the {@link #otherShifts}, both in
+     * the order of the keys.
+     */
+    private final class AllDutyRosterShifts extends AbstractSet<DutyRosterShift> {
+
+        @Override
+        public Iterator<DutyRosterShift> iterator() {
+            return new Iterator<DutyRosterShift>() {
+
+                private int slot = nextSlot(0);
+
+                private final Iterator<DutyRosterShift> others = otherShifts != null
+                        ? otherShifts.values().iterator() : Collections.emptyIterator();
 
+                private DutyRosterShift other = others.hasNext() ? others.next() : null;
+
+                @Override
+                public boolean hasNext() {
+                    return slot < assignees.length || other != null;
+                }
+
+                @Override
+                public DutyRosterShift next() {
+                    if (slot < assignees.length && (other == null || keyOf(slot) < other.getKey())) {
+                        DutyRosterShift dutyRosterShift = shiftOf(slot);
+                        slot = nextSlot(slot + 1);
+                        return dutyRosterShift;
+                    }
+                    if (other == null) {
+                        throw new NoSuchElementException();
+                    }
+                    DutyRosterShift dutyRosterShift = other;
+                    other = others.hasNext() ? others.next() : null;
+                    return dutyRosterShift;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof DutyRosterShift)) {
+                return false;
+            }
+            long key = ((DutyRosterShift) o).getKey();
+            int day = ShiftKey.getDay(key);
+            int ordinal = ShiftKey.getOrdinal(key);
+            if (ShiftKey.ofMonth(key) == ShiftKey.ofMonth(year, month) && day >= 1 && day <= MAX_DAYS
+                    && ordinal < SHIFTS.length && assignees[(day - 1) * SHIFTS.length + ordinal] != EMPTY) {
+                return true;
+            }
+            return otherShifts != null && otherShifts.containsKey(key);
+        }
+
+        /**
+         * @return the first occupied slot at or after the given slot, {@link #assignees} length if there is none
+         */
+        private int nextSlot(int slot) {
+            while (slot < assignees.length && assignees[slot] == EMPTY) {
+                slot++;
+            }
+            return slot;
+        }
+
+        private long keyOf(int slot) {
+            return ShiftKey.of(year, month, slot / SHIFTS.length + 1, SHIFTS[slot % SHIFTS.length]);
+        }
+    }
 }
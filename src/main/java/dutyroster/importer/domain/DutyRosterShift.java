@@ -1,7 +1,5 @@
 package dutyroster.importer.domain;
 
-import dutyroster.importer.util.DateUtil;
-
 import java.util.Date;
 
 /**
@@ -12,8 +10,13 @@ import java.util.Date;
 public class DutyRosterShift implements Comparable<DutyRosterShift> {
 
     /**
-     * An unique id containing the year, month, day and shift ordinal, e.g. "2015_02_22_2" (a late shift at 2015/02/22).
-     * Important to make the schedule updatable.
+     * An unique key containing the year, month, day and shift ordinal, see {@link ShiftKey}. Important to make the
+     * schedule updatable.
+     */
+    private long key;
+
+    /**
+     * The string form of the {@link #key}, e.g. "2015_02_22_2" (a late shift at 2015/02/22), created on demand.
      */
     private String id;
 
@@ -44,15 +47,52 @@ public class DutyRosterShift implements Comparable<DutyRosterShift> {
      */
     private Shift shift;
 
-    public DutyRosterShift(String id, Date from, Date to, String name, Shift shift) {
-        this.id = id;
+    /**
+     * The {@link DutyRosterMonth} this shift has been created by, {@link #eventId} and {@link #sequence} are written
+     * through to its slot.
+     */
+    private transient DutyRosterMonth owner;
+
+    private transient int slot;
+
+    public DutyRosterShift(long key, Date from, Date to, String name, Shift shift) {
+        this.key = key;
         this.from = from;
         this.to = to;
         this.name = name;
         this.shift = shift;
     }
 
+    /**
+     * @param id the id, e.g. "2015_02_22_2"
+     * @throws IllegalArgumentException if the id is malformed, see {@link ShiftKey#parse(String)}
+     */
+    public DutyRosterShift(String id, Date from, Date to, String name, Shift shift) {
+        this(ShiftKey.parse(id), from, to, name, shift);
+        this.id = id;
+    }
+
+    /**
+     * @return a copy of this shift, including the {@link #eventId} and {@link #sequence}, not bound to a
+     * {@link DutyRosterMonth}
+     */
+    public DutyRosterShift copy() {
+        DutyRosterShift copy = new DutyRosterShift(key, from != null ? new Date(from.getTime()) : null,
+                to != null ? new Date(to.getTime()) : null, name, shift);
+        copy.id = id;
+        copy.eventId = eventId;
+        copy.sequence = sequence;
+        return copy;
+    }
+
+    public long getKey() {
+        return key;
+    }
+
     public String getId() {
+        if (id == null) {
+            id = ShiftKey.toId(key);
+        }
         return id;
     }
 
@@ -78,6 +118,9 @@ public class DutyRosterShift implements Comparable<DutyRosterShift> {
 
     public void setEventId(String eventId) {
         this.eventId = eventId;
+        if (owner != null) {
+            owner.updateEventId(slot, eventId);
+        }
     }
 
     public int getSequence() {
@@ -86,14 +129,21 @@ public class DutyRosterShift implements Comparable<DutyRosterShift> {
 
     public void setSequence(int sequence) {
         this.sequence = sequence;
+        if (owner != null) {
+            owner.updateSequence(slot, sequence);
+        }
     }
 
-    public int getDay() {
-        if (from == null) {
-            return -1;
-        }
+    void bind(DutyRosterMonth owner, int slot) {
+        this.owner = owner;
+        this.slot = slot;
+    }
 
-        return DateUtil.getDay(from);
+    /**
+     * @return the day of the month of the shift, taken from its {@link #key}
+     */
+    public int getDay() {
+        return ShiftKey.getDay(key);
     }
 
     @Override
@@ -105,23 +155,23 @@ public class DutyRosterShift implements Comparable<DutyRosterShift> {
 
         DutyRosterShift that = (DutyRosterShift) o;
 
-        return !(id != null ? !id.equals(that.id) : that.id != null);
+        return key == that.key;
 
     }
 
     @Override
     public int hashCode() {
-        return id != null ? id.hashCode() : 0;
+        return Long.hashCode(key);
     }
 
     @Override
     public int compareTo(DutyRosterShift o) {
-        return this.id.compareTo(o.getId());
+        return Long.compare(this.key, o.key);
     }
 
     @Override
     public String toString() {
-        return "DutyRosterShift{" + "id='" + id + '\'' + ", from=" + from + ", to=" + to
+        return "DutyRosterShift{" + "id='" + getId() + '\'' + ", from=" + from + ", to=" + to
                 + ", name='" + name + '\'' + ", shift=" + shift + '}';
     }
 }
@@ -1,7 +1,5 @@
 package dutyroster.importer.domain;
 
-import org.apache.commons.lang3.StringUtils;
-
 /**
  * Tags a shift from a docx duty roster. Shifts are
  * <ul>
@@ -9,6 +7,7 @@ import org.apache.commons.lang3.StringUtils;
  * <li>{@link #LATE_SHIFT}</li>
  * <li>{@link #NIGHT_SHIFT}</li>
  * </ul>
+ * The labels and hours of the shifts are defined by a {@link ShiftSchedule}.
  *
  * @author apohl
  */
@@ -29,29 +28,44 @@ public enum Shift {
      */
     NIGHT_SHIFT("ND", null);
 
-    private String label;
+    private String defaultLabel;
 
-    private String altLabel;
+    private String defaultAltLabel;
 
-    private Shift(String label, String altLabel) {
-        this.label = label;
-        this.altLabel = altLabel;
+    private Shift(String defaultLabel, String defaultAltLabel) {
+        this.defaultLabel = defaultLabel;
+        this.defaultAltLabel = defaultAltLabel;
     }
 
+    /**
+     * @return the label in the {@link ShiftSchedule#DEFAULT} schedule
+     */
     public String getLabel() {
-        return label;
+        return ShiftSchedule.DEFAULT.getLabel(this);
     }
 
+    /**
+     * @return the alternative label in the {@link ShiftSchedule#DEFAULT} schedule, may be null
+     */
     public String getAltLabel() {
-        return altLabel;
+        return ShiftSchedule.DEFAULT.getAltLabel(this);
     }
 
+    /**
+     * @return the label in the {@link ShiftSchedule#DEFAULT} schedule
+     */
+    String getDefaultLabel() {
+        return defaultLabel;
+    }
+
+    String getDefaultAltLabel() {
+        return defaultAltLabel;
+    }
+
+    /**
+     * @see ShiftSchedule#parseLabel(String)
+     */
     public static Shift parseLabel(String label) {
-        for (Shift shift : Shift.values()) {
-            if (StringUtils.endsWith(label, shift.getLabel()) || StringUtils.equals(label, shift.getAltLabel())) {
-                return shift;
-            }
-        }
-        throw new IllegalArgumentException("no such shift label [" + label + "]");
+        return ShiftSchedule.DEFAULT.parseLabel(label);
     }
 }
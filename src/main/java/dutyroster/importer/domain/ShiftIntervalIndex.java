@@ -0,0 +1,178 @@
+package dutyroster.importer.domain;
+
+import java.util.*;
+
+/**
+ * An immutable index of {@link DutyRosterShift}s by the interval <code>[from, to)</code> they cover, answering "who is
+ * on duty at / between" without scanning all shifts: a query visits <code>O(log n)</code> nodes plus the subtrees
+ * holding its <code>k</code> hits, for shifts of similar length that is close to <code>O(log n + k)</code>.
+ * <p>
+ * The shifts are sorted by start and form an implicit balanced tree: the middle of a range is the node, the halves
+ * are its subtrees. Each node knows the latest end within its subtree, so subtrees ending before the queried interval
+ * are skipped and the search stops at the first start after it. The intervals are absolute instants, so a
+ * {@link Shift#NIGHT_SHIFT} of the last day of a month is found in the early morning of the next month, if the index
+ * contains the roster of the month it started in.
+ * </p>
+ * <p>
+ * A shift shared by several assignees, e.g. "Judy/Tom", is indexed under each of them. The names are compared
+ * trimmed and ignoring case, like {@link dutyroster.importer.service.DutyRosterShiftService#isAssignedTo}.
+ * </p>
+ */
+public final class ShiftIntervalIndex {
+
+    public static final ShiftIntervalIndex EMPTY = of(Collections.emptyList());
+
+    /**
+     * Separates the assignees of a shared shift.
+     */
+    private static final String SEPARATOR_FOR_ASSIGNEES = "/";
+
+    /**
+     * The shifts sorted by start (then key).
+     */
+    private final DutyRosterShift[] shifts;
+
+    private final long[] froms;
+
+    private final long[] tos;
+
+    /**
+     * The latest end in the subtree of the node at the same index.
+     */
+    private final long[] maxTos;
+
+    /**
+     * The indexes of the shifts of each assignee by {@link #normalize(String) normalized} name in ascending order,
+     * i.e. sorted by start.
+     */
+    private final Map<String, int[]> shiftsByName;
+
+    private ShiftIntervalIndex(DutyRosterShift[] shifts) {
+        this.shifts = shifts;
+        int n = shifts.length;
+        this.froms = new long[n];
+        this.tos = new long[n];
+        this.maxTos = new long[n];
+        Map<String, List<Integer>> indexesByName = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            froms[i] = shifts[i].getFrom().getTime();
+            tos[i] = shifts[i].getTo().getTime();
+            if (shifts[i].getName() != null) {
+                Set<String> names = new HashSet<>();
+                for (String name : shifts[i].getName().split(SEPARATOR_FOR_ASSIGNEES)) {
+                    String normalized = normalize(name);
+                    // a shift is indexed once per assignee, even if named twice
+                    if (!normalized.isEmpty() && names.add(normalized)) {
+                        indexesByName.computeIfAbsent(normalized, key -> new ArrayList<>()).add(i);
+                    }
+                }
+            }
+        }
+        computeMaxTo(0, n - 1);
+
+        Map<String, int[]> byName = new HashMap<>();
+        indexesByName.forEach((name, indexes) -> byName.put(name,
+                indexes.stream().mapToInt(Integer::intValue).toArray()));
+        this.shiftsByName = byName;
+    }
+
+    /**
+     * @param shifts the shifts, shifts without start or end are ignored. Shifts are not copied, they must not be
+     *               modified afterwards.
+     * @return the index of the given shifts
+     */
+    public static ShiftIntervalIndex of(Collection<DutyRosterShift> shifts) {
+        DutyRosterShift[] sorted = shifts.stream()
+                .filter(shift -> shift.getFrom() != null && shift.getTo() != null)
+                .sorted(Comparator.comparing(DutyRosterShift::getFrom).thenComparing(Comparator.naturalOrder()))
+                .toArray(DutyRosterShift[]::new);
+        return new ShiftIntervalIndex(sorted);
+    }
+
+    private long computeMaxTo(int lo, int hi) {
+        if (lo > hi) {
+            return Long.MIN_VALUE;
+        }
+        int mid = (lo + hi) >>> 1;
+        long maxTo = Math.max(tos[mid], Math.max(computeMaxTo(lo, mid - 1), computeMaxTo(mid + 1, hi)));
+        maxTos[mid] = maxTo;
+        return maxTo;
+    }
+
+    /**
+     * @return the number of indexed shifts
+     */
+    public int size() {
+        return shifts.length;
+    }
+
+    /**
+     * @param instant the instant in milliseconds since the epoch
+     * @return the shifts running at the given instant (start inclusive, end exclusive), sorted by start
+     */
+    public List<DutyRosterShift> getShiftsAt(long instant) {
+        return getShiftsBetween(instant, instant + 1);
+    }
+
+    /**
+     * @param from the start in milliseconds since the epoch, inclusive
+     * @param to   the end in milliseconds since the epoch, exclusive
+     * @return the shifts overlapping the given interval, sorted by start
+     */
+    public List<DutyRosterShift> getShiftsBetween(long from, long to) {
+        List<DutyRosterShift> result = new ArrayList<>();
+        if (from < to) {
+            collect(0, shifts.length - 1, from, to, result);
+        }
+        return result;
+    }
+
+    private void collect(int lo, int hi, long from, long to, List<DutyRosterShift> result) {
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (maxTos[mid] <= from) {
+                // every shift in this subtree ends before the interval
+                return;
+            }
+            collect(lo, mid - 1, from, to, result);
+            if (froms[mid] >= to) {
+                // this and all following shifts start after the interval
+                return;
+            }
+            if (tos[mid] > from) {
+                result.add(shifts[mid]);
+            }
+            lo = mid + 1;
+        }
+    }
+
+    /**
+     * @param name    the name of the personnel, e.g. "Tom", matching shared shifts (e.g. "Judy/Tom") and any case
+     * @param instant the instant in milliseconds since the epoch
+     * @return the first shift of the given assignee starting at or after the given instant or null, if there is none
+     */
+    public DutyRosterShift getNextShift(String name, long instant) {
+        int[] indexes = name != null ? shiftsByName.get(normalize(name)) : null;
+        if (indexes == null) {
+            return null;
+        }
+        int lo = 0;
+        int hi = indexes.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (froms[indexes[mid]] < instant) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo < indexes.length ? shifts[indexes[lo]] : null;
+    }
+
+    /**
+     * @return the given name trimmed and in lower case, the key of {@link #shiftsByName}
+     */
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,128 @@
+package dutyroster.importer.domain;
+
+import dutyroster.importer.util.DateUtil;
+
+import java.time.LocalDate;
+import java.util.Date;
+
+/**
+ * Packs the identity of a {@link DutyRosterShift} - year, month, day and {@link Shift} ordinal - into a
+ * <code>long</code>. Keys are ordered like the string ids (e.g. "2015_02_22_2") they replace, but are compared and
+ * hashed without formatting or parsing a date.
+ * <p>
+ * Layout: <code>year &lt;&lt; 12 | month &lt;&lt; 8 | day &lt;&lt; 3 | ordinal</code>, the month is zero based.
+ * </p>
+ */
+public final class ShiftKey {
+
+    private ShiftKey() {
+    }
+
+    /**
+     * @param year  the year
+     * @param month the zero based month (0=January)
+     * @param day   the day of the month
+     * @param shift the {@link Shift}
+     * @return the key
+     */
+    public static long of(int year, int month, int day, Shift shift) {
+        return (long) year << 12 | month << 8 | day << 3 | shift.ordinal();
+    }
+
+    /**
+     * @param shift the {@link Shift}
+     * @param from  the start date and time of the shift, determines its day
+     * @return the key
+     */
+    public static long of(Shift shift, Date from) {
+        LocalDate day = DateUtil.toLocalDate(from);
+        return of(day.getYear(), day.getMonthValue() - 1, day.getDayOfMonth(), shift);
+    }
+
+    /**
+     * @param year  the year
+     * @param month the zero based month (0=January)
+     * @return the key of the month, i.e. the common upper bits of the keys of all shifts in the month
+     * (<code>key &gt;&gt; 8</code>)
+     */
+    public static long ofMonth(int year, int month) {
+        return (long) year << 4 | month;
+    }
+
+    public static long ofMonth(long key) {
+        return key >> 8;
+    }
+
+    /**
+     * @param key the key of a shift
+     * @return the key of the day of the shift, i.e. the common upper bits of the keys of all shifts of the day
+     */
+    public static long ofDay(long key) {
+        return key >> 3;
+    }
+
+    public static int getYear(long key) {
+        return (int) (key >> 12);
+    }
+
+    /**
+     * @return the zero based month (0=January)
+     */
+    public static int getMonth(long key) {
+        return (int) (key >> 8) & 0xF;
+    }
+
+    public static int getDay(long key) {
+        return (int) (key >> 3) & 0x1F;
+    }
+
+    public static int getOrdinal(long key) {
+        return (int) key & 0x7;
+    }
+
+    /**
+     * @param key the key
+     * @return the string id of the shift, e.g. "2015_02_22_2" (a late shift at 2015/02/22)
+     */
+    public static String toId(long key) {
+        int year = getYear(key);
+        int month = getMonth(key) + 1;
+        int day = getDay(key);
+        StringBuilder sb = new StringBuilder(12);
+        for (int digits = 1000; digits > 1 && year < digits; digits /= 10) {
+            sb.append('0');
+        }
+        sb.append(year).append('_');
+        if (month < 10) {
+            sb.append('0');
+        }
+        sb.append(month).append('_');
+        if (day < 10) {
+            sb.append('0');
+        }
+        return sb.append(day).append('_').append(getOrdinal(key)).toString();
+    }
+
+    /**
+     * @param id a string id, see {@link #toId(long)}
+     * @return the key
+     * @throws IllegalArgumentException if the id is malformed
+     */
+    public static long parse(String id) {
+        String[] tokens = id != null ? id.split("_") : new String[0];
+        if (tokens.length != 4) {
+            throw new IllegalArgumentException("no shift id [" + id + "]");
+        }
+        try {
+            int month = Integer.parseInt(tokens[1]) - 1;
+            int day = Integer.parseInt(tokens[2]);
+            int ordinal = Integer.parseInt(tokens[3]);
+            if (month < 0 || month > 11 || day < 1 || day > 31 || ordinal < 0 || ordinal >= Shift.values().length) {
+                throw new IllegalArgumentException("no shift id [" + id + "]");
+            }
+            return of(Integer.parseInt(tokens[0]), month, day, Shift.values()[ordinal]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("no shift id [" + id + "]", e);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package dutyroster.importer.domain;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * The labels and hours of the {@link Shift}s of a ward. A schedule is immutable, the times of the shifts of a month
+ * are computed from it once (see {@link ShiftTimetable}).
+ * <p>
+ * The {@link #DEFAULT} schedule is the one the importer has been written for. The schedule of a ward is passed to
+ * each import and roster (see {@link DutyRosterMonth#DutyRosterMonth(int, int, ShiftSchedule)}), so several wards
+ * with different schedules may be imported side by side. {@link #DEFAULT} is only the fallback when no schedule is
+ * given, e.g. by {@link Shift#parseLabel(String)} or {@link DutyRosterMonth#DutyRosterMonth(int, int)}.
+ * </p>
+ */
+public final class ShiftSchedule {
+
+    /**
+     * The labels and hours of a single {@link Shift}.
+     */
+    public static final class ShiftDefinition {
+
+        private final String label;
+
+        private final String altLabel;
+
+        /**
+         * The start per {@link DayOfWeek#ordinal()}.
+         */
+        private final LocalTime[] starts = new LocalTime[7];
+
+        /**
+         * The end per {@link DayOfWeek#ordinal()} of the day the shift starts.
+         */
+        private final LocalTime[] ends = new LocalTime[7];
+
+        private final boolean overnight;
+
+        /**
+         * @param label          the label, e.g. "FD". A text is recognized as label, if it ends with it.
+         * @param altLabel       an alternative label or null, a text must equal it
+         * @param start          the start of the shift
+         * @param startByWeekday the start on the given days, if it differs from <code>start</code>
+         * @param end            the end of the shift
+         * @param endByWeekday   the end on the given days of the start, if it differs from <code>end</code>
+         * @param overnight      <code>true</code>, if the shift ends on the next day
+         */
+        public ShiftDefinition(String label, String altLabel, LocalTime start, Map<DayOfWeek, LocalTime> startByWeekday,
+                               LocalTime end, Map<DayOfWeek, LocalTime> endByWeekday, boolean overnight) {
+            if (label == null || label.isEmpty()) {
+                throw new IllegalArgumentException("label must not be empty");
+            }
+            this.label = label;
+            this.altLabel = altLabel;
+            this.overnight = overnight;
+            Arrays.fill(starts, start);
+            Arrays.fill(ends, end);
+            startByWeekday.forEach((weekday, time) -> starts[weekday.ordinal()] = time);
+            endByWeekday.forEach((weekday, time) -> ends[weekday.ordinal()] = time);
+            for (int i = 0; i < 7; i++) {
+                if (starts[i] == null || ends[i] == null) {
+                    throw new IllegalArgumentException("no start or end of [" + label + "] on "
+                            + DayOfWeek.values()[i]);
+                }
+                if (!overnight && !ends[i].isAfter(starts[i])) {
+                    throw new IllegalArgumentException("[" + label + "] ends before it starts on "
+                            + DayOfWeek.values()[i] + ", is it an overnight shift?");
+                }
+            }
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getAltLabel() {
+            return altLabel;
+        }
+
+        public LocalTime getStart(DayOfWeek weekday) {
+            return starts[weekday.ordinal()];
+        }
+
+        /**
+         * @param weekday the day the shift starts
+         * @return the end, on the next day if the shift is {@link #isOvernight()}
+         */
+        public LocalTime getEnd(DayOfWeek weekday) {
+            return ends[weekday.ordinal()];
+        }
+
+        public boolean isOvernight() {
+            return overnight;
+        }
+    }
+
+    /**
+     * The schedule the importer has been written for:
+     * <ul>
+     * <li>{@link Shift#EARLY_SHIFT} "FD" (or "TD") is from 07:00h until 14:00h</li>
+     * <li>{@link Shift#LATE_SHIFT} "SD" is from 14:00h until 20:00h</li>
+     * <li>{@link Shift#NIGHT_SHIFT} "ND" is from 21:00h on Fridays or Saturdays, else from 22:00h, until 07:00h of
+     * the next day</li>
+     * </ul>
+     */
+    public static final ShiftSchedule DEFAULT = createDefault();
+
+    private final String name;
+
+    private final ShiftDefinition[] definitions;
+
+    /**
+     * The shifts by label.
+     */
+    private final Map<String, Shift> shiftsByLabel = new HashMap<>();
+
+    /**
+     * The shifts by alternative label.
+     */
+    private final Map<String, Shift> shiftsByAltLabel = new HashMap<>();
+
+    /**
+     * The distinct lengths of the labels, a text ending with a label ends with a suffix of one of these lengths.
+     */
+    private final int[] labelLengths;
+
+    /**
+     * @param name        the name of the schedule, e.g. the ward
+     * @param definitions the definitions of all {@link Shift}s
+     */
+    public ShiftSchedule(String name, Map<Shift, ShiftDefinition> definitions) {
+        this.name = name;
+        this.definitions = new ShiftDefinition[Shift.values().length];
+        Set<Integer> lengths = new TreeSet<>();
+        for (Shift shift : Shift.values()) {
+            ShiftDefinition definition = definitions.get(shift);
+            if (definition == null) {
+                throw new IllegalArgumentException("no definition of " + shift + " in schedule [" + name + "]");
+            }
+            this.definitions[shift.ordinal()] = definition;
+            shiftsByLabel.putIfAbsent(definition.getLabel(), shift);
+            lengths.add(definition.getLabel().length());
+            if (definition.getAltLabel() != null) {
+                shiftsByAltLabel.putIfAbsent(definition.getAltLabel(), shift);
+            }
+        }
+        this.labelLengths = lengths.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static ShiftSchedule createDefault() {
+        Map<DayOfWeek, LocalTime> none = Collections.emptyMap();
+        Map<DayOfWeek, LocalTime> weekend = new EnumMap<>(DayOfWeek.class);
+        weekend.put(DayOfWeek.FRIDAY, LocalTime.of(21, 0));
+        weekend.put(DayOfWeek.SATURDAY, LocalTime.of(21, 0));
+
+        Map<Shift, ShiftDefinition> definitions = new EnumMap<>(Shift.class);
+        definitions.put(Shift.EARLY_SHIFT, new ShiftDefinition(Shift.EARLY_SHIFT.getDefaultLabel(),
+                Shift.EARLY_SHIFT.getDefaultAltLabel(), LocalTime.of(7, 0), none, LocalTime.of(14, 0), none, false));
+        definitions.put(Shift.LATE_SHIFT, new ShiftDefinition(Shift.LATE_SHIFT.getDefaultLabel(),
+                Shift.LATE_SHIFT.getDefaultAltLabel(), LocalTime.of(14, 0), none, LocalTime.of(20, 0), none, false));
+        definitions.put(Shift.NIGHT_SHIFT, new ShiftDefinition(Shift.NIGHT_SHIFT.getDefaultLabel(),
+                Shift.NIGHT_SHIFT.getDefaultAltLabel(), LocalTime.of(22, 0), weekend, LocalTime.of(7, 0), none, true));
+        return new ShiftSchedule("default", definitions);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ShiftDefinition getDefinition(Shift shift) {
+        return definitions[shift.ordinal()];
+    }
+
+    public String getLabel(Shift shift) {
+        return definitions[shift.ordinal()].getLabel();
+    }
+
+    public String getAltLabel(Shift shift) {
+        return definitions[shift.ordinal()].getAltLabel();
+    }
+
+    /**
+     * Finds the shift of a label: the label must end with the label of the shift or equal its alternative label. If
+     * several shifts match, the first one in the order of {@link Shift#values()} is returned.
+     *
+     * @param label the label, e.g. "FD" or "xFD"
+     * @return the shift
+     * @throws IllegalArgumentException if no shift matches
+     */
+    public Shift parseLabel(String label) {
+        if (label == null) {
+            throw new IllegalArgumentException("no such shift label [null]");
+        }
+        Shift found = shiftsByAltLabel.get(label);
+        for (int length : labelLengths) {
+            if (length > label.length()) {
+                break;
+            }
+            Shift shift = shiftsByLabel.get(label.substring(label.length() - length));
+            if (shift != null && (found == null || shift.ordinal() < found.ordinal())) {
+                found = shift;
+            }
+        }
+        if (found == null) {
+            throw new IllegalArgumentException("no such shift label [" + label + "]");
+        }
+        return found;
+    }
+
+    @Override
+    public String toString() {
+        return "ShiftSchedule{" + "name='" + name + '\'' + '}';
+    }
+}
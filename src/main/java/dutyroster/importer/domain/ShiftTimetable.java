@@ -0,0 +1,189 @@
+package dutyroster.importer.domain;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The start and end instants of all shifts of a month in a time zone according to a {@link ShiftSchedule}. The
+ * instants are computed once per schedule, month and time zone with <code>java.time</code>, so creating a shift needs
+ * neither a {@link java.util.Calendar} nor any date arithmetic.
+ */
+public final class ShiftTimetable {
+
+    private static final int SHIFTS = Shift.values().length;
+
+    /**
+     * The maximum number of cached timetables, i.e. about ten years of two wards.
+     */
+    static final int MAX_TIMETABLES = 256;
+
+    /**
+     * The timetables by schedule, zone and month, the least recently used is evicted. A timetable takes about 1.5 kB,
+     * there are twelve per year and schedule in use.
+     */
+    private static final Map<Key, ShiftTimetable> TIMETABLES = new LinkedHashMap<Key, ShiftTimetable>(16, 0.75f,
+            true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, ShiftTimetable> eldest) {
+            return size() > MAX_TIMETABLES;
+        }
+    };
+
+    private final ShiftSchedule schedule;
+
+    private final ZoneId zone;
+
+    /**
+     * The first day of the month.
+     */
+    private final LocalDate firstDay;
+
+    private final int days;
+
+    /**
+     * The start per <code>(day - 1) * 3 + shift.ordinal()</code> in milliseconds since the epoch.
+     */
+    private final long[] fromMillis;
+
+    /**
+     * The end per <code>(day - 1) * 3 + shift.ordinal()</code> in milliseconds since the epoch.
+     */
+    private final long[] toMillis;
+
+    private ShiftTimetable(ShiftSchedule schedule, LocalDate firstDay, ZoneId zone) {
+        this.schedule = schedule;
+        this.zone = zone;
+        this.firstDay = firstDay;
+        this.days = firstDay.lengthOfMonth();
+        this.fromMillis = new long[days * SHIFTS];
+        this.toMillis = new long[days * SHIFTS];
+        for (int day = 1; day <= days; day++) {
+            for (Shift shift : Shift.values()) {
+                int index = (day - 1) * SHIFTS + shift.ordinal();
+                fromMillis[index] = computeFrom(firstDay.plusDays(day - 1), shift);
+                toMillis[index] = computeTo(firstDay.plusDays(day - 1), shift);
+            }
+        }
+    }
+
+    /**
+     * @param year  the year
+     * @param month the zero based month (0=January), months out of range roll over into the next or previous year
+     * @return the timetable of the given month in the default time zone and {@link ShiftSchedule#DEFAULT}
+     */
+    public static ShiftTimetable of(int year, int month) {
+        return of(ShiftSchedule.DEFAULT, year, month, ZoneId.systemDefault());
+    }
+
+    /**
+     * @param schedule the {@link ShiftSchedule}
+     * @param year     the year
+     * @param month    the zero based month (0=January), months out of range roll over into the next or previous
+     *                 year
+     * @param zone     the time zone
+     * @return the timetable of the given month in the given time zone
+     */
+    public static ShiftTimetable of(ShiftSchedule schedule, int year, int month, ZoneId zone) {
+        LocalDate firstDay = LocalDate.of(year, 1, 1).plusMonths(month);
+        Key key = new Key(schedule, zone, firstDay);
+        synchronized (TIMETABLES) {
+            return TIMETABLES.computeIfAbsent(key, k -> new ShiftTimetable(schedule, firstDay, zone));
+        }
+    }
+
+    /**
+     * @return the number of cached timetables
+     */
+    static int getCachedTimetables() {
+        synchronized (TIMETABLES) {
+            return TIMETABLES.size();
+        }
+    }
+
+    public ShiftSchedule getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * @return the number of days of the month
+     */
+    public int getDays() {
+        return days;
+    }
+
+    /**
+     * @param day   the day of the month, days out of range roll over into the next or previous month
+     * @param shift the {@link Shift}
+     * @return the start of the given shift in milliseconds since the epoch
+     */
+    public long getFrom(int day, Shift shift) {
+        if (day < 1 || day > days) {
+            return computeFrom(firstDay.plusDays(day - 1), shift);
+        }
+        return fromMillis[(day - 1) * SHIFTS + shift.ordinal()];
+    }
+
+    /**
+     * @param day   the day of the month, days out of range roll over into the next or previous month
+     * @param shift the {@link Shift}
+     * @return the end of the given shift in milliseconds since the epoch
+     */
+    public long getTo(int day, Shift shift) {
+        if (day < 1 || day > days) {
+            return computeTo(firstDay.plusDays(day - 1), shift);
+        }
+        return toMillis[(day - 1) * SHIFTS + shift.ordinal()];
+    }
+
+    private long computeFrom(LocalDate day, Shift shift) {
+        return toMillis(day, schedule.getDefinition(shift).getStart(day.getDayOfWeek()));
+    }
+
+    private long computeTo(LocalDate day, Shift shift) {
+        ShiftSchedule.ShiftDefinition definition = schedule.getDefinition(shift);
+        LocalTime end = definition.getEnd(day.getDayOfWeek());
+        return toMillis(definition.isOvernight() ? day.plusDays(1) : day, end);
+    }
+
+    private long toMillis(LocalDate day, LocalTime time) {
+        return day.atTime(time).atZone(zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * The key of a cached timetable.
+     */
+    private static final class Key {
+
+        private final ShiftSchedule schedule;
+
+        private final ZoneId zone;
+
+        private final LocalDate firstDay;
+
+        Key(ShiftSchedule schedule, ZoneId zone, LocalDate firstDay) {
+            this.schedule = schedule;
+            this.zone = zone;
+            this.firstDay = firstDay;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return schedule == that.schedule && zone.equals(that.zone) && firstDay.equals(that.firstDay);
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(schedule) * 31 + zone.hashCode()) * 31 + firstDay.hashCode();
+        }
+    }
+}
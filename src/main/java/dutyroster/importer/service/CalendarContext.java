@@ -0,0 +1,63 @@
+package dutyroster.importer.service;
+
+import dutyroster.importer.domain.ShiftSchedule;
+import dutyroster.importer.util.DateUtil;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.apache.commons.lang3.time.DateUtils;
+
+import java.util.Date;
+
+/**
+ * The calendar, month, schedule and mode of an import, passed to every call of the {@link GoogleCalendarService}
+ * concerning the import. A context is immutable, so any number of imports may run concurrently on the same service.
+ * See {@link GoogleCalendarService#createContext(int, int, boolean, ShiftSchedule, String)}.
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+public final class CalendarContext {
+
+    /**
+     * The id of the Google calendar of the ward.
+     */
+    private final String calendarId;
+
+    private final int year;
+
+    /**
+     * The zero based month (0=January).
+     */
+    private final int month;
+
+    /**
+     * If <code>true</code>, the calendar is read only, modifications are only logged.
+     */
+    private final boolean dryRun;
+
+    /**
+     * The {@link ShiftSchedule} of the ward, determining the labels of the events.
+     */
+    private final ShiftSchedule schedule;
+
+    /**
+     * @return the first instant of the month, inclusive
+     */
+    public Date getStart() {
+        return DateUtil.createDate(year, month);
+    }
+
+    /**
+     * @return the first instant of the next month, exclusive
+     */
+    public Date getEnd() {
+        return DateUtils.addMonths(getStart(), 1);
+    }
+
+    @Override
+    public String toString() {
+        return "CalendarContext{" + "calendarId=" + calendarId + ", year=" + year + ", month=" + month + ", dryRun="
+                + dryRun + ", schedule=" + schedule.getName() + '}';
+    }
+}
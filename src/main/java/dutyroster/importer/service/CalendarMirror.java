@@ -0,0 +1,212 @@
+package dutyroster.importer.service;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.calendar.model.Event;
+import com.google.api.services.calendar.model.Events;
+import dutyroster.importer.util.DateUtil;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.DateUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.util.*;
+
+/**
+ * A local copy of the timed events of the configured Google calendar, i.e. the calendar of the default ward, kept up to
+ * date by incremental syncs, see
+ * {@link GoogleCalendarService#listChangedEvents(String)}. Only the first sync lists all events, every further sync
+ * lists the events changed since the sync before. If the sync token has expired, all events are listed again.
+ * <p>
+ * The mirror is saved as JSON to a file per calendar in the configured directory after every sync, so it survives
+ * restarts. If no directory is configured, the mirror is kept in memory only. The mirror is thread-safe.
+ * </p>
+ */
+@Service
+@Slf4j
+public class CalendarMirror {
+
+    private static final JsonFactory JSON_FACTORY = new GsonFactory();
+
+    /**
+     * If <code>true</code>, the importer reads the calendar from the mirror.
+     */
+    @Setter
+    @Value("${dutyroster.importer.service.calendar.mirror.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * The directory of the saved mirrors, empty for no saving.
+     */
+    @Setter
+    @Value("${dutyroster.importer.service.calendar.mirror.directory:}")
+    private String directory = "";
+
+    private final GoogleCalendarService calendarService;
+
+    /**
+     * The timed events not cancelled by id.
+     */
+    private final Map<String, Event> events = new HashMap<>();
+
+    /**
+     * The token of the next sync, null before the first sync.
+     */
+    private String syncToken;
+
+    private boolean loaded;
+
+    @Autowired
+    public CalendarMirror(GoogleCalendarService calendarService) {
+        this.calendarService = calendarService;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Applies the changes of the calendar since the last sync and saves the mirror.
+     *
+     * @return the number of events changed
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public synchronized int sync() throws IOException, GeneralSecurityException {
+        load();
+        Events changes;
+        try {
+            changes = calendarService.listChangedEvents(syncToken);
+        } catch (GoogleCalendarService.SyncTokenExpiredException e) {
+            log.info("sync token of the calendar mirror expired, synchronizing all events");
+            changes = calendarService.listChangedEvents(null);
+            syncToken = null;
+        }
+        if (syncToken == null) {
+            events.clear();
+        }
+        int changed = 0;
+        for (Event event : changes.getItems()) {
+            Event previous;
+            if ("cancelled".equals(event.getStatus()) || event.getStart() == null
+                    || event.getStart().getDateTime() == null) {
+                previous = events.remove(event.getId());
+            } else {
+                previous = events.put(event.getId(), event);
+            }
+            if (previous != null || !"cancelled".equals(event.getStatus())) {
+                changed++;
+            }
+        }
+        String nextSyncToken = (String) changes.get("nextSyncToken");
+        log.info("synchronized calendar mirror: [{}] events changed, [{}] events, [{}] sync", changed, events.size(),
+                syncToken == null ? "full" : "incremental");
+        if (changed > 0 || !Objects.equals(syncToken, nextSyncToken)) {
+            syncToken = nextSyncToken;
+            save();
+        }
+        return changed;
+    }
+
+    /**
+     * @param year  the year
+     * @param month the zero based month (0=January)
+     * @return the events of the mirror starting within the given month ordered by start time, as of the last sync
+     */
+    public synchronized List<Event> getEvents(int year, int month) {
+        load();
+        Date date = DateUtil.createDate(year, month);
+        long timeMin = date.getTime();
+        long timeMax = DateUtils.addMonths(date, 1).getTime();
+        List<Event> result = new ArrayList<>();
+        for (Event event : events.values()) {
+            long start = event.getStart().getDateTime().getValue();
+            if (start >= timeMin && start < timeMax) {
+                result.add(event);
+            }
+        }
+        result.sort(Comparator.comparingLong((Event event) -> event.getStart().getDateTime().getValue())
+                .thenComparing(Event::getId));
+        return result;
+    }
+
+    /**
+     * @return the number of events of the mirror
+     */
+    public synchronized int size() {
+        load();
+        return events.size();
+    }
+
+    /**
+     * Loads the saved mirror once, if any. A mirror which can not be read is dropped, the next sync is a full one.
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        Path file = getFile();
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try (InputStream is = Files.newInputStream(file)) {
+            Events saved = JSON_FACTORY.fromInputStream(is, StandardCharsets.UTF_8, Events.class);
+            if (saved.getItems() != null) {
+                for (Event event : saved.getItems()) {
+                    events.put(event.getId(), event);
+                }
+            }
+            syncToken = (String) saved.get("nextSyncToken");
+            log.info("loaded calendar mirror of [{}] events from [{}]", events.size(), file);
+        } catch (IOException | RuntimeException e) {
+            log.warn("can not read calendar mirror [{}], synchronizing all events", file, e);
+            events.clear();
+            syncToken = null;
+        }
+    }
+
+    /**
+     * Saves the mirror, replacing the file saved before at once.
+     *
+     * @throws IOException
+     */
+    private void save() throws IOException {
+        Path file = getFile();
+        if (file == null) {
+            return;
+        }
+        Files.createDirectories(file.getParent());
+        Events saved = new Events().setItems(new ArrayList<>(events.values()));
+        saved.set("nextSyncToken", syncToken);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write(JSON_FACTORY.toString(saved));
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the file of the mirror of the calendar or null, if the mirror is not saved
+     */
+    private Path getFile() {
+        if (StringUtils.isEmpty(directory)) {
+            return null;
+        }
+        String calendarId = calendarService.getCalendarId();
+        return Paths.get(directory).toAbsolutePath()
+                .resolve(calendarId.replaceAll("[^A-Za-z0-9._@-]", "_") + ".json");
+    }
+}
@@ -0,0 +1,368 @@
+package dutyroster.importer.service;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.util.Sleeper;
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.util.TokenBucket;
+import lombok.AccessLevel;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Carries out mutations of the Google calendar concurrently on a bounded pool. All requests, of all months imported
+ * at a time, share a {@link dutyroster.importer.util.TokenBucket} matching the per-user quota of the calendar api.
+ * Requests rejected for exceeding the rate limit (403 rateLimitExceeded or userRateLimitExceeded, 429) or failing on
+ * the server (5xx) are retried with exponential backoff and jitter. Such requests failing as part of a batch request
+ * are retried on their own, see {@link Push#submitRetry(String, DutyRosterShift, Mutation, boolean, String)}.
+ * <p>
+ * An insert failing on the server may have stored the event nonetheless, so retrying it could add the event twice.
+ * Inserts are therefore submitted with a client generated event id by {@link Push#submitInsert(DutyRosterShift,
+ * Mutation)}. A retry rejected as duplicate (409) means an attempt before has succeeded.
+ * </p>
+ * <p>
+ * The mutations of a shift are carried out in the order they are submitted, e.g. an event is deleted before a new
+ * event of the same shift is added. If a mutation fails, the later mutations of the same shift are skipped.
+ * </p>
+ */
+@Service
+@Slf4j
+public class CalendarPushExecutor {
+
+    /**
+     * A request to the calendar api.
+     */
+    @FunctionalInterface
+    public interface Mutation {
+        void execute() throws IOException, GeneralSecurityException;
+    }
+
+    /**
+     * The number of requests carried out concurrently.
+     */
+    @Setter
+    @Value("${dutyroster.importer.service.calendar.push.parallelism:4}")
+    private int parallelism = 4;
+
+    /**
+     * The requests per second, 0 for no limit.
+     */
+    @Setter
+    @Value("${dutyroster.importer.service.calendar.push.permitsPerSecond:5}")
+    private double permitsPerSecond = 5;
+
+    /**
+     * The number of retries of a request failing due to the rate limit or a server error.
+     */
+    @Setter
+    @Value("${dutyroster.importer.service.calendar.push.maxRetries:5}")
+    private int maxRetries = 5;
+
+    /**
+     * The backoff before the first retry, doubled for every further retry.
+     */
+    @Setter
+    @Value("${dutyroster.importer.service.calendar.push.initialBackoffMillis:500}")
+    private long initialBackoffMillis = 500;
+
+    @Setter
+    @Value("${dutyroster.importer.service.calendar.push.maxBackoffMillis:32000}")
+    private long maxBackoffMillis = 32000;
+
+    @Setter(AccessLevel.PACKAGE)
+    private Sleeper sleeper = Sleeper.DEFAULT;
+
+    private ExecutorService pool;
+
+    private TokenBucket tokenBucket;
+
+    /**
+     * Starts a push of mutations, to be awaited after the last mutation.
+     *
+     * @return the new push
+     */
+    public Push start() {
+        return new Push();
+    }
+
+    /**
+     * Takes the given number of permits from the rate limit, waiting until they are available. Used for requests
+     * not carried out by this executor, e.g. batch requests.
+     *
+     * @param requests the number of requests
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void acquire(int requests) throws InterruptedIOException {
+        try {
+            getTokenBucket().acquire(requests);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the rate limit");
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * @param e the exception of a request
+     * @return true, if the request has been rejected for exceeding the rate limit or failed on the server
+     */
+    static boolean isRetryable(IOException e) {
+        if (!(e instanceof HttpResponseException)) {
+            return false;
+        }
+        int statusCode = ((HttpResponseException) e).getStatusCode();
+        if (statusCode == 429 || statusCode >= 500) {
+            return true;
+        }
+        return statusCode == 403 && e instanceof GoogleJsonResponseException
+                && isRateLimitExceeded(((GoogleJsonResponseException) e).getDetails());
+    }
+
+    /**
+     * @param error the error of a request of a batch request
+     * @return true, if the request has been rejected for exceeding the rate limit or failed on the server
+     */
+    static boolean isRetryable(GoogleJsonError error) {
+        int code = error.getCode();
+        return code == 429 || code >= 500 || code == 403 && isRateLimitExceeded(error);
+    }
+
+    private static boolean isRateLimitExceeded(GoogleJsonError error) {
+        if (error != null && error.getErrors() != null) {
+            for (GoogleJsonError.ErrorInfo errorInfo : error.getErrors()) {
+                if ("rateLimitExceeded".equals(errorInfo.getReason())
+                        || "userRateLimitExceeded".equals(errorInfo.getReason())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param e the exception of a request
+     * @return true, if the request has been rejected because the resource exists already
+     */
+    static boolean isConflict(IOException e) {
+        return e instanceof HttpResponseException && ((HttpResponseException) e).getStatusCode() == 409;
+    }
+
+    private synchronized ExecutorService getPool() {
+        if (pool == null) {
+            AtomicInteger threads = new AtomicInteger();
+            pool = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+                Thread thread = new Thread(runnable, "calendar-push-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return pool;
+    }
+
+    private synchronized TokenBucket getTokenBucket() {
+        if (tokenBucket == null) {
+            tokenBucket = new TokenBucket(permitsPerSecond, Math.max(1, (int) permitsPerSecond));
+        }
+        return tokenBucket;
+    }
+
+    /**
+     * @param attempt the number of the retry, starting with 0
+     * @return the backoff in milliseconds, between half and the full exponential backoff
+     */
+    private long backoff(int attempt) {
+        long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt, 30));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    /**
+     * The mutations of one import. Mutations are submitted from a single thread, a push is not thread-safe.
+     */
+    public class Push {
+
+        /**
+         * The last mutation submitted by shift key.
+         */
+        private final Map<Long, CompletableFuture<Void>> lastMutations = new HashMap<>();
+
+        private final List<CompletableFuture<Void>> mutations = new ArrayList<>();
+
+        private final List<GoogleCalendarService.BatchFailure> failures = Collections.synchronizedList(
+                new ArrayList<>());
+
+        private final AtomicInteger retries = new AtomicInteger();
+
+        private final long start = System.nanoTime();
+
+        /**
+         * Submits the given mutation, it is carried out after the mutations of the same shift submitted before.
+         *
+         * @param operation the mutation: delete, add or update
+         * @param shift     the {@link dutyroster.importer.domain.DutyRosterShift} the mutation is for
+         * @param mutation  the request to the calendar api
+         */
+        public void submit(String operation, DutyRosterShift shift, Mutation mutation) {
+            submit(operation, shift, mutation, false, null);
+        }
+
+        /**
+         * Submits the insert of an event with a client generated id, see
+         * {@link GoogleCalendarService#createEventId(DutyRosterShift)}. If a retry of the insert is rejected as
+         * duplicate (409), the insert is taken as succeeded.
+         *
+         * @param shift    the {@link dutyroster.importer.domain.DutyRosterShift} the event is added for
+         * @param mutation the request to the calendar api, sending the same event id on every call
+         */
+        public void submitInsert(DutyRosterShift shift, Mutation mutation) {
+            submit("add", shift, mutation, true, null);
+        }
+
+        /**
+         * Submits the retry of a mutation which has failed as part of a batch request, after a backoff. A retried
+         * insert must send the event id of the batched insert: if the retry is rejected as duplicate (409), the
+         * batched insert has succeeded after all.
+         *
+         * @param operation the mutation: delete, add or update
+         * @param shift     the {@link dutyroster.importer.domain.DutyRosterShift} the mutation is for
+         * @param mutation  the request to the calendar api
+         * @param insert    if <code>true</code>, the mutation inserts an event with a client generated id
+         * @param failure   the error message of the failed request
+         */
+        public void submitRetry(String operation, DutyRosterShift shift, Mutation mutation, boolean insert,
+                                String failure) {
+            submit(operation, shift, mutation, insert, failure);
+        }
+
+        /**
+         * @param failure the error message of the request failed before or null, if the mutation has not been tried
+         */
+        private void submit(String operation, DutyRosterShift shift, Mutation mutation, boolean insert,
+                            String failure) {
+            CompletableFuture<Void> previous = lastMutations.get(shift.getKey());
+            CompletableFuture<Void> future;
+            if (previous == null) {
+                future = CompletableFuture.runAsync(() -> execute(operation, shift, mutation, insert, failure),
+                        getPool());
+            } else {
+                future = previous.handle((result, error) -> error).thenAcceptAsync(error -> {
+                    if (error != null) {
+                        failures.add(new GoogleCalendarService.BatchFailure(operation, shift, 0,
+                                "skipped, a preceding mutation of the shift failed"));
+                        throw new CompletionException(error);
+                    }
+                    execute(operation, shift, mutation, insert, failure);
+                }, getPool());
+            }
+            lastMutations.put(shift.getKey(), future);
+            mutations.add(future);
+        }
+
+        /**
+         * Waits until all mutations are carried out.
+         *
+         * @return the milliseconds elapsed since the start of the push
+         * @throws GoogleCalendarService.BatchException if a mutation failed, the other mutations have been carried
+         *                                              out
+         * @throws InterruptedIOException               if interrupted while waiting
+         */
+        public long await() throws IOException {
+            try {
+                CompletableFuture.allOf(mutations.toArray(new CompletableFuture[mutations.size()]))
+                        .handle((result, error) -> null).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the calendar");
+            } catch (ExecutionException e) {
+                // not thrown, the failures are collected
+                throw new IllegalStateException(e);
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            log.info("pushed [{}] mutations in [{}] ms, [{}] retries, [{}] failed", mutations.size(), millis,
+                    retries.get(), failures.size());
+            if (!failures.isEmpty()) {
+                throw new GoogleCalendarService.BatchException(mutations.size(), new ArrayList<>(failures));
+            }
+            return millis;
+        }
+
+        /**
+         * @return the number of retries so far
+         */
+        public int getRetries() {
+            return retries.get();
+        }
+
+        /**
+         * Carries out the given mutation, retrying it as long as it is retryable.
+         *
+         * @param insert  if <code>true</code>, a conflict on a retry means an attempt before has succeeded
+         * @param failure the error message of the request failed before or null, if this is the first attempt
+         * @throws CompletionException if the mutation failed, the failure has been recorded
+         */
+        private void execute(String operation, DutyRosterShift shift, Mutation mutation, boolean insert,
+                             String failure) {
+            for (int attempt = failure != null ? 1 : 0; ; attempt++) {
+                if (attempt > 0) {
+                    long backoff = backoff(attempt - 1);
+                    log.info("retrying to {} event of shift [{}] in [{}] ms: [{}]", operation, shift.getId(), backoff,
+                            failure);
+                    retries.incrementAndGet();
+                    try {
+                        sleeper.sleep(backoff);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        throw fail(operation, shift, new InterruptedIOException("interrupted before retrying: "
+                                + failure));
+                    }
+                }
+                try {
+                    acquire(1);
+                    mutation.execute();
+                    return;
+                } catch (IOException e) {
+                    if (insert && attempt > 0 && isConflict(e)) {
+                        log.info("event of shift [{}] has been inserted by an attempt before", shift.getId());
+                        return;
+                    }
+                    if (attempt < maxRetries && isRetryable(e) && !Thread.currentThread().isInterrupted()) {
+                        failure = e.getMessage();
+                        continue;
+                    }
+                    throw fail(operation, shift, e);
+                } catch (GeneralSecurityException | RuntimeException e) {
+                    throw fail(operation, shift, e);
+                }
+            }
+        }
+
+        /**
+         * Records the failure of the given mutation.
+         *
+         * @return the exception completing the mutation
+         */
+        private CompletionException fail(String operation, DutyRosterShift shift, Exception e) {
+            log.error("failed to {} event [{}] of shift [{}]", operation, shift.getEventId(), shift.getId(), e);
+            int code = e instanceof HttpResponseException ? ((HttpResponseException) e).getStatusCode() : 0;
+            failures.add(new GoogleCalendarService.BatchFailure(operation, shift, code, e.getMessage()));
+            return new CompletionException(e);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package dutyroster.importer.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the first table of a docx as a stream of row and cell events. Contrary to
+ * {@link org.apache.poi.xwpf.usermodel.XWPFDocument}, the XWPF object model is never built: the main document part
+ * (<code>word/document.xml</code>) is taken from the OPC package and parsed with StAX. Reading stops as soon as the
+ * first table has been processed.
+ * <p>
+ * Cell texts are built the same way as {@link org.apache.poi.xwpf.usermodel.XWPFTableCell#getText()} does, i.e. the
+ * texts of all paragraphs of a cell are concatenated, tabs become <code>"\t"</code> and breaks become
+ * <code>"\n"</code>. Nested tables are skipped.
+ * </p>
+ */
+@Slf4j
+public class DocxTableStreamReader {
+
+    /**
+     * Receives the rows and cells of a docx table in document order.
+     */
+    public interface TableRowHandler {
+
+        /**
+         * @param rowIndex the zero based index of the row within the table
+         */
+        void startRow(int rowIndex);
+
+        /**
+         * @param rowIndex    the zero based index of the row within the table
+         * @param columnIndex the zero based index of the cell within the row
+         * @param text        the text of the cell, never null
+         */
+        void cell(int rowIndex, int columnIndex, String text);
+
+        /**
+         * @param rowIndex the zero based index of the row within the table
+         */
+        void endRow(int rowIndex);
+    }
+
+    private static final String WORDML_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    /**
+     * Reads the first table of the given docx and passes its rows and cells to the given handler.
+     *
+     * @param is      the input stream associated with the docx
+     * @param handler the handler receiving the table events
+     * @return true, if the docx contains a table, else false
+     * @throws IOException
+     * @throws OpenXML4JException
+     * @throws XMLStreamException
+     */
+    public boolean readFirstTable(InputStream is, TableRowHandler handler) throws IOException, OpenXML4JException,
+            XMLStreamException {
+        OPCPackage pkg = OPCPackage.open(is);
+        try {
+            PackagePart mainPart = findMainDocumentPart(pkg);
+            try (InputStream xml = mainPart.getInputStream()) {
+                XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(xml);
+                try {
+                    return readFirstTable(reader, handler);
+                } finally {
+                    reader.close();
+                }
+            }
+        } finally {
+            // read only - never write back to the source
+            pkg.revert();
+        }
+    }
+
+    /**
+     * @param pkg the OPC package of the docx
+     * @return the main document part, usually <code>word/document.xml</code>
+     * @throws OpenXML4JException if the package has no main document part
+     */
+    private PackagePart findMainDocumentPart(OPCPackage pkg) throws OpenXML4JException {
+        PackageRelationshipCollection relationships = pkg.getRelationshipsByType(
+                PackageRelationshipTypes.CORE_DOCUMENT);
+        if (relationships == null || relationships.size() == 0) {
+            throw new OpenXML4JException("no main document part in docx");
+        }
+        PackagePart part = pkg.getPart(relationships.getRelationship(0));
+        if (part == null) {
+            throw new OpenXML4JException("main document part [" + relationships.getRelationship(0).getTargetURI()
+                    + "] not found in docx");
+        }
+        return part;
+    }
+
+    /**
+     * Walks the document body up to the end of its first table. Only rows being direct children of that table and
+     * cells being direct children of those rows are reported, just like
+     * {@link org.apache.poi.xwpf.usermodel.XWPFTable#getRows()} and
+     * {@link org.apache.poi.xwpf.usermodel.XWPFTableRow#getTableCells()} do.
+     *
+     * @param reader  the reader positioned at the start of <code>word/document.xml</code>
+     * @param handler the handler receiving the table events
+     * @return true, if a table has been found, else false
+     * @throws XMLStreamException
+     */
+    private boolean readFirstTable(XMLStreamReader reader, TableRowHandler handler) throws XMLStreamException {
+        int depth = 0;
+        int bodyDepth = -1;
+        int tableDepth = -1;
+        int rowDepth = -1;
+        int cellDepth = -1;
+        int rowIndex = -1;
+        int columnIndex = -1;
+        StringBuilder cellText = new StringBuilder();
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (!WORDML_NS.equals(reader.getNamespaceURI())) {
+                    continue;
+                }
+                String name = reader.getLocalName();
+                if (bodyDepth == -1) {
+                    if ("body".equals(name)) {
+                        bodyDepth = depth;
+                    }
+                } else if (tableDepth == -1) {
+                    if ("tbl".equals(name) && depth == bodyDepth + 1) {
+                        tableDepth = depth;
+                    }
+                } else if (rowDepth == -1) {
+                    if ("tr".equals(name) && depth == tableDepth + 1) {
+                        rowDepth = depth;
+                        columnIndex = -1;
+                        handler.startRow(++rowIndex);
+                    }
+                } else if (cellDepth == -1) {
+                    if ("tc".equals(name) && depth == rowDepth + 1) {
+                        cellDepth = depth;
+                        columnIndex++;
+                        cellText.setLength(0);
+                    }
+                } else if (depth == cellDepth + 1 && "tbl".equals(name)) {
+                    // a nested table - XWPFTableCell#getText() ignores it
+                    skipElement(reader);
+                    depth--;
+                } else if ("t".equals(name)) {
+                    cellText.append(reader.getElementText());
+                    depth--;
+                } else if ("tab".equals(name)) {
+                    cellText.append('\t');
+                } else if ("br".equals(name) || "cr".equals(name)) {
+                    cellText.append('\n');
+                } else if ("delText".equals(name) || "instrText".equals(name)) {
+                    skipElement(reader);
+                    depth--;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == cellDepth) {
+                    handler.cell(rowIndex, columnIndex, cellText.toString());
+                    cellDepth = -1;
+                } else if (depth == rowDepth) {
+                    handler.endRow(rowIndex);
+                    rowDepth = -1;
+                } else if (depth == tableDepth) {
+                    // done - we do not care for the rest of the document
+                    return true;
+                }
+                depth--;
+            }
+        }
+
+        if (tableDepth == -1) {
+            log.warn("no table found in docx");
+        }
+        return tableDepth != -1;
+    }
+
+    /**
+     * Skips the current element including all of its children.
+     *
+     * @param reader the reader positioned at a start element
+     * @throws XMLStreamException
+     */
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int level = 1;
+        while (level > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                level++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                level--;
+            }
+        }
+    }
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+}
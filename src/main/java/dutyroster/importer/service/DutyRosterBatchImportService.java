@@ -0,0 +1,347 @@
+package dutyroster.importer.service;
+
+import dutyroster.importer.domain.DutyRosterDiff;
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.ShiftSchedule;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Imports a whole directory of duty rosters, e.g. for backfilling a year. Runs in two phases:
+ * <ol>
+ * <li>all docx files are parsed in parallel on a {@link java.util.concurrent.ForkJoinPool}, as parsing is CPU bound
+ * only</li>
+ * <li>the parsed rosters are imported by the {@link DutyRosterImporterService} with a bounded number of concurrent
+ * months, so the calendar api is not flooded with requests. Like a single upload, each month is diffed three-way
+ * against the roster imported last and registered, see
+ * {@link DutyRosterImporterService#importDutyRoster(DutyRosterMonth, int, int, boolean)}.</li>
+ * </ol>
+ * The files must be named like "yyyy_MM*.docx", e.g. "2015_03.docx" or "2015_03_v2.docx". Of several files of the
+ * same month only the last one is imported, the others are superseded: two versions of a month imported concurrently
+ * would both be diffed against the same calendar and add their shifts twice. A failure of a single file does not
+ * stop the import of the other files, it is reported in its {@link FileResult}.
+ */
+@Service
+@Slf4j
+public class DutyRosterBatchImportService {
+
+    /**
+     * Matches the names of the files to import and captures year and month.
+     */
+    private static final Pattern FILENAME_PATTERN = Pattern.compile("(\\d{4})_(\\d{2}).*\\.docx");
+
+    /**
+     * The outcome of the import of a single file.
+     */
+    @Getter
+    public static class FileResult {
+
+        private final Path file;
+
+        private final int year;
+
+        /**
+         * The zero based month (0=January).
+         */
+        private final int month;
+
+        private DutyRosterMonth roster;
+
+        private DutyRosterDiff diff;
+
+        private long parseMillis;
+
+        private long calendarMillis;
+
+        private Exception error;
+
+        /**
+         * The file of the same month imported instead of this one or null, if this file is imported.
+         */
+        private Path supersededBy;
+
+        FileResult(Path file, int year, int month) {
+            this.file = file;
+            this.year = year;
+            this.month = month;
+        }
+
+        /**
+         * @return true, if the file has been parsed and imported without errors
+         */
+        public boolean isSuccess() {
+            return error == null && diff != null;
+        }
+
+        /**
+         * @return true, if the file has not been imported due to a later file of the same month
+         */
+        public boolean isSuperseded() {
+            return supersededBy != null;
+        }
+    }
+
+    private DutyRosterConverterService converterService;
+
+    private DutyRosterImporterService importerService;
+
+    /**
+     * Provides the schedules of the wards, only the {@link dutyroster.importer.domain.ShiftSchedule#DEFAULT} unless
+     * set.
+     */
+    private ShiftScheduleService shiftScheduleService = new ShiftScheduleService(new ShiftScheduleProperties());
+
+    /**
+     * The parser used for reading the docx, see {@link DutyRosterConverterService.ParserMode}.
+     */
+    @Setter
+    @Value("${dutyroster.importer.service.converter.parserMode:XWPF}")
+    private DutyRosterConverterService.ParserMode parserMode = DutyRosterConverterService.ParserMode.XWPF;
+
+    /**
+     * The number of files parsed in parallel, 0 for the number of available processors.
+     */
+    @Setter
+    @Value("${dutyroster.importer.service.batch.parseParallelism:0}")
+    private int parseParallelism = 0;
+
+    /**
+     * The number of months diffed and imported into the Google calendar concurrently.
+     */
+    @Setter
+    @Value("${dutyroster.importer.service.batch.calendarConcurrency:2}")
+    private int calendarConcurrency = 2;
+
+    @Autowired
+    public DutyRosterBatchImportService(DutyRosterConverterService converterService,
+                                        DutyRosterImporterService importerService) {
+        this.converterService = converterService;
+        this.importerService = importerService;
+    }
+
+    @Autowired
+    public void setShiftScheduleService(ShiftScheduleService shiftScheduleService) {
+        this.shiftScheduleService = shiftScheduleService;
+    }
+
+    /**
+     * Finds the files to import.
+     *
+     * @param directoryOrGlob either a directory, e.g. "rosters", or a glob, e.g. "rosters/2015_*.docx". Only files
+     *                        named like "yyyy_MM*.docx" are taken into account.
+     * @return the files ordered by name
+     * @throws IOException
+     */
+    public static List<Path> findFiles(String directoryOrGlob) throws IOException {
+        Path directory = Paths.get(directoryOrGlob);
+        PathMatcher glob = null;
+        if (!Files.isDirectory(directory)) {
+            directory = directory.toAbsolutePath().getParent();
+            glob = FileSystems.getDefault().getPathMatcher("glob:" + Paths.get(directoryOrGlob).getFileName());
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                Path name = file.getFileName();
+                if (Files.isRegularFile(file) && FILENAME_PATTERN.matcher(name.toString()).matches()
+                        && (glob == null || glob.matches(name))) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Parses the given files of the default ward and imports them into the Google calendar, see
+     * {@link #convertAndImportDutyRosters(List, boolean, boolean, String)}.
+     *
+     * @param files     the files to import, named like "yyyy_MM*.docx"
+     * @param dryRun    if <code>true</code>, the import will be tested only. No modifications of the Google calendar
+     *                  will be carried out.
+     * @param createCsv if <code>true</code>, a CSV file will be created from each input file
+     * @return the results in the order of the given files
+     */
+    public List<FileResult> convertAndImportDutyRosters(List<Path> files, boolean dryRun, boolean createCsv) {
+        return convertAndImportDutyRosters(files, dryRun, createCsv, null);
+    }
+
+    /**
+     * Parses the given files and imports them into the Google calendar.
+     *
+     * @param files     the files to import, named like "yyyy_MM*.docx", of several files of the same month only the
+     *                  last one is imported
+     * @param dryRun    if <code>true</code>, the import will be tested only. No modifications of the Google calendar
+     *                  will be carried out.
+     * @param createCsv if <code>true</code>, a CSV file will be created from each input file
+     * @param ward      the ward of the files, see {@link ShiftScheduleService#get(String)}, null for the default ward
+     * @return the results in the order of the given files
+     * @throws IllegalArgumentException if a file name can not be parsed or there is no such ward
+     */
+    public List<FileResult> convertAndImportDutyRosters(List<Path> files, boolean dryRun, boolean createCsv,
+                                                        String ward) {
+        ShiftSchedule schedule = shiftScheduleService.get(ward);
+        List<FileResult> results = new ArrayList<>();
+        // the result of the last file of each month by year * 12 + month
+        Map<Integer, FileResult> lastResults = new HashMap<>();
+        for (Path file : files) {
+            Matcher matcher = FILENAME_PATTERN.matcher(file.getFileName().toString());
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("can not parse year and month from [" + file + "]");
+            }
+            FileResult result = new FileResult(file, Integer.parseInt(matcher.group(1)),
+                    Integer.parseInt(matcher.group(2)) - 1);
+            FileResult superseded = lastResults.put(result.getYear() * 12 + result.getMonth(), result);
+            if (superseded != null) {
+                log.warn("[{}] is superseded by [{}] of the same month", superseded.getFile(), file);
+                superseded.supersededBy = file;
+            }
+            results.add(result);
+        }
+
+        log.info("importing [{}] files, dryRun=[{}], createCsv=[{}], parserMode=[{}], ward=[{}]", results.size(),
+                dryRun, createCsv, parserMode, schedule.getName());
+
+        long start = System.nanoTime();
+        ForkJoinPool parsePool = parseParallelism > 0 ? new ForkJoinPool(parseParallelism) : new ForkJoinPool();
+        List<Callable<FileResult>> parseTasks = new ArrayList<>();
+        for (FileResult result : results) {
+            if (!result.isSuperseded()) {
+                parseTasks.add(() -> parse(result, createCsv, schedule));
+            }
+        }
+        invokeAll(parsePool, parseTasks);
+        long parsed = System.nanoTime();
+
+        ExecutorService calendarPool = Executors.newFixedThreadPool(Math.max(1, calendarConcurrency));
+        List<Callable<FileResult>> calendarTasks = new ArrayList<>();
+        for (FileResult result : results) {
+            if (!result.isSuperseded() && result.getError() == null) {
+                calendarTasks.add(() -> importIntoCalendar(result, dryRun));
+            }
+        }
+        invokeAll(calendarPool, calendarTasks);
+        long imported = System.nanoTime();
+
+        logSummary(results, toMillis(parsed - start), toMillis(imported - parsed));
+        return results;
+    }
+
+    /**
+     * Parses the file of the given result.
+     *
+     * @param result    the result to be filled
+     * @param createCsv if <code>true</code>, a CSV file will be created from the input file
+     * @param schedule  the {@link ShiftSchedule} of the ward
+     * @return the given result
+     */
+    private FileResult parse(FileResult result, boolean createCsv, ShiftSchedule schedule) {
+        long start = System.nanoTime();
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(result.getFile()))) {
+            result.roster = converterService.extractDutyRoster(is, result.getYear(), parserMode, schedule);
+            if (result.roster == null) {
+                throw new IOException("no duty roster found in [" + result.getFile() + "]");
+            }
+            if (createCsv) {
+                converterService.convert2Csv(result.roster, result.getFile().getFileName().toString());
+            }
+        } catch (Exception e) {
+            log.error("error parsing [{}]", result.getFile(), e);
+            result.error = e;
+        }
+        result.parseMillis = toMillis(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Imports the parsed roster of the given result, see
+     * {@link DutyRosterImporterService#importDutyRoster(DutyRosterMonth, int, int, boolean)}.
+     *
+     * @param result the result to be filled
+     * @param dryRun if <code>true</code>, the calendar is not modified
+     * @return the given result
+     */
+    private FileResult importIntoCalendar(FileResult result, boolean dryRun) {
+        long start = System.nanoTime();
+        try {
+            result.diff = importerService.importDutyRoster(result.getRoster(), result.getYear(), result.getMonth(),
+                    dryRun);
+        } catch (Exception e) {
+            log.error("error importing [{}] into the calendar", result.getFile(), e);
+            result.error = e;
+        }
+        result.calendarMillis = toMillis(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Runs the given tasks and shuts the pool down. The tasks handle their exceptions themselves.
+     *
+     * @param pool  the pool to run the tasks on
+     * @param tasks the tasks
+     */
+    private void invokeAll(ExecutorService pool, List<Callable<FileResult>> tasks) {
+        try {
+            pool.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void logSummary(List<FileResult> results, long parseMillis, long calendarMillis) {
+        int superseded = 0;
+        int failed = 0;
+        int additions = 0;
+        int deletions = 0;
+        int changes = 0;
+        for (FileResult result : results) {
+            if (result.isSuperseded()) {
+                log.info("[{}]: superseded by [{}]", result.getFile().getFileName(),
+                        result.getSupersededBy().getFileName());
+                superseded++;
+            } else if (result.isSuccess()) {
+                log.info("[{}]: parsed in [{}] ms, imported in [{}] ms, [{}] additions, [{}] deletions, [{}] changes",
+                        result.getFile().getFileName(), result.getParseMillis(), result.getCalendarMillis(),
+                        result.getDiff().getNumberOfAddititions(), result.getDiff().getNumberOfDeletions(),
+                        result.getDiff().getNumberOfChanges());
+                additions += result.getDiff().getNumberOfAddititions();
+                deletions += result.getDiff().getNumberOfDeletions();
+                changes += result.getDiff().getNumberOfChanges();
+            } else {
+                log.info("[{}]: failed after [{}] ms parsing and [{}] ms importing: [{}]",
+                        result.getFile().getFileName(), result.getParseMillis(), result.getCalendarMillis(),
+                        result.getError().toString());
+                failed++;
+            }
+        }
+        log.info("imported [{}] of [{}] files ([{}] failed, [{}] superseded), parsing took [{}] ms, importing took "
+                        + "[{}] ms, [{}] additions, [{}] deletions, [{}] changes", results.size() - failed - superseded,
+                results.size(), failed, superseded, parseMillis, calendarMillis, additions, deletions, changes);
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -6,9 +6,8 @@ package dutyroster.importer.service;
 import dutyroster.importer.domain.DutyRosterMonth;
 import dutyroster.importer.domain.DutyRosterShift;
 import dutyroster.importer.domain.Shift;
-import dutyroster.importer.util.DateUtil;
+import dutyroster.importer.domain.ShiftSchedule;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.FastDateFormat;
 import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
@@ -22,12 +21,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Calendar;
-import java.util.List;
-import java.util.Set;
+import javax.xml.stream.XMLStreamException;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Converts docx to {@link dutyroster.importer.domain.DutyRosterMonth} and those to comma separated csv.
@@ -300,40 +300,47 @@ import java.util.Set;
 public class DutyRosterConverterService {
 
     /**
-     * Simple wrapper for a specific day and month.
+     * The parsers available for reading the docx.
      */
-    public class DayAndMonth {
+    public enum ParserMode {
 
         /**
-         * The one based day of month.
+         * Builds the whole {@link org.apache.poi.xwpf.usermodel.XWPFDocument} and walks its first table.
          */
-        private int day;
+        XWPF,
 
         /**
-         * The zero based month (0=January).
+         * Streams the first table from <code>word/document.xml</code> with StAX, see {@link DocxTableStreamReader}.
+         * The XWPF object model is never built.
          */
-        private int month;
+        STAX
+    }
 
-        public DayAndMonth(int day, int month) {
-            this.day = day;
-            this.month = month;
-        }
+    /**
+     * Returned by {@link #parseDayAndMonth(CharSequence)} for texts not being a day and month specifier.
+     */
+    static final int NO_DATE = -1;
 
-        public int getDay() {
-            return day;
-        }
+    /**
+     * The number of bits of a packed day and month holding the day.
+     */
+    private static final int DAY_BITS = 5;
 
-        public int getMonth() {
-            return month;
-        }
-    }
+    private static final int DAY_MASK = (1 << DAY_BITS) - 1;
 
     private static final String NL = "\n";
 
     private static final String COMMA = ",";
 
+    private static final String CSV_HEADER =
+            "Subject,Start Date,Start Time,End Date,End Time,All Day Event,Description,Location,Private";
+
+    private static final int CSV_BUFFER_SIZE = 8192;
+
     private DutyRosterShiftService dutyRosterShiftService;
 
+    private DocxTableStreamReader docxTableStreamReader = new DocxTableStreamReader();
+
     @Autowired
     public DutyRosterConverterService(DutyRosterShiftService dutyRosterShiftService) {
         this.dutyRosterShiftService = dutyRosterShiftService;
@@ -351,194 +358,597 @@ public class DutyRosterConverterService {
      */
     public DutyRosterMonth extractDutyRoster(InputStream is, int year) throws IOException, XmlException,
             OpenXML4JException {
+        return extractDutyRoster(is, year, ParserMode.XWPF);
+    }
+
+    /**
+     * Parses the given docx of a ward having the {@link ShiftSchedule#DEFAULT} schedule, see
+     * {@link #extractDutyRoster(InputStream, int, ParserMode, ShiftSchedule)}.
+     *
+     * @param is         the input stream associated with the docx
+     * @param year       the year of the roster
+     * @param parserMode the {@link ParserMode} to use
+     * @return the {@link dutyroster.importer.domain.DutyRosterMonth}
+     * @throws IOException
+     * @throws XmlException
+     * @throws OpenXML4JException
+     */
+    public DutyRosterMonth extractDutyRoster(InputStream is, int year, ParserMode parserMode) throws IOException,
+            XmlException, OpenXML4JException {
+        return extractDutyRoster(is, year, parserMode, ShiftSchedule.DEFAULT);
+    }
+
+    /**
+     * Parses the given docx with the given parser and extracts a {@link dutyroster.importer.domain.DutyRosterMonth}
+     * from it. Both parsers yield the same result.
+     *
+     * @param is         the input stream associated with the docx
+     * @param year       the year of the roster
+     * @param parserMode the {@link ParserMode} to use
+     * @param schedule   the {@link ShiftSchedule} of the ward, the shift labels are parsed with
+     * @return the {@link dutyroster.importer.domain.DutyRosterMonth} of the given schedule
+     * @throws IOException
+     * @throws XmlException
+     * @throws OpenXML4JException
+     */
+    public DutyRosterMonth extractDutyRoster(InputStream is, int year, ParserMode parserMode, ShiftSchedule schedule)
+            throws IOException, XmlException, OpenXML4JException {
+        switch (parserMode) {
+            case STAX:
+                return extractDutyRosterStreaming(is, year, schedule);
+            case XWPF:
+            default:
+                return extractDutyRosterFromXwpf(is, year, schedule);
+        }
+    }
+
+    /**
+     * Extracts the {@link dutyroster.importer.domain.DutyRosterMonth} from the first table of the
+     * {@link org.apache.poi.xwpf.usermodel.XWPFDocument}.
+     *
+     * @param is       the input stream associated with the docx
+     * @param year     the year of the roster
+     * @param schedule the {@link ShiftSchedule} of the ward
+     * @return the {@link dutyroster.importer.domain.DutyRosterMonth}
+     * @throws IOException
+     */
+    private DutyRosterMonth extractDutyRosterFromXwpf(InputStream is, int year, ShiftSchedule schedule)
+            throws IOException {
         XWPFDocument docIn = new XWPFDocument(is);
         XWPFTable table = docIn.getTables().get(0);
-        List<XWPFTableRow> rows = table.getRows();
-        int rowCount = 0;
+        String[][] cellTexts = readCellTexts(table);
+        int[][] shiftRowOffsets = buildShiftRowIndex(cellTexts, schedule);
         DutyRosterMonth dutyRosterMonth = null;
 
-        for (XWPFTableRow row : rows) {
-            List<XWPFTableCell> tableCells = row.getTableCells();
-            int cellCount = 0;
-            for (XWPFTableCell tableCell : tableCells) {
-                String cellText = tableCell.getText();
-
-                // have we encountered a row with dates?
-                if (isDate(cellText)) {
+        for (int rowIndex = 0; rowIndex < cellTexts.length; rowIndex++) {
+            String[] rowTexts = cellTexts[rowIndex];
+            for (int columnIndex = 0; columnIndex < rowTexts.length; columnIndex++) {
+                String cellText = rowTexts[columnIndex];
 
-                    // yes -> parse the month and date of the following shifts in this column
-                    DayAndMonth dayAndMonth = parseDate(cellText);
+                // have we encountered a row with dates? if yes -> take the month and date of the following shifts
+                // in this column
+                int dayAndMonth = parseDayAndMonth(cellText);
+                if (dayAndMonth != NO_DATE) {
 
                     if (dutyRosterMonth == null) {
-                        dutyRosterMonth = new DutyRosterMonth(year, dayAndMonth.getMonth());
-                        log.info("importing for year/month [{}/{}]", year, dayAndMonth.getMonth());
+                        dutyRosterMonth = new DutyRosterMonth(year, monthOf(dayAndMonth), schedule);
+                        log.info("importing for year/month [{}/{}]", year, monthOf(dayAndMonth));
                     }
 
                     // up to three rows may contain the shifts for the current date
-                    findShiftInColumnAndAddToDutyRoster(dutyRosterMonth, Shift.EARLY_SHIFT, table, rowCount,
-                            cellCount, dayAndMonth);
-                    findShiftInColumnAndAddToDutyRoster(dutyRosterMonth, Shift.LATE_SHIFT, table, rowCount,
-                            cellCount, dayAndMonth);
-                    findShiftInColumnAndAddToDutyRoster(dutyRosterMonth, Shift.NIGHT_SHIFT, table, rowCount,
-                            cellCount, dayAndMonth);
+                    for (Shift shift : Shift.values()) {
+                        findShiftInColumnAndAddToDutyRoster(dutyRosterMonth, shift, cellTexts, rowIndex,
+                                shiftRowOffsets[rowIndex][shift.ordinal()], columnIndex, dayAndMonth);
+                    }
                 }
-                cellCount++;
             }
-            rowCount++;
         }
         return dutyRosterMonth;
     }
 
+    /**
+     * Reads the texts of all cells of the given table once, so that the extraction does not need to go through the
+     * XWPF object model again.
+     *
+     * @param table the duty roster table from the docx
+     * @return the cell texts indexed by row and column
+     */
+    private String[][] readCellTexts(XWPFTable table) {
+        List<XWPFTableRow> rows = table.getRows();
+        String[][] cellTexts = new String[rows.size()][];
+        int rowIndex = 0;
+        for (XWPFTableRow row : rows) {
+            List<XWPFTableCell> tableCells = row.getTableCells();
+            String[] rowTexts = new String[tableCells.size()];
+            int columnIndex = 0;
+            for (XWPFTableCell tableCell : tableCells) {
+                rowTexts[columnIndex++] = tableCell.getText();
+            }
+            cellTexts[rowIndex++] = rowTexts;
+        }
+        return cellTexts;
+    }
+
+    /**
+     * Builds the index "date row -&gt; {shift -&gt; row offset}" in a single pass over the table. A row containing a
+     * date opens a block; each of the following rows having a shift label in the first column provides the shift
+     * of that label to every open block, the first one winning. The open blocks end with a row having a blank first
+     * column or a date in it. So blocks only overlap, if a row has a shift label in the first column and dates in
+     * others, just like the former scan beneath each date cell. Each label is parsed once only, and only while a
+     * shift of an open block is missing.
+     *
+     * @param cellTexts the cell texts of the duty roster table, see {@link #readCellTexts(XWPFTable)}
+     * @param schedule  the {@link ShiftSchedule} the labels are parsed with
+     * @return the row offsets indexed by row and {@link Shift#ordinal()}, -1 if the shift has not been found
+     * beneath the row. Rows without a date have no offsets (i.e. null).
+     */
+    int[][] buildShiftRowIndex(String[][] cellTexts, ShiftSchedule schedule) {
+        int[][] shiftRowOffsets = new int[cellTexts.length][];
+        // the date rows of the open blocks, usually just one
+        List<Integer> blockRowIndexes = new ArrayList<>();
+        int shiftsMissing = 0;
+
+        for (int rowIndex = 0; rowIndex < cellTexts.length; rowIndex++) {
+            String[] rowTexts = cellTexts[rowIndex];
+
+            // the shift label is supposed to be in the first column
+            String label = rowTexts.length > 0 ? rowTexts[0] : null;
+            if (StringUtils.isBlank(label) || isDate(label)) {
+                // a blank cell indicates a date or any other row -> the open blocks are done
+                blockRowIndexes.clear();
+                shiftsMissing = 0;
+            } else if (shiftsMissing > 0) {
+                Shift shift = schedule.parseLabel(label);
+                for (int blockRowIndex : blockRowIndexes) {
+                    int[] offsets = shiftRowOffsets[blockRowIndex];
+                    if (offsets[shift.ordinal()] == -1) {
+                        offsets[shift.ordinal()] = rowIndex - blockRowIndex;
+                        shiftsMissing--;
+                    }
+                }
+            }
+
+            for (String text : rowTexts) {
+                if (isDate(text)) {
+                    int[] offsets = new int[Shift.values().length];
+                    Arrays.fill(offsets, -1);
+                    shiftRowOffsets[rowIndex] = offsets;
+                    blockRowIndexes.add(rowIndex);
+                    shiftsMissing += offsets.length;
+                    break;
+                }
+            }
+        }
+        return shiftRowOffsets;
+    }
+
+    /**
+     * Extracts the {@link dutyroster.importer.domain.DutyRosterMonth} from the first table of the docx by streaming
+     * its rows and cells, see {@link StreamingDutyRosterBuilder}.
+     *
+     * @param is       the input stream associated with the docx
+     * @param year     the year of the roster
+     * @param schedule the {@link ShiftSchedule} of the ward
+     * @return the {@link dutyroster.importer.domain.DutyRosterMonth}
+     * @throws IOException
+     * @throws OpenXML4JException
+     */
+    private DutyRosterMonth extractDutyRosterStreaming(InputStream is, int year, ShiftSchedule schedule)
+            throws IOException, OpenXML4JException {
+        StreamingDutyRosterBuilder builder = new StreamingDutyRosterBuilder(year, schedule);
+        try {
+            docxTableStreamReader.readFirstTable(is, builder);
+        } catch (XMLStreamException e) {
+            throw new IOException("error reading docx", e);
+        }
+        return builder.getDutyRosterMonth();
+    }
+
     /**
      * @param text a text from a cell in the docx table
      * @return true, if the text seems to be a date, e.g. "01.04."
      */
     private boolean isDate(String text) {
-        return text.matches("([1-9]|0[1-9]|[12]\\d|3[01])\\.([1-9]|0[1-9]|1[0-2])\\.");
+        return parseDayAndMonth(text) != NO_DATE;
+    }
+
+    /**
+     * Recognizes and decodes a day and month specifier in german notation, e.g. "31.02." or "1.4.", in a single
+     * pass over the characters. Accepts what <code>([1-9]|0[1-9]|[12]\d|3[01])\.([1-9]|0[1-9]|1[0-2])\.</code>
+     * matches, without a regex and without allocating anything, as this is done for every cell of the docx.
+     *
+     * @param text a text from a cell in the docx table
+     * @return the day and month packed into an int (see {@link #dayOf(int)} and {@link #monthOf(int)}) or
+     * {@link #NO_DATE}, if the text is not a day and month specifier
+     */
+    static int parseDayAndMonth(CharSequence text) {
+        int length = text == null ? 0 : text.length();
+        // shortest "1.4.", longest "31.12."
+        if (length < 4 || length > 6) {
+            return NO_DATE;
+        }
+
+        int pos = 0;
+        int day = digit(text.charAt(pos++));
+        if (day < 0) {
+            return NO_DATE;
+        }
+        int digit = digit(text.charAt(pos));
+        if (digit >= 0) {
+            day = day * 10 + digit;
+            pos++;
+        }
+        if (day < 1 || day > 31 || text.charAt(pos++) != '.') {
+            return NO_DATE;
+        }
+
+        if (pos == length) {
+            return NO_DATE;
+        }
+        int month = digit(text.charAt(pos++));
+        if (month < 0 || pos == length) {
+            return NO_DATE;
+        }
+        digit = digit(text.charAt(pos));
+        if (digit >= 0) {
+            month = month * 10 + digit;
+            pos++;
+        }
+        if (month < 1 || month > 12 || pos != length - 1 || text.charAt(pos) != '.') {
+            return NO_DATE;
+        }
+
+        // zero based month (0=January)
+        return ((month - 1) << DAY_BITS) | day;
+    }
+
+    /**
+     * @param dayAndMonth a day and month packed by {@link #parseDayAndMonth(CharSequence)}
+     * @return the one based day of month
+     */
+    static int dayOf(int dayAndMonth) {
+        return dayAndMonth & DAY_MASK;
+    }
+
+    /**
+     * @param dayAndMonth a day and month packed by {@link #parseDayAndMonth(CharSequence)}
+     * @return the zero based month (0=January)
+     */
+    static int monthOf(int dayAndMonth) {
+        return dayAndMonth >>> DAY_BITS;
+    }
+
+    private static int digit(char c) {
+        return c >= '0' && c <= '9' ? c - '0' : -1;
     }
 
     /**
      * Converts the given <code>dutyRosterMonth</code> to a CSV that may be imported manually into any Google calendar.
+     * The CSV is written to a temp file, see {@link #writeCsv(Iterable, OutputStream, boolean)} for the format.
      *
      * @param dutyRosterMonth the {@link dutyroster.importer.domain.DutyRosterMonth}
      * @param filename        the name of the file to be created (without extension!)
      * @throws IOException
      */
     public void convert2Csv(DutyRosterMonth dutyRosterMonth, String filename) throws IOException {
-        if (dutyRosterMonth == null || dutyRosterMonth.getDutyRosterDays().isEmpty()) {
+        if (dutyRosterMonth == null || dutyRosterMonth.isEmpty()) {
             return;
         }
 
         File tempFile = File.createTempFile(filename + "_", ".csv");
         log.info("creating file [" + tempFile.getAbsolutePath() + "]");
 
-        /**
-         * Expected format (taken from Google docs): <br/>
-         *
-         * <pre>
-         * Header: Subject,Start Date,Start Time,End Date,End Time,All Day Event,Description, Location, Private
-         * Example values: Abschlussklausur,05/12/20,07:10:00 PM,05/12/20,10:00:00 PM,False,Zwei Aufsatzfragen zu Themen aus dem gesamten Semester,"Audimax, Gropius-Bau",True
-         * </pre>
-         */
-        StringBuilder sb = new StringBuilder();
-        sb.append(
-                "Subject,Start Date,Start Time,End Date,End Time,All Day Event,Description,Location,Private")
-                .append(NL);
+        try (OutputStream os = new FileOutputStream(tempFile)) {
+            writeCsv(Collections.singletonList(dutyRosterMonth), os, false);
+        }
+    }
+
+    /**
+     * Writes the given <code>dutyRosterMonth</code> as CSV to the given stream, see
+     * {@link #writeCsv(Iterable, OutputStream, boolean)}.
+     *
+     * @param dutyRosterMonth the {@link dutyroster.importer.domain.DutyRosterMonth}
+     * @param os              the stream to write to, it is flushed but not closed
+     * @throws IOException
+     */
+    public void writeCsv(DutyRosterMonth dutyRosterMonth, OutputStream os) throws IOException {
+        writeCsv(Collections.singletonList(dutyRosterMonth), os, false);
+    }
+
+    /**
+     * Writes the given <code>dutyRosterMonths</code> as CSV to the given channel, see
+     * {@link #writeCsv(Iterable, OutputStream, boolean)}.
+     *
+     * @param dutyRosterMonths the {@link dutyroster.importer.domain.DutyRosterMonth}s
+     * @param channel          the channel to write to, it is not closed
+     * @param gzip             if <code>true</code>, the CSV is gzip compressed
+     * @throws IOException
+     */
+    public void writeCsv(Iterable<DutyRosterMonth> dutyRosterMonths, WritableByteChannel channel, boolean gzip)
+            throws IOException {
+        writeCsv(dutyRosterMonths, Channels.newOutputStream(channel), gzip);
+    }
+
+    /**
+     * Writes the given <code>dutyRosterMonths</code> as a single UTF-8 encoded CSV (one header line, then one line per
+     * shift) to the given stream. The rows are written as they are formatted, only a small buffer is held in
+     * memory, no matter how many months are written.
+     * <p>
+     * Expected format (taken from Google docs):
+     * </p>
+     * <pre>
+     * Header: Subject,Start Date,Start Time,End Date,End Time,All Day Event,Description, Location, Private
+     * Example values: Abschlussklausur,05/12/20,07:10:00 PM,05/12/20,10:00:00 PM,False,Zwei Aufsatzfragen zu Themen aus dem gesamten Semester,"Audimax, Gropius-Bau",True
+     * </pre>
+     *
+     * @param dutyRosterMonths the {@link dutyroster.importer.domain.DutyRosterMonth}s, null entries are skipped
+     * @param os               the stream to write to, it is flushed but not closed
+     * @param gzip             if <code>true</code>, the CSV is gzip compressed
+     * @throws IOException
+     */
+    public void writeCsv(Iterable<DutyRosterMonth> dutyRosterMonths, OutputStream os, boolean gzip)
+            throws IOException {
+        GZIPOutputStream gzipStream = gzip ? new GZIPOutputStream(os, CSV_BUFFER_SIZE) : null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(gzip ? gzipStream : os, StandardCharsets.UTF_8),
+                CSV_BUFFER_SIZE);
+
+        writer.write(CSV_HEADER);
+        writer.write(NL);
 
         FastDateFormat fdf = FastDateFormat.getInstance("dd/MM/yy,KK:mm:ss a");
-        Set<DutyRosterShift> allDutyRosterShifts = dutyRosterMonth.getAllDutyRosterDays();
-        for (DutyRosterShift rosterDay : allDutyRosterShifts) {
-            sb.append(dutyRosterShiftService.createEventSummary(rosterDay.getShift(), rosterDay.getName())) // Subject
-                    .append(COMMA).append(fdf.format(rosterDay.getFrom())) // Start Date, Start Time
-                    .append(COMMA).append(fdf.format(rosterDay.getTo())) // End Date, End Time
-                    .append(COMMA).append("False") // All Day Event
-                    .append(COMMA).append("") // Description
-                    .append(COMMA).append("") // Location
-                    .append(COMMA).append("True") // Private
-                    .append(NL);
-        }
-
-        FileUtils.writeStringToFile(tempFile, sb.toString());
+        for (DutyRosterMonth dutyRosterMonth : dutyRosterMonths) {
+            if (dutyRosterMonth == null) {
+                continue;
+            }
+            for (DutyRosterShift rosterDay : dutyRosterMonth.getAllDutyRosterDays()) {
+                writer.write(dutyRosterShiftService.createEventSummary(dutyRosterMonth.getSchedule(),
+                        rosterDay.getShift(), rosterDay.getName())); // Subject
+                writer.write(COMMA);
+                writer.write(fdf.format(rosterDay.getFrom())); // Start Date, Start Time
+                writer.write(COMMA);
+                writer.write(fdf.format(rosterDay.getTo())); // End Date, End Time
+                writer.write(COMMA);
+                writer.write("False"); // All Day Event
+                writer.write(COMMA); // Description
+                writer.write(COMMA); // Location
+                writer.write(COMMA);
+                writer.write("True"); // Private
+                writer.write(NL);
+            }
+        }
+
+        writer.flush();
+        if (gzipStream != null) {
+            gzipStream.finish();
+        }
+        os.flush();
     }
 
     /**
      * Starting from a cell that contains a day and month specifier, e.g. "31.02.", we are looking for the given
-     * shift in the same column beneath the current row. The shift determines the offset by it's ordinal, i.e., the
-     * {@link dutyroster.importer.domain.Shift#NIGHT_SHIFT} is supposed to be defined in the current column / row + 3.
+     * shift in the same column beneath the current row. The row of the shift is taken from the index built by
+     * {@link #buildShiftRowIndex(String[][], ShiftSchedule)}.
      *
      * @param dutyRosterMonth the current {@link dutyroster.importer.domain.DutyRosterMonth} we're working on
      * @param shift           the shift we are looking for
-     * @param table           the imported table from the docx
+     * @param cellTexts       the cell texts of the imported table from the docx
      * @param rowIndex        the current row (that contains a date specifier, e.g. "31.02.")
+     * @param shiftRowOffset  the offset of the row containing the shift relative to the current row, -1 if the
+     *                        shift is missing
      * @param columnIndex     the current column number
-     * @param dayAndMonth     the day and month parsed from the current cell we're starting at, e.g. "31.02."
+     * @param dayAndMonth     the packed day and month parsed from the current cell we're starting at, e.g. "31.02."
      */
     private void findShiftInColumnAndAddToDutyRoster(DutyRosterMonth dutyRosterMonth, Shift shift,
-                                                     XWPFTable table, int rowIndex, int columnIndex,
-                                                     DayAndMonth dayAndMonth) {
+                                                     String[][] cellTexts, int rowIndex, int shiftRowOffset,
+                                                     int columnIndex, int dayAndMonth) {
         if (dutyRosterMonth == null) {
             return;
         }
 
-        int shiftRowOffset = findShiftRowOffset(table, shift, rowIndex);
         if (shiftRowOffset == -1) {
             log.warn("warning: no shift [{}] in duty roster DOCX", shift);
             return;
         }
 
-        // skip the whole column if it does not match the duty roster's month (the docx may
-        // contain the last shift of the last month or the first shift of the next month - we do not care for those
-        Calendar cal = DateUtil.getCalendar(dutyRosterMonth.getDate());
-        int month = cal.get(Calendar.MONTH);
-        if (month != dayAndMonth.getMonth()) {
-            log.warn("warning: parsed month [{}] does not equal first month value [{}] - " +
-                            "skipping shift [{}]", dayAndMonth.getMonth(),
-                    month, shift);
+        if (!isMonthOfDutyRoster(dutyRosterMonth, shift, dayAndMonth)) {
             return;
         }
 
-        try {
-            String personnel = table.getRow(rowIndex + shiftRowOffset).getCell(columnIndex)
-                    .getText();
-            if (StringUtils.isNotBlank(personnel) && !StringUtils.equals(personnel, "-")) {
-                log.info("found shift {}.{}.: [{}]/[{}]",
-                        dayAndMonth.getDay(), dayAndMonth.getMonth() + 1, shift.getLabel(), personnel);
-                dutyRosterMonth.addDutyRosterShift(shift, dayAndMonth.getDay(), personnel);
-            }
-        } catch (Exception e) {
-            log.error("error finding early shift for date [{}]: [{}]", dayAndMonth,
-                    e.getMessage());
+        String[] shiftRowTexts = cellTexts[rowIndex + shiftRowOffset];
+        if (columnIndex >= shiftRowTexts.length) {
+            log.error("error finding shift [{}] for date [{}.{}.]: no cell in column [{}]", shift,
+                    dayOf(dayAndMonth), monthOf(dayAndMonth) + 1, columnIndex);
+            return;
         }
+        addShift(dutyRosterMonth, shift, dayAndMonth, shiftRowTexts[columnIndex]);
     }
 
     /**
-     * Find the position of the given {@link dutyroster.importer.domain.Shift} in the table. The shift label must
-     * be in the first column of the table. The lookup starts at the next row from the given row index.
+     * Skip the whole column if it does not match the duty roster's month (the docx may contain the last shift of
+     * the last month or the first shift of the next month - we do not care for those).
      *
-     * @param table    the duty roster table from the docx
-     * @param shift    the shift to look for
-     * @param rowIndex the current row index, i.e. a row, that contains the date of the shift
-     * @return the cell position of the shift or -1, if no appropriate shift label was found in the first column
+     * @param dutyRosterMonth the current {@link dutyroster.importer.domain.DutyRosterMonth} we're working on
+     * @param shift           the shift we are looking for
+     * @param dayAndMonth     the packed day and month parsed from the date cell of the current column
+     * @return true, if the column belongs to the month of the given duty roster
+     */
+    private boolean isMonthOfDutyRoster(DutyRosterMonth dutyRosterMonth, Shift shift, int dayAndMonth) {
+        int month = dutyRosterMonth.getMonth();
+        if (month != monthOf(dayAndMonth)) {
+            log.warn("warning: parsed month [{}] does not equal first month value [{}] - " +
+                            "skipping shift [{}]", monthOf(dayAndMonth),
+                    month, shift);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds the shift to the duty roster unless the cell text is blank or "-".
+     *
+     * @param dutyRosterMonth the current {@link dutyroster.importer.domain.DutyRosterMonth} we're working on
+     * @param shift           the shift found
+     * @param dayAndMonth     the packed day and month of the shift
+     * @param personnel       the text of the cell containing the personnel
+     */
+    private void addShift(DutyRosterMonth dutyRosterMonth, Shift shift, int dayAndMonth, String personnel) {
+        if (StringUtils.isNotBlank(personnel) && !StringUtils.equals(personnel, "-")) {
+            log.info("found shift {}.{}.: [{}]/[{}]",
+                    dayOf(dayAndMonth), monthOf(dayAndMonth) + 1, dutyRosterMonth.getSchedule().getLabel(shift),
+                    personnel);
+            dutyRosterMonth.addDutyRosterShift(shift, dayOf(dayAndMonth), personnel);
+        }
+    }
+
+    /**
+     * Builds the {@link dutyroster.importer.domain.DutyRosterMonth} from the row and cell events of a
+     * {@link DocxTableStreamReader}. Applies the same rules as the XWPF based extraction: a row containing dates
+     * opens a block of shift rows; each of the following rows having a shift label in the first column provides the
+     * personnel of that shift for the dates of the open blocks. The open blocks end with a row having a blank first
+     * column or a date in it. Only the first row of a block carrying a particular shift label counts.
      */
-    private int findShiftRowOffset(XWPFTable table, Shift shift, int rowIndex) {
+    private class StreamingDutyRosterBuilder implements DocxTableStreamReader.TableRowHandler {
+
+        private final int year;
+
+        private final ShiftSchedule schedule;
+
+        private DutyRosterMonth dutyRosterMonth;
+
+        /**
+         * The open blocks, usually just one, see {@link #buildShiftRowIndex(String[][], ShiftSchedule)}.
+         */
+        private final List<Block> blocks = new ArrayList<>();
+
+        /**
+         * The packed dates found in the current row, indexed by column.
+         */
+        private int[] rowDates = newRowDates(8);
+
+        private boolean rowHasDates;
+
+        /**
+         * The shift the current row provides the personnel for, or null.
+         */
+        private Shift rowShift;
+
+        /**
+         * The open blocks the current row provides the personnel of {@link #rowShift} for.
+         */
+        private final List<Block> rowBlocks = new ArrayList<>();
+
+        StreamingDutyRosterBuilder(int year, ShiftSchedule schedule) {
+            this.year = year;
+            this.schedule = schedule;
+        }
+
+        @Override
+        public void startRow(int rowIndex) {
+            rowShift = null;
+            rowBlocks.clear();
+            rowHasDates = false;
+            Arrays.fill(rowDates, NO_DATE);
+        }
+
+        @Override
+        public void cell(int rowIndex, int columnIndex, String text) {
+            int dayAndMonth = parseDayAndMonth(text);
+
+            if (columnIndex == 0) {
+                if (StringUtils.isBlank(text) || dayAndMonth != NO_DATE) {
+                    // a blank cell indicates a date or any other row -> the open blocks are done
+                    endBlocks();
+                } else if (isShiftMissing()) {
+                    // throws IllegalArgumentException like the XWPF based extraction
+                    rowShift = schedule.parseLabel(text);
+                    for (Block block : blocks) {
+                        if (block.shifts.add(rowShift)) {
+                            rowBlocks.add(block);
+                        }
+                    }
+                }
+            }
 
-        XWPFTableRow row;
-        int offset = 0;
-        while ((row = table.getRow(rowIndex + ++offset)) != null) {
+            if (dayAndMonth != NO_DATE) {
+                if (dutyRosterMonth == null) {
+                    dutyRosterMonth = new DutyRosterMonth(year, monthOf(dayAndMonth), schedule);
+                    log.info("importing for year/month [{}/{}]", year, monthOf(dayAndMonth));
+                }
+                if (columnIndex >= rowDates.length) {
+                    int[] dates = newRowDates(columnIndex + 1);
+                    System.arraycopy(rowDates, 0, dates, 0, rowDates.length);
+                    rowDates = dates;
+                }
+                rowDates[columnIndex] = dayAndMonth;
+                rowHasDates = true;
+            }
 
-            String text = row.getCell(0).getText();
-            if (StringUtils.isBlank(text) || isDate(text)) {
-                // a blank cell indicates a date or any other row -> no shift for the current date found
-                return -1;
+            for (Block block : rowBlocks) {
+                if (columnIndex < block.dates.length && block.dates[columnIndex] != NO_DATE
+                        && isMonthOfDutyRoster(dutyRosterMonth, rowShift, block.dates[columnIndex])) {
+                    addShift(dutyRosterMonth, rowShift, block.dates[columnIndex], text);
+                }
             }
+        }
 
-            Shift foundShift = Shift.parseLabel(text);
-            if (shift == foundShift) {
-                return offset;
+        @Override
+        public void endRow(int rowIndex) {
+            if (rowHasDates) {
+                // up to three rows may contain the shifts for the dates of this row
+                blocks.add(new Block(rowDates.clone()));
             }
         }
 
-        // end of table has been reached -> no such shift
-        return -1;
+        private boolean isShiftMissing() {
+            for (Block block : blocks) {
+                if (block.shifts.size() < Shift.values().length) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void endBlocks() {
+            for (Block block : blocks) {
+                for (Shift shift : Shift.values()) {
+                    if (!block.shifts.contains(shift)) {
+                        log.warn("warning: no shift [{}] in duty roster DOCX", shift);
+                    }
+                }
+            }
+            blocks.clear();
+        }
+
+        private int[] newRowDates(int columns) {
+            int[] dates = new int[columns];
+            Arrays.fill(dates, NO_DATE);
+            return dates;
+        }
+
+        DutyRosterMonth getDutyRosterMonth() {
+            endBlocks();
+            return dutyRosterMonth;
+        }
     }
 
     /**
-     * @param cellText a day and month text in german notation, e.g. "31.02."
-     * @return the {@link dutyroster.importer.service.DutyRosterConverterService.DayAndMonth}
+     * A row of dates and the rows beneath it providing the personnel of the shifts, see
+     * {@link StreamingDutyRosterBuilder}.
      */
-    private DayAndMonth parseDate(String cellText) {
-        String[] tokens = StringUtils.split(cellText, ".");
-        if (tokens.length < 2) {
-            return null;
-        }
+    private static class Block {
 
-        try {
-            int day = Integer.parseInt(tokens[0]);
-            int month = Integer.parseInt(tokens[1]) - 1;
-            return new DayAndMonth(day, month);
-        } catch (NumberFormatException e) {
-            log.error("error parsing date from [{}]", cellText);
-            return null;
+        /**
+         * The packed dates, indexed by column.
+         */
+        private final int[] dates;
+
+        /**
+         * The shifts already found.
+         */
+        private final Set<Shift> shifts = EnumSet.noneOf(Shift.class);
+
+        Block(int[] dates) {
+            this.dates = dates;
         }
     }
 
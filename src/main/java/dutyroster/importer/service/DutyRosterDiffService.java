@@ -3,14 +3,12 @@
  */
 package dutyroster.importer.service;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import dutyroster.importer.domain.DutyRosterDiff;
 import dutyroster.importer.domain.DutyRosterMonth;
 import dutyroster.importer.domain.DutyRosterShift;
-import dutyroster.importer.util.DateUtil;
+import dutyroster.importer.domain.ShiftKey;
+import dutyroster.importer.domain.ShiftSchedule;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTimeComparator;
 import org.joda.time.DateTimeFieldType;
@@ -32,93 +30,439 @@ public class DutyRosterDiffService {
 
     private DutyRosterShiftService dutyRosterShiftService;
 
-    @Autowired
+    private DutyRosterJsonService dutyRosterJsonService;
+
     public DutyRosterDiffService(DutyRosterShiftService dutyRosterShiftService) {
+        this(dutyRosterShiftService, new DutyRosterJsonService());
+    }
+
+    @Autowired
+    public DutyRosterDiffService(DutyRosterShiftService dutyRosterShiftService,
+                                 DutyRosterJsonService dutyRosterJsonService) {
         this.dutyRosterShiftService = dutyRosterShiftService;
+        this.dutyRosterJsonService = dutyRosterJsonService;
     }
 
     /**
-     * @param dutyRoster1 the first (before) {@link dutyroster.importer.domain.DutyRosterMonth}
-     * @param dutyRoster2 the second (after) {@link dutyroster.importer.domain.DutyRosterMonth}
-     * @return the {@link dutyroster.importer.domain.DutyRosterDiff}
+     * Compares the start and end of shifts up to the minute.
      */
-    public DutyRosterDiff diff(DutyRosterMonth dutyRoster1, DutyRosterMonth dutyRoster2) {
-        DutyRosterDiff diff = new DutyRosterDiff(DateUtil.getYear(dutyRoster1.getDate()),
-                DateUtil.getMonth(dutyRoster1.getDate()));
+    private static final DateTimeComparator MINUTE_COMPARATOR = DateTimeComparator.getInstance(
+            DateTimeFieldType.minuteOfHour());
 
-        Collection onlyIn1 = CollectionUtils.subtract(dutyRoster1.getAllDutyRosterDays(),
-                dutyRoster2.getAllDutyRosterDays());
-        diff.setOnlyBefore(createDutyRosterMonth(dutyRoster1.getDate(), onlyIn1));
+    /**
+     * Receives the differences found by {@link #diff(Iterator, Iterator, DiffListener)} in ascending order of the
+     * shift keys.
+     *
+     * @param <E> the exception the listener may throw, it stops the diff
+     */
+    public interface DiffListener<E extends Exception> {
 
-        Collection onlyIn2 = CollectionUtils.subtract(dutyRoster2.getAllDutyRosterDays(),
-                dutyRoster1.getAllDutyRosterDays());
-        diff.setOnlyAfter(createDutyRosterMonth(dutyRoster2.getDate(), onlyIn2));
+        /**
+         * @param before a shift of the first roster not found in the second
+         */
+        void onDeletion(DutyRosterShift before) throws E;
 
-        diff.setChanges(findChangesOfPersonnel(dutyRoster1.getAllDutyRosterDays(),
-                dutyRoster2.getAllDutyRosterDays()));
+        /**
+         * @param after a shift of the second roster not found in the first
+         */
+        void onAddition(DutyRosterShift after) throws E;
 
-        return diff;
+        /**
+         * @param change a shift found in both rosters with a different name, start or end
+         */
+        void onChange(DutyRosterDiff.Change change) throws E;
+
+        /**
+         * Called after the last difference.
+         */
+        default void onEnd() throws E {
+        }
     }
 
     /**
-     * @param date             the source date determining year and month of the duty roster to be created
-     * @param dutyRosterShifts the shifts of the duty roster to be created
-     * @return the new {@link dutyroster.importer.domain.DutyRosterMonth}
+     * Collects the differences into a {@link dutyroster.importer.domain.DutyRosterDiff}.
      */
-    private DutyRosterMonth createDutyRosterMonth(Date date,
-                                                  Collection<DutyRosterShift> dutyRosterShifts) {
+    public static class DiffCollector implements DiffListener<RuntimeException> {
 
-        DutyRosterMonth dutyRosterMonth = new DutyRosterMonth(DateUtil.getYear(date),
-                DateUtil.getMonth(date));
-        for (DutyRosterShift dutyRosterShift : dutyRosterShifts) {
-            dutyRosterMonth.addDutyRosterShift(dutyRosterShift);
+        private final DutyRosterDiff diff;
+
+        /**
+         * @param year     the year of the rosters
+         * @param month    the zero based month (0=January) of the rosters
+         * @param schedule the {@link ShiftSchedule} of the rosters
+         */
+        public DiffCollector(int year, int month, ShiftSchedule schedule) {
+            diff = new DutyRosterDiff(year, month);
+            diff.setOnlyBefore(new DutyRosterMonth(year, month, schedule));
+            diff.setOnlyAfter(new DutyRosterMonth(year, month, schedule));
+        }
+
+        @Override
+        public void onDeletion(DutyRosterShift before) {
+            diff.getOnlyBefore().addDutyRosterShift(before);
+        }
+
+        @Override
+        public void onAddition(DutyRosterShift after) {
+            diff.getOnlyAfter().addDutyRosterShift(after);
+        }
+
+        @Override
+        public void onChange(DutyRosterDiff.Change change) {
+            diff.getChanges().add(change);
+        }
+
+        /**
+         * @return the differences collected so far
+         */
+        public DutyRosterDiff getDiff() {
+            return diff;
         }
-        return dutyRosterMonth;
     }
 
     /**
-     * @param set1 the set of old shifts
-     * @param set2 the set of new shifts
-     * @return the list of shifts which have changed personnel
+     * Turns a deletion and an addition of the same assignee on the same day (e.g. a swap of shifts) into a change of
+     * the deleted shift, so the calendar event is updated instead of being deleted and inserted again. Saves one api
+     * call per move. The differences are passed on to the given listener in the same order, a move in place of the
+     * deletion. As the differences come in key order, only those of the current day are held back.
+     *
+     * @param <E> the exception thrown by the listener
      */
-    private List<DutyRosterDiff.Change> findChangesOfPersonnel(Set<DutyRosterShift> set1,
-                                                               Set<DutyRosterShift> set2) {
-
-        List<DutyRosterDiff.Change> changes = new ArrayList<>();
-
-        DateTimeComparator comparator = DateTimeComparator.getInstance(
-                DateTimeFieldType.minuteOfHour());
-
-        Collection intersection = CollectionUtils.intersection(set1, set2);
-        for (Object o : intersection) {
-            DutyRosterShift shift = (DutyRosterShift) o;
-            DutyRosterShift shiftIn1 = dutyRosterShiftService.findDutyRosterShift(set1, shift);
-            DutyRosterShift shiftIn2 = dutyRosterShiftService.findDutyRosterShift(set2, shift);
-
-            // compare by name, start and end
-            if (!StringUtils.equals(shiftIn1.getName(), shiftIn2.getName()) ||
-                    comparator.compare(shiftIn1.getFrom().getTime(), shiftIn2.getFrom().getTime()) != 0 ||
-                    comparator.compare(shiftIn1.getTo().getTime(), shiftIn2.getTo().getTime()) != 0) {
-                log.debug("shift changed from [{}] to [{}]", shiftIn1, shiftIn2);
-                shiftIn2.setEventId(shiftIn1.getEventId());
-                shiftIn2.setSequence(shiftIn1.getSequence());
-                changes.add(new DutyRosterDiff.Change(shiftIn1, shiftIn2));
+    public static class MoveDetector<E extends Exception> implements DiffListener<E> {
+
+        /**
+         * A difference held back until the end of its day.
+         */
+        private static class Pending {
+
+            private DutyRosterShift before;
+
+            private DutyRosterShift after;
+
+            private boolean moved;
+
+            Pending(DutyRosterShift before, DutyRosterShift after) {
+                this.before = before;
+                this.after = after;
             }
         }
-        return changes;
+
+        private final DiffListener<E> listener;
+
+        private final List<Pending> pendings = new ArrayList<>();
+
+        private long day;
+
+        private int moves;
+
+        /**
+         * @param listener receives the differences with the moves as changes
+         */
+        public MoveDetector(DiffListener<E> listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onDeletion(DutyRosterShift before) throws E {
+            hold(before.getKey(), new Pending(before, null));
+        }
+
+        @Override
+        public void onAddition(DutyRosterShift after) throws E {
+            hold(after.getKey(), new Pending(null, after));
+        }
+
+        @Override
+        public void onChange(DutyRosterDiff.Change change) throws E {
+            hold(change.getBefore().getKey(), new Pending(change.getBefore(), change.getAfter()));
+        }
+
+        @Override
+        public void onEnd() throws E {
+            flush();
+            listener.onEnd();
+        }
+
+        /**
+         * @return the number of deletions and additions turned into changes so far
+         */
+        public int getMoves() {
+            return moves;
+        }
+
+        private void hold(long key, Pending pending) throws E {
+            if (!pendings.isEmpty() && ShiftKey.ofDay(key) != day) {
+                flush();
+            }
+            day = ShiftKey.ofDay(key);
+            pendings.add(pending);
+        }
+
+        private void flush() throws E {
+            for (Pending deletion : pendings) {
+                if (deletion.after != null || deletion.before.getName() == null) {
+                    continue;
+                }
+                for (Pending addition : pendings) {
+                    if (addition.before == null && !addition.moved
+                            && deletion.before.getName().equals(addition.after.getName())) {
+                        addition.moved = true;
+                        deletion.after = addition.after;
+                        deletion.after.setEventId(deletion.before.getEventId());
+                        deletion.after.setSequence(deletion.before.getSequence());
+                        log.debug("shift moved from [{}] to [{}]", deletion.before, deletion.after);
+                        moves++;
+                        break;
+                    }
+                }
+            }
+            for (Pending pending : pendings) {
+                if (pending.before == null) {
+                    if (!pending.moved) {
+                        listener.onAddition(pending.after);
+                    }
+                } else if (pending.after == null) {
+                    listener.onDeletion(pending.before);
+                } else {
+                    listener.onChange(new DutyRosterDiff.Change(pending.before, pending.after));
+                }
+            }
+            pendings.clear();
+        }
     }
 
     /**
-     * @param diff the {@link dutyroster.importer.domain.DutyRosterDiff}
-     * @return a Json representation of the given diff
+     * Makes a diff of the calendar (first side) and a new roster (second side) three-way: each difference is looked up
+     * in the base, i.e. the roster imported last, to find out which side has changed the shift since then.
+     * <ul>
+     * <li>roster-changed: the calendar still equals the base, the difference is passed on to be imported</li>
+     * <li>calendar-changed: the roster still equals the base, the shift has been edited manually in the calendar
+     * (e.g. renamed to "Krank! SD" and thus not recognized as shift anymore). The difference is dropped, so the edit
+     * is preserved.</li>
+     * <li>conflicting: both sides have changed the shift differently, the difference is dropped and reported, see
+     * {@link #getConflicts()}</li>
+     * </ul>
+     * A shift missing from the base has been added on the side containing it. If both sides contain it, it has been
+     * added to the calendar manually or by an import the base does not know of (e.g. a dry run registered nowhere):
+     * if the summaries differ (i.e. the assignee, the label is the same for the same key), the calendar has been
+     * edited and is preserved; if they are equal, only the hours differ and the roster is imported.
+     * The base is mapped by key once, each difference is a single lookup, so the diff stays linear.
+     *
+     * @param <E> the exception thrown by the listener
      */
-    public static String toJson(DutyRosterDiff diff) {
+    public static class ThreeWayFilter<E extends Exception> implements DiffListener<E> {
+
+        private final DiffListener<E> listener;
+
+        private final Map<Long, DutyRosterShift> baseByKey = new HashMap<>();
+
+        private final List<DutyRosterDiff.Change> conflicts = new ArrayList<>();
 
-        if (diff == null) {
-            return "null";
+        private int calendarEdits;
+
+        /**
+         * @param base     the shifts imported last
+         * @param listener receives the roster-changed differences
+         */
+        public ThreeWayFilter(Iterable<DutyRosterShift> base, DiffListener<E> listener) {
+            this.listener = listener;
+            for (DutyRosterShift shift : base) {
+                baseByKey.put(shift.getKey(), shift);
+            }
+        }
+
+        @Override
+        public void onDeletion(DutyRosterShift before) throws E {
+            DutyRosterShift base = baseByKey.get(before.getKey());
+            if (base == null) {
+                // added manually to the calendar
+                calendarEdits++;
+            } else if (isChanged(base, before)) {
+                conflict(before, null);
+            } else {
+                listener.onDeletion(before);
+            }
+        }
+
+        @Override
+        public void onAddition(DutyRosterShift after) throws E {
+            DutyRosterShift base = baseByKey.get(after.getKey());
+            if (base == null) {
+                listener.onAddition(after);
+            } else if (isChanged(base, after)) {
+                conflict(null, after);
+            } else {
+                // removed from the calendar manually
+                calendarEdits++;
+            }
+        }
+
+        @Override
+        public void onChange(DutyRosterDiff.Change change) throws E {
+            DutyRosterShift base = baseByKey.get(change.getBefore().getKey());
+            if (base == null) {
+                // added on both sides
+                if (StringUtils.equals(change.getBefore().getName(), change.getAfter().getName())) {
+                    listener.onChange(change);
+                } else {
+                    calendarEdits++;
+                }
+            } else if (!isChanged(base, change.getBefore())) {
+                listener.onChange(change);
+            } else if (!isChanged(base, change.getAfter())) {
+                calendarEdits++;
+            } else {
+                conflict(change.getBefore(), change.getAfter());
+            }
+        }
+
+        @Override
+        public void onEnd() throws E {
+            listener.onEnd();
+        }
+
+        /**
+         * @return the shifts changed on both sides, each as change from the calendar (before) to the roster (after),
+         * a side is null if it does not contain the shift anymore
+         */
+        public List<DutyRosterDiff.Change> getConflicts() {
+            return conflicts;
+        }
+
+        /**
+         * @return the number of differences due to manual edits of the calendar
+         */
+        public int getCalendarEdits() {
+            return calendarEdits;
+        }
+
+        private void conflict(DutyRosterShift inCalendar, DutyRosterShift inRoster) {
+            log.info("conflicting changes of shift [{}] in the calendar and [{}] in the roster", inCalendar, inRoster);
+            conflicts.add(new DutyRosterDiff.Change(inCalendar, inRoster));
+        }
+    }
+
+    /**
+     * Builds the diff of two rosters of the same month, see {@link #diff(Iterator, Iterator, DiffListener)}. Moves of
+     * an assignee within a day are changes, see {@link MoveDetector}.
+     *
+     * @param dutyRoster1 the first (before) {@link dutyroster.importer.domain.DutyRosterMonth}
+     * @param dutyRoster2 the second (after) {@link dutyroster.importer.domain.DutyRosterMonth}
+     * @return the {@link dutyroster.importer.domain.DutyRosterDiff}
+     */
+    public DutyRosterDiff diff(DutyRosterMonth dutyRoster1, DutyRosterMonth dutyRoster2) {
+        DiffCollector collector = new DiffCollector(dutyRoster1.getYear(), dutyRoster1.getMonth(),
+                dutyRoster1.getSchedule());
+        MoveDetector<RuntimeException> moveDetector = new MoveDetector<>(collector);
+        diff(dutyRoster1.getAllDutyRosterDays().iterator(), dutyRoster2.getAllDutyRosterDays().iterator(),
+                moveDetector);
+        collector.getDiff().setSavedApiCalls(moveDetector.getMoves());
+        return collector.getDiff();
+    }
+
+    /**
+     * Builds the three-way diff of the calendar and a new roster based on the roster imported last, see
+     * {@link ThreeWayFilter}. Contains the roster-changed differences only.
+     *
+     * @param base     the roster imported last
+     * @param calendar the roster read from the calendar
+     * @param roster   the new roster
+     * @return the {@link dutyroster.importer.domain.DutyRosterDiff}
+     */
+    public DutyRosterDiff diff(DutyRosterMonth base, DutyRosterMonth calendar, DutyRosterMonth roster) {
+        DiffCollector collector = new DiffCollector(calendar.getYear(), calendar.getMonth(), calendar.getSchedule());
+        MoveDetector<RuntimeException> moveDetector = new MoveDetector<>(collector);
+        ThreeWayFilter<RuntimeException> threeWayFilter = new ThreeWayFilter<>(base.getAllDutyRosterDays(),
+                moveDetector);
+        diff(calendar.getAllDutyRosterDays().iterator(), roster.getAllDutyRosterDays().iterator(), threeWayFilter);
+        DutyRosterDiff diff = collector.getDiff();
+        diff.setSavedApiCalls(moveDetector.getMoves());
+        diff.setConflicts(threeWayFilter.getConflicts());
+        diff.setCalendarEdits(threeWayFilter.getCalendarEdits());
+        return diff;
+    }
+
+    /**
+     * Diffs two streams of shifts in a single merge-join pass: both are read in ascending key order side by side, a
+     * shift found on one side only is a deletion or an addition, shifts found on both sides are compared. Neither
+     * side is materialized, so the listener gets the differences while the shifts are still being read, e.g. from
+     * the calendar. Runs in O(n) for n shifts. A changed shift of the second stream takes over the event id and
+     * sequence of the first.
+     *
+     * @param shifts1  the first (before) shifts in ascending order of {@link DutyRosterShift#getKey()}, e.g. from
+     *                 the calendar
+     * @param shifts2  the second (after) shifts in ascending order of {@link DutyRosterShift#getKey()}, e.g. from
+     *                 the docx. Of several shifts with the same key in a stream only the first is taken.
+     * @param listener receives the differences in ascending key order
+     * @param <E>      the exception thrown by the listener
+     * @throws E                        if the listener fails, no more shifts are read then
+     * @throws IllegalArgumentException if a stream is not in ascending key order
+     */
+    public <E extends Exception> void diff(Iterator<DutyRosterShift> shifts1, Iterator<DutyRosterShift> shifts2,
+                                           DiffListener<E> listener) throws E {
+        DutyRosterShift shiftIn1 = next(shifts1, null);
+        DutyRosterShift shiftIn2 = next(shifts2, null);
+        while (shiftIn1 != null || shiftIn2 != null) {
+            int order = shiftIn1 == null ? 1 : shiftIn2 == null ? -1
+                    : Long.compare(shiftIn1.getKey(), shiftIn2.getKey());
+            if (order < 0) {
+                listener.onDeletion(shiftIn1);
+                shiftIn1 = next(shifts1, shiftIn1);
+            } else if (order > 0) {
+                listener.onAddition(shiftIn2);
+                shiftIn2 = next(shifts2, shiftIn2);
+            } else {
+                if (isChanged(shiftIn1, shiftIn2)) {
+                    log.debug("shift changed from [{}] to [{}]", shiftIn1, shiftIn2);
+                    shiftIn2.setEventId(shiftIn1.getEventId());
+                    shiftIn2.setSequence(shiftIn1.getSequence());
+                    listener.onChange(new DutyRosterDiff.Change(shiftIn1, shiftIn2));
+                }
+                shiftIn1 = next(shifts1, shiftIn1);
+                shiftIn2 = next(shifts2, shiftIn2);
+            }
         }
+        listener.onEnd();
+    }
 
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        return gson.toJson(diff);
+    /**
+     * @param shifts   the shifts
+     * @param previous the shift read before or null
+     * @return the next shift with a key greater than the previous one or null, if there are no more shifts
+     * @throws IllegalArgumentException if the shifts are not in ascending key order
+     */
+    private static DutyRosterShift next(Iterator<DutyRosterShift> shifts, DutyRosterShift previous) {
+        while (shifts.hasNext()) {
+            DutyRosterShift shift = shifts.next();
+            if (previous == null || shift.getKey() > previous.getKey()) {
+                return shift;
+            }
+            if (shift.getKey() < previous.getKey()) {
+                throw new IllegalArgumentException("shifts are not ordered by key: [" + shift.getId() + "] after ["
+                        + previous.getId() + "]");
+            }
+            log.info("ignoring duplicate shift [{}]", shift);
+        }
+        return null;
+    }
+
+    /**
+     * @param shiftIn1 the old shift
+     * @param shiftIn2 the new shift with the same id
+     * @return true, if the personnel, the start or the end (up to the minute) of the shift has changed
+     */
+    private static boolean isChanged(DutyRosterShift shiftIn1, DutyRosterShift shiftIn2) {
+        // compare by name, start and end
+        return !StringUtils.equals(shiftIn1.getName(), shiftIn2.getName()) ||
+                MINUTE_COMPARATOR.compare(shiftIn1.getFrom().getTime(), shiftIn2.getFrom().getTime()) != 0 ||
+                MINUTE_COMPARATOR.compare(shiftIn1.getTo().getTime(), shiftIn2.getTo().getTime()) != 0;
+    }
+
+    /**
+     * @param diff the {@link dutyroster.importer.domain.DutyRosterDiff}
+     * @return a pretty printed Json representation of the given diff, see {@link DutyRosterJsonService}
+     */
+    public String toJson(DutyRosterDiff diff) {
+        return dutyRosterJsonService.toJson(diff, true);
     }
 }
@@ -0,0 +1,291 @@
+package dutyroster.importer.service;
+
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.domain.ShiftSchedule;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Writes {@link dutyroster.importer.domain.DutyRosterShift}s as iCalendar (RFC 5545), so they may be subscribed to
+ * without a Google calendar. Every shift becomes a VEVENT whose UID is derived from the shift id (see
+ * {@link dutyroster.importer.domain.DutyRosterMonth#createId(dutyroster.importer.domain.Shift, Date)}), so calendar
+ * clients recognize a shift again after it has been changed.
+ * <p>
+ * Additionally serves per assignee feeds of the rosters in the {@link DutyRosterRegistry}. The bytes of a feed are
+ * cached per assignee, ward and month until a new roster of that ward and month is registered, see
+ * {@link #getAssigneeFeed(String, String, int, int)}.
+ * </p>
+ */
+@Service
+@Slf4j
+public class DutyRosterIcsService {
+
+    /**
+     * A generated iCalendar.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class IcsFeed {
+
+        private byte[] content;
+
+        /**
+         * The strong ETag of the {@link #content}, including the quotes.
+         */
+        private String etag;
+
+        /**
+         * The {@link DutyRosterRegistry.Entry#getVersion()} of the roster the feed has been generated from.
+         */
+        private long version;
+    }
+
+    private static final String CRLF = "\r\n";
+
+    /**
+     * The maximum length of a content line in octets, excluding the line break.
+     */
+    private static final int MAX_LINE_OCTETS = 75;
+
+    private static final String UID_DOMAIN = "@dutyroster.importer";
+
+    private static final FastDateFormat UTC_DATE_TIME = FastDateFormat.getInstance("yyyyMMdd'T'HHmmss'Z'",
+            TimeZone.getTimeZone("UTC"));
+
+    private DutyRosterShiftService dutyRosterShiftService;
+
+    private DutyRosterRegistry dutyRosterRegistry;
+
+    /**
+     * The maximum number of cached feeds.
+     */
+    @Value("${dutyroster.importer.service.ics.maxCachedFeeds:256}")
+    private int maxCachedFeeds = 256;
+
+    /**
+     * The cached feeds by assignee, ward and month in access order, the least recently used first.
+     */
+    private final Map<String, IcsFeed> feeds = new LinkedHashMap<String, IcsFeed>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, IcsFeed> eldest) {
+            return size() > maxCachedFeeds;
+        }
+    };
+
+    @Autowired
+    public DutyRosterIcsService(DutyRosterShiftService dutyRosterShiftService, DutyRosterRegistry dutyRosterRegistry) {
+        this.dutyRosterShiftService = dutyRosterShiftService;
+        this.dutyRosterRegistry = dutyRosterRegistry;
+    }
+
+    /**
+     * Writes all shifts of the given <code>dutyRosterMonths</code> as a single iCalendar to the given stream. The
+     * events are written as they are formatted, only a small buffer is held in memory.
+     *
+     * @param dutyRosterMonths the {@link dutyroster.importer.domain.DutyRosterMonth}s, null entries are skipped
+     * @param dtStamp          the DTSTAMP of the events, i.e. the time the iCalendar information has been created
+     * @param os               the stream to write to, it is flushed but not closed
+     * @throws IOException
+     */
+    public void writeIcs(Iterable<DutyRosterMonth> dutyRosterMonths, Date dtStamp, OutputStream os)
+            throws IOException {
+        IcsWriter writer = new IcsWriter(os);
+        writer.beginCalendar();
+        for (DutyRosterMonth dutyRosterMonth : dutyRosterMonths) {
+            if (dutyRosterMonth == null) {
+                continue;
+            }
+            for (DutyRosterShift dutyRosterShift : dutyRosterMonth.getAllDutyRosterDays()) {
+                writer.event(dutyRosterMonth.getSchedule(), dutyRosterShift, dtStamp);
+            }
+        }
+        writer.endCalendar();
+    }
+
+    /**
+     * Writes the shifts of the given assignee as iCalendar to the given stream.
+     *
+     * @param dutyRosterMonth the {@link dutyroster.importer.domain.DutyRosterMonth}
+     * @param assignee        the name of the personnel, see
+     *                        {@link DutyRosterShiftService#isAssignedTo(DutyRosterShift, String)}
+     * @param dtStamp         the DTSTAMP of the events
+     * @param os              the stream to write to, it is flushed but not closed
+     * @throws IOException
+     */
+    public void writeIcs(DutyRosterMonth dutyRosterMonth, String assignee, Date dtStamp, OutputStream os)
+            throws IOException {
+        IcsWriter writer = new IcsWriter(os);
+        writer.beginCalendar();
+        for (DutyRosterShift dutyRosterShift : dutyRosterMonth.getAllDutyRosterDays()) {
+            if (dutyRosterShiftService.isAssignedTo(dutyRosterShift, assignee)) {
+                writer.event(dutyRosterMonth.getSchedule(), dutyRosterShift, dtStamp);
+            }
+        }
+        writer.endCalendar();
+    }
+
+    /**
+     * Returns the iCalendar of the shifts of the given assignee in the registered roster of the default ward, see
+     * {@link #getAssigneeFeed(String, String, int, int)}.
+     *
+     * @param assignee the name of the personnel
+     * @param year     the year
+     * @param month    the zero based month (0=January)
+     * @return the feed or null, if no roster of the given month has been registered
+     * @throws IOException
+     */
+    public IcsFeed getAssigneeFeed(String assignee, int year, int month) throws IOException {
+        return getAssigneeFeed(assignee, null, year, month);
+    }
+
+    /**
+     * Returns the iCalendar of the shifts of the given assignee in the registered roster of the given ward and month.
+     * The feed is generated once and then taken from the cache, until a new roster of the ward and month is
+     * registered.
+     *
+     * @param assignee the name of the personnel
+     * @param ward     the name of the ward or null for the default ward
+     * @param year     the year
+     * @param month    the zero based month (0=January)
+     * @return the feed or null, if no roster of the given ward and month has been registered
+     * @throws IOException
+     */
+    public IcsFeed getAssigneeFeed(String assignee, String ward, int year, int month) throws IOException {
+        DutyRosterRegistry.Entry entry = dutyRosterRegistry.get(ward, year, month);
+        if (entry == null) {
+            return null;
+        }
+
+        String key = assignee.trim().toLowerCase(Locale.ROOT) + "_" + entry.getDutyRosterMonth().getSchedule().getName()
+                + "_" + year + "_" + month;
+        IcsFeed feed;
+        synchronized (feeds) {
+            feed = feeds.get(key);
+        }
+        if (feed != null && feed.getVersion() == entry.getVersion()) {
+            return feed;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeIcs(entry.getDutyRosterMonth(), assignee, entry.getRegistered(), out);
+        byte[] content = out.toByteArray();
+        feed = new IcsFeed(content, "\"" + DigestUtils.md5DigestAsHex(content) + "\"", entry.getVersion());
+        log.debug("generated feed [{}] of version [{}], etag [{}]", key, feed.getVersion(), feed.getEtag());
+
+        synchronized (feeds) {
+            feeds.put(key, feed);
+        }
+        return feed;
+    }
+
+    public void setMaxCachedFeeds(int maxCachedFeeds) {
+        this.maxCachedFeeds = maxCachedFeeds;
+    }
+
+    /**
+     * Writes iCalendar content lines: lines are terminated by CRLF and folded after 75 octets, text values are
+     * escaped.
+     */
+    private class IcsWriter {
+
+        private final Writer writer;
+
+        /**
+         * The number of octets written to the current line.
+         */
+        private int lineOctets;
+
+        IcsWriter(OutputStream os) {
+            this.writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+        }
+
+        void beginCalendar() throws IOException {
+            line("BEGIN:VCALENDAR");
+            line("VERSION:2.0");
+            line("PRODID:-//dutyroster//DutyRosterImporter//DE");
+            line("CALSCALE:GREGORIAN");
+            line("METHOD:PUBLISH");
+        }
+
+        void event(ShiftSchedule schedule, DutyRosterShift dutyRosterShift, Date dtStamp) throws IOException {
+            line("BEGIN:VEVENT");
+            line("UID:" + dutyRosterShift.getId() + UID_DOMAIN);
+            line("DTSTAMP:" + UTC_DATE_TIME.format(dtStamp));
+            line("DTSTART:" + UTC_DATE_TIME.format(dutyRosterShift.getFrom()));
+            line("DTEND:" + UTC_DATE_TIME.format(dutyRosterShift.getTo()));
+            if (dutyRosterShift.getSequence() > 0) {
+                line("SEQUENCE:" + dutyRosterShift.getSequence());
+            }
+            text("SUMMARY:", dutyRosterShiftService.createEventSummary(schedule, dutyRosterShift.getShift(),
+                    dutyRosterShift.getName()));
+            line("TRANSP:OPAQUE");
+            line("END:VEVENT");
+        }
+
+        void endCalendar() throws IOException {
+            line("END:VCALENDAR");
+            writer.flush();
+        }
+
+        /**
+         * Writes a property with a TEXT value, escaping backslashes, semicolons, commas and line breaks.
+         */
+        private void text(String name, String value) throws IOException {
+            StringBuilder sb = new StringBuilder(name.length() + value.length() + 8).append(name);
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '\\':
+                    case ';':
+                    case ',':
+                        sb.append('\\').append(c);
+                        break;
+                    case '\n':
+                        sb.append("\\n");
+                        break;
+                    case '\r':
+                        break;
+                    default:
+                        sb.append(c);
+                }
+            }
+            line(sb);
+        }
+
+        /**
+         * Writes a content line, folding it by inserting CRLF and a space before the 75th octet would be exceeded.
+         * Characters are never split.
+         */
+        private void line(CharSequence line) throws IOException {
+            lineOctets = 0;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                boolean surrogatePair = Character.isHighSurrogate(c) && i + 1 < line.length()
+                        && Character.isLowSurrogate(line.charAt(i + 1));
+                int octets = surrogatePair ? 4 : c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+                if (lineOctets + octets > MAX_LINE_OCTETS) {
+                    writer.write(CRLF);
+                    writer.write(' ');
+                    lineOctets = 1;
+                }
+                writer.write(c);
+                if (surrogatePair) {
+                    writer.write(line.charAt(++i));
+                }
+                lineOctets += octets;
+            }
+            writer.write(CRLF);
+        }
+    }
+}
@@ -3,16 +3,25 @@ package dutyroster.importer.service;
 import dutyroster.importer.domain.DutyRosterDiff;
 import dutyroster.importer.domain.DutyRosterMonth;
 import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.domain.ShiftSchedule;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.xmlbeans.XmlException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
 
 /**
  * @author apohl
@@ -27,12 +36,62 @@ public class DutyRosterImporterService {
 
     private DutyRosterDiffService diffService;
 
+    private ParsedDutyRosterCache parsedDutyRosterCache;
+
+    private DutyRosterRegistry dutyRosterRegistry;
+
+    /**
+     * If set and enabled, the calendar is read from the mirror instead of listing all events of the month.
+     */
+    private CalendarMirror calendarMirror;
+
+    /**
+     * Provides the schedules of the wards, only the {@link dutyroster.importer.domain.ShiftSchedule#DEFAULT} unless
+     * set.
+     */
+    private ShiftScheduleService shiftScheduleService = new ShiftScheduleService(new ShiftScheduleProperties());
+
+    /**
+     * The parser used for reading the docx, see {@link DutyRosterConverterService.ParserMode}.
+     */
+    @Value("${dutyroster.importer.service.converter.parserMode:XWPF}")
+    private DutyRosterConverterService.ParserMode parserMode = DutyRosterConverterService.ParserMode.XWPF;
+
+    /**
+     * If <code>true</code>, the calendar is diffed three-way based on the roster imported last (see
+     * {@link DutyRosterRegistry}), so manual edits of the calendar are preserved.
+     */
+    @Value("${dutyroster.importer.service.diff.threeWay:true}")
+    private boolean threeWayDiff = true;
+
     @Autowired
     public DutyRosterImporterService(DutyRosterConverterService converterService, GoogleCalendarService calendarService,
-                                     DutyRosterDiffService diffService) {
+                                     DutyRosterDiffService diffService, ParsedDutyRosterCache parsedDutyRosterCache,
+                                     DutyRosterRegistry dutyRosterRegistry) {
         this.converterService = converterService;
         this.calendarService = calendarService;
         this.diffService = diffService;
+        this.parsedDutyRosterCache = parsedDutyRosterCache;
+        this.dutyRosterRegistry = dutyRosterRegistry;
+    }
+
+    @Autowired(required = false)
+    public void setCalendarMirror(CalendarMirror calendarMirror) {
+        this.calendarMirror = calendarMirror;
+    }
+
+    @Autowired
+    public void setShiftScheduleService(ShiftScheduleService shiftScheduleService) {
+        this.shiftScheduleService = shiftScheduleService;
+    }
+
+    /**
+     * Imports a duty roster of the default ward, see
+     * {@link #convertAndImportDutyRoster(InputStream, String, boolean, boolean, Integer, Integer, String)}.
+     */
+    public DutyRosterDiff convertAndImportDutyRoster(InputStream is, String filename, boolean dryRun,
+                                                     boolean createCsv, Integer year, Integer month) {
+        return convertAndImportDutyRoster(is, filename, dryRun, createCsv, year, month, null);
     }
 
     /**
@@ -43,11 +102,12 @@ public class DutyRosterImporterService {
      *                  modified actually and the results will be sent via email to the configured recipients.
      * @param createCsv if <code>true</code>, a CSV file will be created from the input file. This file may be imported
      *                  manually to any Google calendar.
+     * @param ward      the ward of the roster, see {@link ShiftScheduleService#get(String)}, null for the default ward
      * @return the {@link dutyroster.importer.domain.DutyRosterDiff} build from the input file and the current Google
      * calendar
      */
     public DutyRosterDiff convertAndImportDutyRoster(InputStream is, String filename, boolean dryRun,
-                                                     boolean createCsv, Integer year, Integer month) {
+                                                     boolean createCsv, Integer year, Integer month, String ward) {
 
         if (!StringUtils.endsWith(filename, ".docx")) {
             log.error("filename [{}] not supported", filename);
@@ -68,11 +128,12 @@ public class DutyRosterImporterService {
             }
         }
 
-        log.info("importing [{}], year=[{}], month=[{}], dryRun=[{}], createCsv=[{}]", filename, year, month, dryRun,
-                createCsv);
+        ShiftSchedule schedule = shiftScheduleService.get(ward);
+        log.info("importing [{}], year=[{}], month=[{}], dryRun=[{}], createCsv=[{}], parserMode=[{}], ward=[{}]",
+                filename, year, month, dryRun, createCsv, parserMode, schedule.getName());
 
         try {
-            DutyRosterMonth newRoster = converterService.extractDutyRoster(is, year);
+            DutyRosterMonth newRoster = extractDutyRoster(is, year, schedule);
 
             if (createCsv) {
                 // for manual import:
@@ -80,16 +141,7 @@ public class DutyRosterImporterService {
             }
 
             // automatic import
-            calendarService.setMonth(month);
-            calendarService.setYear(year);
-            calendarService.setDryRun(dryRun);
-            DutyRosterMonth oldRoster = calendarService.readDutyRosterMonth();
-
-            DutyRosterDiff dutyRosterDiff = buildDiff(oldRoster, newRoster);
-            if (dutyRosterDiff.hasDifferences()) {
-                importDutyRosterIntoGoogleCalendar(dutyRosterDiff);
-            }
-            return dutyRosterDiff;
+            return importDutyRoster(newRoster, year, month, dryRun);
 
         } catch (Exception e) {
             log.error("exception in main: ", e);
@@ -99,49 +151,182 @@ public class DutyRosterImporterService {
     }
 
     /**
-     * Builds the before/after diff of the given {@link dutyroster.importer.domain.DutyRosterMonth}.
+     * Imports a parsed roster into the calendar of its ward. If enabled, the calendar is diffed three-way based on
+     * the roster of the ward imported last. Unless <code>dryRun</code>, the roster is registered as the base of the
+     * next import, see {@link DutyRosterRegistry}.
      *
-     * @param oldRoster the old duty roster
-     * @param newRoster the new duty roster
-     * @return the diff
+     * @param newRoster the parsed roster, its {@link ShiftSchedule} determines the ward
+     * @param year      the year
+     * @param month     the zero based month (0=January)
+     * @param dryRun    if <code>true</code>, the calendar is not modified and the roster is not registered
+     * @return the {@link dutyroster.importer.domain.DutyRosterDiff} of the roster and the Google calendar
+     * @throws Exception if the calendar can not be read or updated
      */
-    private DutyRosterDiff buildDiff(DutyRosterMonth oldRoster, DutyRosterMonth newRoster) {
-        DutyRosterDiff diff = diffService.diff(oldRoster, newRoster);
-        if (diff.hasDifferences()) {
-            log.info("We got changes: [{}] new events, [{}] events to be deleted, [{}] changed events",
-                    diff.getOnlyBefore().getAllDutyRosterDays().size(),
-                    diff.getOnlyAfter().getAllDutyRosterDays().size(),
-                    diff.getChanges().size());
-            log.debug(DutyRosterDiffService.toJson(diff));
-        } else {
-            log.info("no changes");
+    public DutyRosterDiff importDutyRoster(DutyRosterMonth newRoster, int year, int month, boolean dryRun)
+            throws Exception {
+        ShiftSchedule schedule = newRoster.getSchedule();
+        CalendarContext context = calendarService.createContext(year, month, dryRun, schedule,
+                shiftScheduleService.getCalendarId(schedule.getName()));
+        DutyRosterRegistry.Entry lastImport = threeWayDiff
+                ? dutyRosterRegistry.get(schedule.getName(), year, month) : null;
+        DutyRosterMonth base = lastImport != null ? lastImport.getDutyRosterMonth() : null;
+        DutyRosterDiff dutyRosterDiff = importDiff(context, readCalendar(context), newRoster, base);
+        if (!dryRun) {
+            dutyRosterRegistry.register(newRoster);
         }
-        return diff;
+        return dutyRosterDiff;
+    }
+
+    /**
+     * Parses the given docx of the default ward, see {@link #extractDutyRoster(InputStream, int, String)}.
+     *
+     * @param is   the input stream associated with the docx
+     * @param year the year of the roster
+     * @return the {@link dutyroster.importer.domain.DutyRosterMonth}, modifiable by the caller
+     * @throws IOException
+     * @throws XmlException
+     * @throws OpenXML4JException
+     */
+    public DutyRosterMonth extractDutyRoster(InputStream is, int year) throws IOException, XmlException,
+            OpenXML4JException {
+        return extractDutyRoster(is, year, (String) null);
     }
 
     /**
-     * Imports the changes from the given {@link dutyroster.importer.domain.DutyRosterDiff} into the configured Google
-     * calendar.
+     * Parses the given docx or takes the roster from the {@link ParsedDutyRosterCache}, if the same docx has been
+     * parsed before.
      *
-     * @param diff the diff to be imported. Contains new shifts, changed shifts and deleted shifts.
+     * @param is   the input stream associated with the docx
+     * @param year the year of the roster
+     * @param ward the ward of the roster, see {@link ShiftScheduleService#get(String)}, null for the default ward
+     * @return the {@link dutyroster.importer.domain.DutyRosterMonth}, modifiable by the caller
      * @throws IOException
-     * @throws GeneralSecurityException
+     * @throws XmlException
+     * @throws OpenXML4JException
      */
-    private void importDutyRosterIntoGoogleCalendar(DutyRosterDiff diff) throws IOException, GeneralSecurityException {
+    public DutyRosterMonth extractDutyRoster(InputStream is, int year, String ward) throws IOException,
+            XmlException, OpenXML4JException {
+        return extractDutyRoster(is, year, shiftScheduleService.get(ward));
+    }
 
-        DutyRosterMonth onlyBefore = diff.getOnlyBefore();
-        for (DutyRosterShift dutyRosterShift : onlyBefore.getAllDutyRosterDays()) {
-            calendarService.deleteEvent(dutyRosterShift);
+    private DutyRosterMonth extractDutyRoster(InputStream is, int year, ShiftSchedule schedule) throws IOException,
+            XmlException, OpenXML4JException {
+        byte[] docx = IOUtils.toByteArray(is);
+        String cacheKey = parsedDutyRosterCache.createKey(docx, year, schedule);
+        DutyRosterMonth dutyRosterMonth = parsedDutyRosterCache.get(cacheKey);
+        if (dutyRosterMonth == null) {
+            dutyRosterMonth = converterService.extractDutyRoster(new ByteArrayInputStream(docx), year, parserMode,
+                    schedule);
+            parsedDutyRosterCache.put(cacheKey, dutyRosterMonth);
+        } else {
+            log.info("taking the duty roster from the cache");
         }
+        log.debug("parsed duty roster cache: [{}] hits, [{}] misses", parsedDutyRosterCache.getHits(),
+                parsedDutyRosterCache.getMisses());
+        return dutyRosterMonth;
+    }
 
-        DutyRosterMonth onlyAfter = diff.getOnlyAfter();
-        for (DutyRosterShift dutyRosterShift : onlyAfter.getAllDutyRosterDays()) {
-            calendarService.addEvent(dutyRosterShift);
+    /**
+     * Reads the shifts of the given month from the calendar completely, before any of them is modified: listing the
+     * events page by page while the month is being modified may skip or repeat events. A month has about a hundred
+     * shifts, so they are held in memory. If the {@link CalendarMirror} is enabled and the import is into its
+     * calendar, it is synced and read instead of listing all events of the month.
+     *
+     * @param context the {@link CalendarContext} of the import
+     * @return the shifts in the calendar in ascending key order
+     * @throws Exception if the calendar can not be read
+     */
+    private List<DutyRosterShift> readCalendar(CalendarContext context) throws Exception {
+        Iterator<DutyRosterShift> shifts;
+        // the mirror is a copy of the calendar of the default ward only
+        if (calendarMirror != null && calendarMirror.isEnabled()
+                && Objects.equals(context.getCalendarId(), calendarService.getCalendarId())) {
+            calendarMirror.sync();
+            shifts = calendarService.toDutyRosterShifts(context.getSchedule(),
+                    calendarMirror.getEvents(context.getYear(), context.getMonth()).iterator());
+        } else {
+            shifts = calendarService.readDutyRosterShifts(context);
         }
+        List<DutyRosterShift> oldShifts = new ArrayList<>();
+        shifts.forEachRemaining(oldShifts::add);
+        return oldShifts;
+    }
 
-        for (DutyRosterDiff.Change change : diff.getChanges()) {
-            calendarService.updateEvent(change.getAfter());
+    /**
+     * Builds the before/after diff of the shifts read from the calendar and the given roster and imports each
+     * difference into the calendar as soon as it is found, i.e. while the roster is still being diffed. Moves within
+     * a day are imported as updates, see {@link DutyRosterDiffService.MoveDetector}. The mutations are batched, see
+     * {@link GoogleCalendarService#createEventBatch(CalendarContext)}, the last batch is sent at the end of the
+     * diff.
+     *
+     * @param context   the {@link CalendarContext} of the import
+     * @param oldShifts the shifts in the calendar in ascending key order, read completely, see
+     *                  {@link #readCalendar(CalendarContext)}
+     * @param newRoster the new duty roster
+     * @param base      the roster imported last or null, if given, only the differences due to changes of the
+     *                  roster are imported, see {@link DutyRosterDiffService.ThreeWayFilter}
+     * @return the diff
+     * @throws Exception if the calendar can not be updated
+     */
+    private DutyRosterDiff importDiff(CalendarContext context, List<DutyRosterShift> oldShifts,
+                                      DutyRosterMonth newRoster, DutyRosterMonth base) throws Exception {
+        DutyRosterDiffService.DiffCollector collector = new DutyRosterDiffService.DiffCollector(context.getYear(),
+                context.getMonth(), newRoster.getSchedule());
+        GoogleCalendarService.EventBatch eventBatch = calendarService.createEventBatch(context);
+        DutyRosterDiffService.MoveDetector<Exception> moveDetector = new DutyRosterDiffService.MoveDetector<>(
+                new DutyRosterDiffService.DiffListener<Exception>() {
+                    @Override
+                    public void onDeletion(DutyRosterShift before) throws Exception {
+                        collector.onDeletion(before);
+                        eventBatch.delete(before);
+                    }
+
+                    @Override
+                    public void onAddition(DutyRosterShift after) throws Exception {
+                        collector.onAddition(after);
+                        eventBatch.add(after);
+                    }
+
+                    @Override
+                    public void onChange(DutyRosterDiff.Change change) throws Exception {
+                        collector.onChange(change);
+                        eventBatch.update(change.getAfter());
+                    }
+
+                    @Override
+                    public void onEnd() throws Exception {
+                        eventBatch.flush();
+                    }
+                });
+        DutyRosterDiffService.ThreeWayFilter<Exception> threeWayFilter = null;
+        if (base != null) {
+            threeWayFilter = new DutyRosterDiffService.ThreeWayFilter<>(base.getAllDutyRosterDays(), moveDetector);
         }
+        diffService.diff(oldShifts.iterator(), newRoster.getAllDutyRosterDays().iterator(),
+                threeWayFilter != null ? threeWayFilter : moveDetector);
+
+        DutyRosterDiff diff = collector.getDiff();
+        diff.setSavedApiCalls(moveDetector.getMoves());
+        if (threeWayFilter != null) {
+            diff.setConflicts(threeWayFilter.getConflicts());
+            diff.setCalendarEdits(threeWayFilter.getCalendarEdits());
+            log.info("kept [{}] manual edits of the calendar, [{}] conflicting changes not imported",
+                    diff.getCalendarEdits(), diff.getConflicts().size());
+        }
+        if (diff.hasDifferences()) {
+            log.info("We got changes: [{}] new events, [{}] events to be deleted, [{}] changed events, [{}] api "
+                            + "calls saved by moves",
+                    diff.getOnlyBefore().size(),
+                    diff.getOnlyAfter().size(),
+                    diff.getChanges().size(),
+                    diff.getSavedApiCalls());
+            if (log.isDebugEnabled()) {
+                log.debug(diffService.toJson(diff));
+            }
+        } else {
+            log.info("no changes");
+        }
+        return diff;
     }
 
-}
+}
\ No newline at end of file
@@ -0,0 +1,174 @@
+package dutyroster.importer.service;
+
+import com.google.gson.stream.JsonWriter;
+import dutyroster.importer.domain.DutyRosterDiff;
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.domain.ShiftSchedule;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * Writes {@link dutyroster.importer.domain.DutyRosterDiff}s and {@link dutyroster.importer.domain.DutyRosterMonth}s
+ * as JSON. The shifts are written one by one to a {@link JsonWriter}, so a diff can be streamed into a response
+ * without rendering it into a string first. The service keeps no state and is thread-safe.
+ * <p>
+ * A shift is written as
+ * <pre>
+ * {"id":"2015_03_01_0","shift":"EARLY_SHIFT","label":"FD","name":"Tom","from":"2015-03-01T07:00:00+01:00",
+ *  "to":"2015-03-01T14:00:00+01:00","eventId":"...","sequence":0}
+ * </pre>
+ * dates are ISO-8601 date-times in the default time zone.
+ * </p>
+ */
+@Service
+public class DutyRosterJsonService {
+
+    /**
+     * Writes the given diff to the given writer. The writer is flushed, not closed.
+     *
+     * @param diff   the {@link dutyroster.importer.domain.DutyRosterDiff}
+     * @param writer the target, e.g. of a response
+     * @param pretty if <code>true</code>, the JSON is indented
+     * @throws IOException
+     */
+    public void writeDiff(DutyRosterDiff diff, Writer writer, boolean pretty) throws IOException {
+        JsonWriter out = createJsonWriter(writer, pretty);
+        writeDiff(out, diff);
+        out.flush();
+    }
+
+    /**
+     * Writes the given roster to the given writer. The writer is flushed, not closed.
+     *
+     * @param dutyRosterMonth the {@link dutyroster.importer.domain.DutyRosterMonth}
+     * @param writer          the target
+     * @param pretty          if <code>true</code>, the JSON is indented
+     * @throws IOException
+     */
+    public void writeMonth(DutyRosterMonth dutyRosterMonth, Writer writer, boolean pretty) throws IOException {
+        JsonWriter out = createJsonWriter(writer, pretty);
+        writeMonth(out, dutyRosterMonth);
+        out.flush();
+    }
+
+    /**
+     * @param diff   the {@link dutyroster.importer.domain.DutyRosterDiff}
+     * @param pretty if <code>true</code>, the JSON is indented
+     * @return the JSON of the given diff
+     */
+    public String toJson(DutyRosterDiff diff, boolean pretty) {
+        StringWriter writer = new StringWriter();
+        try {
+            writeDiff(diff, writer, pretty);
+        } catch (IOException e) {
+            // a StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    private static JsonWriter createJsonWriter(Writer writer, boolean pretty) {
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        jsonWriter.setSerializeNulls(true);
+        if (pretty) {
+            jsonWriter.setIndent("  ");
+        }
+        return jsonWriter;
+    }
+
+    private static void writeDiff(JsonWriter out, DutyRosterDiff diff) throws IOException {
+        if (diff == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("year").value(diff.getOnlyAfter().getYear());
+        out.name("month").value(diff.getOnlyAfter().getMonth());
+        ShiftSchedule schedule = diff.getOnlyAfter().getSchedule();
+        out.name("deletions");
+        writeShifts(out, diff.getDeletions(), schedule);
+        out.name("additions");
+        writeShifts(out, diff.getAdditions(), schedule);
+        out.name("changes");
+        writeChanges(out, diff.getChanges(), schedule);
+        out.name("conflicts");
+        writeChanges(out, diff.getConflicts(), schedule);
+        out.name("savedApiCalls").value(diff.getSavedApiCalls());
+        out.name("calendarEdits").value(diff.getCalendarEdits());
+        out.endObject();
+    }
+
+    private static void writeMonth(JsonWriter out, DutyRosterMonth month) throws IOException {
+        if (month == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("year").value(month.getYear());
+        out.name("month").value(month.getMonth());
+        out.name("shifts");
+        writeShifts(out, month.getAllDutyRosterDays(), month.getSchedule());
+        out.endObject();
+    }
+
+    private static void writeShift(JsonWriter out, DutyRosterShift shift, ShiftSchedule schedule)
+            throws IOException {
+        if (shift == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(shift.getId());
+        out.name("shift").value(shift.getShift().name());
+        out.name("label").value(schedule.getLabel(shift.getShift()));
+        out.name("name").value(shift.getName());
+        out.name("from");
+        writeDate(out, shift.getFrom());
+        out.name("to");
+        writeDate(out, shift.getTo());
+        out.name("eventId").value(shift.getEventId());
+        out.name("sequence").value(shift.getSequence());
+        out.endObject();
+    }
+
+    private static void writeDate(JsonWriter out, Date date) throws IOException {
+        if (date == null) {
+            out.nullValue();
+        } else {
+            out.value(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(
+                    Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault())));
+        }
+    }
+
+    private static void writeShifts(JsonWriter out, Collection<DutyRosterShift> shifts, ShiftSchedule schedule)
+            throws IOException {
+        out.beginArray();
+        for (DutyRosterShift shift : shifts) {
+            writeShift(out, shift, schedule);
+        }
+        out.endArray();
+    }
+
+    private static void writeChanges(JsonWriter out, Collection<DutyRosterDiff.Change> changes,
+                                     ShiftSchedule schedule) throws IOException {
+        out.beginArray();
+        for (DutyRosterDiff.Change change : changes) {
+            out.beginObject();
+            out.name("before");
+            writeShift(out, change.getBefore(), schedule);
+            out.name("after");
+            writeShift(out, change.getAfter(), schedule);
+            out.endObject();
+        }
+        out.endArray();
+    }
+}
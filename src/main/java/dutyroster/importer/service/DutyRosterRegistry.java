@@ -0,0 +1,392 @@
+package dutyroster.importer.service;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dutyroster.importer.domain.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the latest imported {@link dutyroster.importer.domain.DutyRosterMonth} of each ward and month in memory, so it
+ * can be served (e.g. as iCalendar feed) without reading the Google calendar. Only imports actually carried out (no
+ * dry runs) are registered. The ward of a roster is the name of its {@link ShiftSchedule}. The shifts of the
+ * registered rosters are indexed by time per ward, see {@link #getShiftIndex(String)}.
+ * <p>
+ * The registered rosters are the base of the three-way diff of the next import of the same ward, see
+ * {@link DutyRosterDiffService#diff(DutyRosterMonth, DutyRosterMonth, DutyRosterMonth)}. So they survive restarts,
+ * each one is saved as JSON to a file per ward and month in the configured directory. If no directory is configured,
+ * the rosters are kept in memory only and the first import of a month after a restart is a two-way diff.
+ * </p>
+ */
+@Service
+@Slf4j
+public class DutyRosterRegistry {
+
+    /**
+     * A registered roster.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+
+        /**
+         * The roster, must not be modified.
+         */
+        private DutyRosterMonth dutyRosterMonth;
+
+        /**
+         * The time of the registration.
+         */
+        private Date registered;
+
+        /**
+         * Increases with every registration, of whatever ward and month.
+         */
+        private long version;
+    }
+
+    private static final String FILE_PREFIX = "roster_";
+
+    private static final String FILE_SUFFIX = ".json";
+
+    /**
+     * The directory of the saved rosters, empty for no saving.
+     */
+    @Setter
+    @Value("${dutyroster.importer.service.registry.directory:}")
+    private String directory = "";
+
+    /**
+     * Resolves the schedule of a saved roster.
+     */
+    private ShiftScheduleService shiftScheduleService = new ShiftScheduleService(new ShiftScheduleProperties());
+
+    private final AtomicLong versions = new AtomicLong();
+
+    /**
+     * The registered rosters by {@link #key(String, int, int)}.
+     */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * The shifts of the registered rosters by ward, the index of a ward is rebuilt with every registration of the
+     * ward.
+     */
+    private final Map<String, ShiftIntervalIndex> shiftIndexes = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded;
+
+    @Autowired
+    public void setShiftScheduleService(ShiftScheduleService shiftScheduleService) {
+        this.shiftScheduleService = shiftScheduleService;
+    }
+
+    /**
+     * Registers a copy of the given roster, replacing the roster registered for the same ward and month before, and
+     * saves it. A roster which can not be saved is registered nonetheless, the import has been carried out already.
+     *
+     * @param dutyRosterMonth the imported roster
+     * @return the new entry
+     */
+    public synchronized Entry register(DutyRosterMonth dutyRosterMonth) {
+        load();
+        String ward = dutyRosterMonth.getSchedule().getName();
+        int year = dutyRosterMonth.getYear();
+        int month = dutyRosterMonth.getMonth();
+        Entry entry = new Entry(dutyRosterMonth.copy(), new Date(), versions.incrementAndGet());
+        entries.put(key(ward, year, month), entry);
+        shiftIndexes.put(ward, createShiftIndex(ward));
+        log.info("registered duty roster of ward [{}], year/month [{}/{}], version [{}]", ward, year, month,
+                entry.getVersion());
+        try {
+            save(entry);
+        } catch (IOException e) {
+            log.warn("can not save duty roster of ward [{}], year/month [{}/{}]", ward, year, month, e);
+        }
+        return entry;
+    }
+
+    /**
+     * @param year  the year
+     * @param month the zero based month (0=January)
+     * @return the entry of the default ward of the given month or null, if no roster of this month has been imported
+     */
+    public Entry get(int year, int month) {
+        return get(null, year, month);
+    }
+
+    /**
+     * @param ward  the name of the ward or null for the default ward
+     * @param year  the year
+     * @param month the zero based month (0=January)
+     * @return the entry of the given ward and month or null, if no roster of this ward and month has been imported
+     */
+    public Entry get(String ward, int year, int month) {
+        load();
+        return entries.get(key(getWard(ward), year, month));
+    }
+
+    /**
+     * @return the index of the shifts of the default ward, see {@link #getShiftIndex(String)}
+     */
+    public ShiftIntervalIndex getShiftIndex() {
+        return getShiftIndex(null);
+    }
+
+    /**
+     * @param ward the name of the ward or null for the default ward
+     * @return the index of the shifts of all registered rosters of the ward, a snapshot not affected by later
+     * registrations
+     */
+    public ShiftIntervalIndex getShiftIndex(String ward) {
+        load();
+        return shiftIndexes.getOrDefault(getWard(ward), ShiftIntervalIndex.EMPTY);
+    }
+
+    /**
+     * Indexes the shifts of all entries of the given ward. A shift rolled over into another month (e.g. the first
+     * days of the next month in the last row of a roster) is taken from the roster of its own month, if that is
+     * registered.
+     */
+    private ShiftIntervalIndex createShiftIndex(String ward) {
+        Map<Long, DutyRosterShift> shiftsByKey = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            DutyRosterMonth dutyRosterMonth = entry.getDutyRosterMonth();
+            if (!dutyRosterMonth.getSchedule().getName().equals(ward)) {
+                continue;
+            }
+            long monthKey = ShiftKey.ofMonth(dutyRosterMonth.getYear(), dutyRosterMonth.getMonth());
+            for (DutyRosterShift shift : dutyRosterMonth.getAllDutyRosterDays()) {
+                if (ShiftKey.ofMonth(shift.getKey()) == monthKey) {
+                    shiftsByKey.put(shift.getKey(), shift);
+                } else {
+                    shiftsByKey.putIfAbsent(shift.getKey(), shift);
+                }
+            }
+        }
+        return ShiftIntervalIndex.of(shiftsByKey.values());
+    }
+
+    /**
+     * Loads the saved rosters once, if any. A roster which can not be read, e.g. of a ward no longer configured, is
+     * skipped, the next import of its month is a two-way diff. Of two files of the same ward and month (a file saved
+     * before the files were named by ward and a newer one), the later registration is taken.
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            loaded = true;
+            Path dir = getDirectory();
+            if (dir == null || !Files.isDirectory(dir)) {
+                return;
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+                for (Path file : files) {
+                    try {
+                        Entry entry = read(file);
+                        DutyRosterMonth dutyRosterMonth = entry.getDutyRosterMonth();
+                        entries.merge(key(dutyRosterMonth.getSchedule().getName(), dutyRosterMonth.getYear(),
+                                dutyRosterMonth.getMonth()), entry,
+                                (other, read) -> read.getVersion() > other.getVersion() ? read : other);
+                        versions.accumulateAndGet(entry.getVersion(), Math::max);
+                    } catch (IOException | RuntimeException e) {
+                        log.warn("can not read duty roster [{}], skipping it", file, e);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("can not list the saved duty rosters in [{}]", dir, e);
+            }
+            for (Entry entry : entries.values()) {
+                String ward = entry.getDutyRosterMonth().getSchedule().getName();
+                shiftIndexes.computeIfAbsent(ward, this::createShiftIndex);
+            }
+            log.info("loaded [{}] duty rosters from [{}]", entries.size(), dir);
+        }
+    }
+
+    /**
+     * Saves the given entry, replacing the file of its ward and month saved before at once.
+     *
+     * @throws IOException
+     */
+    private void save(Entry entry) throws IOException {
+        Path dir = getDirectory();
+        if (dir == null) {
+            return;
+        }
+        DutyRosterMonth dutyRosterMonth = entry.getDutyRosterMonth();
+        String ward = dutyRosterMonth.getSchedule().getName().replaceAll("[^A-Za-z0-9.-]", "_");
+        Path file = dir.resolve(String.format("%s%s_%04d_%02d%s", FILE_PREFIX, ward, dutyRosterMonth.getYear(),
+                dutyRosterMonth.getMonth() + 1, FILE_SUFFIX));
+        Files.createDirectories(dir);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (JsonWriter out = new JsonWriter(Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))) {
+            out.beginObject();
+            out.name("year").value(dutyRosterMonth.getYear());
+            out.name("month").value(dutyRosterMonth.getMonth());
+            out.name("schedule").value(dutyRosterMonth.getSchedule().getName());
+            out.name("registered").value(entry.getRegistered().getTime());
+            out.name("version").value(entry.getVersion());
+            out.name("shifts").beginArray();
+            for (DutyRosterShift shift : dutyRosterMonth.getAllDutyRosterDays()) {
+                out.beginObject();
+                out.name("key").value(shift.getKey());
+                out.name("shift").value(shift.getShift().name());
+                out.name("name").value(shift.getName());
+                out.name("from").value(shift.getFrom() != null ? shift.getFrom().getTime() : null);
+                out.name("to").value(shift.getTo() != null ? shift.getTo().getTime() : null);
+                out.name("eventId").value(shift.getEventId());
+                out.name("sequence").value(shift.getSequence());
+                out.endObject();
+            }
+            out.endArray();
+            out.endObject();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads an entry saved by {@link #save(Entry)}.
+     *
+     * @throws IOException
+     */
+    private Entry read(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            JsonReader in = new JsonReader(reader);
+            int year = 0;
+            int month = 0;
+            ShiftSchedule schedule = null;
+            long registered = 0;
+            long version = 0;
+            DutyRosterMonth dutyRosterMonth = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "year":
+                        year = in.nextInt();
+                        break;
+                    case "month":
+                        month = in.nextInt();
+                        break;
+                    case "schedule":
+                        schedule = shiftScheduleService.get(in.nextString());
+                        break;
+                    case "registered":
+                        registered = in.nextLong();
+                        break;
+                    case "version":
+                        version = in.nextLong();
+                        break;
+                    case "shifts":
+                        // written after year, month and schedule
+                        dutyRosterMonth = new DutyRosterMonth(year, month, schedule);
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            dutyRosterMonth.addDutyRosterShift(readShift(in));
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            if (dutyRosterMonth == null) {
+                throw new IOException("no shifts in [" + file + "]");
+            }
+            return new Entry(dutyRosterMonth, new Date(registered), version);
+        }
+    }
+
+    private static DutyRosterShift readShift(JsonReader in) throws IOException {
+        long key = 0;
+        Shift shift = null;
+        String name = null;
+        Date from = null;
+        Date to = null;
+        String eventId = null;
+        int sequence = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "key":
+                    key = in.nextLong();
+                    break;
+                case "shift":
+                    shift = Shift.valueOf(in.nextString());
+                    break;
+                case "name":
+                    name = in.nextString();
+                    break;
+                case "from":
+                    from = new Date(in.nextLong());
+                    break;
+                case "to":
+                    to = new Date(in.nextLong());
+                    break;
+                case "eventId":
+                    eventId = in.nextString();
+                    break;
+                case "sequence":
+                    sequence = in.nextInt();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        DutyRosterShift dutyRosterShift = new DutyRosterShift(key, from, to, name, shift);
+        dutyRosterShift.setEventId(eventId);
+        dutyRosterShift.setSequence(sequence);
+        return dutyRosterShift;
+    }
+
+    /**
+     * @return the directory of the saved rosters or null, if the rosters are not saved
+     */
+    private Path getDirectory() {
+        return StringUtils.isEmpty(directory) ? null : Paths.get(directory).toAbsolutePath();
+    }
+
+    /**
+     * @return the name of the given ward, the default ward if blank
+     */
+    private String getWard(String ward) {
+        return StringUtils.isBlank(ward) ? shiftScheduleService.getDefault().getName() : ward.trim();
+    }
+
+    private static String key(String ward, int year, int month) {
+        return ward + "_" + (year * 12 + month);
+    }
+}
@@ -6,6 +6,7 @@ package dutyroster.importer.service;
 import dutyroster.importer.domain.DutyRosterMonth;
 import dutyroster.importer.domain.DutyRosterShift;
 import dutyroster.importer.domain.Shift;
+import dutyroster.importer.domain.ShiftSchedule;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -27,6 +28,8 @@ public class DutyRosterShiftService {
 
     private static final String SEPARATOR_FOR_EVENT_SUMMARY = ": ";
 
+    private static final String SEPARATOR_FOR_ASSIGNEES = "/";
+
     /**
      * @param set   the set of {@link dutyroster.importer.domain.DutyRosterShift} to search within
      * @param shift the shift to find
@@ -50,17 +53,38 @@ public class DutyRosterShiftService {
     /**
      * @param shift the {@link dutyroster.importer.domain.Shift}
      * @param name  the name of the personnel
-     * @return the event summary, e.g. "FD Jane"
+     * @return the event summary in the {@link dutyroster.importer.domain.ShiftSchedule#DEFAULT} schedule, see
+     * {@link #createEventSummary(ShiftSchedule, Shift, String)}
      */
     public String createEventSummary(Shift shift, String name) {
-        return shift.getLabel() + SEPARATOR_FOR_EVENT_SUMMARY + name;
+        return createEventSummary(ShiftSchedule.DEFAULT, shift, name);
+    }
+
+    /**
+     * @param schedule the {@link dutyroster.importer.domain.ShiftSchedule} of the ward
+     * @param shift    the {@link dutyroster.importer.domain.Shift}
+     * @param name     the name of the personnel
+     * @return the event summary, e.g. "FD Jane"
+     */
+    public String createEventSummary(ShiftSchedule schedule, Shift shift, String name) {
+        return schedule.getLabel(shift) + SEPARATOR_FOR_EVENT_SUMMARY + name;
     }
 
     /**
      * @param summary an event summary, e.g. "SD: Benny"
-     * @return the tokens of the summary or null, if the summary label (e.g. "SD") is not parsable (e.g. "Krank! SD")
+     * @return the tokens of the summary in the {@link dutyroster.importer.domain.ShiftSchedule#DEFAULT} schedule, see
+     * {@link #parseEventSummary(ShiftSchedule, String)}
      */
     public String[] parseEventSummary(String summary) {
+        return parseEventSummary(ShiftSchedule.DEFAULT, summary);
+    }
+
+    /**
+     * @param schedule the {@link dutyroster.importer.domain.ShiftSchedule} of the ward
+     * @param summary  an event summary, e.g. "SD: Benny"
+     * @return the tokens of the summary or null, if the summary label (e.g. "SD") is not parsable (e.g. "Krank! SD")
+     */
+    public String[] parseEventSummary(ShiftSchedule schedule, String summary) {
         if (StringUtils.isEmpty(summary) || !StringUtils.contains(summary, SEPARATOR_FOR_EVENT_SUMMARY)) {
             log.error("can not parse event [{}]", summary);
             return null;
@@ -70,7 +94,7 @@ public class DutyRosterShiftService {
 
         // throws IllegalArgumentException if fails
         try {
-            Shift.parseLabel(split[0]);
+            schedule.parseLabel(split[0]);
         } catch (IllegalArgumentException e) {
             log.error("can not parse event [{}]", summary);
             return null;
@@ -79,6 +103,25 @@ public class DutyRosterShiftService {
         return split;
     }
 
+    /**
+     * @param dutyRosterShift the {@link dutyroster.importer.domain.DutyRosterShift}
+     * @param assignee        the name of a personnel, e.g. "Tom"
+     * @return true, if the given personnel is in charge of the shift, either alone (e.g. "Tom") or together with
+     * others (e.g. "Judy/Tom"). The names are compared ignoring case.
+     */
+    public boolean isAssignedTo(DutyRosterShift dutyRosterShift, String assignee) {
+        if (dutyRosterShift.getName() == null || StringUtils.isBlank(assignee)) {
+            return false;
+        }
+
+        for (String name : StringUtils.split(dutyRosterShift.getName(), SEPARATOR_FOR_ASSIGNEES)) {
+            if (StringUtils.equalsIgnoreCase(name.trim(), assignee.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * @param dutyRosterMonth the {@link dutyroster.importer.domain.DutyRosterMonth} to search within
      * @param shift           the {@link dutyroster.importer.domain.Shift} to find
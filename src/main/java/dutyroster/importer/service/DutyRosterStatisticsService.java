@@ -55,8 +55,8 @@ public class DutyRosterStatisticsService {
     }
 
     private void doStatistics(int day, DutyRosterMonth month, DutyRosterStatistics statistics) {
-        Set<DutyRosterShift> dutyRosterShifts = month.getDutyRosterDays().get(day);
-        if (dutyRosterShifts == null) {
+        Set<DutyRosterShift> dutyRosterShifts = month.getDutyRosterShifts(day);
+        if (dutyRosterShifts.isEmpty()) {
             log.info("[doStatistics] no shifts in day [{}] in month [{}]", day, month);
             return;
         }
@@ -4,6 +4,7 @@ import dutyroster.importer.domain.DutyRosterDiff;
 import dutyroster.importer.domain.DutyRosterShift;
 import dutyroster.importer.domain.DutyRosterStatistics;
 import dutyroster.importer.domain.ShiftAssignee;
+import dutyroster.importer.domain.ShiftSchedule;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.mail.Email;
 import org.apache.commons.mail.EmailException;
@@ -117,6 +118,7 @@ public class EmailService {
 
         SimpleDateFormat sdfDate = new SimpleDateFormat("dd.MM.");
         SimpleDateFormat sdfTime = new SimpleDateFormat("HH:mm");
+        ShiftSchedule schedule = diff.getOnlyAfter().getSchedule();
         StringBuilder sb = new StringBuilder();
 
         if (diff.hasDeletions()) {
@@ -126,7 +128,7 @@ public class EmailService {
                 sb.append("Datum/Schicht: ") //
                         .append(sdfDate.format(dutyRosterShift.getFrom())) //
                         .append(" ")
-                        .append(dutyRosterShiftService.createEventSummary(dutyRosterShift.getShift(), dutyRosterShift.getName())) //
+                        .append(dutyRosterShiftService.createEventSummary(schedule, dutyRosterShift.getShift(), dutyRosterShift.getName())) //
                         .append(" von ") //
                         .append(sdfTime.format(dutyRosterShift.getFrom())) //
                         .append(" bis ") //
@@ -142,7 +144,7 @@ public class EmailService {
                 sb.append("Datum/Schicht: ") //
                         .append(sdfDate.format(dutyRosterShift.getFrom())) //
                         .append(" ")
-                        .append(dutyRosterShiftService.createEventSummary(dutyRosterShift.getShift(), dutyRosterShift.getName())) //
+                        .append(dutyRosterShiftService.createEventSummary(schedule, dutyRosterShift.getShift(), dutyRosterShift.getName())) //
                         .append(" von ") //
                         .append(sdfTime.format(dutyRosterShift.getFrom())) //
                         .append(" bis ") //
@@ -158,7 +160,7 @@ public class EmailService {
                 sb.append("Datum/Schicht vorher:  ") //
                         .append(sdfDate.format(change.getBefore().getFrom())) //
                         .append(" ") //
-                        .append(dutyRosterShiftService.createEventSummary(change.getBefore().getShift(), change.getBefore().getName())) //
+                        .append(dutyRosterShiftService.createEventSummary(schedule, change.getBefore().getShift(), change.getBefore().getName())) //
                         .append(" von ") //
                         .append(sdfTime.format(change.getBefore().getFrom())) //
                         .append(" bis ") //
@@ -168,7 +170,7 @@ public class EmailService {
                 sb.append("Datum/Schicht nachher: ") //
                         .append(sdfDate.format(change.getAfter().getFrom())) //
                         .append(" ") //
-                        .append(dutyRosterShiftService.createEventSummary(change.getAfter().getShift(), change.getAfter().getName())) //
+                        .append(dutyRosterShiftService.createEventSummary(schedule, change.getAfter().getShift(), change.getAfter().getName())) //
                         .append(" von ") //
                         .append(sdfTime.format(change.getAfter().getFrom())) //
                         .append(" bis ") //
@@ -178,6 +180,21 @@ public class EmailService {
             }
         }
 
+        if (diff.hasConflicts()) {
+            sb.append("\n-------------------------------------------\n");
+            sb.append("Folgende Schichten wurden im Kalender von Hand geändert und nicht überschrieben:\n\n");
+            for (DutyRosterDiff.Change conflict : diff.getConflicts()) {
+                DutyRosterShift dutyRosterShift = conflict.getAfter() != null ? conflict.getAfter()
+                        : conflict.getBefore();
+                sb.append("Datum/Schicht laut Dienstplan: ") //
+                        .append(sdfDate.format(dutyRosterShift.getFrom())) //
+                        .append(" ") //
+                        .append(conflict.getAfter() != null ? dutyRosterShiftService.createEventSummary(
+                                schedule, conflict.getAfter().getShift(), conflict.getAfter().getName()) : "-") //
+                        .append("\n");
+            }
+        }
+
         return sb.toString();
     }
 
@@ -1,7 +1,13 @@
 package dutyroster.importer.service;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpHeaders;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.client.util.DateTime;
 import com.google.api.client.util.SecurityUtils;
@@ -10,14 +16,16 @@ import com.google.api.services.calendar.model.Event;
 import com.google.api.services.calendar.model.EventDateTime;
 import com.google.api.services.calendar.model.Events;
 import com.google.api.services.calendar.model.Settings;
+import dutyroster.importer.domain.DutyRosterDiff;
 import dutyroster.importer.domain.DutyRosterMonth;
 import dutyroster.importer.domain.DutyRosterShift;
 import dutyroster.importer.domain.Shift;
-import dutyroster.importer.util.DateUtil;
+import dutyroster.importer.domain.ShiftKey;
+import dutyroster.importer.domain.ShiftSchedule;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.Validate;
-import org.apache.commons.lang3.time.DateUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,13 +33,20 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Reads and writes events from and to a Google calendar. The calendar must have been authorized for requests. See
  * <a href="https://developers.google.com/google-apps/calendar/auth">Authorizing Requests to the Google Calendar API</a>.
+ * <p>
+ * The service keeps no state of an import, the calendar, month and mode of an import are passed as
+ * {@link CalendarContext} to each call. So imports may run concurrently, sharing the client.
+ * </p>
  *
  * @author apohl
  */
@@ -39,6 +54,26 @@ import java.util.*;
 @Slf4j
 public class GoogleCalendarService {
 
+    /**
+     * The maximum number of requests the Google calendar api accepts in a batch request.
+     */
+    public static final int MAX_BATCH_SIZE = 50;
+
+    /**
+     * The maximum number of events the Google calendar api returns per page.
+     */
+    public static final int MAX_PAGE_SIZE = 2500;
+
+    /**
+     * The fields of the listed events read by {@link #toDutyRosterShift(ShiftSchedule, Event)}, all other fields are not requested.
+     */
+    static final String EVENT_FIELDS = "nextPageToken,items(id,summary,start,end,sequence)";
+
+    /**
+     * The fields of the events listed by {@link #listChangedEvents(String)}, including the status of cancelled events.
+     */
+    static final String SYNC_FIELDS = "nextPageToken,nextSyncToken,items(id,status,summary,start,end,sequence)";
+
     @Value(value = "${dutyroster.importer.service.calendar.calendarId}")
     private String calendarId;
 
@@ -51,37 +86,57 @@ public class GoogleCalendarService {
     @Value(value = "${dutyroster.importer.service.calendar.application}")
     private String applicationId;
 
-    private int year;
+    /**
+     * The number of mutations sent per batch request by an {@link EventBatch}, at most {@link #MAX_BATCH_SIZE}. 0 or
+     * 1 sends a request per mutation.
+     */
+    @Value("${dutyroster.importer.service.calendar.batchSize:0}")
+    private int batchSize;
 
-    private int month;
+    /**
+     * The number of events listed per page, at most {@link #MAX_PAGE_SIZE}.
+     */
+    @Value("${dutyroster.importer.service.calendar.pageSize:250}")
+    private int pageSize = 250;
 
     private Calendar client;
 
-    private boolean dryRun;
-
     private DutyRosterShiftService dutyRosterShiftService;
 
+    /**
+     * Carries out the mutations not sent as batch request concurrently, if set. Otherwise they are carried out one
+     * after another.
+     */
+    private CalendarPushExecutor pushExecutor;
+
     @Autowired
     public GoogleCalendarService(DutyRosterShiftService dutyRosterShiftService) {
         this.dutyRosterShiftService = dutyRosterShiftService;
     }
 
+    @Autowired(required = false)
+    public void setPushExecutor(CalendarPushExecutor pushExecutor) {
+        this.pushExecutor = pushExecutor;
+    }
+
     /**
      * Deletes an event from the Google calendar. The event is identified by the
      * {@link dutyroster.importer.domain.DutyRosterShift#getEventId()}.
      * <p>
-     * If {@link #dryRun} is <code>true</code>, the
+     * If {@link CalendarContext#isDryRun()} is <code>true</code>, the
      * action is not carried out actually but only logged.
      * </p>
      *
-     * @param shift the {@link dutyroster.importer.domain.DutyRosterShift} corresponding with the event
+     * @param context the {@link CalendarContext} of the import
+     * @param shift   the {@link dutyroster.importer.domain.DutyRosterShift} corresponding with the event
      * @throws IOException
      * @throws GeneralSecurityException
      */
-    public void deleteEvent(DutyRosterShift shift) throws IOException, GeneralSecurityException {
-        log.debug("[dryRun=[{}] deleting event [{}]", dryRun, shift.getEventId());
-        if (!dryRun) {
-            getClient().events().delete(calendarId, shift.getEventId()).execute();
+    public void deleteEvent(CalendarContext context, DutyRosterShift shift) throws IOException,
+            GeneralSecurityException {
+        log.debug("[dryRun=[{}] deleting event [{}]", context.isDryRun(), shift.getEventId());
+        if (!context.isDryRun()) {
+            getClient().events().delete(context.getCalendarId(), shift.getEventId()).execute();
         }
     }
 
@@ -89,20 +144,41 @@ public class GoogleCalendarService {
      * Adds an event to the Google calendar. The event is identified by the
      * {@link dutyroster.importer.domain.DutyRosterShift#getEventId()}.
      * <p>
-     * If {@link #dryRun} is <code>true</code>, the
+     * If {@link CalendarContext#isDryRun()} is <code>true</code>, the
      * action is not carried out actually but only logged.
      * </p>
      *
-     * @param shift the {@link dutyroster.importer.domain.DutyRosterShift} corresponding with the event
+     * @param context the {@link CalendarContext} of the import
+     * @param shift   the {@link dutyroster.importer.domain.DutyRosterShift} corresponding with the event
      * @return the outcome of the api operation or null if <code>dryRun</code>
      * @throws IOException
      * @throws GeneralSecurityException
      */
-    public Event addEvent(DutyRosterShift shift) throws IOException, GeneralSecurityException {
-        Event event = createEvent(shift);
-        log.debug("[dryRun=[{}], adding event [{}]", dryRun, event);
-        if (!dryRun) {
-            Event result = getClient().events().insert(calendarId, event).execute();
+    public Event addEvent(CalendarContext context, DutyRosterShift shift) throws IOException,
+            GeneralSecurityException {
+        return addEvent(context, shift, null);
+    }
+
+    /**
+     * Adds an event with the given id to the Google calendar, see {@link #addEvent(CalendarContext, DutyRosterShift)}.
+     *
+     * @param context the {@link CalendarContext} of the import
+     * @param shift   the {@link dutyroster.importer.domain.DutyRosterShift} corresponding with the event
+     * @param eventId the id of the new event, e.g. created by {@link #createEventId(DutyRosterShift)}, or null for
+     *                the {@link dutyroster.importer.domain.DutyRosterShift#getEventId()}
+     * @return the outcome of the api operation or null if <code>dryRun</code>
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public Event addEvent(CalendarContext context, DutyRosterShift shift, String eventId) throws IOException,
+            GeneralSecurityException {
+        Event event = createEvent(context, shift);
+        if (eventId != null) {
+            event.setId(eventId);
+        }
+        log.debug("[dryRun=[{}], adding event [{}]", context.isDryRun(), event);
+        if (!context.isDryRun()) {
+            Event result = getClient().events().insert(context.getCalendarId(), event).execute();
             return result;
         } else {
             return null;
@@ -114,26 +190,129 @@ public class GoogleCalendarService {
      * Updates an event of the Google calendar. The event is identified by the
      * {@link dutyroster.importer.domain.DutyRosterShift#getEventId()}.
      * <p>
-     * If {@link #dryRun} is <code>true</code>, the
+     * If {@link CalendarContext#isDryRun()} is <code>true</code>, the
      * action is not carried out actually but only logged.
      * </p>
      *
-     * @param shift the {@link dutyroster.importer.domain.DutyRosterShift} corresponding with the event
+     * @param context the {@link CalendarContext} of the import
+     * @param shift   the {@link dutyroster.importer.domain.DutyRosterShift} corresponding with the event
      * @return the outcome of the api operation or null if <code>dryRun</code>
      * @throws IOException
      * @throws GeneralSecurityException
      */
-    public Event updateEvent(DutyRosterShift shift) throws IOException, GeneralSecurityException {
-        Event event = createEvent(shift);
-        log.info("[dryRun=[{}] updating event [{}]", dryRun, event);
-        if (!dryRun) {
-            Event result = getClient().events().update(calendarId, shift.getEventId(), event).execute();
+    public Event updateEvent(CalendarContext context, DutyRosterShift shift) throws IOException,
+            GeneralSecurityException {
+        Event event = createEvent(context, shift);
+        log.info("[dryRun=[{}] updating event [{}]", context.isDryRun(), event);
+        if (!context.isDryRun()) {
+            Event result = getClient().events().update(context.getCalendarId(), shift.getEventId(), event)
+                    .execute();
             return result;
         } else {
             return null;
         }
     }
 
+    /**
+     * Imports the changes from the given {@link dutyroster.importer.domain.DutyRosterDiff} into the calendar: deleted
+     * shifts are removed, new shifts are added and changed shifts are updated.
+     * <p>
+     * If {@link CalendarContext#isDryRun()} is <code>true</code>, the
+     * actions are not carried out actually but only logged. The requests are batched, see
+     * {@link #createEventBatch(CalendarContext)}.
+     * </p>
+     *
+     * @param context the {@link CalendarContext} of the import
+     * @param diff    the diff to be imported. Contains new shifts, changed shifts and deleted shifts.
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public void importDiff(CalendarContext context, DutyRosterDiff diff) throws IOException,
+            GeneralSecurityException {
+        EventBatch eventBatch = createEventBatch(context);
+
+        DutyRosterMonth onlyBefore = diff.getOnlyBefore();
+        for (DutyRosterShift dutyRosterShift : onlyBefore.getAllDutyRosterDays()) {
+            eventBatch.delete(dutyRosterShift);
+        }
+
+        DutyRosterMonth onlyAfter = diff.getOnlyAfter();
+        for (DutyRosterShift dutyRosterShift : onlyAfter.getAllDutyRosterDays()) {
+            eventBatch.add(dutyRosterShift);
+        }
+
+        for (DutyRosterDiff.Change change : diff.getChanges()) {
+            eventBatch.update(change.getAfter());
+        }
+        eventBatch.flush();
+    }
+
+    /**
+     * Creates a batch for deleting, adding and updating events. If the configured batch size is greater than 1 and
+     * {@link CalendarContext#isDryRun()} is <code>false</code>, the mutations are grouped into Google batch requests
+     * of that size. Otherwise each mutation is carried out by {@link #deleteEvent(CalendarContext, DutyRosterShift)},
+     * {@link #addEvent(CalendarContext, DutyRosterShift, String)} or
+     * {@link #updateEvent(CalendarContext, DutyRosterShift)},
+     * concurrently on the {@link CalendarPushExecutor} unless {@link CalendarContext#isDryRun()} is <code>true</code>.
+     *
+     * @param context the {@link CalendarContext} of the import
+     * @return the new batch, to be flushed after the last mutation
+     */
+    public EventBatch createEventBatch(CalendarContext context) {
+        return new EventBatch(context, Math.min(batchSize, MAX_BATCH_SIZE));
+    }
+
+    /**
+     * Creates the context of an import of a roster of the {@link ShiftSchedule#DEFAULT} schedule, see
+     * {@link #createContext(int, int, boolean, ShiftSchedule)}.
+     *
+     * @param year   the year
+     * @param month  the zero based month (0=January)
+     * @param dryRun if <code>true</code>, the calendar is not modified
+     * @return the new context
+     */
+    public CalendarContext createContext(int year, int month, boolean dryRun) {
+        return createContext(year, month, dryRun, ShiftSchedule.DEFAULT);
+    }
+
+    /**
+     * Creates the context of an import into the configured calendar, see
+     * {@link #createContext(int, int, boolean, ShiftSchedule, String)}.
+     *
+     * @param year     the year
+     * @param month    the zero based month (0=January)
+     * @param dryRun   if <code>true</code>, the calendar is not modified
+     * @param schedule the {@link ShiftSchedule} of the ward
+     * @return the new context
+     */
+    public CalendarContext createContext(int year, int month, boolean dryRun, ShiftSchedule schedule) {
+        return createContext(year, month, dryRun, schedule, null);
+    }
+
+    /**
+     * Creates the context of an import into the calendar of a ward. The configured calendar is the calendar of the
+     * default ward, see {@link ShiftScheduleService#getCalendarId(String)}.
+     *
+     * @param year       the year
+     * @param month      the zero based month (0=January)
+     * @param dryRun     if <code>true</code>, the calendar is not modified
+     * @param schedule   the {@link ShiftSchedule} of the ward
+     * @param calendarId the id of the calendar of the ward or null for the configured calendar
+     * @return the new context
+     * @throws IllegalArgumentException if the given calendar is the configured calendar
+     */
+    public CalendarContext createContext(int year, int month, boolean dryRun, ShiftSchedule schedule,
+                                         String calendarId) {
+        if (calendarId == null) {
+            return new CalendarContext(this.calendarId, year, month, dryRun, schedule);
+        }
+        if (calendarId.equals(this.calendarId)) {
+            throw new IllegalArgumentException("ward [" + schedule.getName() + "] shares the calendar [" + calendarId
+                    + "] with the default ward");
+        }
+        return new CalendarContext(calendarId, year, month, dryRun, schedule);
+    }
+
     /**
      * Logs the calendar settings on debug level.
      *
@@ -149,81 +328,168 @@ public class GoogleCalendarService {
      * Log all calendar events of the given month (from the last day of the prior month at 12:00h
      * to the first day of the next month at 12:00h) console ordered by the start time on info level.
      *
+     * @param context the {@link CalendarContext} with the month
      * @throws java.io.IOException
      */
-    public void showEvents() throws IOException, GeneralSecurityException {
+    public void showEvents(CalendarContext context) throws IOException, GeneralSecurityException {
 
-        for (Event item : listEvents()) {
-            log.info(item.toPrettyString());
+        Iterator<Event> events = readEvents(context);
+        while (events.hasNext()) {
+            log.info(events.next().toPrettyString());
         }
     }
 
     /**
-     * Reads all events within the current month from the Google calendar.
+     * Reads all events within the month of the given context from the Google calendar.
      *
-     * @return the list of events of the current {@link #year} and {@link #month}
+     * @param context the {@link CalendarContext} with the month
+     * @return the list of events of the month
      * @throws IOException
      * @throws GeneralSecurityException
      */
-    public List<Event> listEvents() throws IOException, GeneralSecurityException {
-        Date date = DateUtil.createDate(year, month);
-        DateTime timeMin = new DateTime(date);
-        DateTime timeMax = new DateTime(DateUtils.addMonths(date, 1));
-
-        Events events = getClient().events() //
-                .list(calendarId) //
-                .setSingleEvents(true) //
-                .setOrderBy("startTime") // requires setSingleEvents(true)
-                .setTimeMin(timeMin) //
-                .setTimeMax(timeMax) //
-                .execute();
-        List<Event> items = events.getItems();
-
-        List<Event> filteredEvents = new ArrayList<>();
-        for (Event event : items) {
-            EventDateTime start = event.getStart();
-            DateTime startDate = start.getDateTime(); // startDate == null means all day event!
-            if (startDate != null && startDate.getValue() >= timeMin.getValue()) {
-                filteredEvents.add(event);
-            } else {
-                log.info("ignoring event [{}] - start time [{}] is before [{}]", event, startDate, timeMin);
-            }
+    public List<Event> listEvents(CalendarContext context) throws IOException, GeneralSecurityException {
+        List<Event> events = new ArrayList<>();
+        Iterator<Event> iterator = readEvents(context);
+        while (iterator.hasNext()) {
+            events.add(iterator.next());
         }
-        return filteredEvents;
+        return events;
     }
 
     /**
-     * Reads all events of the current {@link #year} and {@link #month} and converts them into a
+     * Reads all events within the month of the given context from the Google calendar ordered by the start time.
+     * The events are listed page by page, only the fields of {@link #EVENT_FIELDS}. The first page is read at once,
+     * the next page when the events of the page before have been consumed. All day events and events starting in the
+     * month before are skipped.
+     *
+     * @param context the {@link CalendarContext} with the month
+     * @return the events of the month
+     * @throws IOException
+     * @throws GeneralSecurityException
+     * @see EventIterator
+     */
+    public Iterator<Event> readEvents(CalendarContext context) throws IOException, GeneralSecurityException {
+        return new EventIterator(getClient(), context.getCalendarId(), new DateTime(context.getStart()),
+                new DateTime(context.getEnd()));
+    }
+
+    /**
+     * Lists the events of the whole calendar changed since the given sync token, or all events for a full sync. The
+     * events of all pages are returned at once, cancelled (deleted) events included if incremental. See
+     * <a href="https://developers.google.com/google-apps/calendar/v3/sync">Synchronize Resources Efficiently</a>.
+     *
+     * @param syncToken the token of the last sync or null for a full sync
+     * @return the changed events and the token of the next sync as "nextSyncToken"
+     * @throws SyncTokenExpiredException if the sync token has expired, a full sync is needed
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public Events listChangedEvents(String syncToken) throws IOException, GeneralSecurityException {
+        List<Event> items = new ArrayList<>();
+        String pageToken = null;
+        Events events;
+        do {
+            Calendar.Events.List list = getClient().events() //
+                    .list(calendarId) //
+                    .setSingleEvents(true) // must be the same for the full and the incremental syncs
+                    .setMaxResults(Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE))) //
+                    .setFields(SYNC_FIELDS) //
+                    .setPageToken(pageToken);
+            if (syncToken != null) {
+                list.set("syncToken", syncToken);
+            }
+            try {
+                events = list.execute();
+            } catch (GoogleJsonResponseException e) {
+                if (e.getStatusCode() == 410) {
+                    throw new SyncTokenExpiredException(syncToken, e);
+                }
+                throw e;
+            }
+            if (events.getItems() != null) {
+                items.addAll(events.getItems());
+            }
+            pageToken = events.getNextPageToken();
+        } while (pageToken != null);
+        log.debug("listed [{}] changed events, sync token [{}]", items.size(), syncToken);
+        Events changes = new Events().setItems(items);
+        changes.set("nextSyncToken", events.get("nextSyncToken"));
+        return changes;
+    }
+
+    /**
+     * Reads all events of the month of the given context and converts them into a
      * {@link dutyroster.importer.domain.DutyRosterMonth}. Events not having a parseable event summary (i.e. not
      * appearing to be a duty roster shift) will be ignored.
      *
+     * @param context the {@link CalendarContext} with the month
      * @return
      * @throws IOException
      * @throws GeneralSecurityException
      */
-    public DutyRosterMonth readDutyRosterMonth() throws IOException, GeneralSecurityException {
-        log.info("reading events of year/month [{}/{}]", year, month);
-        List<Event> events = listEvents();
-        DutyRosterMonth dutyRosterMonth = new DutyRosterMonth(year, month);
-        for (Event event : events) {
-            Date start = new Date(event.getStart().getDateTime().getValue());
-            Date end = new Date(event.getEnd().getDateTime().getValue());
-            String summary = event.getSummary();
-            String[] tokens = dutyRosterShiftService.parseEventSummary(summary);
-            if (tokens != null) {
-                Shift shift = Shift.parseLabel(tokens[0]);
-                String id = DutyRosterMonth.createId(shift, start);
-                DutyRosterShift dutyRosterShift = new DutyRosterShift(id, start, end, tokens[1], shift);
-                dutyRosterShift.setEventId(event.getId());
-                dutyRosterShift.setSequence(event.getSequence());
-                dutyRosterMonth.addDutyRosterShift(dutyRosterShift);
-            } else {
-                log.info("ignoring event with summary [{}]", summary);
-            }
+    public DutyRosterMonth readDutyRosterMonth(CalendarContext context) throws IOException,
+            GeneralSecurityException {
+        DutyRosterMonth dutyRosterMonth = new DutyRosterMonth(context.getYear(), context.getMonth(),
+                context.getSchedule());
+        Iterator<DutyRosterShift> shifts = readDutyRosterShifts(context);
+        while (shifts.hasNext()) {
+            dutyRosterMonth.addDutyRosterShift(shifts.next());
         }
         return dutyRosterMonth;
     }
 
+    /**
+     * Reads all events of the month of the given context as shifts in ascending order of their keys, ready for
+     * {@link DutyRosterDiffService#diff(Iterator, Iterator, DutyRosterDiffService.DiffListener)}. The events are
+     * listed page by page and converted while the shifts are consumed, see {@link #readEvents(CalendarContext)}, so
+     * the first shifts are available before the last page has been read. So the events of the month must not be
+     * modified until the shifts have been consumed completely. Events not having a parseable event summary will be
+     * ignored, of several events of the same shift only the first is taken.
+     *
+     * @param context the {@link CalendarContext} with the month
+     * @return the shifts
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    public Iterator<DutyRosterShift> readDutyRosterShifts(CalendarContext context) throws IOException,
+            GeneralSecurityException {
+        log.info("reading events of year/month [{}/{}]", context.getYear(), context.getMonth());
+        return toDutyRosterShifts(context.getSchedule(), readEvents(context));
+    }
+
+    /**
+     * Converts the given events into shifts in ascending order of their keys, see
+     * {@link #readDutyRosterShifts(CalendarContext)}.
+     *
+     * @param schedule the {@link ShiftSchedule} of the ward, the labels of the summaries are parsed with
+     * @param events   the events ordered by start time, e.g. of the {@link CalendarMirror}
+     * @return the shifts
+     */
+    public Iterator<DutyRosterShift> toDutyRosterShifts(ShiftSchedule schedule, Iterator<Event> events) {
+        return new DutyRosterShiftIterator(schedule, events);
+    }
+
+    /**
+     * @param schedule the {@link ShiftSchedule} of the ward
+     * @param event    the event
+     * @return the shift of the event or null, if the summary of the event is not parseable
+     */
+    private DutyRosterShift toDutyRosterShift(ShiftSchedule schedule, Event event) {
+        Date start = new Date(event.getStart().getDateTime().getValue());
+        Date end = new Date(event.getEnd().getDateTime().getValue());
+        String summary = event.getSummary();
+        String[] tokens = dutyRosterShiftService.parseEventSummary(schedule, summary);
+        if (tokens == null) {
+            log.info("ignoring event with summary [{}]", summary);
+            return null;
+        }
+        Shift shift = schedule.parseLabel(tokens[0]);
+        DutyRosterShift dutyRosterShift = new DutyRosterShift(ShiftKey.of(shift, start), start, end, tokens[1], shift);
+        dutyRosterShift.setEventId(event.getId());
+        dutyRosterShift.setSequence(event.getSequence());
+        return dutyRosterShift;
+    }
+
     /**
      * Initializes the connection to the Google calendar.
      *
@@ -232,9 +498,6 @@ public class GoogleCalendarService {
      */
     private void init() throws IOException, GeneralSecurityException {
 
-        Validate.notNull(year, "year is not set");
-        Validate.notNull(month, "month is not set");
-
         PrivateKey privateKey = SecurityUtils.loadPrivateKeyFromKeyStore(SecurityUtils
                         .getPkcs12KeyStore(), GoogleCalendarService.class
                         .getResourceAsStream(p12ResourcePath),
@@ -262,7 +525,7 @@ public class GoogleCalendarService {
      * @throws IOException
      * @throws GeneralSecurityException
      */
-    private Calendar getClient() throws IOException, GeneralSecurityException {
+    private synchronized Calendar getClient() throws IOException, GeneralSecurityException {
         if (client == null) {
             init();
         }
@@ -272,12 +535,14 @@ public class GoogleCalendarService {
     /**
      * Converts the given shift into a Google calendar event.
      *
-     * @param shift the {@link dutyroster.importer.domain.DutyRosterShift}
+     * @param context the {@link CalendarContext} of the import
+     * @param shift   the {@link dutyroster.importer.domain.DutyRosterShift}
      * @return the Google calendar event
      */
-    private Event createEvent(DutyRosterShift shift) {
+    private Event createEvent(CalendarContext context, DutyRosterShift shift) {
         Event event = new Event();
-        event.setSummary(dutyRosterShiftService.createEventSummary(shift.getShift(), shift.getName()));
+        event.setSummary(dutyRosterShiftService.createEventSummary(context.getSchedule(), shift.getShift(),
+                shift.getName()));
         DateTime start = new DateTime(shift.getFrom(), TimeZone.getTimeZone("GMT"));
         event.setStart(new EventDateTime().setDateTime(start));
         DateTime end = new DateTime(shift.getTo(), TimeZone.getTimeZone("GMT"));
@@ -291,15 +556,488 @@ public class GoogleCalendarService {
         return event;
     }
 
-    public void setDryRun(boolean dryRun) {
-        this.dryRun = dryRun;
+    public String getCalendarId() {
+        return calendarId;
     }
 
-    public void setYear(int year) {
-        this.year = year;
+    /**
+     * Creates a new id for the event of the given shift, valid for the calendar api (base32hex, at least 5 characters).
+     * The id starts with the shift key followed by a random part, as an event deleted once keeps its id.
+     *
+     * @param shift the {@link dutyroster.importer.domain.DutyRosterShift}
+     * @return the id
+     */
+    public static String createEventId(DutyRosterShift shift) {
+        // radix 32 digits are 0-9 and a-v, i.e. base32hex
+        return Long.toString(shift.getKey(), 32)
+                + Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 32);
     }
 
-    public void setMonth(int month) {
-        this.month = month;
+
+    /**
+     * Groups mutations of the calendar into Google batch requests, see
+     * <a href="https://developers.google.com/google-apps/calendar/batch">Sending Batch Requests</a>. A batch request
+     * is sent as soon as it is full and by {@link #flush()}. The requests of a batch succeed or fail one by one, the
+     * failures are mapped back to their shifts and thrown as {@link BatchException} when the batch has been sent.
+     * Requests rejected for exceeding the rate limit or failing on the server are retried by the
+     * {@link CalendarPushExecutor}, see {@link CalendarPushExecutor.Push#submitRetry(String, DutyRosterShift,
+     * CalendarPushExecutor.Mutation, boolean, String)}. Batched inserts send a client generated event id, so a retry
+     * does not add the event twice. Mutations not batched are pushed by the {@link CalendarPushExecutor}. The failures
+     * of retries and pushed mutations are thrown by {@link #flush()}.
+     * <p>
+     * A batch is not thread-safe.
+     * </p>
+     */
+    public class EventBatch {
+
+        private final CalendarContext context;
+
+        private final int size;
+
+        private BatchRequest batchRequest;
+
+        private CalendarPushExecutor.Push push;
+
+        /**
+         * The failures of the current batch request.
+         */
+        private final List<BatchFailure> failures = new ArrayList<>();
+
+        /**
+         * The number of requests of the current batch request to be retried.
+         */
+        private int retried;
+
+        /**
+         * The latency of each batch request sent in milliseconds.
+         */
+        private final List<Long> latencies = new ArrayList<>();
+
+        EventBatch(CalendarContext context, int size) {
+            this.context = context;
+            this.size = size;
+        }
+
+        /**
+         * Deletes the event of the given shift, see
+         * {@link GoogleCalendarService#deleteEvent(CalendarContext, DutyRosterShift)}.
+         *
+         * @param shift the {@link dutyroster.importer.domain.DutyRosterShift} corresponding with the event
+         * @throws IOException
+         * @throws GeneralSecurityException
+         */
+        public void delete(DutyRosterShift shift) throws IOException, GeneralSecurityException {
+            if (!isBatching()) {
+                execute("delete", shift, () -> deleteEvent(context, shift), false);
+                return;
+            }
+            log.debug("queueing deletion of event [{}]", shift.getEventId());
+            getClient().events().delete(context.getCalendarId(), shift.getEventId())
+                    .queue(getBatchRequest(), new FailureCallback<>("delete", shift,
+                            () -> deleteEvent(context, shift), false));
+            flushIfFull();
+        }
+
+        /**
+         * Adds an event for the given shift, see
+         * {@link GoogleCalendarService#addEvent(CalendarContext, DutyRosterShift)}.
+         *
+         * @param shift the {@link dutyroster.importer.domain.DutyRosterShift} corresponding with the event
+         * @throws IOException
+         * @throws GeneralSecurityException
+         */
+        public void add(DutyRosterShift shift) throws IOException, GeneralSecurityException {
+            // the id is chosen once, so a retried insert does not add a second event
+            String eventId = StringUtils.isEmpty(shift.getEventId()) ? createEventId(shift) : null;
+            if (!isBatching()) {
+                execute("add", shift, () -> addEvent(context, shift, eventId), true);
+                return;
+            }
+            Event event = createEvent(context, shift);
+            if (eventId != null) {
+                event.setId(eventId);
+            }
+            log.debug("queueing addition of event [{}]", event);
+            getClient().events().insert(context.getCalendarId(), event)
+                    .queue(getBatchRequest(), new FailureCallback<>("add", shift,
+                            () -> addEvent(context, shift, eventId), true));
+            flushIfFull();
+        }
+
+        /**
+         * Updates the event of the given shift, see
+         * {@link GoogleCalendarService#updateEvent(CalendarContext, DutyRosterShift)}.
+         *
+         * @param shift the {@link dutyroster.importer.domain.DutyRosterShift} corresponding with the event
+         * @throws IOException
+         * @throws GeneralSecurityException
+         */
+        public void update(DutyRosterShift shift) throws IOException, GeneralSecurityException {
+            if (!isBatching()) {
+                execute("update", shift, () -> updateEvent(context, shift), false);
+                return;
+            }
+            Event event = createEvent(context, shift);
+            log.debug("queueing update of event [{}]", event);
+            getClient().events().update(context.getCalendarId(), shift.getEventId(), event)
+                    .queue(getBatchRequest(), new FailureCallback<>("update", shift,
+                            () -> updateEvent(context, shift), false));
+            flushIfFull();
+        }
+
+        /**
+         * Sends the queued mutations, if any, and waits for the mutations pushed, including the retries of the
+         * batched mutations.
+         *
+         * @throws BatchException if a mutation failed, the other mutations have been carried out
+         * @throws IOException
+         */
+        public void flush() throws IOException {
+            int requests = 0;
+            if (batchRequest != null && batchRequest.size() > 0) {
+                requests = batchRequest.size();
+                if (pushExecutor != null) {
+                    pushExecutor.acquire(requests);
+                }
+                long start = System.nanoTime();
+                try {
+                    batchRequest.execute();
+                } finally {
+                    batchRequest = null;
+                }
+                long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                latencies.add(latency);
+                log.info("sent batch request of [{}] mutations in [{}] ms, [{}] failed, [{}] to be retried", requests,
+                        latency, failures.size(), retried);
+                retried = 0;
+            }
+            List<BatchFailure> allFailures = new ArrayList<>(failures);
+            failures.clear();
+            if (push != null) {
+                CalendarPushExecutor.Push pushed = push;
+                push = null;
+                try {
+                    latencies.add(pushed.await());
+                } catch (BatchException e) {
+                    allFailures.addAll(e.getFailures());
+                    // the retries of a batch request are counted with the batch request
+                    if (requests == 0) {
+                        requests = e.getRequests();
+                    }
+                }
+            }
+            if (!allFailures.isEmpty()) {
+                throw new BatchException(requests, allFailures);
+            }
+        }
+
+        /**
+         * @return the latency of each batch request and push so far in milliseconds
+         */
+        public List<Long> getLatencies() {
+            return Collections.unmodifiableList(latencies);
+        }
+
+        private boolean isBatching() {
+            return size > 1 && !context.isDryRun();
+        }
+
+        /**
+         * Carries out the given mutation at once or pushes it, see {@link CalendarPushExecutor}.
+         *
+         * @param insert if <code>true</code>, the mutation inserts an event with a client generated id, see
+         *               {@link CalendarPushExecutor.Push#submitInsert(DutyRosterShift, CalendarPushExecutor.Mutation)}
+         */
+        private void execute(String operation, DutyRosterShift shift, CalendarPushExecutor.Mutation mutation,
+                             boolean insert) throws IOException, GeneralSecurityException {
+            if (pushExecutor == null || context.isDryRun()) {
+                mutation.execute();
+                return;
+            }
+            if (push == null) {
+                push = pushExecutor.start();
+            }
+            if (insert) {
+                push.submitInsert(shift, mutation);
+            } else {
+                push.submit(operation, shift, mutation);
+            }
+        }
+
+        private BatchRequest getBatchRequest() throws IOException, GeneralSecurityException {
+            if (batchRequest == null) {
+                Calendar calendar = getClient();
+                batchRequest = calendar.batch();
+                // the global batch endpoint is not served anymore, the batch requests must go to the api's endpoint
+                batchRequest.setBatchUrl(new GenericUrl(calendar.getRootUrl() + "batch/"
+                        + StringUtils.removeEnd(calendar.getServicePath(), "/")));
+            }
+            return batchRequest;
+        }
+
+        private void flushIfFull() throws IOException {
+            if (batchRequest.size() >= size) {
+                flush();
+            }
+        }
+
+        /**
+         * Records the failure of a request of the batch for the shift the request was queued for. A request
+         * rejected for exceeding the rate limit or failing on the server is retried on its own instead.
+         */
+        private class FailureCallback<T> extends JsonBatchCallback<T> {
+
+            private final String operation;
+
+            private final DutyRosterShift shift;
+
+            /**
+             * Carries out the request on its own, see {@link CalendarPushExecutor.Push#submitRetry(String,
+             * DutyRosterShift, CalendarPushExecutor.Mutation, boolean, String)}.
+             */
+            private final CalendarPushExecutor.Mutation retry;
+
+            private final boolean insert;
+
+            FailureCallback(String operation, DutyRosterShift shift, CalendarPushExecutor.Mutation retry,
+                            boolean insert) {
+                this.operation = operation;
+                this.shift = shift;
+                this.retry = retry;
+                this.insert = insert;
+            }
+
+            @Override
+            public void onSuccess(T result, HttpHeaders responseHeaders) {
+            }
+
+            @Override
+            public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                if (pushExecutor != null && CalendarPushExecutor.isRetryable(error)) {
+                    if (push == null) {
+                        push = pushExecutor.start();
+                    }
+                    push.submitRetry(operation, shift, retry, insert, error.getCode() + " " + error.getMessage());
+                    retried++;
+                    return;
+                }
+                log.error("failed to {} event [{}] of shift [{}]: [{}] [{}]", operation, shift.getEventId(),
+                        shift.getId(), error.getCode(), error.getMessage());
+                failures.add(new BatchFailure(operation, shift, error.getCode(), error.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * A mutation of a batch request or a push which failed.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class BatchFailure {
+
+        /**
+         * The mutation: delete, add or update.
+         */
+        private String operation;
+
+        private DutyRosterShift shift;
+
+        /**
+         * The HTTP status code.
+         */
+        private int code;
+
+        private String message;
+
+        @Override
+        public String toString() {
+            return operation + " " + shift.getId() + " (" + code + " " + message + ")";
+        }
+    }
+
+    /**
+     * Thrown if the token of an incremental sync has expired (410 Gone), a full sync is needed.
+     */
+    public static class SyncTokenExpiredException extends IOException {
+
+        public SyncTokenExpiredException(String syncToken, Throwable cause) {
+            super("sync token [" + syncToken + "] expired", cause);
+        }
+    }
+
+    /**
+     * Thrown if mutations of a batch request or a push failed.
+     */
+    @Getter
+    public static class BatchException extends IOException {
+
+        /**
+         * The number of mutations sent.
+         */
+        private final int requests;
+
+        private final List<BatchFailure> failures;
+
+        public BatchException(int requests, List<BatchFailure> failures) {
+            super(failures.size() + " of " + requests + " mutations failed: " + failures);
+            this.requests = requests;
+            this.failures = failures;
+        }
+    }
+
+    /**
+     * Lists the events of a time range page by page, see {@link #readEvents(CalendarContext)}. A page which can not be read is
+     * thrown as {@link java.io.UncheckedIOException}.
+     */
+    private class EventIterator implements Iterator<Event> {
+
+        private final Calendar client;
+
+        private final String calendarId;
+
+        private final DateTime timeMin;
+
+        private final DateTime timeMax;
+
+        private Iterator<Event> page;
+
+        /**
+         * The token of the next page or null, if the current page is the last one.
+         */
+        private String nextPageToken;
+
+        /**
+         * The next event, read ahead.
+         */
+        private Event next;
+
+        EventIterator(Calendar client, String calendarId, DateTime timeMin, DateTime timeMax) throws IOException {
+            this.client = client;
+            this.calendarId = calendarId;
+            this.timeMin = timeMin;
+            this.timeMax = timeMax;
+            readPage(null);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (page.hasNext()) {
+                    next = accept(page.next());
+                } else if (nextPageToken != null) {
+                    try {
+                        readPage(nextPageToken);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Event next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Event event = next;
+            next = null;
+            return event;
+        }
+
+        private void readPage(String pageToken) throws IOException {
+            Events events = client.events() //
+                    .list(calendarId) //
+                    .setSingleEvents(true) //
+                    .setOrderBy("startTime") // requires setSingleEvents(true)
+                    .setTimeMin(timeMin) //
+                    .setTimeMax(timeMax) //
+                    .setMaxResults(Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE))) //
+                    .setFields(EVENT_FIELDS) //
+                    .setPageToken(pageToken) //
+                    .execute();
+            List<Event> items = events.getItems();
+            page = items != null ? items.iterator() : Collections.emptyIterator();
+            nextPageToken = events.getNextPageToken();
+            log.debug("read page of [{}] events, next page token [{}]", items != null ? items.size() : 0,
+                    nextPageToken);
+        }
+
+        /**
+         * @return the given event or null, if it is an all day event or starts before {@link #timeMin}
+         */
+        private Event accept(Event event) {
+            EventDateTime start = event.getStart();
+            DateTime startDate = start.getDateTime(); // startDate == null means all day event!
+            if (startDate != null && startDate.getValue() >= timeMin.getValue()) {
+                return event;
+            }
+            log.info("ignoring event [{}] - start time [{}] is before [{}]", event, startDate, timeMin);
+            return null;
+        }
+    }
+
+    /**
+     * Converts events ordered by start time into shifts ordered by key. A shift belongs to the day it starts, so the
+     * events of a day are contiguous: they are buffered and sorted per day, as the order of the shifts within a day
+     * depends on the {@link dutyroster.importer.domain.ShiftSchedule}.
+     */
+    private class DutyRosterShiftIterator implements Iterator<DutyRosterShift> {
+
+        private final ShiftSchedule schedule;
+
+        private final Iterator<Event> events;
+
+        /**
+         * The shifts of the current day not consumed yet.
+         */
+        private final TreeMap<Long, DutyRosterShift> day = new TreeMap<>();
+
+        /**
+         * The first shift of the next day, read ahead.
+         */
+        private DutyRosterShift nextDay;
+
+        DutyRosterShiftIterator(ShiftSchedule schedule, Iterator<Event> events) {
+            this.schedule = schedule;
+            this.events = events;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (day.isEmpty()) {
+                readDay();
+            }
+            return !day.isEmpty();
+        }
+
+        @Override
+        public DutyRosterShift next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return day.pollFirstEntry().getValue();
+        }
+
+        private void readDay() {
+            if (nextDay != null) {
+                day.put(nextDay.getKey(), nextDay);
+                nextDay = null;
+            }
+            while (events.hasNext()) {
+                DutyRosterShift shift = toDutyRosterShift(schedule, events.next());
+                if (shift == null) {
+                    continue;
+                }
+                if (day.isEmpty() || ShiftKey.ofDay(shift.getKey()) == ShiftKey.ofDay(day.firstKey())) {
+                    day.putIfAbsent(shift.getKey(), shift);
+                } else {
+                    nextDay = shift;
+                    return;
+                }
+            }
+        }
     }
 }
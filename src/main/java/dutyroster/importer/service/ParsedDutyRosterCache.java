@@ -0,0 +1,169 @@
+package dutyroster.importer.service;
+
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.ShiftSchedule;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the {@link dutyroster.importer.domain.DutyRosterMonth}s parsed from docx files, so uploading the same file
+ * again (typically a dry run followed by the real import) does not parse it again. The key is the SHA-256 of the docx
+ * plus the year and the ward of the roster, see {@link #createKey(byte[], int, ShiftSchedule)}.
+ * <p>
+ * The cache holds at most {@link #maxEntries} rosters and evicts the least recently used one. Rosters are copied when
+ * put into and taken from the cache, as the import modifies the shifts (e.g. sets the event ids).
+ * </p>
+ */
+@Service
+@Slf4j
+public class ParsedDutyRosterCache {
+
+    /**
+     * If false, nothing is cached.
+     */
+    @Value("${dutyroster.importer.service.cache.enabled:true}")
+    private boolean enabled = true;
+
+    /**
+     * The maximum number of cached rosters.
+     */
+    @Value("${dutyroster.importer.service.cache.maxEntries:16}")
+    private int maxEntries = 16;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * The cached rosters in access order, the least recently used first.
+     */
+    private final Map<String, DutyRosterMonth> cache = new LinkedHashMap<String, DutyRosterMonth>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, DutyRosterMonth> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    /**
+     * @param docx the content of the docx
+     * @param year the year of the roster
+     * @return the cache key of a roster of the {@link ShiftSchedule#DEFAULT} schedule, see
+     * {@link #createKey(byte[], int, ShiftSchedule)}
+     */
+    public String createKey(byte[] docx, int year) {
+        return createKey(docx, year, ShiftSchedule.DEFAULT);
+    }
+
+    /**
+     * @param docx     the content of the docx
+     * @param year     the year of the roster
+     * @param schedule the {@link ShiftSchedule} of the ward, the same docx parsed with another schedule yields
+     *                 another roster
+     * @return the cache key, e.g. "2015_default_9f86d08...", or null if the cache is disabled
+     */
+    public String createKey(byte[] docx, int year, ShiftSchedule schedule) {
+        if (!enabled) {
+            return null;
+        }
+
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(docx);
+            StringBuilder sb = new StringBuilder(6 + schedule.getName().length() + hash.length * 2).append(year)
+                    .append('_').append(schedule.getName()).append('_');
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every JRE must support SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param key the key, see {@link #createKey(byte[], int, ShiftSchedule)}
+     * @return a copy of the cached roster or null if there is none
+     */
+    public DutyRosterMonth get(String key) {
+        if (!enabled || key == null) {
+            return null;
+        }
+
+        DutyRosterMonth dutyRosterMonth;
+        synchronized (cache) {
+            dutyRosterMonth = cache.get(key);
+        }
+        if (dutyRosterMonth == null) {
+            misses.incrementAndGet();
+            log.debug("cache miss for [{}]", key);
+            return null;
+        }
+        hits.incrementAndGet();
+        log.debug("cache hit for [{}]", key);
+        return dutyRosterMonth.copy();
+    }
+
+    /**
+     * Caches a copy of the given roster.
+     *
+     * @param key             the key, see {@link #createKey(byte[], int, ShiftSchedule)}
+     * @param dutyRosterMonth the roster parsed from the docx
+     */
+    public void put(String key, DutyRosterMonth dutyRosterMonth) {
+        if (!enabled || key == null || dutyRosterMonth == null) {
+            return;
+        }
+
+        DutyRosterMonth copy = dutyRosterMonth.copy();
+        synchronized (cache) {
+            cache.put(key, copy);
+        }
+    }
+
+    /**
+     * Removes all rosters from the cache. The counters are kept.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return the number of cached rosters
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * @return the number of {@link #get(String)} calls finding a roster
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of {@link #get(String)} calls not finding a roster
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+}
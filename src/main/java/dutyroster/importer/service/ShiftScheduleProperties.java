@@ -0,0 +1,201 @@
+package dutyroster.importer.service;
+
+import dutyroster.importer.domain.Shift;
+import dutyroster.importer.domain.ShiftSchedule;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The {@link dutyroster.importer.domain.ShiftSchedule}s of the wards, e.g.
+ * <pre>
+ * dutyroster.importer.schedule.name=ward1
+ * dutyroster.importer.schedule.shifts.NIGHT_SHIFT.start=21:30
+ * dutyroster.importer.schedule.shifts.NIGHT_SHIFT.startOn.SATURDAY=20:00
+ * dutyroster.importer.schedule.shifts.NIGHT_SHIFT.end=06:30
+ * dutyroster.importer.schedule.wards.ward2.calendarId=ward2@group.calendar.google.com
+ * dutyroster.importer.schedule.wards.ward2.shifts.EARLY_SHIFT.label=F
+ * </pre>
+ * The schedule of the default ward takes whatever is not given from
+ * {@link dutyroster.importer.domain.ShiftSchedule#DEFAULT}, the schedules of further wards take it from the schedule
+ * of the default ward. The default ward is imported into the configured calendar, each further ward into its own
+ * calendar.
+ */
+@ConfigurationProperties(prefix = "dutyroster.importer.schedule")
+@Getter
+@Setter
+public class ShiftScheduleProperties {
+
+    /**
+     * The labels and hours of a shift.
+     */
+    @Getter
+    @Setter
+    public static class ShiftProperties {
+
+        private String label;
+
+        /**
+         * The alternative label, blank for none.
+         */
+        private String altLabel;
+
+        /**
+         * The start, e.g. "07:00".
+         */
+        private String start;
+
+        /**
+         * The start on single days, e.g. "FRIDAY" -&gt; "21:00".
+         */
+        private Map<String, String> startOn = new HashMap<>();
+
+        private String end;
+
+        /**
+         * The end on single days of the start.
+         */
+        private Map<String, String> endOn = new HashMap<>();
+
+        /**
+         * <code>true</code>, if the shift ends on the next day.
+         */
+        private Boolean overnight;
+    }
+
+    /**
+     * The calendar and shifts of a further ward.
+     */
+    @Getter
+    @Setter
+    public static class WardProperties {
+
+        /**
+         * The id of the Google calendar of the ward, required: the shifts of two wards in the same calendar would be
+         * taken for each other's and deleted by the next import.
+         */
+        private String calendarId;
+
+        /**
+         * The shifts differing from the default ward by {@link dutyroster.importer.domain.Shift} name.
+         */
+        private Map<String, ShiftProperties> shifts = new HashMap<>();
+    }
+
+    /**
+     * The name of the default ward.
+     */
+    private String name = "default";
+
+    /**
+     * The shifts by {@link dutyroster.importer.domain.Shift} name, e.g. "NIGHT_SHIFT".
+     */
+    private Map<String, ShiftProperties> shifts = new HashMap<>();
+
+    /**
+     * The further wards by name.
+     */
+    private Map<String, WardProperties> wards = new TreeMap<>();
+
+    /**
+     * @return the schedule of the default ward, {@link dutyroster.importer.domain.ShiftSchedule#DEFAULT} if neither a
+     * shift nor the name is configured
+     * @throws IllegalArgumentException                if a shift name or weekday is invalid
+     * @throws java.time.format.DateTimeParseException if a time is invalid
+     */
+    public ShiftSchedule createShiftSchedule() {
+        if (shifts.isEmpty() && ShiftSchedule.DEFAULT.getName().equals(name)) {
+            return ShiftSchedule.DEFAULT;
+        }
+        return createShiftSchedule(name, ShiftSchedule.DEFAULT, shifts);
+    }
+
+    /**
+     * @return the schedules of all wards by name, the default ward first
+     * @throws IllegalArgumentException                if a ward is configured twice, a shift name or weekday is
+     *                                                 invalid
+     * @throws java.time.format.DateTimeParseException if a time is invalid
+     */
+    public Map<String, ShiftSchedule> createShiftSchedules() {
+        ShiftSchedule defaultSchedule = createShiftSchedule();
+        Map<String, ShiftSchedule> schedules = new LinkedHashMap<>();
+        schedules.put(name, defaultSchedule);
+        for (Map.Entry<String, WardProperties> entry : wards.entrySet()) {
+            if (schedules.containsKey(entry.getKey())) {
+                throw new IllegalArgumentException("ward [" + entry.getKey() + "] is configured twice");
+            }
+            schedules.put(entry.getKey(), createShiftSchedule(entry.getKey(), defaultSchedule,
+                    entry.getValue().getShifts()));
+        }
+        return schedules;
+    }
+
+    /**
+     * @return the ids of the calendars of the further wards by name, the default ward is not contained
+     * @throws IllegalArgumentException if a further ward has no calendar or shares the calendar of another ward
+     */
+    public Map<String, String> createCalendarIds() {
+        Map<String, String> calendarIds = new LinkedHashMap<>();
+        for (Map.Entry<String, WardProperties> entry : wards.entrySet()) {
+            String calendarId = StringUtils.trimToNull(entry.getValue().getCalendarId());
+            if (calendarId == null) {
+                throw new IllegalArgumentException("ward [" + entry.getKey() + "] has no calendarId");
+            }
+            if (calendarIds.containsValue(calendarId)) {
+                throw new IllegalArgumentException("ward [" + entry.getKey() + "] shares the calendar [" + calendarId
+                        + "] with another ward");
+            }
+            calendarIds.put(entry.getKey(), calendarId);
+        }
+        return calendarIds;
+    }
+
+    private static ShiftSchedule createShiftSchedule(String name, ShiftSchedule base,
+                                                     Map<String, ShiftProperties> shifts) {
+        Map<Shift, ShiftSchedule.ShiftDefinition> definitions = new EnumMap<>(Shift.class);
+        for (Shift shift : Shift.values()) {
+            definitions.put(shift, base.getDefinition(shift));
+        }
+        for (Map.Entry<String, ShiftProperties> entry : shifts.entrySet()) {
+            Shift shift = Shift.valueOf(entry.getKey().toUpperCase(Locale.ROOT));
+            definitions.put(shift, createDefinition(entry.getValue(), definitions.get(shift)));
+        }
+        return new ShiftSchedule(name, definitions);
+    }
+
+    private static ShiftSchedule.ShiftDefinition createDefinition(ShiftProperties properties,
+                                                                  ShiftSchedule.ShiftDefinition defaults) {
+        String label = properties.getLabel() != null ? properties.getLabel() : defaults.getLabel();
+        String altLabel = properties.getAltLabel() == null ? defaults.getAltLabel()
+                : properties.getAltLabel().trim().isEmpty() ? null : properties.getAltLabel().trim();
+
+        Map<DayOfWeek, LocalTime> starts = new EnumMap<>(DayOfWeek.class);
+        Map<DayOfWeek, LocalTime> ends = new EnumMap<>(DayOfWeek.class);
+        for (DayOfWeek weekday : DayOfWeek.values()) {
+            starts.put(weekday, properties.getStart() != null ? LocalTime.parse(properties.getStart().trim())
+                    : defaults.getStart(weekday));
+            ends.put(weekday, properties.getEnd() != null ? LocalTime.parse(properties.getEnd().trim())
+                    : defaults.getEnd(weekday));
+        }
+        properties.getStartOn().forEach((weekday, time) -> starts.put(parseWeekday(weekday),
+                LocalTime.parse(time.trim())));
+        properties.getEndOn().forEach((weekday, time) -> ends.put(parseWeekday(weekday), LocalTime.parse(time.trim())));
+
+        boolean overnight = properties.getOvernight() != null ? properties.getOvernight() : defaults.isOvernight();
+        return new ShiftSchedule.ShiftDefinition(label, altLabel, null, starts, null, ends, overnight);
+    }
+
+    private static DayOfWeek parseWeekday(String weekday) {
+        return DayOfWeek.valueOf(weekday.trim().toUpperCase(Locale.ROOT));
+    }
+}
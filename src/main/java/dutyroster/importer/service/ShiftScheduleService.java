@@ -0,0 +1,82 @@
+package dutyroster.importer.service;
+
+import dutyroster.importer.domain.ShiftSchedule;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Provides the {@link dutyroster.importer.domain.ShiftSchedule} and the calendar of each configured ward, see
+ * {@link ShiftScheduleProperties}. The schedule is passed explicitly to each import, so the wards do not share any
+ * global state.
+ */
+@Service
+@Slf4j
+public class ShiftScheduleService {
+
+    private final ShiftSchedule defaultSchedule;
+
+    /**
+     * The schedules by ward, the default ward first.
+     */
+    private final Map<String, ShiftSchedule> schedules;
+
+    /**
+     * The ids of the calendars of the further wards by ward.
+     */
+    private final Map<String, String> calendarIds;
+
+    @Autowired
+    public ShiftScheduleService(ShiftScheduleProperties shiftScheduleProperties) {
+        this.schedules = Collections.unmodifiableMap(shiftScheduleProperties.createShiftSchedules());
+        this.calendarIds = shiftScheduleProperties.createCalendarIds();
+        this.defaultSchedule = schedules.get(shiftScheduleProperties.getName());
+        log.info("using shift schedules of wards {}, default [{}], calendars {}", schedules.keySet(),
+                defaultSchedule.getName(), calendarIds);
+    }
+
+    /**
+     * @return the schedule of the default ward
+     */
+    public ShiftSchedule getDefault() {
+        return defaultSchedule;
+    }
+
+    /**
+     * @param ward the name of the ward or null for the default ward
+     * @return the schedule of the ward
+     * @throws IllegalArgumentException if no such ward is configured
+     */
+    public ShiftSchedule get(String ward) {
+        if (StringUtils.isBlank(ward)) {
+            return defaultSchedule;
+        }
+        ShiftSchedule schedule = schedules.get(ward.trim());
+        if (schedule == null) {
+            throw new IllegalArgumentException("no such ward [" + ward + "], known wards are " + schedules.keySet());
+        }
+        return schedule;
+    }
+
+    /**
+     * @param ward the name of the ward or null for the default ward
+     * @return the id of the calendar of the ward or null for the default ward, which is imported into the configured
+     * calendar, see {@link GoogleCalendarService#createContext(int, int, boolean, ShiftSchedule, String)}
+     * @throws IllegalArgumentException if no such ward is configured
+     */
+    public String getCalendarId(String ward) {
+        return calendarIds.get(get(ward).getName());
+    }
+
+    /**
+     * @return the names of all wards, the default ward first
+     */
+    public Set<String> getWards() {
+        return schedules.keySet();
+    }
+}
@@ -3,30 +3,52 @@
  */
 package dutyroster.importer.util;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Calendar;
 import java.util.Date;
 
 /**
+ * Date helpers in the default time zone. Apart from {@link #getCalendar(Date)} and
+ * {@link #createDateForCurrentYear(int)}, they are based on <code>java.time</code> and create no
+ * {@link java.util.Calendar}.
+ *
  * @author apohl
  */
 public class DateUtil {
 
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
     public static Calendar getCalendar(Date date) {
         Calendar instance = Calendar.getInstance();
         instance.setTime(date);
         return instance;
     }
 
+    /**
+     * @param date the date
+     * @return the local date of the given date in the default time zone
+     */
+    public static LocalDate toLocalDate(Date date) {
+        long epochSecond = Math.floorDiv(date.getTime(), 1000);
+        int offset = ZoneId.systemDefault().getRules().getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds();
+        return LocalDate.ofEpochDay(Math.floorDiv(epochSecond + offset, SECONDS_PER_DAY));
+    }
+
+    /**
+     * @return the zero based month (0=January)
+     */
     public static int getMonth(Date date) {
-        return getCalendar(date).get(Calendar.MONTH);
+        return toLocalDate(date).getMonthValue() - 1;
     }
 
     public static int getYear(Date date) {
-        return getCalendar(date).get(Calendar.YEAR);
+        return toLocalDate(date).getYear();
     }
 
     public static int getDay(Date date) {
-        return getCalendar(date).get(Calendar.DAY_OF_MONTH);
+        return toLocalDate(date).getDayOfMonth();
     }
 
     public static Date createDateForCurrentYear(int month) {
@@ -38,14 +60,13 @@ public class DateUtil {
         return cal.getTime();
     }
 
+    /**
+     * @param year  the year
+     * @param month the zero based month (0=January), months out of range roll over into the next or previous year
+     * @return the start of the first day of the given month
+     */
     public static Date createDate(int year, int month) {
-        Calendar cal = Calendar.getInstance();
-        cal.set(Calendar.YEAR, year);
-        cal.set(Calendar.MONTH, month);
-        cal.set(Calendar.DAY_OF_MONTH, 1);
-        cal.set(Calendar.HOUR_OF_DAY, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.SECOND, 0);
-        return cal.getTime();
+        LocalDate firstDay = LocalDate.of(year, 1, 1).plusMonths(month);
+        return Date.from(firstDay.atStartOfDay(ZoneId.systemDefault()).toInstant());
     }
 }
@@ -0,0 +1,263 @@
+package dutyroster.importer.util;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+
+import java.io.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Random;
+
+/**
+ * Generates synthetic duty roster docx files in the table layout
+ * {@link dutyroster.importer.service.DutyRosterConverterService} expects: a header row with the weekdays, then per
+ * week a row with the dates ("dd.MM.") followed by one row per shift label ("TD", "SD", "ND"), one column per
+ * weekday. Days outside the generated months stay blank. Intended for load and scaling tests and benchmarks.
+ * <p>
+ * The personnel is drawn from a pool of {@link #assignees} names by a seeded random, so the same settings always
+ * produce the same roster. A share of {@link #multiAssigneeRatio} cells names two persons, e.g. "Judy/Tom".
+ * </p>
+ * <p>
+ * May be run from the command line, see {@link #main(String...)}.
+ * </p>
+ */
+@Getter
+@Setter
+@Slf4j
+public class DutyRosterDocxGenerator {
+
+    public static final String ARG_OUTPUT = "-o";
+
+    public static final String ARG_YEAR = "-y";
+
+    public static final String ARG_MONTH = "-m";
+
+    public static final String ARG_MONTHS = "-n";
+
+    public static final String ARG_WEEKS = "-w";
+
+    public static final String ARG_SHIFT_LABELS = "-s";
+
+    public static final String ARG_ASSIGNEES = "-a";
+
+    public static final String ARG_MULTI_ASSIGNEE_RATIO = "-x";
+
+    public static final String ARG_SEED = "-r";
+
+    private static final String[] WEEKDAYS = {"Mo", "Di", "Mi", "Do", "Fr", "Sa", "So"};
+
+    private static final String[] FIRST_NAMES = {"Peter", "Paul", "Mary", "Judy", "Tom", "Jane", "James", "Diane",
+            "Frank", "Anne", "Benny", "Bertha", "Carl", "Christian", "Charlotte", "Alfred", "Anabel", "Barbara"};
+
+    private static final DateTimeFormatter DAY_AND_MONTH = DateTimeFormatter.ofPattern("dd.MM.");
+
+    /**
+     * The year of the first month.
+     */
+    private int year = 2015;
+
+    /**
+     * The zero based first month (0=January).
+     */
+    private int month = 0;
+
+    /**
+     * The number of months covered by the table.
+     */
+    private int months = 1;
+
+    /**
+     * The number of weeks (i.e. blocks of a date row and its shift rows) of the table. If 0, as many weeks as needed
+     * to cover the {@link #months} are generated.
+     */
+    private int weeks = 0;
+
+    /**
+     * The labels of the shift rows of a week, in this order. "FD" or "TD" for the early shift.
+     */
+    private String[] shiftLabels = {"TD", "SD", "ND"};
+
+    /**
+     * The size of the pool of names the personnel is drawn from.
+     */
+    private int assignees = 10;
+
+    /**
+     * The share (0..1) of cells naming two persons, e.g. "Judy/Tom".
+     */
+    private double multiAssigneeRatio = 0.05;
+
+    /**
+     * If false, the late shift ("SD") stays blank on saturdays and sundays.
+     */
+    private boolean lateShiftOnWeekends = false;
+
+    /**
+     * The seed of the random drawing the personnel.
+     */
+    private long seed = 42;
+
+    /**
+     * Generates a roster from the command line. Arguments (all optional):
+     * <ul>
+     * <li><code>-o&lt;file&gt;</code> the docx to write, defaults to "yyyy_MM.docx" of the first month</li>
+     * <li><code>-y&lt;year&gt;</code> the year of the first month</li>
+     * <li><code>-m&lt;month&gt;</code> the first month, 1=January</li>
+     * <li><code>-n&lt;months&gt;</code> the number of months</li>
+     * <li><code>-w&lt;weeks&gt;</code> the number of weeks, overrides the number of months</li>
+     * <li><code>-s&lt;labels&gt;</code> the comma separated shift labels, e.g. "FD,SD,ND"</li>
+     * <li><code>-a&lt;assignees&gt;</code> the size of the pool of names</li>
+     * <li><code>-x&lt;ratio&gt;</code> the share of cells naming two persons, e.g. "0.1"</li>
+     * <li><code>-r&lt;seed&gt;</code> the seed of the random</li>
+     * </ul>
+     *
+     * @param args the arguments
+     * @throws IOException
+     */
+    public static void main(String... args) throws IOException {
+        DutyRosterDocxGenerator generator = new DutyRosterDocxGenerator();
+        String output = null;
+
+        try {
+            for (String arg : args) {
+                String value = StringUtils.substring(arg, 2);
+                if (StringUtils.startsWith(arg, ARG_OUTPUT)) {
+                    output = value;
+                } else if (StringUtils.startsWith(arg, ARG_YEAR)) {
+                    generator.setYear(Integer.parseInt(value));
+                } else if (StringUtils.startsWith(arg, ARG_MONTH)) {
+                    generator.setMonth(Integer.parseInt(value) - 1);
+                } else if (StringUtils.startsWith(arg, ARG_MONTHS)) {
+                    generator.setMonths(Integer.parseInt(value));
+                } else if (StringUtils.startsWith(arg, ARG_WEEKS)) {
+                    generator.setWeeks(Integer.parseInt(value));
+                } else if (StringUtils.startsWith(arg, ARG_SHIFT_LABELS)) {
+                    generator.setShiftLabels(StringUtils.split(value, ","));
+                } else if (StringUtils.startsWith(arg, ARG_ASSIGNEES)) {
+                    generator.setAssignees(Integer.parseInt(value));
+                } else if (StringUtils.startsWith(arg, ARG_MULTI_ASSIGNEE_RATIO)) {
+                    generator.setMultiAssigneeRatio(Double.parseDouble(value));
+                } else if (StringUtils.startsWith(arg, ARG_SEED)) {
+                    generator.setSeed(Long.parseLong(value));
+                } else {
+                    log.error("unknown argument [{}]", arg);
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            log.error("can not parse arguments: [{}]", e.getMessage());
+            return;
+        }
+
+        if (output == null) {
+            output = String.format("%d_%02d.docx", generator.getYear(), generator.getMonth() + 1);
+        }
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(output))) {
+            generator.write(os);
+        }
+        log.info("generated [{}]", output);
+    }
+
+    /**
+     * @return the generated docx
+     * @throws IOException
+     */
+    public byte[] generate() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the generated docx to the given stream. The stream is not closed.
+     *
+     * @param os the stream to write to
+     * @throws IOException
+     */
+    public void write(OutputStream os) throws IOException {
+        LocalDate first = LocalDate.of(year, 1, 1).plusMonths(month);
+        LocalDate last = first.plusMonths(months).minusDays(1);
+        LocalDate monday = first.with(DayOfWeek.MONDAY);
+        if (weeks > 0) {
+            last = monday.plusWeeks(weeks).minusDays(1);
+        }
+        int numberOfWeeks = (int) ChronoUnit.WEEKS.between(monday, last) + 1;
+
+        String[] names = createNames();
+        Random random = new Random(seed);
+
+        XWPFDocument document = new XWPFDocument();
+        document.createParagraph().createRun().setText("Dienstplan");
+        XWPFTable table = document.createTable(1, WEEKDAYS.length + 1);
+        XWPFTableRow header = table.getRow(0);
+        for (int weekday = 0; weekday < WEEKDAYS.length; weekday++) {
+            header.getCell(weekday + 1).setText(WEEKDAYS[weekday]);
+        }
+
+        for (int week = 0; week < numberOfWeeks; week++) {
+            LocalDate weekStart = monday.plusWeeks(week);
+
+            XWPFTableRow dateRow = table.createRow();
+            for (int weekday = 0; weekday < WEEKDAYS.length; weekday++) {
+                LocalDate date = weekStart.plusDays(weekday);
+                if (!date.isBefore(first) && !date.isAfter(last)) {
+                    dateRow.getCell(weekday + 1).setText(date.format(DAY_AND_MONTH));
+                }
+            }
+
+            for (String label : shiftLabels) {
+                XWPFTableRow shiftRow = table.createRow();
+                shiftRow.getCell(0).setText(label);
+                boolean lateShift = StringUtils.endsWith(label, "SD");
+                for (int weekday = 0; weekday < WEEKDAYS.length; weekday++) {
+                    LocalDate date = weekStart.plusDays(weekday);
+                    boolean weekend = weekday >= 5;
+                    if (date.isBefore(first) || date.isAfter(last) || (lateShift && weekend && !lateShiftOnWeekends)) {
+                        continue;
+                    }
+                    shiftRow.getCell(weekday + 1).setText(drawPersonnel(names, random));
+                }
+            }
+        }
+
+        document.write(os);
+    }
+
+    /**
+     * @param names  the pool of names
+     * @param random the random
+     * @return one or two names of the pool, e.g. "Judy" or "Judy/Tom"
+     */
+    private String drawPersonnel(String[] names, Random random) {
+        String personnel = names[random.nextInt(names.length)];
+        if (names.length > 1 && random.nextDouble() < multiAssigneeRatio) {
+            String second;
+            do {
+                second = names[random.nextInt(names.length)];
+            } while (second.equals(personnel));
+            personnel += "/" + second;
+        }
+        return personnel;
+    }
+
+    /**
+     * @return the pool of {@link #assignees} distinct names
+     */
+    private String[] createNames() {
+        String[] names = new String[Math.max(1, assignees)];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = FIRST_NAMES[i % FIRST_NAMES.length];
+            if (i >= FIRST_NAMES.length) {
+                names[i] += i / FIRST_NAMES.length + 1;
+            }
+        }
+        return names;
+    }
+}
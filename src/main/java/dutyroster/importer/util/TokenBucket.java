@@ -0,0 +1,71 @@
+package dutyroster.importer.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the rate of requests to a number of permits per second. The bucket holds up to <code>capacity</code>
+ * permits, so short bursts are served at once, and is refilled continuously. A caller taking more permits than
+ * there are goes into debt and waits until the debt is paid off, the next caller waits for that debt, too. Thus a
+ * batch of more permits than the capacity does not block forever. The bucket is thread-safe.
+ */
+public class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double permitsPerSecond;
+
+    private final int capacity;
+
+    private final LongSupplier nanoClock;
+
+    /**
+     * The permits available, negative in case of debt.
+     */
+    private double permits;
+
+    private long lastRefill;
+
+    /**
+     * @param permitsPerSecond the permits per second, 0 or less for no limit
+     * @param capacity         the maximum number of permits stored, at least 1
+     */
+    public TokenBucket(double permitsPerSecond, int capacity) {
+        this(permitsPerSecond, capacity, System::nanoTime);
+    }
+
+    TokenBucket(double permitsPerSecond, int capacity, LongSupplier nanoClock) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = Math.max(1, capacity);
+        this.nanoClock = nanoClock;
+        this.permits = this.capacity;
+        this.lastRefill = nanoClock.getAsLong();
+    }
+
+    /**
+     * Takes the given number of permits, waiting until they are available.
+     *
+     * @param count the number of permits
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire(int count) throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(reserve(count));
+    }
+
+    /**
+     * Takes the given number of permits without waiting.
+     *
+     * @param count the number of permits
+     * @return the nanoseconds to wait until the permits are available, 0 if they are available at once
+     */
+    synchronized long reserve(int count) {
+        if (permitsPerSecond <= 0) {
+            return 0;
+        }
+        long now = nanoClock.getAsLong();
+        permits = Math.min(capacity, permits + (now - lastRefill) * permitsPerSecond / NANOS_PER_SECOND);
+        lastRefill = now;
+        permits -= count;
+        return permits >= 0 ? 0 : (long) Math.ceil(-permits * NANOS_PER_SECOND / permitsPerSecond);
+    }
+}
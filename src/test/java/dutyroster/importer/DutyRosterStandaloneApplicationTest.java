@@ -15,6 +15,16 @@ public class DutyRosterStandaloneApplicationTest {
         assertEquals("2014_12.docx", DutyRosterStandaloneApplication.parseFilenameFromArgs("-d", "-f2014_12.docx"));
     }
 
+    @Test
+    public void testParseBatchFromArgs() throws Exception {
+        assertNull(DutyRosterStandaloneApplication.parseBatchFromArgs(null));
+        assertNull(DutyRosterStandaloneApplication.parseBatchFromArgs("-d", "-f2014_12.docx"));
+        assertNull(DutyRosterStandaloneApplication.parseBatchFromArgs("-b"));
+
+        assertEquals("rosters", DutyRosterStandaloneApplication.parseBatchFromArgs("-d", "-brosters"));
+        assertEquals("rosters/2015_*.docx", DutyRosterStandaloneApplication.parseBatchFromArgs("-brosters/2015_*.docx"));
+    }
+
     @Test
     public void testIsDryRun() throws Exception {
         assertTrue(DutyRosterStandaloneApplication.isDryRun("-f2014_12.docx", "-d"));
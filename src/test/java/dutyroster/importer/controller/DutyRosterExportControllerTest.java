@@ -0,0 +1,136 @@
+package dutyroster.importer.controller;
+
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.Shift;
+import dutyroster.importer.service.*;
+import dutyroster.importer.storage.StorageFileNotFoundException;
+import dutyroster.importer.storage.StorageService;
+import dutyroster.importer.util.DutyRosterDocxGenerator;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Test for the {@link DutyRosterExportController}
+ */
+public class DutyRosterExportControllerTest {
+
+    private MockMvc mvc;
+
+    private DutyRosterRegistry dutyRosterRegistry = new DutyRosterRegistry();
+
+    private DutyRosterMonth march;
+
+    @Before
+    public void setUp() throws Exception {
+        DutyRosterDocxGenerator generator = new DutyRosterDocxGenerator();
+        generator.setYear(2015);
+        generator.setMonth(2);
+
+        StorageService storageService = mock(StorageService.class);
+        given(storageService.loadAsResource("2015_03.docx")).willReturn(new ByteArrayResource(generator.generate()));
+        given(storageService.loadAsResource("missing.docx")).willThrow(new StorageFileNotFoundException("missing"));
+
+        DutyRosterShiftService dutyRosterShiftService = new DutyRosterShiftService();
+        DutyRosterConverterService converterService = new DutyRosterConverterService(dutyRosterShiftService);
+        march = converterService.extractDutyRoster(new ByteArrayInputStream(generator.generate()), 2015);
+        DutyRosterImporterService importerService = new DutyRosterImporterService(converterService,
+                new GoogleCalendarService(dutyRosterShiftService), new DutyRosterDiffService(dutyRosterShiftService),
+                new ParsedDutyRosterCache(), dutyRosterRegistry);
+        mvc = MockMvcBuilders.standaloneSetup(new DutyRosterExportController(importerService, converterService,
+                new DutyRosterIcsService(dutyRosterShiftService, dutyRosterRegistry), storageService)).build();
+    }
+
+    @Test
+    public void testExportCsv() throws Exception {
+        // the headers are sent before the body is streamed asynchronously
+        MvcResult result = mvc.perform(get("/api/csv/2015/2015_03.docx"))
+                .andExpect(request().asyncStarted())
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"2015_03.csv\""))
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andReturn();
+
+        // wait for the streaming to finish
+        result.getAsyncResult();
+        assertEquals(200, result.getResponse().getStatus());
+        String csv = result.getResponse().getContentAsString();
+
+        String[] lines = csv.split("\n");
+        assertEquals(1 + 84, lines.length);
+        assertTrue(lines[0].startsWith("Subject,Start Date"));
+        assertTrue(lines[1].endsWith(",01/03/15,07:00:00 AM,01/03/15,02:00:00 PM,False,,,True"));
+    }
+
+    @Test
+    public void testExportCsvGzipped() throws Exception {
+        MvcResult plain = mvc.perform(get("/api/csv/2015/2015_03.docx")).andReturn();
+        MvcResult gzipped = mvc.perform(get("/api/csv/2015/2015_03.docx").param("gzip", "true"))
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andReturn();
+
+        plain.getAsyncResult();
+        gzipped.getAsyncResult();
+        byte[] expected = plain.getResponse().getContentAsByteArray();
+        byte[] compressed = gzipped.getResponse().getContentAsByteArray();
+
+        byte[] actual = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+        assertEquals(new String(expected, StandardCharsets.UTF_8), new String(actual, StandardCharsets.UTF_8));
+        assertTrue(compressed.length < expected.length);
+    }
+
+    @Test
+    public void testExportIcs() throws Exception {
+        MvcResult result = mvc.perform(get("/api/ics/2015/2015_03.docx"))
+                .andExpect(request().asyncStarted())
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"2015_03.ics\""))
+                .andReturn();
+
+        result.getAsyncResult();
+        String ics = result.getResponse().getContentAsString();
+        assertTrue(ics.startsWith("BEGIN:VCALENDAR\r\n"));
+        assertEquals(84, ics.split("BEGIN:VEVENT").length - 1);
+    }
+
+    @Test
+    public void testAssigneeFeed() throws Exception {
+        mvc.perform(get("/api/ics/feed/Peter/2015/2")).andExpect(status().isNotFound());
+
+        dutyRosterRegistry.register(march);
+        MvcResult result = mvc.perform(get("/api/ics/feed/Peter/2015/2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "no-cache"))
+                .andReturn();
+        String etag = result.getResponse().getHeader("ETag");
+        assertNotNull(etag);
+        assertTrue(result.getResponse().getContentAsString().contains("SUMMARY:"));
+
+        mvc.perform(get("/api/ics/feed/Peter/2015/2").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        DutyRosterMonth changed = new DutyRosterMonth(2015, 2);
+        changed.addDutyRosterShift(Shift.EARLY_SHIFT, 31, "Peter");
+        dutyRosterRegistry.register(changed);
+        mvc.perform(get("/api/ics/feed/Peter/2015/2").header("If-None-Match", etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testExportCsvOfMissingFile() throws Exception {
+        mvc.perform(get("/api/csv/2015/missing.docx")).andExpect(status().isNotFound());
+    }
+}
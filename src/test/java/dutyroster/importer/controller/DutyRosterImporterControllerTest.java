@@ -1,7 +1,13 @@
 package dutyroster.importer.controller;
 
+import dutyroster.importer.domain.DutyRosterDiff;
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.Shift;
+import dutyroster.importer.service.*;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -12,7 +18,11 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.io.InputStream;
+import java.util.Collections;
+
 import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertTrue;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -24,6 +34,9 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @SpringBootTest
 public class DutyRosterImporterControllerTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Autowired
     private MockMvc mvc;
 
@@ -38,4 +51,37 @@ public class DutyRosterImporterControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string(equalTo("pong")));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConflictsAreReported() throws Exception {
+        DutyRosterDiff diff = new DutyRosterDiff(2015, 2);
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        diff.setConflicts(Collections.singletonList(new DutyRosterDiff.Change(
+                march.createShift(Shift.EARLY_SHIFT, 1, "Tom"), march.createShift(Shift.EARLY_SHIFT, 1, "Judy"))));
+        DutyRosterShiftService dutyRosterShiftService = new DutyRosterShiftService();
+        DutyRosterImporterService importerService = new DutyRosterImporterService(
+                new DutyRosterConverterService(dutyRosterShiftService),
+                new GoogleCalendarService(dutyRosterShiftService), new DutyRosterDiffService(dutyRosterShiftService),
+                new ParsedDutyRosterCache(),
+                new DutyRosterRegistry()) {
+            @Override
+            public DutyRosterDiff convertAndImportDutyRoster(InputStream is, String originalFilename, boolean dryRun,
+                                                             boolean createCsv, Integer year, Integer month,
+                                                             String ward) {
+                return diff;
+            }
+        };
+        EmailProperties emailProperties = new EmailProperties();
+        emailProperties.setHost("localhost");
+        emailProperties.setFrom("roster@localhost");
+        emailProperties.setTo("ward@localhost");
+        DutyRosterImporterController controller = new DutyRosterImporterController(importerService,
+                new EmailService(dutyRosterShiftService, emailProperties), new DutyRosterStatisticsService(),
+                new DutyRosterJsonService());
+
+        // nothing to import, but the conflicts are mailed
+        String email = controller.handleConvertAndImport(folder.newFile().getPath(), "2015_03.docx", true, false,
+                2015, 2, null);
+        assertTrue(email, email.contains("Judy"));
+    }
+}
@@ -0,0 +1,81 @@
+package dutyroster.importer.controller;
+
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.domain.Shift;
+import dutyroster.importer.service.DutyRosterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Test for the {@link OnDutyController}
+ */
+public class OnDutyControllerTest {
+
+    private MockMvc mvc;
+
+    private DutyRosterShift night;
+
+    @Before
+    public void setUp() {
+        DutyRosterMonth january = new DutyRosterMonth(2018, 0);
+        january.addDutyRosterShift(Shift.LATE_SHIFT, 31, "Judy");
+        january.addDutyRosterShift(Shift.NIGHT_SHIFT, 31, "Tom");
+        DutyRosterMonth february = new DutyRosterMonth(2018, 1);
+        february.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "Judy");
+
+        DutyRosterRegistry dutyRosterRegistry = new DutyRosterRegistry();
+        dutyRosterRegistry.register(february);
+        dutyRosterRegistry.register(january);
+        night = january.getDutyRosterShifts(31).stream().filter(shift -> shift.getShift() == Shift.NIGHT_SHIFT)
+                .findFirst().get();
+
+        // now is 03:00h of the 1st of February, during the night shift started in January
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(night.getTo().getTime() - 4 * 60 * 60 * 1000L),
+                ZoneId.systemDefault());
+        mvc = MockMvcBuilders.standaloneSetup(new OnDutyController(dutyRosterRegistry, clock)).build();
+    }
+
+    @Test
+    public void testOnDutyNow() throws Exception {
+        mvc.perform(get("/api/onduty/now"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value("2018_01_31_2"))
+                .andExpect(jsonPath("$[0].name").value("Tom"));
+    }
+
+    @Test
+    public void testOnDutyBetween() throws Exception {
+        mvc.perform(get("/api/onduty").param("from", "2018-01-31T19:00").param("to", "2018-02-01T08:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].id").value("2018_01_31_1"))
+                .andExpect(jsonPath("$[1].id").value("2018_01_31_2"))
+                .andExpect(jsonPath("$[2].id").value("2018_02_01_0"));
+        mvc.perform(get("/api/onduty").param("from", "yesterday").param("to", "2018-02-01T08:00"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testNextShift() throws Exception {
+        mvc.perform(get("/api/onduty/next/Judy"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value("2018_02_01_0"));
+        mvc.perform(get("/api/onduty/next/Judy").param("after", "2018-01-31T00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value("2018_01_31_1"));
+        mvc.perform(get("/api/onduty/next/Tom"))
+                .andExpect(status().isNotFound());
+    }
+}
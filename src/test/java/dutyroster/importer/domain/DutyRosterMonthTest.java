@@ -0,0 +1,208 @@
+package dutyroster.importer.domain;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link DutyRosterMonth}
+ */
+public class DutyRosterMonthTest {
+
+    @Test
+    public void testShiftsAreRestoredFromTheSlots() {
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        DutyRosterShift expected = march.createShift(Shift.NIGHT_SHIFT, 6, "Judy/Tom");
+        march.addDutyRosterShift(expected);
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 31, null);
+
+        Set<DutyRosterShift> shifts = march.getAllDutyRosterDays();
+        assertEquals(2, shifts.size());
+        Iterator<DutyRosterShift> iterator = shifts.iterator();
+        DutyRosterShift night = iterator.next();
+        assertEquals("2015_03_06_2", night.getId());
+        assertEquals(expected.getId(), night.getId());
+        assertEquals(Shift.NIGHT_SHIFT, night.getShift());
+        assertEquals("Judy/Tom", night.getName());
+        assertEquals(truncate(expected.getFrom()), night.getFrom().getTime());
+        assertEquals(truncate(expected.getTo()), night.getTo().getTime());
+        assertEquals(6, night.getDay());
+
+        DutyRosterShift early = iterator.next();
+        assertEquals("2015_03_31_0", early.getId());
+        assertNull(early.getName());
+
+        Map<Integer, Set<DutyRosterShift>> days = march.getDutyRosterDays();
+        assertEquals(2, days.size());
+        assertEquals(1, days.get(6).size());
+        assertEquals(night, march.getDutyRosterShifts(6).iterator().next());
+        assertTrue(march.getDutyRosterShifts(7).isEmpty());
+        assertFalse(march.isEmpty());
+        assertTrue(new DutyRosterMonth(2015, 2).isEmpty());
+    }
+
+    @Test
+    public void testShiftsOfTheSameIdAreNotReplaced() {
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        march.addDutyRosterShift(Shift.LATE_SHIFT, 2, "Peter");
+        march.addDutyRosterShift(Shift.LATE_SHIFT, 2, "Paul");
+
+        assertEquals(1, march.getAllDutyRosterDays().size());
+        assertEquals("Peter", march.getAllDutyRosterDays().iterator().next().getName());
+    }
+
+    @Test
+    public void testEventIdAndSequenceAreWrittenThrough() {
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        march.addDutyRosterShift(Shift.LATE_SHIFT, 2, "Peter");
+        DutyRosterMonth copy = march.copy();
+
+        DutyRosterShift shift = march.getDutyRosterShifts(2).iterator().next();
+        assertNull(shift.getEventId());
+        shift.setEventId("event");
+        shift.setSequence(3);
+
+        shift = march.getAllDutyRosterDays().iterator().next();
+        assertEquals("event", shift.getEventId());
+        assertEquals(3, shift.getSequence());
+
+        // copies are neither bound to the copied roster nor to the shift
+        assertNull(copy.getAllDutyRosterDays().iterator().next().getEventId());
+        shift.copy().setEventId("copy");
+        assertEquals("event", march.getAllDutyRosterDays().iterator().next().getEventId());
+    }
+
+    @Test
+    public void testSortedViewReflectsLaterChanges() {
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        assertEquals(0, march.size());
+        march.addDutyRosterShift(Shift.LATE_SHIFT, 2, "Peter");
+
+        Set<DutyRosterShift> shifts = march.getAllDutyRosterDays();
+        assertEquals(1, march.size());
+
+        // adding a present shift changes nothing
+        march.addDutyRosterShift(Shift.LATE_SHIFT, 2, "Paul");
+        assertEquals(1, shifts.size());
+
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "Paul");
+        assertEquals(2, shifts.size());
+        assertEquals(2, march.size());
+        assertTrue(shifts.contains(march.createShift(Shift.EARLY_SHIFT, 1, null)));
+        assertFalse(shifts.contains(march.createShift(Shift.EARLY_SHIFT, 2, null)));
+
+        // an event id set through a shift of a day is seen by the view
+        march.getDutyRosterShifts(2).iterator().next().setEventId("event");
+        Iterator<DutyRosterShift> iterator = shifts.iterator();
+        assertNull(iterator.next().getEventId());
+        assertEquals("event", iterator.next().getEventId());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testSortedViewMergesShiftsOfOtherMonths() {
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 32, "Paul");
+        march.addDutyRosterShift(Shift.NIGHT_SHIFT, 31, "Tom");
+        march.addDutyRosterShift(new DutyRosterMonth(2015, 1).createShift(Shift.LATE_SHIFT, 28, "Mary"));
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "Judy");
+
+        List<String> ids = new ArrayList<>();
+        for (DutyRosterShift shift : march.getAllDutyRosterDays()) {
+            ids.add(shift.getId());
+        }
+        assertEquals(Arrays.asList("2015_02_28_1", "2015_03_01_0", "2015_03_31_2", "2015_04_01_0"), ids);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSortedViewIsUnmodifiable() {
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        march.getAllDutyRosterDays().add(march.createShift(Shift.LATE_SHIFT, 2, "Peter"));
+    }
+
+    @Test
+    public void testShiftsOfOtherMonthsAreKept() {
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        DutyRosterShift april = new DutyRosterMonth(2015, 3).createShift(Shift.EARLY_SHIFT, 2, "Mary");
+        april.setEventId("april");
+        march.addDutyRosterShift(april);
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 2, "Peter");
+
+        Set<DutyRosterShift> shifts = march.getAllDutyRosterDays();
+        assertEquals(2, shifts.size());
+        assertTrue(shifts.contains(april));
+        assertEquals(2, march.getDutyRosterDays().get(2).size());
+        assertEquals(2, march.getDutyRosterShifts(2).size());
+
+        DutyRosterMonth copy = march.copy();
+        DutyRosterShift copied = copy.getDutyRosterShifts(2).stream()
+                .filter(shift -> shift.equals(april)).findFirst().get();
+        assertNotSame(april, copied);
+        assertEquals("april", copied.getEventId());
+        assertEquals(april.getFrom(), copied.getFrom());
+    }
+
+    @Test
+    public void testCopyCountsRolledOverShiftsOnce() {
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 31, "Peter");
+        // the last row of a roster carries the first days of the next month
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 32, "Paul");
+        march.addDutyRosterShift(Shift.NIGHT_SHIFT, 33, "Mary");
+        assertEquals(3, march.size());
+
+        DutyRosterMonth copy = march.copy();
+
+        assertEquals(copy.getAllDutyRosterDays().size(), copy.size());
+        assertEquals(3, copy.size());
+        assertEquals(3, copy.copy().size());
+        copy.addDutyRosterShift(Shift.EARLY_SHIFT, 32, "Tom");
+        assertEquals(3, copy.size());
+        copy.addDutyRosterShift(Shift.LATE_SHIFT, 32, "Tom");
+        assertEquals(4, copy.size());
+        assertEquals(copy.getAllDutyRosterDays().size(), copy.size());
+        assertEquals(3, march.size());
+
+        DutyRosterMonth onlyRolledOver = new DutyRosterMonth(2015, 2);
+        onlyRolledOver.addDutyRosterShift(Shift.EARLY_SHIFT, 32, "Paul");
+        assertEquals(1, onlyRolledOver.copy().size());
+        assertFalse(onlyRolledOver.copy().isEmpty());
+    }
+
+    @Test
+    public void testNamesAreInternedPerRoster() {
+        AssigneeIndex index = new AssigneeIndex();
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, index.indexOf("Name" + i));
+        }
+        assertEquals(3, index.indexOf(new String("Name3")));
+        assertEquals(20, index.size());
+        AssigneeIndex copy = index.copy();
+        assertEquals(20, copy.indexOf("Other"));
+        assertEquals(20, index.size());
+        assertEquals("Name19", copy.nameOf(19));
+
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        for (int day = 1; day <= 31; day++) {
+            march.addDutyRosterShift(Shift.EARLY_SHIFT, day, "Name" + day);
+        }
+        DutyRosterMonth marchCopy = march.copy();
+        marchCopy.addDutyRosterShift(Shift.LATE_SHIFT, 1, "Other");
+        DutyRosterMonth april = new DutyRosterMonth(2015, 3);
+        april.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "Other");
+
+        for (int day = 1; day <= 31; day++) {
+            assertEquals("Name" + day, march.getDutyRosterShifts(day).iterator().next().getName());
+            assertEquals("Name" + day, marchCopy.getDutyRosterShifts(day).iterator().next().getName());
+        }
+        assertEquals(31, march.size());
+        assertEquals("Other", april.getDutyRosterShifts(1).iterator().next().getName());
+    }
+
+    private static long truncate(java.util.Date date) {
+        return DateUtils.truncate(date, Calendar.MINUTE).getTime();
+    }
+}
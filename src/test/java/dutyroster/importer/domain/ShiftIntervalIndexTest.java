@@ -0,0 +1,99 @@
+package dutyroster.importer.domain;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link ShiftIntervalIndex}
+ */
+public class ShiftIntervalIndexTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Test
+    public void testQueriesMatchAFullScan() {
+        List<DutyRosterShift> shifts = new ArrayList<>();
+        String[] names = {"Tom", "Judy", "Peter", null};
+        Random random = new Random(42);
+        for (int month = 0; month < 3; month++) {
+            DutyRosterMonth dutyRosterMonth = new DutyRosterMonth(2018, month);
+            for (int day = 1; day <= 31; day++) {
+                for (Shift shift : Shift.values()) {
+                    if (random.nextInt(4) > 0) {
+                        dutyRosterMonth.addDutyRosterShift(shift, day, names[random.nextInt(names.length)]);
+                    }
+                }
+            }
+            shifts.addAll(dutyRosterMonth.getAllDutyRosterDays());
+        }
+        ShiftIntervalIndex index = ShiftIntervalIndex.of(shifts);
+        assertEquals(shifts.size(), index.size());
+
+        long start = shifts.get(0).getFrom().getTime() - 24 * HOUR;
+        for (int i = 0; i < 2000; i++) {
+            long from = start + (long) (random.nextDouble() * 100 * 24 * HOUR);
+            long to = from + random.nextInt(3) * random.nextInt(30) * HOUR / 2;
+            List<DutyRosterShift> expected = shifts.stream()
+                    .filter(shift -> shift.getFrom().getTime() < Math.max(to, from + 1)
+                            && shift.getTo().getTime() > from)
+                    .sorted(Comparator.comparing(DutyRosterShift::getFrom))
+                    .collect(Collectors.toList());
+            if (to > from) {
+                assertEquals(expected, index.getShiftsBetween(from, to));
+            } else {
+                assertEquals(expected, index.getShiftsAt(from));
+            }
+
+            String name = names[random.nextInt(names.length - 1)];
+            DutyRosterShift next = shifts.stream()
+                    .filter(shift -> name.equals(shift.getName()) && shift.getFrom().getTime() >= from)
+                    .min(Comparator.comparing(DutyRosterShift::getFrom)).orElse(null);
+            assertEquals(next, index.getNextShift(name, from));
+        }
+    }
+
+    @Test
+    public void testNightShiftCrossingTheMonth() {
+        DutyRosterMonth january = new DutyRosterMonth(2018, 0);
+        january.addDutyRosterShift(Shift.NIGHT_SHIFT, 31, "Tom");
+        DutyRosterMonth february = new DutyRosterMonth(2018, 1);
+        february.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "Judy");
+        List<DutyRosterShift> shifts = new ArrayList<>(january.getAllDutyRosterDays());
+        shifts.addAll(february.getAllDutyRosterDays());
+        ShiftIntervalIndex index = ShiftIntervalIndex.of(shifts);
+
+        DutyRosterShift night = january.getAllDutyRosterDays().iterator().next();
+        DutyRosterShift early = february.getAllDutyRosterDays().iterator().next();
+        // the night shift ends when the early shift starts
+        assertEquals(Collections.singletonList(night), index.getShiftsAt(early.getFrom().getTime() - 1));
+        assertEquals(Collections.singletonList(early), index.getShiftsAt(early.getFrom().getTime()));
+        assertEquals(Arrays.asList(night, early),
+                index.getShiftsBetween(night.getFrom().getTime(), early.getTo().getTime()));
+        assertEquals(early, index.getNextShift("Judy", night.getFrom().getTime()));
+        assertNull(index.getNextShift("Tom", night.getFrom().getTime() + 1));
+        assertNull(index.getNextShift("Paul", 0));
+        assertTrue(ShiftIntervalIndex.EMPTY.getShiftsAt(early.getFrom().getTime()).isEmpty());
+    }
+
+    @Test
+    public void testNextShiftOfSharedShiftsIgnoringCase() {
+        DutyRosterMonth march = new DutyRosterMonth(2018, 2);
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "Judy/Tom");
+        march.addDutyRosterShift(Shift.LATE_SHIFT, 1, " tom ");
+        march.addDutyRosterShift(Shift.NIGHT_SHIFT, 1, "Tom/TOM");
+        List<DutyRosterShift> shifts = new ArrayList<>(march.getAllDutyRosterDays());
+        ShiftIntervalIndex index = ShiftIntervalIndex.of(shifts);
+
+        assertEquals(shifts.get(0), index.getNextShift("Tom", 0));
+        assertEquals(shifts.get(0), index.getNextShift("judy", 0));
+        assertEquals(shifts.get(1), index.getNextShift(" TOM", shifts.get(0).getFrom().getTime() + 1));
+        assertEquals(shifts.get(2), index.getNextShift("tom", shifts.get(1).getFrom().getTime() + 1));
+        assertNull(index.getNextShift("Judy", shifts.get(0).getFrom().getTime() + 1));
+        assertNull(index.getNextShift("", 0));
+        assertNull(index.getNextShift(null, 0));
+    }
+}
@@ -0,0 +1,65 @@
+package dutyroster.importer.domain;
+
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link ShiftKey}
+ */
+public class ShiftKeyTest {
+
+    @Test
+    public void testKeyAndIdAreInterchangeable() {
+        long key = ShiftKey.of(2015, 1, 22, Shift.NIGHT_SHIFT);
+        assertEquals("2015_02_22_2", ShiftKey.toId(key));
+        assertEquals(key, ShiftKey.parse("2015_02_22_2"));
+        assertEquals(2015, ShiftKey.getYear(key));
+        assertEquals(1, ShiftKey.getMonth(key));
+        assertEquals(22, ShiftKey.getDay(key));
+        assertEquals(Shift.NIGHT_SHIFT.ordinal(), ShiftKey.getOrdinal(key));
+        assertEquals(ShiftKey.ofMonth(2015, 1), ShiftKey.ofMonth(key));
+        assertEquals("0999_12_01_0", ShiftKey.toId(ShiftKey.of(999, 11, 1, Shift.EARLY_SHIFT)));
+    }
+
+    @Test
+    public void testKeysAreOrderedLikeIds() {
+        List<DutyRosterShift> shifts = new ArrayList<>();
+        for (int month = 0; month < 12; month++) {
+            DutyRosterMonth dutyRosterMonth = new DutyRosterMonth(2016, month);
+            for (int day = 1; day <= 28; day += 9) {
+                for (Shift shift : Shift.values()) {
+                    shifts.add(dutyRosterMonth.createShift(shift, day, null));
+                }
+            }
+        }
+
+        FastDateFormat fdf = FastDateFormat.getInstance("yyyy_MM_dd_");
+        for (int i = 0; i < shifts.size(); i++) {
+            DutyRosterShift shift = shifts.get(i);
+            assertEquals(fdf.format(shift.getFrom()) + shift.getShift().ordinal(), shift.getId());
+            assertEquals(shift.getKey(), ShiftKey.of(shift.getShift(), shift.getFrom()));
+            if (i > 0) {
+                DutyRosterShift previous = shifts.get(i - 1);
+                assertTrue(previous.getKey() < shift.getKey());
+                assertTrue(previous.getId().compareTo(shift.getId()) < 0);
+                assertTrue(previous.compareTo(shift) < 0);
+            }
+        }
+    }
+
+    @Test
+    public void testDaysBeyondTheEndOfTheMonthRollOver() {
+        DutyRosterShift shift = new DutyRosterMonth(2015, 1).createShift(Shift.EARLY_SHIFT, 30, null);
+        assertEquals("2015_03_02_0", shift.getId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedId() {
+        ShiftKey.parse("2015_13_01_0");
+    }
+}
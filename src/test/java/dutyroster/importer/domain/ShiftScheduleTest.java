@@ -0,0 +1,161 @@
+package dutyroster.importer.domain;
+
+import dutyroster.importer.service.ShiftScheduleProperties;
+import dutyroster.importer.service.ShiftScheduleService;
+import org.junit.Test;
+
+import java.time.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link ShiftSchedule}
+ */
+public class ShiftScheduleTest {
+
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+
+    @Test
+    public void testParseLabelOfDefaultSchedule() {
+        assertEquals(Shift.EARLY_SHIFT, ShiftSchedule.DEFAULT.parseLabel("FD"));
+        assertEquals(Shift.EARLY_SHIFT, ShiftSchedule.DEFAULT.parseLabel("xFD"));
+        assertEquals(Shift.EARLY_SHIFT, ShiftSchedule.DEFAULT.parseLabel("TD"));
+        assertEquals(Shift.LATE_SHIFT, ShiftSchedule.DEFAULT.parseLabel("SD"));
+        assertEquals(Shift.NIGHT_SHIFT, ShiftSchedule.DEFAULT.parseLabel("ND"));
+        assertEquals(Shift.NIGHT_SHIFT, ShiftSchedule.DEFAULT.parseLabel("/ND"));
+        assertEquals(Shift.EARLY_SHIFT, Shift.parseLabel("FD"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseUnknownLabel() {
+        ShiftSchedule.DEFAULT.parseLabel("xTD");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseNullLabel() {
+        ShiftSchedule.DEFAULT.parseLabel(null);
+    }
+
+    @Test
+    public void testConfiguredSchedule() {
+        ShiftScheduleProperties.ShiftProperties night = new ShiftScheduleProperties.ShiftProperties();
+        night.setLabel("N");
+        night.setStart("21:30");
+        night.getStartOn().put("saturday", "20:00");
+        night.setEnd("06:30");
+        ShiftScheduleProperties.ShiftProperties early = new ShiftScheduleProperties.ShiftProperties();
+        early.setAltLabel(" ");
+        ShiftScheduleProperties properties = new ShiftScheduleProperties();
+        properties.setName("ward2");
+        properties.getShifts().put("NIGHT_SHIFT", night);
+        properties.getShifts().put("EARLY_SHIFT", early);
+
+        ShiftSchedule schedule = properties.createShiftSchedule();
+        assertEquals("ward2", schedule.getName());
+        assertEquals(Shift.NIGHT_SHIFT, schedule.parseLabel("xN"));
+        assertEquals(Shift.EARLY_SHIFT, schedule.parseLabel("FD"));
+        assertNull(schedule.getAltLabel(Shift.EARLY_SHIFT));
+        assertTrue(schedule.getDefinition(Shift.NIGHT_SHIFT).isOvernight());
+
+        // 2018-03-02 is a Friday, the night shift of Saturday starts early
+        ShiftTimetable timetable = ShiftTimetable.of(schedule, 2018, 2, BERLIN);
+        assertEquals(millis(2018, 3, 2, 21, 30), timetable.getFrom(2, Shift.NIGHT_SHIFT));
+        assertEquals(millis(2018, 3, 3, 6, 30), timetable.getTo(2, Shift.NIGHT_SHIFT));
+        assertEquals(millis(2018, 3, 3, 20, 0), timetable.getFrom(3, Shift.NIGHT_SHIFT));
+        assertEquals(millis(2018, 3, 2, 14, 0), timetable.getFrom(2, Shift.LATE_SHIFT));
+        assertNotSame(ShiftTimetable.of(ShiftSchedule.DEFAULT, 2018, 2, BERLIN), timetable);
+    }
+
+    @Test
+    public void testWards() {
+        ShiftScheduleProperties.ShiftProperties late = new ShiftScheduleProperties.ShiftProperties();
+        late.setEnd("21:00");
+        ShiftScheduleProperties.ShiftProperties early = new ShiftScheduleProperties.ShiftProperties();
+        early.setLabel("F");
+        ShiftScheduleProperties.WardProperties ward2 = new ShiftScheduleProperties.WardProperties();
+        ward2.setCalendarId("ward2@group.calendar.google.com");
+        ward2.getShifts().put("EARLY_SHIFT", early);
+        ShiftScheduleProperties properties = new ShiftScheduleProperties();
+        properties.setName("ward1");
+        properties.getShifts().put("LATE_SHIFT", late);
+        properties.getWards().put("ward2", ward2);
+
+        ShiftScheduleService service = new ShiftScheduleService(properties);
+        assertEquals(Arrays.asList("ward1", "ward2"), new ArrayList<>(service.getWards()));
+        assertSame(service.getDefault(), service.get(null));
+        assertSame(service.getDefault(), service.get("ward1"));
+        assertEquals("ward1", service.getDefault().getName());
+        assertNull(service.getCalendarId(null));
+        assertEquals("ward2@group.calendar.google.com", service.getCalendarId("ward2"));
+
+        // a further ward takes whatever is not given from the default ward
+        ShiftSchedule schedule = service.get("ward2");
+        assertEquals("ward2", schedule.getName());
+        assertEquals(Shift.EARLY_SHIFT, schedule.parseLabel("F"));
+        assertEquals(LocalTime.of(21, 0), schedule.getDefinition(Shift.LATE_SHIFT).getEnd(DayOfWeek.MONDAY));
+        try {
+            service.getDefault().parseLabel("F");
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // the label of ward2 only
+        }
+        assertEquals("FD", Shift.EARLY_SHIFT.getLabel());
+    }
+
+    @Test
+    public void testWardsMustNotShareACalendar() {
+        ShiftScheduleProperties properties = new ShiftScheduleProperties();
+        properties.getWards().put("ward2", new ShiftScheduleProperties.WardProperties());
+        try {
+            new ShiftScheduleService(properties);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // no calendar of ward2
+        }
+
+        properties.getWards().get("ward2").setCalendarId("ward2");
+        ShiftScheduleProperties.WardProperties ward3 = new ShiftScheduleProperties.WardProperties();
+        ward3.setCalendarId(" ward2");
+        properties.getWards().put("ward3", ward3);
+        try {
+            new ShiftScheduleService(properties);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // the calendar of ward2
+        }
+    }
+
+    @Test
+    public void testNamedDefaultWardWithoutShifts() {
+        ShiftScheduleProperties properties = new ShiftScheduleProperties();
+        properties.setName("ward1");
+        ShiftScheduleService service = new ShiftScheduleService(properties);
+        assertEquals("ward1", service.getDefault().getName());
+        assertSame(service.getDefault(), service.get("ward1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownWard() {
+        new ShiftScheduleService(new ShiftScheduleProperties()).get("ward2");
+    }
+
+    @Test
+    public void testEmptyConfigurationIsTheDefault() {
+        assertSame(ShiftSchedule.DEFAULT, new ShiftScheduleProperties().createShiftSchedule());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShiftMustEndAfterItStarts() {
+        ShiftScheduleProperties.ShiftProperties late = new ShiftScheduleProperties.ShiftProperties();
+        late.setEnd("13:00");
+        ShiftScheduleProperties properties = new ShiftScheduleProperties();
+        properties.getShifts().put("LATE_SHIFT", late);
+        properties.createShiftSchedule();
+    }
+
+    private static long millis(int year, int month, int day, int hour, int minute) {
+        return LocalDateTime.of(year, month, day, hour, minute).atZone(BERLIN).toInstant().toEpochMilli();
+    }
+}
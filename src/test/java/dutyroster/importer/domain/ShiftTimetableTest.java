@@ -0,0 +1,116 @@
+package dutyroster.importer.domain;
+
+import org.junit.Test;
+
+import java.time.ZoneId;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link ShiftTimetable}
+ */
+public class ShiftTimetableTest {
+
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+
+    @Test
+    public void testTimetableMatchesTheCalendarRules() {
+        // 2016 has a leap day and both daylight saving time changes
+        for (int month = 0; month < 12; month++) {
+            ShiftTimetable timetable = ShiftTimetable.of(ShiftSchedule.DEFAULT, 2016, month, BERLIN);
+            Calendar cal = Calendar.getInstance(TimeZone.getTimeZone(BERLIN));
+            cal.clear();
+            cal.set(2016, month, 1);
+            assertEquals(cal.getActualMaximum(Calendar.DAY_OF_MONTH), timetable.getDays());
+
+            for (int day = 1; day <= timetable.getDays(); day++) {
+                for (Shift shift : Shift.values()) {
+                    assertEquals(shift + " " + month + "/" + day, legacyFrom(month, day, shift),
+                            timetable.getFrom(day, shift));
+                    assertEquals(shift + " " + month + "/" + day, legacyTo(month, day, shift),
+                            timetable.getTo(day, shift));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTimetablesAreShared() {
+        ShiftTimetable february = ShiftTimetable.of(ShiftSchedule.DEFAULT, 2016, 1, BERLIN);
+        assertSame(february, ShiftTimetable.of(ShiftSchedule.DEFAULT, 2016, 1, BERLIN));
+        assertSame(ShiftTimetable.of(ShiftSchedule.DEFAULT, 2016, 12, BERLIN),
+                ShiftTimetable.of(ShiftSchedule.DEFAULT, 2017, 0, BERLIN));
+        assertNotSame(february, ShiftTimetable.of(ShiftSchedule.DEFAULT, 2016, 1, ZoneId.of("UTC")));
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        ShiftTimetable first = ShiftTimetable.of(ShiftSchedule.DEFAULT, 1900, 0, BERLIN);
+        for (int month = 1; month <= ShiftTimetable.MAX_TIMETABLES; month++) {
+            ShiftTimetable.of(ShiftSchedule.DEFAULT, 1900, month, BERLIN);
+        }
+        assertEquals(ShiftTimetable.MAX_TIMETABLES, ShiftTimetable.getCachedTimetables());
+
+        // the least recently used timetable has been evicted and is computed again
+        ShiftTimetable again = ShiftTimetable.of(ShiftSchedule.DEFAULT, 1900, 0, BERLIN);
+        assertNotSame(first, again);
+        assertEquals(first.getFrom(1, Shift.NIGHT_SHIFT), again.getFrom(1, Shift.NIGHT_SHIFT));
+    }
+
+    @Test
+    public void testDaysOutOfRangeRollOver() {
+        ShiftTimetable february = ShiftTimetable.of(ShiftSchedule.DEFAULT, 2015, 1, BERLIN);
+        ShiftTimetable march = ShiftTimetable.of(ShiftSchedule.DEFAULT, 2015, 2, BERLIN);
+        assertEquals(march.getFrom(2, Shift.NIGHT_SHIFT), february.getFrom(30, Shift.NIGHT_SHIFT));
+        assertEquals(february.getTo(28, Shift.LATE_SHIFT), march.getTo(0, Shift.LATE_SHIFT));
+    }
+
+    /**
+     * The former computation of the start with a {@link Calendar}.
+     */
+    private static long legacyFrom(int month, int day, Shift shift) {
+        Calendar cal = calendar(month, day);
+        switch (shift) {
+            case EARLY_SHIFT:
+                cal.set(Calendar.HOUR_OF_DAY, 7);
+                break;
+            case LATE_SHIFT:
+                cal.set(Calendar.HOUR_OF_DAY, 14);
+                break;
+            case NIGHT_SHIFT:
+                int weekday = cal.get(Calendar.DAY_OF_WEEK);
+                cal.set(Calendar.HOUR_OF_DAY, weekday == Calendar.FRIDAY || weekday == Calendar.SATURDAY ? 21 : 22);
+                break;
+        }
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * The former computation of the end with a {@link Calendar}.
+     */
+    private static long legacyTo(int month, int day, Shift shift) {
+        Calendar cal = calendar(month, day);
+        switch (shift) {
+            case EARLY_SHIFT:
+                cal.set(Calendar.HOUR_OF_DAY, 14);
+                break;
+            case LATE_SHIFT:
+                cal.set(Calendar.HOUR_OF_DAY, 20);
+                break;
+            case NIGHT_SHIFT:
+                cal.set(Calendar.HOUR_OF_DAY, 7);
+                cal.add(Calendar.DAY_OF_MONTH, 1);
+                break;
+        }
+        return cal.getTimeInMillis();
+    }
+
+    private static Calendar calendar(int month, int day) {
+        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone(BERLIN));
+        cal.clear();
+        cal.set(2016, month, day);
+        return cal;
+    }
+}
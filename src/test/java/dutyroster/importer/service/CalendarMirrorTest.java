@@ -0,0 +1,134 @@
+package dutyroster.importer.service;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.model.Event;
+import com.google.api.services.calendar.model.EventDateTime;
+import com.google.api.services.calendar.model.Events;
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.domain.Shift;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for the {@link CalendarMirror}
+ */
+public class CalendarMirrorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final DutyRosterShiftService dutyRosterShiftService = new DutyRosterShiftService();
+
+    private final DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+
+    /**
+     * The sync tokens requested.
+     */
+    private final List<String> syncTokens = new ArrayList<>();
+
+    /**
+     * The changes by sync token, "" for a full sync.
+     */
+    private final Map<String, Events> changes = new HashMap<>();
+
+    private final GoogleCalendarService calendarService = new GoogleCalendarService(dutyRosterShiftService) {
+        @Override
+        public Events listChangedEvents(String syncToken) throws SyncTokenExpiredException {
+            syncTokens.add(syncToken);
+            Events events = changes.get(syncToken != null ? syncToken : "");
+            if (events == null) {
+                throw new SyncTokenExpiredException(syncToken, null);
+            }
+            return events;
+        }
+
+        @Override
+        public String getCalendarId() {
+            return "roster@group.calendar.google.com";
+        }
+    };
+
+    @Test
+    public void testIncrementalSync() throws Exception {
+        changes.put("", changes("t1",
+                createEvent(march.createShift(Shift.EARLY_SHIFT, 1, "Tom"), "e1"),
+                createEvent(march.createShift(Shift.EARLY_SHIFT, 2, "Judy"), "e2"),
+                createEvent(new DutyRosterMonth(2015, 1).createShift(Shift.EARLY_SHIFT, 1, "Paul"), "e0")));
+        changes.put("t1", changes("t2",
+                new Event().setId("e1").setStatus("cancelled"),
+                createEvent(march.createShift(Shift.EARLY_SHIFT, 2, "Peter"), "e2"),
+                createEvent(march.createShift(Shift.EARLY_SHIFT, 3, "Tom"), "e3"),
+                new Event().setId("unknown").setStatus("cancelled")));
+        changes.put("t2", changes("t2"));
+        CalendarMirror mirror = createMirror();
+
+        assertEquals(3, mirror.sync());
+        assertEquals(Arrays.asList("e1 Tom", "e2 Judy"), describe(mirror.getEvents(2015, 2)));
+        assertEquals(3, mirror.sync());
+        assertEquals(Arrays.asList("e2 Peter", "e3 Tom"), describe(mirror.getEvents(2015, 2)));
+        assertEquals(0, mirror.sync());
+        assertEquals(3, mirror.size());
+        assertEquals(Arrays.asList(null, "t1", "t2"), syncTokens);
+    }
+
+    @Test
+    public void testSavedMirrorIsSyncedIncrementally() throws Exception {
+        changes.put("", changes("t1",
+                createEvent(march.createShift(Shift.EARLY_SHIFT, 1, "Tom"), "e1"),
+                createEvent(march.createShift(Shift.LATE_SHIFT, 1, "Judy"), "e2")));
+        changes.put("t1", changes("t2",
+                createEvent(march.createShift(Shift.EARLY_SHIFT, 2, "Paul"), "e3")));
+        createMirror().sync();
+
+        CalendarMirror restarted = createMirror();
+        assertEquals(1, restarted.sync());
+        assertEquals(Arrays.asList("e1 Tom", "e2 Judy", "e3 Paul"), describe(restarted.getEvents(2015, 2)));
+        assertEquals(Arrays.asList(null, "t1"), syncTokens);
+
+        // the sync token t2 has expired, all events are listed again
+        changes.put("", changes("t3", createEvent(march.createShift(Shift.EARLY_SHIFT, 4, "Peter"), "e4")));
+        assertEquals(1, restarted.sync());
+        assertEquals(Collections.singletonList("e4 Peter"), describe(restarted.getEvents(2015, 2)));
+        assertEquals(Arrays.asList(null, "t1", "t2", null), syncTokens);
+        assertEquals(Collections.singletonList("e4 Peter"), describe(createMirror().getEvents(2015, 2)));
+    }
+
+    private CalendarMirror createMirror() {
+        CalendarMirror mirror = new CalendarMirror(calendarService);
+        mirror.setEnabled(true);
+        mirror.setDirectory(folder.getRoot().getPath());
+        return mirror;
+    }
+
+    /**
+     * @return the id and the assignee of each event
+     */
+    private List<String> describe(List<Event> events) {
+        List<String> descriptions = new ArrayList<>();
+        for (Event event : events) {
+            descriptions.add(event.getId() + " " + dutyRosterShiftService.parseEventSummary(event.getSummary())[1]);
+        }
+        return descriptions;
+    }
+
+    private static Events changes(String nextSyncToken, Event... events) {
+        Events changes = new Events().setItems(Arrays.asList(events));
+        changes.set("nextSyncToken", nextSyncToken);
+        return changes;
+    }
+
+    private Event createEvent(DutyRosterShift shift, String id) {
+        return new Event()
+                .setId(id)
+                .setSequence(0)
+                .setSummary(dutyRosterShiftService.createEventSummary(shift.getShift(), shift.getName()))
+                .setStart(new EventDateTime().setDateTime(new DateTime(shift.getFrom())))
+                .setEnd(new EventDateTime().setDateTime(new DateTime(shift.getTo())));
+    }
+}
@@ -0,0 +1,234 @@
+package dutyroster.importer.service;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.domain.Shift;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link CalendarPushExecutor} against a fake calendar server, which rejects the first requests for
+ * exceeding the rate limit.
+ */
+public class CalendarPushExecutorTest {
+
+    private static final String RATE_LIMIT_EXCEEDED = "{\"error\":{\"errors\":[{\"domain\":\"usageLimits\","
+            + "\"reason\":\"rateLimitExceeded\",\"message\":\"Rate Limit Exceeded\"}],\"code\":403,"
+            + "\"message\":\"Rate Limit Exceeded\"}}";
+
+    private static final String FORBIDDEN = "{\"error\":{\"errors\":[{\"domain\":\"global\","
+            + "\"reason\":\"forbidden\",\"message\":\"Forbidden\"}],\"code\":403,\"message\":\"Forbidden\"}}";
+
+    private final DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+
+    private final NetHttpTransport transport = new NetHttpTransport();
+
+    private final CalendarPushExecutor pushExecutor = new CalendarPushExecutor();
+
+    /**
+     * The requests served successfully, in the order they have been served.
+     */
+    private final List<String> served = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<Long> backoffs = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * The queries of the requests stored by the flaky event, see {@link #handle(HttpExchange)}.
+     */
+    private final Set<String> stored = Collections.synchronizedSet(new HashSet<>());
+
+    /**
+     * The number of requests still to be rejected for exceeding the rate limit.
+     */
+    private final AtomicInteger throttled = new AtomicInteger();
+
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/calendar/v3/calendars/roster/events", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        pushExecutor.setParallelism(4);
+        pushExecutor.setPermitsPerSecond(0);
+        pushExecutor.setMaxRetries(10);
+        pushExecutor.setInitialBackoffMillis(100);
+        pushExecutor.setMaxBackoffMillis(400);
+        pushExecutor.setSleeper(backoffs::add);
+    }
+
+    @After
+    public void tearDown() {
+        pushExecutor.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testThrottledMutationsAreRetried() throws Exception {
+        throttled.set(6);
+
+        CalendarPushExecutor.Push push = pushExecutor.start();
+        for (int day = 1; day <= 8; day++) {
+            DutyRosterShift shift = march.createShift(Shift.EARLY_SHIFT, day, "Tom");
+            push.submit("add", shift, () -> request("POST", "?shift=" + shift.getId()));
+        }
+        push.await();
+
+        assertEquals(8, served.size());
+        assertEquals(6, push.getRetries());
+        assertEquals(6, backoffs.size());
+        for (long backoff : backoffs) {
+            assertTrue("backoff " + backoff, backoff >= 50 && backoff <= 400);
+        }
+    }
+
+    @Test
+    public void testMutationsOfAShiftAreOrdered() throws Exception {
+        DutyRosterShift deleted = march.createShift(Shift.EARLY_SHIFT, 1, "Tom");
+        DutyRosterShift added = march.createShift(Shift.EARLY_SHIFT, 1, "Judy");
+        DutyRosterShift forbidden = march.createShift(Shift.LATE_SHIFT, 1, "Paul");
+        DutyRosterShift other = march.createShift(Shift.EARLY_SHIFT, 2, "Peter");
+
+        CalendarPushExecutor.Push push = pushExecutor.start();
+        // the deletion is slow, the addition of the same shift must wait for it
+        push.submit("delete", deleted, () -> request("DELETE", "/slow"));
+        push.submit("add", added, () -> request("POST", "?shift=" + added.getId()));
+        push.submit("update", forbidden, () -> request("PUT", "/forbidden"));
+        push.submit("add", forbidden, () -> request("POST", "?shift=" + forbidden.getId()));
+        push.submit("add", other, () -> request("POST", "?shift=" + other.getId()));
+        try {
+            push.await();
+            fail("the update of the forbidden event must fail");
+        } catch (GoogleCalendarService.BatchException e) {
+            assertEquals(2, e.getFailures().size());
+            GoogleCalendarService.BatchFailure failure = e.getFailures().get(0);
+            assertSame(forbidden, failure.getShift());
+            assertEquals("update", failure.getOperation());
+            assertEquals(403, failure.getCode());
+            // the addition after the failed update is skipped
+            GoogleCalendarService.BatchFailure skipped = e.getFailures().get(1);
+            assertSame(forbidden, skipped.getShift());
+            assertEquals("add", skipped.getOperation());
+        }
+
+        assertEquals(3, served.size());
+        assertTrue(served.indexOf("DELETE /slow") < served.indexOf("POST ?shift=" + added.getId()));
+        assertEquals(0, push.getRetries());
+    }
+
+    @Test
+    public void testRetriedInsertIsNotDuplicated() throws Exception {
+        DutyRosterShift added = march.createShift(Shift.EARLY_SHIFT, 1, "Tom");
+        String eventId = GoogleCalendarService.createEventId(added);
+        DutyRosterShift updated = march.createShift(Shift.EARLY_SHIFT, 2, "Judy");
+
+        CalendarPushExecutor.Push push = pushExecutor.start();
+        // both requests are stored, but fail with 503, their retries are rejected as duplicates
+        push.submitInsert(added, () -> request("POST", "/flaky?id=" + eventId));
+        push.submit("update", updated, () -> request("PUT", "/flaky?id=e2"));
+        try {
+            push.await();
+            fail("the update must fail");
+        } catch (GoogleCalendarService.BatchException e) {
+            assertEquals(1, e.getFailures().size());
+            assertSame(updated, e.getFailures().get(0).getShift());
+            assertEquals(409, e.getFailures().get(0).getCode());
+        }
+
+        assertEquals(2, served.size());
+        assertTrue(served.contains("POST /flaky?id=" + eventId));
+        assertEquals(2, push.getRetries());
+    }
+
+    /**
+     * Sends a request to the fake calendar server like the calendar client does.
+     */
+    private void request(String method, String path) throws IOException {
+        GenericUrl url = new GenericUrl("http://localhost:" + server.getAddress().getPort()
+                + "/calendar/v3/calendars/roster/events" + path);
+        HttpRequest request = transport.createRequestFactory().buildRequest(method, url, null);
+        request.setThrowExceptionOnExecuteError(false);
+        HttpResponse response = request.execute();
+        try {
+            if (!response.isSuccessStatusCode()) {
+                throw GoogleJsonResponseException.from(new GsonFactory(), response);
+            }
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    /**
+     * Rejects the first requests, each after the other with 429, 403 rateLimitExceeded and 503. Requests of the
+     * event "forbidden" are rejected with 403 forbidden, requests of the event "slow" are delayed. Requests of the
+     * event "flaky" are stored, but fail with 503 the first time and are rejected as duplicates (409) thereafter.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().replace("/calendar/v3/calendars/roster/events", "");
+        String query = exchange.getRequestURI().getQuery();
+        String request = exchange.getRequestMethod() + " " + path + (query != null ? "?" + query : "");
+        int throttle = throttled.getAndDecrement();
+        if (throttle > 0) {
+            switch (throttle % 3) {
+                case 0:
+                    respond(exchange, 429, "{\"error\":{\"code\":429,\"message\":\"Too Many Requests\"}}");
+                    break;
+                case 1:
+                    respond(exchange, 403, RATE_LIMIT_EXCEEDED);
+                    break;
+                default:
+                    respond(exchange, 503, "{\"error\":{\"code\":503,\"message\":\"Backend Error\"}}");
+            }
+        } else if (path.equals("/forbidden")) {
+            respond(exchange, 403, FORBIDDEN);
+        } else if (path.equals("/flaky")) {
+            if (stored.add(query)) {
+                served.add(request);
+                respond(exchange, 503, "{\"error\":{\"code\":503,\"message\":\"Backend Error\"}}");
+            } else {
+                respond(exchange, 409, "{\"error\":{\"code\":409,\"message\":\"The requested identifier "
+                        + "already exists.\"}}");
+            }
+        } else {
+            if (path.equals("/slow")) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            served.add(request);
+            respond(exchange, 200, "{\"id\":\"e" + served.size() + "\"}");
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
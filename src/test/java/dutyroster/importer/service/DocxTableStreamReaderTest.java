@@ -0,0 +1,159 @@
+package dutyroster.importer.service;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.junit.Test;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTbl;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTcPr;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.STMerge;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link DocxTableStreamReader}, taking the XWPF object model as oracle.
+ */
+public class DocxTableStreamReaderTest {
+
+    private final DocxTableStreamReader reader = new DocxTableStreamReader();
+
+    @Test
+    public void testMergedAndEmptyCells() throws Exception {
+        XWPFDocument document = new XWPFDocument();
+        document.createParagraph().createRun().setText("Dienstplan");
+        XWPFTable table = document.createTable(3, 4);
+
+        // "Di" spans two columns, the row has one cell less
+        XWPFTableRow header = table.getRow(0);
+        header.getCell(0).setText("Mo");
+        header.getCell(1).setText("Di");
+        header.getCell(1).getCTTc().addNewTcPr().addNewGridSpan().setVal(BigInteger.valueOf(2));
+        header.getCtRow().removeTc(2);
+        header.getTableCells().remove(2);
+        header.getCell(2).setText("Do");
+
+        // "TD" spans two rows, the other cells of the row stay empty
+        XWPFTableRow early = table.getRow(1);
+        early.getCell(0).setText("TD");
+        early.getCell(0).getCTTc().addNewTcPr().addNewVMerge().setVal(STMerge.RESTART);
+
+        XWPFTableRow late = table.getRow(2);
+        CTTcPr continued = late.getCell(0).getCTTc().addNewTcPr();
+        continued.addNewVMerge();
+        XWPFTableCell paragraphs = late.getCell(1);
+        paragraphs.setText("Judy");
+        paragraphs.addParagraph().createRun().setText("Tom");
+        XWPFRun run = late.getCell(2).getParagraphs().get(0).createRun();
+        run.setText("Peter");
+        run.getCTR().addNewTab();
+        run.setText("Paul");
+        run.addBreak();
+        run.setText("Mary");
+        XWPFTableCell nested = late.getCell(3);
+        nested.setText("Jane");
+        CTTbl nestedTable = nested.getCTTc().addNewTbl();
+        nestedTable.addNewTr().addNewTc().addNewP().addNewR().addNewT().setStringValue("Nested");
+
+        // a second table is never read
+        document.createTable(1, 1).getRow(0).getCell(0).setText("Other");
+
+        byte[] docx = write(document);
+        List<List<String>> rows = readFirstTable(docx);
+
+        assertEquals(readFirstTableWithXwpf(docx), rows);
+        assertEquals(Arrays.asList("Mo", "Di", "Do"), rows.get(0));
+        assertEquals(Arrays.asList("TD", "", "", ""), rows.get(1));
+        assertEquals("", rows.get(2).get(0));
+        assertEquals(Arrays.asList("Jane"), rows.get(2).subList(3, 4));
+    }
+
+    @Test
+    public void testSampleRosterEqualsXwpf() throws Exception {
+        String[][] cells = {
+                {"", "Mo", "Di"},
+                {"", "02.03.", ""},
+                {"TD", "Judy", "-"},
+                {"SD", "", "Jane"},
+        };
+        byte[] docx = DutyRosterConverterServiceTest.createDocx(cells);
+
+        List<List<String>> rows = readFirstTable(docx);
+
+        assertEquals(readFirstTableWithXwpf(docx), rows);
+        assertEquals(Arrays.asList("", "02.03.", ""), rows.get(1));
+    }
+
+    @Test
+    public void testNoTable() throws Exception {
+        XWPFDocument document = new XWPFDocument();
+        document.createParagraph().createRun().setText("Dienstplan");
+
+        assertEquals(Collections.emptyList(), readFirstTable(write(document)));
+    }
+
+    /**
+     * @return the cell texts of the first table as reported by the {@link DocxTableStreamReader}, checking the
+     * order of the events
+     */
+    private List<List<String>> readFirstTable(byte[] docx) throws Exception {
+        List<List<String>> rows = new ArrayList<>();
+        boolean found = reader.readFirstTable(new ByteArrayInputStream(docx),
+                new DocxTableStreamReader.TableRowHandler() {
+
+                    private List<String> row;
+
+                    @Override
+                    public void startRow(int rowIndex) {
+                        assertNull(row);
+                        assertEquals(rows.size(), rowIndex);
+                        row = new ArrayList<>();
+                    }
+
+                    @Override
+                    public void cell(int rowIndex, int columnIndex, String text) {
+                        assertEquals(rows.size(), rowIndex);
+                        assertEquals(row.size(), columnIndex);
+                        row.add(text);
+                    }
+
+                    @Override
+                    public void endRow(int rowIndex) {
+                        assertEquals(rows.size(), rowIndex);
+                        rows.add(row);
+                        row = null;
+                    }
+                });
+        assertEquals(!rows.isEmpty(), found);
+        return rows;
+    }
+
+    private static List<List<String>> readFirstTableWithXwpf(byte[] docx) throws IOException {
+        XWPFDocument document = new XWPFDocument(new ByteArrayInputStream(docx));
+        List<List<String>> rows = new ArrayList<>();
+        for (XWPFTableRow row : document.getTables().get(0).getRows()) {
+            List<String> cells = new ArrayList<>();
+            for (XWPFTableCell cell : row.getTableCells()) {
+                cells.add(cell.getText());
+            }
+            rows.add(cells);
+        }
+        return rows;
+    }
+
+    private static byte[] write(XWPFDocument document) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        document.write(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,163 @@
+package dutyroster.importer.service;
+
+import com.google.api.services.calendar.model.Event;
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.util.DutyRosterDocxGenerator;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link DutyRosterBatchImportService}
+ */
+public class DutyRosterBatchImportServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DutyRosterBatchImportService batchImportService;
+
+    /**
+     * The months (year * 12 + month) the calendar has been asked for.
+     */
+    private Set<Integer> calendarMonths = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /**
+     * The shifts added to the calendar.
+     */
+    private List<DutyRosterShift> addedShifts = Collections.synchronizedList(new ArrayList<>());
+
+    private DutyRosterRegistry dutyRosterRegistry = new DutyRosterRegistry();
+
+    @Before
+    public void setUp() throws Exception {
+        DutyRosterShiftService dutyRosterShiftService = new DutyRosterShiftService();
+        DutyRosterConverterService converterService = new DutyRosterConverterService(dutyRosterShiftService);
+        batchImportService = new DutyRosterBatchImportService(converterService, new DutyRosterImporterService(
+                converterService, new EmptyCalendarService(dutyRosterShiftService),
+                new DutyRosterDiffService(dutyRosterShiftService), new ParsedDutyRosterCache(), dutyRosterRegistry));
+        batchImportService.setParseParallelism(4);
+        batchImportService.setCalendarConcurrency(2);
+
+        DutyRosterDocxGenerator generator = new DutyRosterDocxGenerator();
+        generator.setYear(2015);
+        for (int month = 0; month < 12; month++) {
+            generator.setMonth(month);
+            Files.write(folder.getRoot().toPath().resolve(String.format("2015_%02d.docx", month + 1)),
+                    generator.generate());
+        }
+        folder.newFile("2015_13_broken.docx");
+        folder.newFile("roster.docx");
+        folder.newFile("2015_01.csv");
+    }
+
+    @Test
+    public void testFindFiles() throws Exception {
+        File root = folder.getRoot();
+
+        List<Path> files = DutyRosterBatchImportService.findFiles(root.getPath());
+        assertEquals(13, files.size());
+        assertEquals("2015_01.docx", files.get(0).getFileName().toString());
+        assertEquals("2015_13_broken.docx", files.get(12).getFileName().toString());
+
+        files = DutyRosterBatchImportService.findFiles(new File(root, "2015_1*.docx").getPath());
+        assertEquals(4, files.size());
+        assertEquals("2015_10.docx", files.get(0).getFileName().toString());
+    }
+
+    @Test
+    public void testConvertAndImportDutyRosters() throws Exception {
+        List<Path> files = DutyRosterBatchImportService.findFiles(folder.getRoot().getPath());
+
+        List<DutyRosterBatchImportService.FileResult> results = batchImportService.convertAndImportDutyRosters(files,
+                true, false);
+
+        assertEquals(13, results.size());
+        for (int month = 0; month < 12; month++) {
+            DutyRosterBatchImportService.FileResult result = results.get(month);
+            assertTrue(result.getFile().toString(), result.isSuccess());
+            assertEquals(2015, result.getYear());
+            assertEquals(month, result.getMonth());
+            assertTrue(result.getDiff().hasAdditions());
+            assertEquals(result.getRoster().getAllDutyRosterDays().size(), result.getDiff().getNumberOfAddititions());
+            assertTrue(calendarMonths.contains(2015 * 12 + month));
+        }
+
+        // the broken file fails to parse, the calendar is not asked for it
+        DutyRosterBatchImportService.FileResult broken = results.get(12);
+        assertFalse(broken.isSuccess());
+        assertNotNull(broken.getError());
+        assertNull(broken.getDiff());
+        assertEquals(12, calendarMonths.size());
+        assertTrue(addedShifts.isEmpty());
+        assertNull(dutyRosterRegistry.get(2015, 0));
+    }
+
+    @Test
+    public void testOnlyTheLastFileOfAMonthIsImported() throws Exception {
+        DutyRosterDocxGenerator generator = new DutyRosterDocxGenerator();
+        generator.setYear(2015);
+        generator.setMonth(2);
+        generator.setSeed(7);
+        Files.write(folder.getRoot().toPath().resolve("2015_03_v2.docx"), generator.generate());
+        List<Path> files = DutyRosterBatchImportService.findFiles(new File(folder.getRoot(), "2015_03*.docx")
+                .getPath());
+
+        List<DutyRosterBatchImportService.FileResult> results = batchImportService.convertAndImportDutyRosters(files,
+                false, false);
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).isSuperseded());
+        assertFalse(results.get(0).isSuccess());
+        assertNull(results.get(0).getRoster());
+        assertEquals(files.get(1), results.get(0).getSupersededBy());
+        assertTrue(results.get(1).isSuccess());
+        // the shifts of the month are added once, by the last file only
+        assertEquals(results.get(1).getRoster().getAllDutyRosterDays().size(), addedShifts.size());
+        for (DutyRosterShift shift : addedShifts) {
+            assertTrue(results.get(1).getRoster().getAllDutyRosterDays().contains(shift));
+        }
+
+        // the import is registered as the base of the next import
+        DutyRosterRegistry.Entry entry = dutyRosterRegistry.get(2015, 2);
+        assertNotNull(entry);
+        assertEquals(addedShifts.size(), entry.getDutyRosterMonth().getAllDutyRosterDays().size());
+    }
+
+    /**
+     * A calendar without any events, recording the requests instead of calling the Google calendar api.
+     */
+    private class EmptyCalendarService extends GoogleCalendarService {
+
+        EmptyCalendarService(DutyRosterShiftService dutyRosterShiftService) {
+            super(dutyRosterShiftService);
+        }
+
+        @Override
+        public Iterator<Event> readEvents(CalendarContext context) {
+            calendarMonths.add(context.getYear() * 12 + context.getMonth());
+            return Collections.emptyIterator();
+        }
+
+        @Override
+        public Event addEvent(CalendarContext context, DutyRosterShift shift, String eventId) {
+            if (!context.isDryRun()) {
+                addedShifts.add(shift);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package dutyroster.importer.service;
+
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.domain.Shift;
+import dutyroster.importer.domain.ShiftSchedule;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.DateUtils;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link DutyRosterConverterService}
+ */
+public class DutyRosterConverterServiceTest {
+
+    /**
+     * The sample roster from the Javadoc of {@link DutyRosterConverterService}, with the dates in the "dd.MM."
+     * notation the converter recognizes.
+     */
+    private static final String[][] SAMPLE_ROSTER = {
+            {"", "Mo", "Di", "Mi", "Do", "Fr", "Sa", "So"},
+            {"", "", "", "", "", "", "", "01.03."},
+            {"TD", "", "", "", "", "", "", "Peter"},
+            {"SD", "", "", "", "", "", "", ""},
+            {"ND", "", "", "", "", "", "", "Paul"},
+            {"", "02.03.", "03.03.", "04.03.", "05.03.", "06.03.", "07.03.", "08.03."},
+            {"TD", "Judy", "Judy", "Judy", "Judy", "Judy", "Judy", "Tom"},
+            {"SD", "Peter", "Jane", "Jane", "Jane", "Jane", "", ""},
+            {"ND", "Paul", "Peter", "Peter", "James", "Mary", "Mary", "Mary"},
+            {"", "09.03.", "10.03.", "11.03.", "12.03.", "13.03.", "14.03.", "15.03."},
+            {"TD", "Peter", "Peter", "Tom", "Diane", "Tom", "Judy", "Peter"},
+            {"SD", "Judy", "Diane", "Peter", "Peter", "Peter", "", ""},
+            {"ND", "James", "James", "Paul", "Paul", "Paul", "Mary", "Mary"},
+            {"", "16.03.", "17.03.", "18.03.", "19.03.", "20.03.", "21.03.", "22.03."},
+            {"TD", "Judy", "Judy", "Tom", "Tom", "Tom", "Jane", "Jane"},
+            {"SD", "Tom", "Mary", "Judy", "Judy", "Tom", "", ""},
+            {"ND", "Frank", "Frank", "Frank", "James", "Judy", "Judy", "Judy"},
+            {"", "23.03.", "24.03.", "25.03.", "26.03.", "27.03.", "28.03.", "29.03."},
+            {"TD", "Mary", "Mary", "Peter", "Judy", "Judy", "Judy/Tom", "Judy/Tom"},
+            {"SD", "Jane", "Jane", "Mary", "Mary", "Diane", "", ""},
+            {"ND", "Frank", "Frank", "Frank", "Frank", "Paul", "Peter", "Peter"},
+            {"", "30.03.", "31.03.", "", "", "", "", ""},
+            {"TD", "Tom", "Jane", "", "", "", "", ""},
+            {"SD", "Judy", "Judy", "", "", "", "", ""},
+            {"ND", "Peter", "Peter", "", "", "", "", ""},
+    };
+
+    private DutyRosterConverterService converterService;
+
+    @Before
+    public void setUp() {
+        converterService = new DutyRosterConverterService(new DutyRosterShiftService());
+    }
+
+    @Test
+    public void testExtractDutyRosterFromSampleRoster() throws Exception {
+        byte[] docx = createDocx(SAMPLE_ROSTER);
+
+        DutyRosterMonth month = converterService.extractDutyRoster(new ByteArrayInputStream(docx), 2015);
+
+        assertEquals(84, month.getAllDutyRosterDays().size());
+        assertShift(month, Shift.EARLY_SHIFT, 1, "Peter");
+        assertNull(findShift(month, Shift.LATE_SHIFT, 1));
+        assertShift(month, Shift.NIGHT_SHIFT, 1, "Paul");
+        assertShift(month, Shift.LATE_SHIFT, 2, "Peter");
+        assertNull(findShift(month, Shift.LATE_SHIFT, 7));
+        assertShift(month, Shift.EARLY_SHIFT, 28, "Judy/Tom");
+        assertShift(month, Shift.NIGHT_SHIFT, 27, "Paul");
+        assertShift(month, Shift.LATE_SHIFT, 31, "Judy");
+        assertShift(month, Shift.NIGHT_SHIFT, 31, "Peter");
+    }
+
+    @Test
+    public void testParserModesYieldIdenticalDutyRosters() throws Exception {
+        byte[] docx = createDocx(SAMPLE_ROSTER);
+
+        DutyRosterMonth xwpf = converterService.extractDutyRoster(new ByteArrayInputStream(docx), 2015,
+                DutyRosterConverterService.ParserMode.XWPF);
+        DutyRosterMonth stax = converterService.extractDutyRoster(new ByteArrayInputStream(docx), 2015,
+                DutyRosterConverterService.ParserMode.STAX);
+
+        assertIdentical(xwpf, stax);
+    }
+
+    @Test
+    public void testShiftRowsInAnyOrderAndMissingShifts() throws Exception {
+        String[][] roster = {
+                {"", "02.03.", "03.03.", "01.04."},
+                {"ND", "Paul", "Peter", "Mary"},
+                {"FD", "Judy", "-", "Tom"},
+                {"", "09.03.", "10.03.", ""},
+                {"SD", "Jane", "Diane", ""},
+                {"TD", "Tom", "", ""},
+                {"ND", "Frank", "James", ""},
+                {"SD", "Ignored", "Ignored", ""},
+        };
+        byte[] docx = createDocx(roster);
+
+        for (DutyRosterConverterService.ParserMode parserMode : DutyRosterConverterService.ParserMode.values()) {
+            DutyRosterMonth month = converterService.extractDutyRoster(new ByteArrayInputStream(docx), 2015,
+                    parserMode);
+
+            assertEquals(parserMode.name(), 8, month.getAllDutyRosterDays().size());
+            assertShift(month, Shift.NIGHT_SHIFT, 2, "Paul");
+            assertShift(month, Shift.EARLY_SHIFT, 2, "Judy");
+            assertNull(findShift(month, Shift.EARLY_SHIFT, 3));
+            assertNull(findShift(month, Shift.LATE_SHIFT, 2));
+            assertShift(month, Shift.LATE_SHIFT, 9, "Jane");
+            assertShift(month, Shift.LATE_SHIFT, 10, "Diane");
+            assertShift(month, Shift.EARLY_SHIFT, 9, "Tom");
+            assertShift(month, Shift.NIGHT_SHIFT, 10, "James");
+        }
+    }
+
+    @Test
+    public void testShiftRowIndexAgreesWithPerCellScan() throws Exception {
+        String[] labels = {"", " ", "TD", "FD", "xFD", "SD", "ND", "01.03.", "2.3."};
+        String[] texts = {"", "Judy", "02.03.", "31.3.", "SD"};
+        Random random = new Random(42);
+
+        for (int table = 0; table < 5000; table++) {
+            String[][] cellTexts = new String[1 + random.nextInt(12)][];
+            int columns = 1 + random.nextInt(4);
+            for (int row = 0; row < cellTexts.length; row++) {
+                // ragged rows, except for the tables written to docx
+                cellTexts[row] = new String[table % 50 == 0 ? columns : 1 + random.nextInt(4)];
+                cellTexts[row][0] = labels[random.nextInt(labels.length)];
+                for (int column = 1; column < cellTexts[row].length; column++) {
+                    cellTexts[row][column] = texts[random.nextInt(texts.length)];
+                }
+            }
+
+            int[][] shiftRowOffsets = converterService.buildShiftRowIndex(cellTexts, ShiftSchedule.DEFAULT);
+
+            for (int row = 0; row < cellTexts.length; row++) {
+                String description = Arrays.deepToString(cellTexts) + " row " + row;
+                if (!containsDate(cellTexts[row])) {
+                    assertNull(description, shiftRowOffsets[row]);
+                    continue;
+                }
+                for (Shift shift : Shift.values()) {
+                    assertEquals(description + " " + shift, findShiftRowOffset(cellTexts, shift, row),
+                            shiftRowOffsets[row][shift.ordinal()]);
+                }
+            }
+
+            if (table % 50 == 0) {
+                // both modes agree unless a date appears twice, then the modes differ in which shift wins
+                int dates = 0;
+                for (String[] rowTexts : cellTexts) {
+                    for (int column = 0; column < rowTexts.length; column++) {
+                        if (DutyRosterConverterService.parseDayAndMonth(rowTexts[column])
+                                != DutyRosterConverterService.NO_DATE) {
+                            rowTexts[column] = (dates % 28 + 1) + "." + (3 + dates / 28) + ".";
+                            dates++;
+                        }
+                    }
+                }
+                byte[] docx = createDocx(cellTexts);
+                DutyRosterMonth xwpf = converterService.extractDutyRoster(new ByteArrayInputStream(docx), 2015,
+                        DutyRosterConverterService.ParserMode.XWPF);
+                DutyRosterMonth stax = converterService.extractDutyRoster(new ByteArrayInputStream(docx), 2015,
+                        DutyRosterConverterService.ParserMode.STAX);
+                if (xwpf == null) {
+                    assertNull(stax);
+                } else {
+                    assertIdentical(xwpf, stax);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWriteCsv() throws Exception {
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "Peter");
+        march.addDutyRosterShift(Shift.NIGHT_SHIFT, 6, "Jürgen");
+        DutyRosterMonth april = new DutyRosterMonth(2015, 3);
+        april.addDutyRosterShift(Shift.LATE_SHIFT, 1, "Paul");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        converterService.writeCsv(Arrays.asList(march, null, april), out, false);
+
+        assertEquals("Subject,Start Date,Start Time,End Date,End Time,All Day Event,Description,Location,Private\n"
+                        + summary(Shift.EARLY_SHIFT, "Peter") + ",01/03/15,07:00:00 AM,01/03/15,02:00:00 PM,False,,,True\n"
+                        + summary(Shift.NIGHT_SHIFT, "Jürgen") + ",06/03/15,09:00:00 PM,07/03/15,07:00:00 AM,False,,,True\n"
+                        + summary(Shift.LATE_SHIFT, "Paul") + ",01/04/15,02:00:00 PM,01/04/15,08:00:00 PM,False,,,True\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (WritableByteChannel channel = Channels.newChannel(gzipped)) {
+            converterService.writeCsv(Arrays.asList(march, april), channel, true);
+        }
+        GZIPInputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(gzipped.toByteArray()));
+        assertArrayEquals(out.toByteArray(), IOUtils.toByteArray(gunzip));
+    }
+
+    @Test
+    public void testParseDayAndMonth() {
+        assertDayAndMonth(1, 3, "01.03.");
+        assertDayAndMonth(1, 3, "1.3.");
+        assertDayAndMonth(31, 12, "31.12.");
+        assertDayAndMonth(9, 10, "9.10.");
+
+        assertEquals(DutyRosterConverterService.NO_DATE, DutyRosterConverterService.parseDayAndMonth(null));
+        assertEquals(DutyRosterConverterService.NO_DATE, DutyRosterConverterService.parseDayAndMonth(""));
+        assertEquals(DutyRosterConverterService.NO_DATE, DutyRosterConverterService.parseDayAndMonth("01.03.15"));
+        assertEquals(DutyRosterConverterService.NO_DATE, DutyRosterConverterService.parseDayAndMonth("32.01."));
+        assertEquals(DutyRosterConverterService.NO_DATE, DutyRosterConverterService.parseDayAndMonth("00.01."));
+        assertEquals(DutyRosterConverterService.NO_DATE, DutyRosterConverterService.parseDayAndMonth("01.13."));
+        assertEquals(DutyRosterConverterService.NO_DATE, DutyRosterConverterService.parseDayAndMonth("01.03"));
+        assertEquals(DutyRosterConverterService.NO_DATE, DutyRosterConverterService.parseDayAndMonth("Judy"));
+    }
+
+    @Test
+    public void testParseDayAndMonthAcceptsWhatTheFormerRegexAccepted() {
+        Pattern pattern = Pattern.compile("([1-9]|0[1-9]|[12]\\d|3[01])\\.([1-9]|0[1-9]|1[0-2])\\.");
+        char[] alphabet = "012349.x".toCharArray();
+        char[] text = new char[7];
+
+        // all texts up to 7 characters from the alphabet
+        for (int length = 0; length <= text.length; length++) {
+            int combinations = (int) Math.pow(alphabet.length, length);
+            for (int combination = 0; combination < combinations; combination++) {
+                int rest = combination;
+                for (int pos = 0; pos < length; pos++) {
+                    text[pos] = alphabet[rest % alphabet.length];
+                    rest /= alphabet.length;
+                }
+                String candidate = new String(text, 0, length);
+                boolean matches = pattern.matcher(candidate).matches();
+                int dayAndMonth = DutyRosterConverterService.parseDayAndMonth(candidate);
+                assertEquals(candidate, matches, dayAndMonth != DutyRosterConverterService.NO_DATE);
+            }
+        }
+    }
+
+    private static boolean containsDate(String[] rowTexts) {
+        for (String text : rowTexts) {
+            if (DutyRosterConverterService.parseDayAndMonth(text) != DutyRosterConverterService.NO_DATE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The per cell scan the converter did before the shift rows have been indexed, kept as oracle for
+     * {@link DutyRosterConverterService#buildShiftRowIndex(String[][], ShiftSchedule)}: walks the rows beneath the
+     * date row until a blank or date label in the first column.
+     *
+     * @return the offset of the row of the shift relative to the date row or -1, if the shift has not been found
+     */
+    private static int findShiftRowOffset(String[][] cellTexts, Shift shift, int rowIndex) {
+        int offset = 0;
+        while (rowIndex + ++offset < cellTexts.length) {
+            String text = cellTexts[rowIndex + offset][0];
+            if (StringUtils.isBlank(text)
+                    || DutyRosterConverterService.parseDayAndMonth(text) != DutyRosterConverterService.NO_DATE) {
+                return -1;
+            }
+            if (shift == Shift.parseLabel(text)) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    private String summary(Shift shift, String name) {
+        return new DutyRosterShiftService().createEventSummary(shift, name);
+    }
+
+    private void assertDayAndMonth(int expectedDay, int expectedMonth, String text) {
+        int dayAndMonth = DutyRosterConverterService.parseDayAndMonth(text);
+        assertEquals(expectedDay, DutyRosterConverterService.dayOf(dayAndMonth));
+        assertEquals(expectedMonth - 1, DutyRosterConverterService.monthOf(dayAndMonth));
+    }
+
+    private void assertShift(DutyRosterMonth month, Shift shift, int day, String name) {
+        DutyRosterShift dutyRosterShift = findShift(month, shift, day);
+        assertNotNull(shift + " on day " + day, dutyRosterShift);
+        assertEquals(name, dutyRosterShift.getName());
+    }
+
+    private DutyRosterShift findShift(DutyRosterMonth month, Shift shift, int day) {
+        return new DutyRosterShiftService().findShift(month, shift, day);
+    }
+
+    private void assertIdentical(DutyRosterMonth expected, DutyRosterMonth actual) {
+        assertEquals(truncate(expected.getDate()), truncate(actual.getDate()));
+        List<DutyRosterShift> expectedShifts = new ArrayList<>(expected.getAllDutyRosterDays());
+        List<DutyRosterShift> actualShifts = new ArrayList<>(actual.getAllDutyRosterDays());
+        assertEquals(expectedShifts.size(), actualShifts.size());
+
+        Iterator<DutyRosterShift> it = actualShifts.iterator();
+        for (DutyRosterShift expectedShift : expectedShifts) {
+            DutyRosterShift actualShift = it.next();
+            assertEquals(expectedShift.getId(), actualShift.getId());
+            assertEquals(expectedShift.getName(), actualShift.getName());
+            assertEquals(expectedShift.getShift(), actualShift.getShift());
+            assertEquals(truncate(expectedShift.getFrom()), truncate(actualShift.getFrom()));
+            assertEquals(truncate(expectedShift.getTo()), truncate(actualShift.getTo()));
+        }
+    }
+
+    private Date truncate(Date date) {
+        return DateUtils.truncate(date, Calendar.SECOND);
+    }
+
+    /**
+     * @param rows the cell texts of the table, an empty text leaves the cell blank
+     * @return a docx containing a heading and a table with the given cells
+     */
+    static byte[] createDocx(String[][] rows) throws IOException {
+        XWPFDocument document = new XWPFDocument();
+        document.createParagraph().createRun().setText("Dienstplan");
+        XWPFTable table = document.createTable(rows.length, rows[0].length);
+        for (int row = 0; row < rows.length; row++) {
+            for (int column = 0; column < rows[row].length; column++) {
+                if (!rows[row][column].isEmpty()) {
+                    table.getRow(row).getCell(column).setText(rows[row][column]);
+                }
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        document.write(out);
+        return out.toByteArray();
+    }
+}
@@ -16,7 +16,10 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.*;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(SpringRunner.class)
@@ -70,4 +73,226 @@ public class DutyRosterDiffServiceTest {
         assertEquals(3, diff.getNumberOfChanges());
         assertEquals(3, diff.getNumberOfDeletions());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testDiffOfEqualRosters() {
+        DutyRosterMonth month1 = new DutyRosterMonth(2014, 8);
+        month1.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "alfred");
+        month1.addDutyRosterShift(Shift.NIGHT_SHIFT, 1, "anabel");
+        DutyRosterMonth month2 = new DutyRosterMonth(2014, 8);
+        month2.addDutyRosterShift(Shift.NIGHT_SHIFT, 1, "anabel");
+        month2.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "alfred");
+
+        DutyRosterDiff diff = dutyRosterDiffService.diff(month1, month2);
+
+        assertFalse(diff.hasDifferences());
+    }
+
+    @Test
+    public void testChangesTakeOverTheEventAndAreOrdered() {
+        DutyRosterMonth month1 = new DutyRosterMonth(2014, 8);
+        DutyRosterMonth month2 = new DutyRosterMonth(2014, 8);
+        for (int day = 28; day > 0; day--) {
+            DutyRosterShift before = month1.createShift(Shift.LATE_SHIFT, day, "anne");
+            before.setEventId("event" + day);
+            before.setSequence(day);
+            month1.addDutyRosterShift(before);
+            month2.addDutyRosterShift(Shift.LATE_SHIFT, day, day % 2 == 0 ? "anne" : "bertha");
+        }
+
+        DutyRosterDiff diff = dutyRosterDiffService.diff(month1, month2);
+
+        assertEquals(0, diff.getNumberOfAddititions());
+        assertEquals(0, diff.getNumberOfDeletions());
+        assertEquals(14, diff.getNumberOfChanges());
+        DutyRosterShift previous = null;
+        for (DutyRosterDiff.Change change : diff.getChanges()) {
+            assertEquals("bertha", change.getAfter().getName());
+            assertEquals(change.getBefore().getEventId(), change.getAfter().getEventId());
+            assertEquals(change.getBefore().getSequence(), change.getAfter().getSequence());
+            if (previous != null) {
+                assertTrue(previous.compareTo(change.getBefore()) < 0);
+            }
+            previous = change.getBefore();
+        }
+    }
+
+    @Test
+    public void testSecondsDoNotMakeAChange() {
+        DutyRosterMonth month1 = new DutyRosterMonth(2014, 8);
+        DutyRosterShift shift = month1.createShift(Shift.EARLY_SHIFT, 1, "alfred");
+        month1.addDutyRosterShift(shift);
+        DutyRosterMonth month2 = new DutyRosterMonth(2014, 8);
+        month2.addDutyRosterShift(new DutyRosterShift(shift.getId(), DateUtils.setSeconds(shift.getFrom(), 59),
+                shift.getTo(), shift.getName(), shift.getShift()));
+
+        assertFalse(dutyRosterDiffService.diff(month1, month2).hasDifferences());
+    }
+
+    @Test
+    public void testStreamingDiffReportsInKeyOrderWhileReading() {
+        DutyRosterMonth month1 = new DutyRosterMonth(2014, 8);
+        month1.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "alfred");
+        month1.addDutyRosterShift(Shift.LATE_SHIFT, 2, "anne");
+        month1.addDutyRosterShift(Shift.EARLY_SHIFT, 3, "benny");
+        DutyRosterMonth month2 = new DutyRosterMonth(2014, 8);
+        month2.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "alfred");
+        month2.addDutyRosterShift(Shift.NIGHT_SHIFT, 1, "anabel");
+        month2.addDutyRosterShift(Shift.EARLY_SHIFT, 3, "bertha");
+
+        // duplicates are skipped, the first shift of a key is taken
+        List<DutyRosterShift> shifts1 = new ArrayList<>(month1.getAllDutyRosterDays());
+        shifts1.add(1, month1.createShift(Shift.EARLY_SHIFT, 1, "carl"));
+        List<String> events = new ArrayList<>();
+        Iterator<DutyRosterShift> reading = shifts1.iterator();
+        dutyRosterDiffService.diff(new Iterator<DutyRosterShift>() {
+            @Override
+            public boolean hasNext() {
+                return reading.hasNext();
+            }
+
+            @Override
+            public DutyRosterShift next() {
+                DutyRosterShift shift = reading.next();
+                events.add("read " + shift.getId());
+                return shift;
+            }
+        }, month2.getAllDutyRosterDays().iterator(), new DutyRosterDiffService.DiffListener<RuntimeException>() {
+            @Override
+            public void onDeletion(DutyRosterShift before) {
+                events.add("deleted " + before.getId());
+            }
+
+            @Override
+            public void onAddition(DutyRosterShift after) {
+                events.add("added " + after.getId());
+            }
+
+            @Override
+            public void onChange(DutyRosterDiff.Change change) {
+                events.add("changed " + change.getAfter().getId() + " to " + change.getAfter().getName());
+            }
+        });
+
+        assertEquals(Arrays.asList("read 2014_09_01_0", "read 2014_09_01_0", "read 2014_09_02_1",
+                "added 2014_09_01_2", "deleted 2014_09_02_1", "read 2014_09_03_0", "changed 2014_09_03_0 to bertha"),
+                events);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStreamingDiffRejectsUnorderedShifts() {
+        DutyRosterMonth month = new DutyRosterMonth(2014, 8);
+        List<DutyRosterShift> shifts = Arrays.asList(month.createShift(Shift.LATE_SHIFT, 2, "anne"),
+                month.createShift(Shift.EARLY_SHIFT, 2, "alfred"));
+
+        dutyRosterDiffService.diff(shifts.iterator(), Collections.emptyIterator(),
+                new DutyRosterDiffService.DiffCollector(2014, 8, month.getSchedule()));
+    }
+
+    @Test
+    public void testMovesWithinADayAreChanges() {
+        DutyRosterMonth month1 = new DutyRosterMonth(2014, 8);
+        DutyRosterShift early = month1.createShift(Shift.EARLY_SHIFT, 2, "tom");
+        early.setEventId("event2");
+        early.setSequence(3);
+        month1.addDutyRosterShift(early);
+        month1.addDutyRosterShift(Shift.NIGHT_SHIFT, 2, "judy");
+        month1.addDutyRosterShift(Shift.LATE_SHIFT, 3, "tom");
+        month1.addDutyRosterShift(Shift.EARLY_SHIFT, 4, "paul");
+        DutyRosterMonth month2 = new DutyRosterMonth(2014, 8);
+        month2.addDutyRosterShift(Shift.LATE_SHIFT, 2, "tom");
+        month2.addDutyRosterShift(Shift.NIGHT_SHIFT, 2, "peter");
+        month2.addDutyRosterShift(Shift.EARLY_SHIFT, 4, "tom");
+
+        DutyRosterDiff diff = dutyRosterDiffService.diff(month1, month2);
+
+        // tom moved from the early to the late shift on the 2nd, his shift on the 3rd is gone, not moved to the 4th
+        assertEquals(1, diff.getSavedApiCalls());
+        assertEquals(3, diff.getNumberOfChanges());
+        DutyRosterDiff.Change move = diff.getChanges().get(0);
+        assertEquals("2014_09_02_0", move.getBefore().getId());
+        assertEquals("2014_09_02_1", move.getAfter().getId());
+        assertEquals("event2", move.getAfter().getEventId());
+        assertEquals(3, move.getAfter().getSequence());
+        assertEquals("peter", diff.getChanges().get(1).getAfter().getName());
+        assertEquals("tom", diff.getChanges().get(2).getAfter().getName());
+        assertEquals(1, diff.getNumberOfDeletions());
+        assertEquals(0, diff.getNumberOfAddititions());
+    }
+
+    @Test
+    public void testThreeWayDiffPreservesCalendarEdits() {
+        DutyRosterMonth base = new DutyRosterMonth(2014, 8);
+        base.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "alfred");
+        base.addDutyRosterShift(Shift.LATE_SHIFT, 1, "anne");
+        base.addDutyRosterShift(Shift.NIGHT_SHIFT, 1, "anabel");
+        base.addDutyRosterShift(Shift.EARLY_SHIFT, 2, "benny");
+        base.addDutyRosterShift(Shift.LATE_SHIFT, 2, "bertha");
+
+        // anne called in sick ("Krank! SD" is no shift), benny swapped with barbara in the calendar
+        DutyRosterMonth calendar = base.copy();
+        DutyRosterMonth roster = base.copy();
+        calendar = without(calendar, Shift.LATE_SHIFT, 1);
+        calendar = without(calendar, Shift.EARLY_SHIFT, 2);
+        calendar.addDutyRosterShift(Shift.EARLY_SHIFT, 2, "barbara");
+
+        // the new roster changes alfred's and bertha's shifts, adds one and deletes anabel's
+        roster = without(roster, Shift.EARLY_SHIFT, 1);
+        roster.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "alex");
+        roster = without(roster, Shift.NIGHT_SHIFT, 1);
+        roster = without(roster, Shift.EARLY_SHIFT, 2);
+        roster.addDutyRosterShift(Shift.EARLY_SHIFT, 2, "bruno");
+        roster.addDutyRosterShift(Shift.NIGHT_SHIFT, 2, "carl");
+
+        DutyRosterDiff diff = dutyRosterDiffService.diff(base, calendar, roster);
+
+        assertEquals(1, diff.getNumberOfChanges());
+        assertEquals("alex", diff.getChanges().get(0).getAfter().getName());
+        assertEquals(1, diff.getNumberOfDeletions());
+        assertEquals("anabel", diff.getDeletions().iterator().next().getName());
+        assertEquals(1, diff.getNumberOfAddititions());
+        assertEquals("carl", diff.getAdditions().iterator().next().getName());
+        assertEquals(1, diff.getCalendarEdits());
+        assertEquals(1, diff.getConflicts().size());
+        assertEquals("barbara", diff.getConflicts().get(0).getBefore().getName());
+        assertEquals("bruno", diff.getConflicts().get(0).getAfter().getName());
+
+        // without changes of the roster nothing is imported
+        assertFalse(dutyRosterDiffService.diff(base, calendar, base).hasDifferences());
+    }
+
+    @Test
+    public void testThreeWayDiffOfShiftsMissingFromTheBase() {
+        DutyRosterMonth base = new DutyRosterMonth(2014, 8);
+        base.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "alfred");
+
+        // both shifts of the 3rd have been added to the calendar since the import of the base
+        DutyRosterMonth calendar = base.copy();
+        calendar.addDutyRosterShift(Shift.EARLY_SHIFT, 3, "doris");
+        DutyRosterShift late = calendar.createShift(Shift.LATE_SHIFT, 3, "emil");
+        calendar.addDutyRosterShift(new DutyRosterShift(late.getKey(), late.getFrom(),
+                new Date(late.getTo().getTime() - 30 * 60 * 1000), "emil", Shift.LATE_SHIFT));
+
+        DutyRosterMonth roster = base.copy();
+        roster.addDutyRosterShift(Shift.EARLY_SHIFT, 3, "dora");
+        roster.addDutyRosterShift(Shift.LATE_SHIFT, 3, "emil");
+
+        DutyRosterDiff diff = dutyRosterDiffService.diff(base, calendar, roster);
+
+        // doris is a manual edit, emil's hours are taken from the roster
+        assertEquals(1, diff.getCalendarEdits());
+        assertEquals(1, diff.getNumberOfChanges());
+        assertEquals(late.getTo(), diff.getChanges().get(0).getAfter().getTo());
+        assertTrue(diff.getConflicts().isEmpty());
+    }
+
+    private static DutyRosterMonth without(DutyRosterMonth dutyRosterMonth, Shift shift, int day) {
+        DutyRosterMonth result = new DutyRosterMonth(dutyRosterMonth.getYear(), dutyRosterMonth.getMonth());
+        for (DutyRosterShift dutyRosterShift : dutyRosterMonth.getAllDutyRosterDays()) {
+            if (dutyRosterShift.getShift() != shift || dutyRosterShift.getDay() != day) {
+                result.addDutyRosterShift(dutyRosterShift);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+package dutyroster.importer.service;
+
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.domain.Shift;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link DutyRosterIcsService}
+ */
+public class DutyRosterIcsServiceTest {
+
+    private static final FastDateFormat UTC = FastDateFormat.getInstance("yyyyMMdd'T'HHmmss'Z'",
+            TimeZone.getTimeZone("UTC"));
+
+    private DutyRosterIcsService icsService;
+
+    private DutyRosterRegistry dutyRosterRegistry;
+
+    private DutyRosterMonth march;
+
+    @Before
+    public void setUp() {
+        dutyRosterRegistry = new DutyRosterRegistry();
+        icsService = new DutyRosterIcsService(new DutyRosterShiftService(), dutyRosterRegistry);
+
+        march = new DutyRosterMonth(2015, 2);
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "Peter");
+        march.addDutyRosterShift(Shift.NIGHT_SHIFT, 1, "Judy/Tom");
+        march.addDutyRosterShift(Shift.LATE_SHIFT, 2, "Tom; Jr., the \\ one");
+    }
+
+    @Test
+    public void testWriteIcs() throws Exception {
+        Date dtStamp = new Date(0);
+        String ics = write(march, null, dtStamp);
+
+        assertTrue(ics.startsWith("BEGIN:VCALENDAR\r\nVERSION:2.0\r\nPRODID:"));
+        assertTrue(ics.endsWith("END:VEVENT\r\nEND:VCALENDAR\r\n"));
+        assertEquals(3, StringUtils.countMatches(ics, "BEGIN:VEVENT\r\n"));
+        assertFalse(ics.replace("\r\n", "").contains("\n"));
+
+        DutyRosterShift early = march.createShift(Shift.EARLY_SHIFT, 1, "Peter");
+        assertTrue(ics.contains("BEGIN:VEVENT\r\n"
+                + "UID:" + DutyRosterMonth.createId(Shift.EARLY_SHIFT, early.getFrom()) + "@dutyroster.importer\r\n"
+                + "DTSTAMP:19700101T000000Z\r\n"
+                + "DTSTART:" + UTC.format(early.getFrom()) + "\r\n"
+                + "DTEND:" + UTC.format(early.getTo()) + "\r\n"
+                + "SUMMARY:FD: Peter\r\n"));
+        assertTrue(ics.contains("\r\nSUMMARY:SD: Tom\\; Jr.\\, the \\\\ one\r\n"));
+    }
+
+    @Test
+    public void testLongLinesAreFolded() throws Exception {
+        String name = StringUtils.repeat("Jürgen-", 30);
+        DutyRosterMonth dutyRosterMonth = new DutyRosterMonth(2015, 2);
+        dutyRosterMonth.addDutyRosterShift(Shift.EARLY_SHIFT, 1, name);
+
+        String ics = write(dutyRosterMonth, null, new Date());
+
+        for (String line : ics.split("\r\n")) {
+            assertTrue(line, line.getBytes(StandardCharsets.UTF_8).length <= 75);
+        }
+        // unfolding restores the line
+        assertTrue(ics.replace("\r\n ", "").contains("\r\nSUMMARY:FD: " + name + "\r\n"));
+    }
+
+    @Test
+    public void testWriteIcsOfAssignee() throws Exception {
+        String ics = write(march, "tom", new Date());
+
+        // not "Tom; Jr., the \ one"
+        assertEquals(1, StringUtils.countMatches(ics, "BEGIN:VEVENT"));
+        assertTrue(ics.contains("SUMMARY:ND: Judy/Tom"));
+
+        ics = write(march, "Mary", new Date());
+        assertEquals(0, StringUtils.countMatches(ics, "BEGIN:VEVENT"));
+        assertTrue(ics.endsWith("METHOD:PUBLISH\r\nEND:VCALENDAR\r\n"));
+    }
+
+    @Test
+    public void testAssigneeFeedIsCachedUntilTheRosterChanges() throws Exception {
+        assertNull(icsService.getAssigneeFeed("Tom", 2015, 2));
+
+        dutyRosterRegistry.register(march);
+        DutyRosterIcsService.IcsFeed feed = icsService.getAssigneeFeed("Tom", 2015, 2);
+        assertSame(feed, icsService.getAssigneeFeed("Tom", 2015, 2));
+        assertSame(feed, icsService.getAssigneeFeed(" tom", 2015, 2));
+        assertNotSame(feed, icsService.getAssigneeFeed("Peter", 2015, 2));
+        assertTrue(feed.getEtag().matches("\"[0-9a-f]{32}\""));
+        assertNull(icsService.getAssigneeFeed("Tom", 2015, 3));
+
+        // registered rosters are copies, modifying the imported roster does not affect the feed
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 3, "Tom");
+        assertSame(feed, icsService.getAssigneeFeed("Tom", 2015, 2));
+
+        dutyRosterRegistry.register(march);
+        DutyRosterIcsService.IcsFeed changed = icsService.getAssigneeFeed("Tom", 2015, 2);
+        assertNotEquals(feed.getEtag(), changed.getEtag());
+        assertTrue(changed.getVersion() > feed.getVersion());
+        assertEquals(2, StringUtils.countMatches(new String(changed.getContent(), StandardCharsets.UTF_8),
+                "BEGIN:VEVENT"));
+    }
+
+    private String write(DutyRosterMonth dutyRosterMonth, String assignee, Date dtStamp) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (assignee == null) {
+            icsService.writeIcs(Arrays.asList(dutyRosterMonth), dtStamp, out);
+        } else {
+            icsService.writeIcs(dutyRosterMonth, assignee, dtStamp, out);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
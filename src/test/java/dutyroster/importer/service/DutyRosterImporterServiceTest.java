@@ -0,0 +1,331 @@
+package dutyroster.importer.service;
+
+import com.google.api.services.calendar.model.Event;
+import dutyroster.importer.domain.DutyRosterDiff;
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.domain.Shift;
+import dutyroster.importer.domain.ShiftSchedule;
+import dutyroster.importer.util.DutyRosterDocxGenerator;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.xmlbeans.XmlException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link DutyRosterImporterService}
+ */
+public class DutyRosterImporterServiceTest {
+
+    private DutyRosterImporterService importerService;
+
+    private ParsedDutyRosterCache parsedDutyRosterCache;
+
+    private DutyRosterRegistry dutyRosterRegistry;
+
+    private EmptyCalendarService calendarService;
+
+    private int parsed;
+
+    private byte[] docx;
+
+    @Before
+    public void setUp() throws Exception {
+        DutyRosterShiftService dutyRosterShiftService = new DutyRosterShiftService();
+        DutyRosterConverterService converterService = new DutyRosterConverterService(dutyRosterShiftService) {
+            @Override
+            public DutyRosterMonth extractDutyRoster(InputStream is, int year, ParserMode parserMode,
+                                                     ShiftSchedule schedule)
+                    throws IOException, XmlException, OpenXML4JException {
+                parsed++;
+                return super.extractDutyRoster(is, year, parserMode, schedule);
+            }
+        };
+        parsedDutyRosterCache = new ParsedDutyRosterCache();
+        dutyRosterRegistry = new DutyRosterRegistry();
+        calendarService = new EmptyCalendarService(dutyRosterShiftService);
+        importerService = new DutyRosterImporterService(converterService, calendarService,
+                new DutyRosterDiffService(dutyRosterShiftService), parsedDutyRosterCache, dutyRosterRegistry);
+
+        DutyRosterDocxGenerator generator = new DutyRosterDocxGenerator();
+        generator.setYear(2015);
+        generator.setMonth(2);
+        docx = generator.generate();
+    }
+
+    @Test
+    public void testDryRunThenImportParsesOnce() {
+        DutyRosterDiff dryRun = importerService.convertAndImportDutyRoster(new ByteArrayInputStream(docx),
+                "2015_03.docx", true, false, null, null);
+        DutyRosterDiff realRun = importerService.convertAndImportDutyRoster(new ByteArrayInputStream(docx),
+                "2015_03.docx", false, false, null, null);
+
+        assertEquals(1, parsed);
+        assertEquals(1, parsedDutyRosterCache.getHits());
+        assertEquals(1, parsedDutyRosterCache.getMisses());
+        assertEquals(dryRun.getNumberOfAddititions(), realRun.getNumberOfAddititions());
+        assertEquals(84, realRun.getNumberOfAddititions());
+    }
+
+    @Test
+    public void testOnlyRealRunsAreRegistered() {
+        importerService.convertAndImportDutyRoster(new ByteArrayInputStream(docx), "2015_03.docx", true, false, null,
+                null);
+        assertNull(dutyRosterRegistry.get(2015, 2));
+
+        importerService.convertAndImportDutyRoster(new ByteArrayInputStream(docx), "2015_03.docx", false, false, null,
+                null);
+        DutyRosterRegistry.Entry entry = dutyRosterRegistry.get(2015, 2);
+        assertNotNull(entry);
+        assertEquals(84, entry.getDutyRosterMonth().getAllDutyRosterDays().size());
+    }
+
+    @Test
+    public void testCacheDisabled() {
+        parsedDutyRosterCache.setEnabled(false);
+
+        importerService.convertAndImportDutyRoster(new ByteArrayInputStream(docx), "2015_03.docx", true, false, null,
+                null);
+        importerService.convertAndImportDutyRoster(new ByteArrayInputStream(docx), "2015_03.docx", true, false, null,
+                null);
+
+        assertEquals(2, parsed);
+    }
+
+    @Test
+    public void testWardsAreImportedWithTheirOwnSchedule() throws Exception {
+        ShiftScheduleProperties.ShiftProperties early = new ShiftScheduleProperties.ShiftProperties();
+        early.setLabel("F");
+        ShiftScheduleProperties.ShiftProperties night = new ShiftScheduleProperties.ShiftProperties();
+        night.setLabel("N");
+        night.setStart("21:30");
+        ShiftScheduleProperties.WardProperties ward2 = new ShiftScheduleProperties.WardProperties();
+        ward2.setCalendarId("ward2");
+        ward2.getShifts().put("EARLY_SHIFT", early);
+        ward2.getShifts().put("NIGHT_SHIFT", night);
+        ShiftScheduleProperties properties = new ShiftScheduleProperties();
+        properties.getWards().put("ward2", ward2);
+        importerService.setShiftScheduleService(new ShiftScheduleService(properties));
+        importerService.convertAndImportDutyRoster(new ByteArrayInputStream(docx), "2015_03.docx", false, false, null,
+                null);
+
+        DutyRosterDocxGenerator generator = new DutyRosterDocxGenerator();
+        generator.setYear(2015);
+        generator.setMonth(2);
+        generator.setShiftLabels(new String[]{"F", "SD", "N"});
+        byte[] ward2Docx = generator.generate();
+
+        DutyRosterDiff diff = importerService.convertAndImportDutyRoster(new ByteArrayInputStream(ward2Docx),
+                "2015_03.docx", false, false, null, null, "ward2");
+        // the roster of the default ward is neither in the calendar nor the base of ward2
+        assertEquals(84, diff.getNumberOfAddititions());
+        assertEquals("ward2", diff.getOnlyAfter().getSchedule().getName());
+        assertEquals(Arrays.asList(null, "ward2"), calendarService.calendarIds);
+        assertEquals("default", dutyRosterRegistry.get(2015, 2).getDutyRosterMonth().getSchedule().getName());
+        assertEquals("ward2", dutyRosterRegistry.get("ward2", 2015, 2).getDutyRosterMonth().getSchedule().getName());
+        for (DutyRosterShift shift : diff.getOnlyAfter().getAllDutyRosterDays()) {
+            if (shift.getShift() == Shift.NIGHT_SHIFT) {
+                Calendar from = Calendar.getInstance();
+                from.setTime(shift.getFrom());
+                assertEquals(shift.getId(), 21 * 60 + 30, from.get(Calendar.HOUR_OF_DAY) * 60
+                        + from.get(Calendar.MINUTE));
+            }
+        }
+
+        // the labels of ward2 are unknown in the default ward
+        try {
+            importerService.convertAndImportDutyRoster(new ByteArrayInputStream(ward2Docx), "2015_03.docx", true,
+                    false, null, null);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        assertEquals(3, parsed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownWard() {
+        importerService.convertAndImportDutyRoster(new ByteArrayInputStream(docx), "2015_03.docx", true, false, null,
+                null, "ward3");
+    }
+
+    @Test
+    public void testConcurrentImportsOfDifferentMonths() throws Exception {
+        DutyRosterShiftService dutyRosterShiftService = new DutyRosterShiftService();
+        FakeCalendarService calendarService = new FakeCalendarService(dutyRosterShiftService);
+        DutyRosterImporterService importerService = new DutyRosterImporterService(
+                new DutyRosterConverterService(dutyRosterShiftService), calendarService,
+                new DutyRosterDiffService(dutyRosterShiftService), new ParsedDutyRosterCache(),
+                new DutyRosterRegistry());
+
+        DutyRosterDocxGenerator generator = new DutyRosterDocxGenerator();
+        generator.setYear(2015);
+        List<byte[]> docxs = new ArrayList<>();
+        for (int month = 0; month < 12; month++) {
+            generator.setMonth(month);
+            docxs.add(generator.generate());
+        }
+
+        List<DutyRosterDiff> firstRun = importConcurrently(importerService, docxs);
+        for (int month = 0; month < 12; month++) {
+            DutyRosterDiff diff = firstRun.get(month);
+            assertTrue(diff.hasAdditions());
+            String prefix = String.format("2015_%02d_", month + 1);
+            for (DutyRosterShift shift : diff.getOnlyAfter().getAllDutyRosterDays()) {
+                assertTrue(shift.getId(), shift.getId().startsWith(prefix));
+            }
+            assertEquals(diff.getNumberOfAddititions(), calendarService.shifts.get(2015 * 12 + month).size());
+        }
+        assertEquals(Collections.emptyList(), calendarService.misplaced);
+
+        // each import reads the events of its own month only, so there is nothing left to import
+        for (DutyRosterDiff diff : importConcurrently(importerService, docxs)) {
+            assertFalse(diff.hasChanges());
+        }
+    }
+
+    @Test
+    public void testCalendarIsReadBeforeItIsModified() throws Exception {
+        DutyRosterShiftService dutyRosterShiftService = new DutyRosterShiftService();
+        FakeCalendarService calendarService = new FakeCalendarService(dutyRosterShiftService);
+        DutyRosterConverterService converterService = new DutyRosterConverterService(dutyRosterShiftService);
+        DutyRosterImporterService importerService = new DutyRosterImporterService(converterService, calendarService,
+                new DutyRosterDiffService(dutyRosterShiftService), new ParsedDutyRosterCache(),
+                new DutyRosterRegistry());
+
+        // the calendar contains the last two shifts of the month only, so they are read after the other shifts of
+        // the roster have been diffed
+        List<DutyRosterShift> shifts = new ArrayList<>(converterService.extractDutyRoster(
+                new ByteArrayInputStream(docx), 2015).getAllDutyRosterDays());
+        Map<Long, DutyRosterShift> march = calendarService.shifts.computeIfAbsent(2015 * 12 + 2,
+                month -> new ConcurrentSkipListMap<>());
+        for (DutyRosterShift shift : shifts.subList(shifts.size() - 2, shifts.size())) {
+            DutyRosterShift event = shift.copy();
+            event.setEventId("e" + event.getKey());
+            march.put(event.getKey(), event);
+        }
+
+        DutyRosterDiff diff = importerService.convertAndImportDutyRoster(new ByteArrayInputStream(docx),
+                "2015_03.docx", false, false, null, null);
+
+        assertEquals(shifts.size() - 2, diff.getNumberOfAddititions());
+        assertEquals(Collections.emptyList(), calendarService.misplaced);
+    }
+
+    /**
+     * Imports the given rosters of 2015, one per month starting with January, all at once.
+     *
+     * @return the diffs by month
+     */
+    private static List<DutyRosterDiff> importConcurrently(DutyRosterImporterService importerService,
+                                                           List<byte[]> docxs) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(docxs.size());
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<DutyRosterDiff>> futures = new ArrayList<>();
+            for (int month = 0; month < docxs.size(); month++) {
+                byte[] docx = docxs.get(month);
+                String filename = String.format("2015_%02d.docx", month + 1);
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return importerService.convertAndImportDutyRoster(new ByteArrayInputStream(docx), filename,
+                            false, false, null, null);
+                }));
+            }
+            start.countDown();
+            List<DutyRosterDiff> diffs = new ArrayList<>();
+            for (Future<DutyRosterDiff> future : futures) {
+                diffs.add(future.get(1, TimeUnit.MINUTES));
+            }
+            return diffs;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * A calendar without any events, not calling the Google calendar api. Records the calendar of each read.
+     */
+    private static class EmptyCalendarService extends GoogleCalendarService {
+
+        private final List<String> calendarIds = Collections.synchronizedList(new ArrayList<>());
+
+        EmptyCalendarService(DutyRosterShiftService dutyRosterShiftService) {
+            super(dutyRosterShiftService);
+        }
+
+        @Override
+        public Iterator<Event> readEvents(CalendarContext context) {
+            calendarIds.add(context.getCalendarId());
+            return Collections.emptyIterator();
+        }
+
+        @Override
+        public Event addEvent(CalendarContext context, DutyRosterShift shift, String eventId) {
+            return null;
+        }
+    }
+
+    /**
+     * A calendar keeping the added events in memory, not calling the Google calendar api. Records each event added
+     * to another month than the month of its import or while the events of the month are still being read.
+     */
+    private static class FakeCalendarService extends GoogleCalendarService {
+
+        /**
+         * The shifts by key by month (year * 12 + month).
+         */
+        private final Map<Integer, ConcurrentSkipListMap<Long, DutyRosterShift>> shifts =
+                new ConcurrentHashMap<>();
+
+        private final List<String> misplaced = Collections.synchronizedList(new ArrayList<>());
+
+        private final AtomicInteger eventIds = new AtomicInteger();
+
+        FakeCalendarService(DutyRosterShiftService dutyRosterShiftService) {
+            super(dutyRosterShiftService);
+        }
+
+        /**
+         * The last iterator returned by {@link #readDutyRosterShifts(CalendarContext)} by month.
+         */
+        private final Map<Integer, Iterator<DutyRosterShift>> readers = new ConcurrentHashMap<>();
+
+        @Override
+        public Iterator<DutyRosterShift> readDutyRosterShifts(CalendarContext context) {
+            Iterator<DutyRosterShift> reader = getShifts(context).values().iterator();
+            readers.put(context.getYear() * 12 + context.getMonth(), reader);
+            return reader;
+        }
+
+        @Override
+        public Event addEvent(CalendarContext context, DutyRosterShift shift, String eventId) {
+            String prefix = String.format("%d_%02d_", context.getYear(), context.getMonth() + 1);
+            if (!shift.getId().startsWith(prefix)) {
+                misplaced.add(shift.getId() + " imported with " + context);
+            }
+            Iterator<DutyRosterShift> reader = readers.get(context.getYear() * 12 + context.getMonth());
+            if (reader != null && reader.hasNext()) {
+                misplaced.add(shift.getId() + " imported while the calendar is read");
+            }
+            DutyRosterShift added = shift.copy();
+            added.setEventId("e" + eventIds.incrementAndGet());
+            getShifts(context).put(added.getKey(), added);
+            return new Event().setId(added.getEventId());
+        }
+
+        private ConcurrentSkipListMap<Long, DutyRosterShift> getShifts(CalendarContext context) {
+            return shifts.computeIfAbsent(context.getYear() * 12 + context.getMonth(),
+                    month -> new ConcurrentSkipListMap<>());
+        }
+    }
+}
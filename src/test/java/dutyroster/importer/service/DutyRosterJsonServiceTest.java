@@ -0,0 +1,80 @@
+package dutyroster.importer.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dutyroster.importer.domain.DutyRosterDiff;
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.domain.Shift;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.time.OffsetDateTime;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link DutyRosterJsonService}
+ */
+public class DutyRosterJsonServiceTest {
+
+    private final DutyRosterJsonService jsonService = new DutyRosterJsonService();
+
+    @Test
+    public void testWriteDiff() throws Exception {
+        DutyRosterMonth before = new DutyRosterMonth(2015, 2);
+        DutyRosterShift early = before.createShift(Shift.EARLY_SHIFT, 1, "Tom");
+        early.setEventId("event1");
+        before.addDutyRosterShift(early);
+        before.addDutyRosterShift(Shift.LATE_SHIFT, 1, "Judy");
+        DutyRosterMonth after = new DutyRosterMonth(2015, 2);
+        after.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "Peter");
+        after.addDutyRosterShift(Shift.NIGHT_SHIFT, 2, null);
+        DutyRosterDiffService diffService = new DutyRosterDiffService(new DutyRosterShiftService(), jsonService);
+        DutyRosterDiff diff = diffService.diff(before, after);
+
+        StringWriter writer = new StringWriter();
+        jsonService.writeDiff(diff, writer, false);
+        JsonObject json = new JsonParser().parse(writer.toString()).getAsJsonObject();
+
+        assertEquals(2015, json.get("year").getAsInt());
+        assertEquals(2, json.get("month").getAsInt());
+        assertEquals("2015_03_01_1", json.getAsJsonArray("deletions").get(0).getAsJsonObject().get("id")
+                .getAsString());
+        JsonObject addition = json.getAsJsonArray("additions").get(0).getAsJsonObject();
+        assertEquals("NIGHT_SHIFT", addition.get("shift").getAsString());
+        assertEquals("ND", addition.get("label").getAsString());
+        assertTrue(addition.get("name").isJsonNull());
+        JsonArray changes = json.getAsJsonArray("changes");
+        assertEquals(1, changes.size());
+        JsonObject change = changes.get(0).getAsJsonObject();
+        assertEquals("Tom", change.getAsJsonObject("before").get("name").getAsString());
+        assertEquals("Peter", change.getAsJsonObject("after").get("name").getAsString());
+        assertEquals("event1", change.getAsJsonObject("after").get("eventId").getAsString());
+        assertEquals(early.getFrom().getTime(), OffsetDateTime.parse(change.getAsJsonObject("after").get("from")
+                .getAsString()).toInstant().toEpochMilli());
+        assertEquals(0, json.getAsJsonArray("conflicts").size());
+        assertEquals(0, json.get("savedApiCalls").getAsInt());
+
+        // pretty printing changes the layout only
+        String pretty = jsonService.toJson(diff, true);
+        assertTrue(pretty.contains("\n  \"year\": 2015"));
+        assertEquals(json, new JsonParser().parse(pretty));
+        assertEquals(json, new JsonParser().parse(diffService.toJson(diff)));
+    }
+
+    @Test
+    public void testWriteMonth() throws Exception {
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 2, "Tom");
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "Judy");
+
+        StringWriter writer = new StringWriter();
+        jsonService.writeMonth(march, writer, false);
+        JsonArray shifts = new JsonParser().parse(writer.toString()).getAsJsonObject().getAsJsonArray("shifts");
+
+        assertEquals(2, shifts.size());
+        assertEquals("Judy", shifts.get(0).getAsJsonObject().get("name").getAsString());
+    }
+}
@@ -0,0 +1,131 @@
+package dutyroster.importer.service;
+
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.domain.Shift;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link DutyRosterRegistry}
+ */
+public class DutyRosterRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSavedRostersSurviveRestarts() throws Exception {
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "Tom");
+        march.addDutyRosterShift(Shift.NIGHT_SHIFT, 31, "Judy");
+        DutyRosterShift late = march.createShift(Shift.LATE_SHIFT, 2, "Paul");
+        late.setEventId("event1");
+        late.setSequence(2);
+        march.addDutyRosterShift(late);
+        DutyRosterRegistry registry = createRegistry();
+        registry.register(new DutyRosterMonth(2015, 1));
+        DutyRosterRegistry.Entry registered = registry.register(march);
+
+        DutyRosterRegistry restarted = createRegistry();
+        DutyRosterRegistry.Entry entry = restarted.get(2015, 2);
+        assertNotNull(entry);
+        assertEquals(registered.getVersion(), entry.getVersion());
+        assertEquals(registered.getRegistered(), entry.getRegistered());
+        assertSame(march.getSchedule(), entry.getDutyRosterMonth().getSchedule());
+        assertEquals(describe(march), describe(entry.getDutyRosterMonth()));
+        assertNotNull(restarted.get(2015, 1));
+        assertEquals(3, restarted.getShiftIndex().size());
+
+        // the versions go on increasing
+        assertEquals(registered.getVersion() + 1, restarted.register(march).getVersion());
+    }
+
+    @Test
+    public void testUnreadableRostersAreSkipped() throws Exception {
+        createRegistry().register(new DutyRosterMonth(2015, 2));
+        Files.write(folder.getRoot().toPath().resolve("roster_2015_04.json"),
+                "{\"year\":".getBytes(StandardCharsets.UTF_8));
+
+        DutyRosterRegistry restarted = createRegistry();
+        assertNotNull(restarted.get(2015, 2));
+        assertNull(restarted.get(2015, 3));
+    }
+
+    @Test
+    public void testWardsAreRegisteredApart() throws Exception {
+        ShiftScheduleProperties.WardProperties ward2 = new ShiftScheduleProperties.WardProperties();
+        ward2.setCalendarId("ward2");
+        ShiftScheduleProperties properties = new ShiftScheduleProperties();
+        properties.getWards().put("ward2", ward2);
+        ShiftScheduleService shiftScheduleService = new ShiftScheduleService(properties);
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "Tom");
+        DutyRosterMonth ward2March = new DutyRosterMonth(2015, 2, shiftScheduleService.get("ward2"));
+        ward2March.addDutyRosterShift(Shift.LATE_SHIFT, 1, "Judy");
+        ward2March.addDutyRosterShift(Shift.LATE_SHIFT, 2, "Judy");
+        DutyRosterRegistry registry = createRegistry();
+        registry.setShiftScheduleService(shiftScheduleService);
+        registry.register(march);
+        registry.register(ward2March);
+
+        DutyRosterRegistry restarted = createRegistry();
+        restarted.setShiftScheduleService(shiftScheduleService);
+        assertEquals(describe(march), describe(restarted.get(2015, 2).getDutyRosterMonth()));
+        assertEquals(describe(ward2March), describe(restarted.get("ward2", 2015, 2).getDutyRosterMonth()));
+        assertNull(restarted.get("ward3", 2015, 2));
+        assertEquals(1, restarted.getShiftIndex().size());
+        assertEquals(2, restarted.getShiftIndex("ward2").size());
+        assertNull(restarted.getShiftIndex().getNextShift("Judy", 0));
+    }
+
+    @Test
+    public void testLegacyRostersAreReplacedByLaterOnes() throws Exception {
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 1, "Tom");
+        createRegistry().register(march);
+        // saved before the files were named by ward
+        Files.move(folder.getRoot().toPath().resolve("roster_default_2015_03.json"),
+                folder.getRoot().toPath().resolve("roster_2015_03.json"));
+        march.addDutyRosterShift(Shift.EARLY_SHIFT, 2, "Tom");
+        DutyRosterRegistry.Entry registered = createRegistry().register(march);
+
+        DutyRosterRegistry restarted = createRegistry();
+        assertEquals(registered.getVersion(), restarted.get(2015, 2).getVersion());
+        assertEquals(2, restarted.getShiftIndex().size());
+    }
+
+    @Test
+    public void testRostersAreKeptInMemoryWithoutDirectory() {
+        DutyRosterRegistry registry = new DutyRosterRegistry();
+        registry.register(new DutyRosterMonth(2015, 2));
+        assertNotNull(registry.get(2015, 2));
+        assertNull(new DutyRosterRegistry().get(2015, 2));
+    }
+
+    private DutyRosterRegistry createRegistry() {
+        DutyRosterRegistry registry = new DutyRosterRegistry();
+        registry.setDirectory(folder.getRoot().getPath());
+        return registry;
+    }
+
+    /**
+     * @return the id, assignee, hours and event of each shift
+     */
+    private static List<String> describe(DutyRosterMonth dutyRosterMonth) {
+        List<String> descriptions = new ArrayList<>();
+        for (DutyRosterShift shift : dutyRosterMonth.getAllDutyRosterDays()) {
+            descriptions.add(shift.getId() + " " + shift.getName() + " " + shift.getFrom().getTime() + "-"
+                    + shift.getTo().getTime() + " " + shift.getEventId() + "/" + shift.getSequence());
+        }
+        return descriptions;
+    }
+}
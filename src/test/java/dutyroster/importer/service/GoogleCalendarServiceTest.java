@@ -0,0 +1,326 @@
+package dutyroster.importer.service;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.Calendar;
+import com.google.api.services.calendar.model.Event;
+import com.google.api.services.calendar.model.EventDateTime;
+import com.google.api.services.calendar.model.Events;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.domain.Shift;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for the {@link GoogleCalendarService}
+ */
+public class GoogleCalendarServiceTest {
+
+    private final DutyRosterShiftService dutyRosterShiftService = new DutyRosterShiftService();
+
+    @Test
+    public void testShiftsAreReadInKeyOrder() throws Exception {
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        // ordered by start time, but the late shift starts before the early shift on the 2nd
+        List<Event> events = Arrays.asList(
+                createEvent(march.createShift(Shift.NIGHT_SHIFT, 1, "Tom"), "e1"),
+                createEvent(march.createShift(Shift.LATE_SHIFT, 2, "Judy"), "e2"),
+                createEvent(march.createShift(Shift.EARLY_SHIFT, 2, "Tom"), "e3"),
+                createEvent(march.createShift(Shift.EARLY_SHIFT, 2, "Peter"), "e4"),
+                createEvent(march.createShift(Shift.LATE_SHIFT, 2, "Tom"), "e5").setSummary("Dentist"),
+                createEvent(march.createShift(Shift.EARLY_SHIFT, 3, "Paul"), "e6"));
+        GoogleCalendarService calendarService = new GoogleCalendarService(dutyRosterShiftService) {
+            @Override
+            public Iterator<Event> readEvents(CalendarContext context) {
+                return events.iterator();
+            }
+        };
+
+        CalendarContext context = calendarService.createContext(2015, 2, true);
+        List<String> shifts = new ArrayList<>();
+        Iterator<DutyRosterShift> iterator = calendarService.readDutyRosterShifts(context);
+        while (iterator.hasNext()) {
+            DutyRosterShift shift = iterator.next();
+            shifts.add(shift.getId() + " " + shift.getName() + " " + shift.getEventId());
+        }
+
+        assertEquals(Arrays.asList("2015_03_01_2 Tom e1", "2015_03_02_0 Tom e3", "2015_03_02_1 Judy e2",
+                "2015_03_03_0 Paul e6"), shifts);
+        assertEquals(4, calendarService.readDutyRosterMonth(context).size());
+    }
+
+    @Test
+    public void testEventIdsAreValid() {
+        DutyRosterShift shift = new DutyRosterMonth(2015, 2).createShift(Shift.NIGHT_SHIFT, 31, "Tom");
+        String eventId = GoogleCalendarService.createEventId(shift);
+        // base32hex as required by the calendar api, a new id on each call
+        assertTrue(eventId, eventId.matches("[0-9a-v]{5,1024}"));
+        assertFalse(eventId.equals(GoogleCalendarService.createEventId(shift)));
+    }
+
+    @Test
+    public void testMutationsAreBatched() throws Exception {
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        DutyRosterShift deleted = march.createShift(Shift.EARLY_SHIFT, 1, "Tom");
+        deleted.setEventId("e1");
+        DutyRosterShift added = march.createShift(Shift.LATE_SHIFT, 1, "Judy");
+        DutyRosterShift updated = march.createShift(Shift.EARLY_SHIFT, 2, "Paul");
+        updated.setEventId("e2");
+        DutyRosterShift missing = march.createShift(Shift.EARLY_SHIFT, 3, "Peter");
+        missing.setEventId("missing");
+
+        List<String> batches = new ArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/batch/calendar/v3", exchange -> respondToBatch(exchange, batches));
+        server.start();
+        try {
+            GoogleCalendarService calendarService = new GoogleCalendarService(dutyRosterShiftService);
+            ReflectionTestUtils.setField(calendarService, "calendarId", "roster");
+            ReflectionTestUtils.setField(calendarService, "batchSize", 2);
+            ReflectionTestUtils.setField(calendarService, "client", createClient(server));
+
+            GoogleCalendarService.EventBatch eventBatch = calendarService.createEventBatch(
+                    calendarService.createContext(2015, 2, false));
+            eventBatch.delete(deleted);
+            eventBatch.add(added);
+            eventBatch.update(updated);
+            try {
+                eventBatch.update(missing);
+                fail("the update of the missing event must fail");
+            } catch (GoogleCalendarService.BatchException e) {
+                assertEquals(1, e.getFailures().size());
+                assertSame(missing, e.getFailures().get(0).getShift());
+                assertEquals("update", e.getFailures().get(0).getOperation());
+                assertEquals(404, e.getFailures().get(0).getCode());
+            }
+            eventBatch.flush();
+
+            assertEquals(Arrays.asList("DELETE /calendar/v3/calendars/roster/events/e1, "
+                            + "POST /calendar/v3/calendars/roster/events",
+                    "PUT /calendar/v3/calendars/roster/events/e2, PUT /calendar/v3/calendars/roster/events/missing"),
+                    batches);
+            assertEquals(2, eventBatch.getLatencies().size());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testThrottledBatchRequestsAreRetried() throws Exception {
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        DutyRosterShift added = march.createShift(Shift.LATE_SHIFT, 1, "Busy");
+        DutyRosterShift updated = march.createShift(Shift.EARLY_SHIFT, 2, "Busy");
+        updated.setEventId("e2");
+        DutyRosterShift missing = march.createShift(Shift.EARLY_SHIFT, 3, "Peter");
+        missing.setEventId("missing");
+
+        List<String> batches = new ArrayList<>();
+        List<String> retries = new ArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/batch/calendar/v3", exchange -> respondToBatch(exchange, batches));
+        server.createContext("/calendar/v3/calendars/roster/events", exchange -> {
+            InputStream is = exchange.getRequestBody();
+            if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                is = new GZIPInputStream(is);
+            }
+            String body = IOUtils.toString(is, "UTF-8");
+            synchronized (retries) {
+                retries.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+            }
+            if ("POST".equals(exchange.getRequestMethod())) {
+                // the batched insert has been stored, although it failed
+                assertTrue(body, body.contains("\"id\":\"" + Long.toString(added.getKey(), 32)));
+                respond(exchange, 409, "{\"error\":{\"code\":409,\"message\":\"The requested identifier "
+                        + "already exists.\"}}");
+            } else {
+                respond(exchange, 200, "{\"id\":\"e2\"}");
+            }
+        });
+        server.start();
+        CalendarPushExecutor pushExecutor = new CalendarPushExecutor();
+        pushExecutor.setPermitsPerSecond(0);
+        pushExecutor.setSleeper(millis -> {
+        });
+        try {
+            GoogleCalendarService calendarService = new GoogleCalendarService(dutyRosterShiftService);
+            ReflectionTestUtils.setField(calendarService, "calendarId", "roster");
+            ReflectionTestUtils.setField(calendarService, "batchSize", 3);
+            ReflectionTestUtils.setField(calendarService, "client", createClient(server));
+            calendarService.setPushExecutor(pushExecutor);
+
+            GoogleCalendarService.EventBatch eventBatch = calendarService.createEventBatch(
+                    calendarService.createContext(2015, 2, false));
+            eventBatch.add(added);
+            eventBatch.update(updated);
+            try {
+                eventBatch.update(missing);
+                fail("the update of the missing event must fail");
+            } catch (GoogleCalendarService.BatchException e) {
+                // the throttled mutations have been retried, the missing event is not
+                assertEquals(1, e.getFailures().size());
+                assertSame(missing, e.getFailures().get(0).getShift());
+                assertEquals(3, e.getRequests());
+            }
+
+            assertEquals(1, batches.size());
+            Collections.sort(retries);
+            assertEquals(Arrays.asList("POST /calendar/v3/calendars/roster/events",
+                    "PUT /calendar/v3/calendars/roster/events/e2"), retries);
+        } finally {
+            pushExecutor.shutdown();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testEventsAreListedPageByPage() throws Exception {
+        DutyRosterMonth march = new DutyRosterMonth(2015, 2);
+        Events firstPage = new Events()
+                .setItems(Arrays.asList(
+                        createEvent(march.createShift(Shift.EARLY_SHIFT, 1, "Tom"), "e1"),
+                        createEvent(march.createShift(Shift.EARLY_SHIFT, 2, "Judy"), "e2")))
+                .setNextPageToken("page2");
+        Events lastPage = new Events()
+                .setItems(Arrays.asList(
+                        createEvent(march.createShift(Shift.EARLY_SHIFT, 2, "Paul"), "e3")
+                                .setStart(new EventDateTime().setDate(new DateTime("2015-03-02"))),
+                        createEvent(march.createShift(Shift.NIGHT_SHIFT, 2, "Peter"), "e4")));
+
+        List<String> queries = new ArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/calendar/v3/calendars/roster/events", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            queries.add(query);
+            byte[] bytes = new GsonFactory().toByteArray(query.contains("pageToken=page2") ? lastPage : firstPage);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+        try {
+            GoogleCalendarService calendarService = new GoogleCalendarService(dutyRosterShiftService);
+            ReflectionTestUtils.setField(calendarService, "calendarId", "roster");
+            ReflectionTestUtils.setField(calendarService, "pageSize", 2);
+            ReflectionTestUtils.setField(calendarService, "client", createClient(server));
+
+            Iterator<DutyRosterShift> shifts = calendarService.readDutyRosterShifts(
+                    calendarService.createContext(2015, 2, false));
+            assertEquals("e1", shifts.next().getEventId());
+            // the last page is not read before the events of the first page are consumed
+            assertEquals(1, queries.size());
+            assertEquals("e2", shifts.next().getEventId());
+            // the all day event is skipped
+            assertEquals("e4", shifts.next().getEventId());
+            assertFalse(shifts.hasNext());
+
+            assertEquals(2, queries.size());
+            assertTrue(queries.get(0), queries.get(0).contains("maxResults=2"));
+            assertTrue(queries.get(0), queries.get(0).contains("fields=" + GoogleCalendarService.EVENT_FIELDS));
+            assertFalse(queries.get(0), queries.get(0).contains("pageToken"));
+            assertTrue(queries.get(1), queries.get(1).contains("pageToken=page2"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static Calendar createClient(HttpServer server) {
+        return new Calendar.Builder(new NetHttpTransport(), new GsonFactory(), null)
+                .setRootUrl("http://localhost:" + server.getAddress().getPort() + "/")
+                .setApplicationName("test")
+                .build();
+    }
+
+    /**
+     * Answers a batch request like the Google calendar api: each part of the multipart request is a request, the
+     * response has a part per request in the same order. Updates of the event "missing" fail, the mutations of
+     * events of "Busy" are rejected for exceeding the rate limit.
+     */
+    private static void respondToBatch(HttpExchange exchange, List<String> batches) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        String boundary = contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+        String body = IOUtils.toString(exchange.getRequestBody(), "UTF-8");
+
+        List<String> requests = new ArrayList<>();
+        StringBuilder response = new StringBuilder();
+        for (String part : body.split("--" + boundary)) {
+            String[] sections = part.trim().split("\\r?\\n\\r?\\n", 2);
+            if (sections.length < 2) {
+                continue; // preamble or end
+            }
+            String[] requestLine = sections[1].split("\\r?\\n", 2)[0].split(" ");
+            String path = requestLine[1].replaceFirst("^https?://[^/]+", "").replaceFirst("\\?.*", "");
+            requests.add(requestLine[0] + " " + path);
+
+            response.append("--batch_response\r\n")
+                    .append("Content-Type: application/http\r\n")
+                    .append("Content-ID: response-").append(requests.size()).append("\r\n\r\n");
+            if (sections[1].contains("Busy")) {
+                response.append("HTTP/1.1 403 Forbidden\r\nContent-Type: application/json; charset=UTF-8\r\n\r\n")
+                        .append("{\"error\":{\"errors\":[{\"domain\":\"usageLimits\",")
+                        .append("\"reason\":\"rateLimitExceeded\",\"message\":\"Rate Limit Exceeded\"}],")
+                        .append("\"code\":403,\"message\":\"Rate Limit Exceeded\"}}\r\n");
+            } else if (path.endsWith("/missing")) {
+                response.append("HTTP/1.1 404 Not Found\r\nContent-Type: application/json; charset=UTF-8\r\n\r\n")
+                        .append("{\"error\":{\"errors\":[{\"domain\":\"global\",\"reason\":\"notFound\",")
+                        .append("\"message\":\"Not Found\"}],\"code\":404,\"message\":\"Not Found\"}}\r\n");
+            } else if ("DELETE".equals(requestLine[0])) {
+                response.append("HTTP/1.1 204 No Content\r\n\r\n");
+            } else {
+                response.append("HTTP/1.1 200 OK\r\nContent-Type: application/json; charset=UTF-8\r\n\r\n")
+                        .append("{\"id\":\"e").append(requests.size()).append("\"}\r\n");
+            }
+        }
+        response.append("--batch_response--\r\n");
+        batches.add(String.join(", ", requests));
+
+        byte[] bytes = response.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "multipart/mixed; boundary=batch_response");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private Event createEvent(DutyRosterShift shift, String id) {
+        return new Event()
+                .setId(id)
+                .setSequence(0)
+                .setSummary(dutyRosterShiftService.createEventSummary(shift.getShift(), shift.getName()))
+                .setStart(new EventDateTime().setDateTime(new DateTime(shift.getFrom())))
+                .setEnd(new EventDateTime().setDateTime(new DateTime(shift.getTo())));
+    }
+}
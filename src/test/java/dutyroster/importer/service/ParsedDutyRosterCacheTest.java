@@ -0,0 +1,108 @@
+package dutyroster.importer.service;
+
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.domain.Shift;
+import dutyroster.importer.domain.ShiftSchedule;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link ParsedDutyRosterCache}
+ */
+public class ParsedDutyRosterCacheTest {
+
+    private ParsedDutyRosterCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ParsedDutyRosterCache();
+        cache.setMaxEntries(2);
+    }
+
+    @Test
+    public void testCreateKey() {
+        byte[] docx = {1, 2, 3};
+
+        String key = cache.createKey(docx, 2015);
+        assertTrue(key.startsWith("2015_default_"));
+        assertEquals(13 + 64, key.length());
+        assertEquals(key, cache.createKey(new byte[]{1, 2, 3}, 2015));
+        assertEquals(key, cache.createKey(docx, 2015, ShiftSchedule.DEFAULT));
+        assertNotEquals(key, cache.createKey(docx, 2016));
+        assertNotEquals(key, cache.createKey(new byte[]{1, 2, 4}, 2015));
+
+        ShiftScheduleProperties properties = new ShiftScheduleProperties();
+        properties.getWards().put("ward2", new ShiftScheduleProperties.WardProperties());
+        assertNotEquals(key, cache.createKey(docx, 2015, properties.createShiftSchedules().get("ward2")));
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        String key = cache.createKey(new byte[]{1}, 2015);
+        assertNull(cache.get(key));
+
+        cache.put(key, createDutyRosterMonth("Peter"));
+        assertEquals("Peter", cache.get(key).getAllDutyRosterDays().iterator().next().getName());
+        assertNotNull(cache.get(key));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testCachedRostersAreNotModifiedByCallers() {
+        String key = cache.createKey(new byte[]{1}, 2015);
+        DutyRosterMonth parsed = createDutyRosterMonth("Peter");
+        cache.put(key, parsed);
+        parsed.getAllDutyRosterDays().iterator().next().setEventId("changed after put");
+
+        DutyRosterMonth cached = cache.get(key);
+        DutyRosterShift shift = cached.getAllDutyRosterDays().iterator().next();
+        assertNull(shift.getEventId());
+        shift.setEventId("changed after get");
+        cached.addDutyRosterShift(Shift.NIGHT_SHIFT, 2, "Paul");
+
+        DutyRosterMonth again = cache.get(key);
+        assertEquals(1, again.getAllDutyRosterDays().size());
+        assertNull(again.getAllDutyRosterDays().iterator().next().getEventId());
+        assertEquals(parsed.getDate(), again.getDate());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        String key1 = cache.createKey(new byte[]{1}, 2015);
+        String key2 = cache.createKey(new byte[]{2}, 2015);
+        String key3 = cache.createKey(new byte[]{3}, 2015);
+
+        cache.put(key1, createDutyRosterMonth("Peter"));
+        cache.put(key2, createDutyRosterMonth("Paul"));
+        assertNotNull(cache.get(key1));
+        cache.put(key3, createDutyRosterMonth("Mary"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(key1));
+        assertNull(cache.get(key2));
+        assertNotNull(cache.get(key3));
+    }
+
+    @Test
+    public void testDisabled() {
+        cache.setEnabled(false);
+
+        String key = cache.createKey(new byte[]{1}, 2015);
+        cache.put(key, createDutyRosterMonth("Peter"));
+
+        assertNull(key);
+        assertNull(cache.get(key));
+        assertEquals(0, cache.size());
+    }
+
+    private DutyRosterMonth createDutyRosterMonth(String name) {
+        DutyRosterMonth dutyRosterMonth = new DutyRosterMonth(2015, 2);
+        dutyRosterMonth.addDutyRosterShift(Shift.EARLY_SHIFT, 1, name);
+        return dutyRosterMonth;
+    }
+}
@@ -0,0 +1,43 @@
+package dutyroster.importer.util;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link DateUtil}
+ */
+public class DateUtilTest {
+
+    @Test
+    public void testFieldsMatchTheCalendar() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            // 1970 until 2170, before 1900 time zones may have had offsets in seconds, which Calendar ignores
+            Date date = new Date(Math.abs(random.nextLong() % (200L * 365 * 24 * 60 * 60 * 1000)));
+            Calendar cal = DateUtil.getCalendar(date);
+            assertEquals(date.toString(), cal.get(Calendar.YEAR), DateUtil.getYear(date));
+            assertEquals(date.toString(), cal.get(Calendar.MONTH), DateUtil.getMonth(date));
+            assertEquals(date.toString(), cal.get(Calendar.DAY_OF_MONTH), DateUtil.getDay(date));
+        }
+    }
+
+    @Test
+    public void testCreateDate() {
+        Date date = DateUtil.createDate(2016, 1);
+        Calendar cal = DateUtil.getCalendar(date);
+        assertEquals(2016, cal.get(Calendar.YEAR));
+        assertEquals(1, cal.get(Calendar.MONTH));
+        assertEquals(1, cal.get(Calendar.DAY_OF_MONTH));
+        assertEquals(0, cal.get(Calendar.HOUR_OF_DAY));
+        assertEquals(0, cal.get(Calendar.MINUTE));
+        assertEquals(0, cal.get(Calendar.SECOND));
+        assertEquals(0, cal.get(Calendar.MILLISECOND));
+
+        assertEquals(DateUtil.createDate(2017, 0), DateUtil.createDate(2016, 12));
+    }
+}
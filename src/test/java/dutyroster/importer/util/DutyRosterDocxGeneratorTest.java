@@ -0,0 +1,98 @@
+package dutyroster.importer.util;
+
+import dutyroster.importer.domain.DutyRosterMonth;
+import dutyroster.importer.domain.DutyRosterShift;
+import dutyroster.importer.domain.Shift;
+import dutyroster.importer.service.DutyRosterConverterService;
+import dutyroster.importer.service.DutyRosterShiftService;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for the {@link DutyRosterDocxGenerator}
+ */
+public class DutyRosterDocxGeneratorTest {
+
+    private DutyRosterConverterService converterService;
+
+    private DutyRosterDocxGenerator generator;
+
+    @Before
+    public void setUp() {
+        converterService = new DutyRosterConverterService(new DutyRosterShiftService());
+        generator = new DutyRosterDocxGenerator();
+        generator.setYear(2015);
+        generator.setMonth(2);
+    }
+
+    @Test
+    public void testGeneratedRosterIsParsable() throws Exception {
+        generator.setMultiAssigneeRatio(0);
+
+        DutyRosterMonth month = extract(generator.generate(), DutyRosterConverterService.ParserMode.XWPF);
+
+        // march 2015: 31 early and night shifts, 22 late shifts from monday to friday
+        assertEquals(84, month.getAllDutyRosterDays().size());
+        for (DutyRosterShift shift : month.getAllDutyRosterDays()) {
+            assertFalse(shift.getName().contains("/"));
+        }
+    }
+
+    @Test
+    public void testOnlyTheFirstMonthOfALargeRosterIsExtracted() throws Exception {
+        generator.setMonths(12);
+        generator.setLateShiftOnWeekends(true);
+        generator.setShiftLabels(new String[]{"FD", "SD", "ND"});
+
+        byte[] docx = generator.generate();
+
+        for (DutyRosterConverterService.ParserMode parserMode : DutyRosterConverterService.ParserMode.values()) {
+            DutyRosterMonth month = extract(docx, parserMode);
+            assertEquals(93, month.getAllDutyRosterDays().size());
+        }
+    }
+
+    @Test
+    public void testWeeksAndMultiAssignees() throws Exception {
+        generator.setWeeks(2);
+        generator.setMultiAssigneeRatio(1);
+        generator.setAssignees(3);
+        generator.setShiftLabels(new String[]{"ND"});
+
+        DutyRosterMonth month = extract(generator.generate(), DutyRosterConverterService.ParserMode.STAX);
+
+        // march 2015 starts on a sunday: 1 day of the first week, 7 of the second
+        assertEquals(8, month.getAllDutyRosterDays().size());
+        for (DutyRosterShift shift : month.getAllDutyRosterDays()) {
+            assertEquals(Shift.NIGHT_SHIFT, shift.getShift());
+            String[] names = shift.getName().split("/");
+            assertEquals(2, names.length);
+            assertNotEquals(names[0], names[1]);
+            assertTrue(Arrays.asList("Peter", "Paul", "Mary").containsAll(Arrays.asList(names)));
+        }
+    }
+
+    @Test
+    public void testSameSeedSameRoster() throws Exception {
+        assertArrayEquals(names(generator.generate()), names(generator.generate()));
+
+        String[] names = names(generator.generate());
+        generator.setSeed(4711);
+        assertFalse(Arrays.equals(names, names(generator.generate())));
+    }
+
+    private String[] names(byte[] docx) throws Exception {
+        return extract(docx, DutyRosterConverterService.ParserMode.STAX).getAllDutyRosterDays().stream()
+                .map(DutyRosterShift::getName).toArray(String[]::new);
+    }
+
+    private DutyRosterMonth extract(byte[] docx, DutyRosterConverterService.ParserMode parserMode)
+            throws Exception {
+        return converterService.extractDutyRoster(new ByteArrayInputStream(docx), 2015, parserMode);
+    }
+}
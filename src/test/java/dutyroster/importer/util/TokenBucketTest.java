@@ -0,0 +1,51 @@
+package dutyroster.importer.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for the {@link TokenBucket}
+ */
+public class TokenBucketTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void testBurstThenRate() {
+        TokenBucket bucket = new TokenBucket(10, 3, now::get);
+
+        assertEquals(0, bucket.reserve(1));
+        assertEquals(0, bucket.reserve(1));
+        assertEquals(0, bucket.reserve(1));
+        // empty, a permit every 100 ms
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.reserve(1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), bucket.reserve(1));
+
+        // the debt is paid off, the bucket is full again
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(0, bucket.reserve(3));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.reserve(1));
+    }
+
+    @Test
+    public void testMorePermitsThanCapacity() {
+        TokenBucket bucket = new TokenBucket(10, 5, now::get);
+
+        // a batch of 50 is served, the next caller waits for the debt
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(4500), bucket.reserve(50));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(4500));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.reserve(1));
+    }
+
+    @Test
+    public void testNoLimit() {
+        TokenBucket bucket = new TokenBucket(0, 1, now::get);
+
+        assertEquals(0, bucket.reserve(1000));
+        assertEquals(0, bucket.reserve(1000));
+    }
+}